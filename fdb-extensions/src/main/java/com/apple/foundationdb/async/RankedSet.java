@@ -40,7 +40,10 @@ import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadLocalRandom;
@@ -129,11 +132,11 @@ public class RankedSet {
     private static final byte[] EMPTY_ARRAY = new byte[0];
     private static final byte[] ZERO_ARRAY = new byte[] { 0 };
 
-    private static byte[] encodeLong(long count) {
+    protected static byte[] encodeLong(long count) {
         return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(count).array();
     }
 
-    private static long decodeLong(byte[] v) {
+    protected static long decodeLong(byte[] v) {
         return ByteBuffer.wrap(v).order(ByteOrder.LITTLE_ENDIAN).getLong();
     }
 
@@ -484,6 +487,290 @@ public class RankedSet {
                         }));
     }
 
+    /**
+     * Add a batch of keys to the set.
+     *
+     * <p>
+     * The effect is the same as calling {@link #add} for each key in turn, but the keys are sorted and each level
+     * is updated once for the whole batch. The lookups of where each key falls on every level are all issued together,
+     * after {@link #preloadForLookup} has brought the sparse upper levels into the transaction's cache. Keys that
+     * fall between the same pair of keys on a level then share a single write to that level or, if any of them
+     * need to be inserted there, a single recount of the level below.
+     * </p>
+     * @param tc the transaction to use to access the database
+     * @param keys the keys to add, in any order and possibly repeated
+     * @return a future that completes to a list with an entry for each of the given keys that is {@code true} if
+     * adding that key modified the ranked set, as the result of {@link #add} would be
+     */
+    public CompletableFuture<List<Boolean>> addAll(TransactionContext tc, List<byte[]> keys) {
+        keys.forEach(RankedSet::checkKey);
+        return tc.runAsync(tr -> {
+            final NavigableMap<byte[], BatchKey> batch = batchKeys(keys);
+            return addBatch(tr, batch).thenApply(vignore -> batchResults(keys, batch));
+        });
+    }
+
+    /**
+     * Add a number of occurrences of each of a batch of keys to the set, in the same way as {@link #addAll}.
+     * If duplicates are not {@linkplain Config#isCountDuplicates counted}, any number of occurrences adds a key once.
+     * @param tc the transaction to use to access the database
+     * @param occurrences the number of occurrences of each key to add
+     * @return a future that completes when the keys have been added
+     */
+    protected CompletableFuture<Void> addOccurrences(TransactionContext tc, Map<byte[], Long> occurrences) {
+        occurrences.keySet().forEach(RankedSet::checkKey);
+        return tc.runAsync(tr -> addBatch(tr, batchOccurrences(occurrences)));
+    }
+
+    private CompletableFuture<Void> addBatch(Transaction tr, NavigableMap<byte[], BatchKey> batch) {
+        return preloadForLookup(tr.snapshot())
+            .thenCompose(vignore -> readBatchCounts(tr, batch))
+            .thenCompose(vignore -> {
+                final List<BatchKey> adds = new ArrayList<>(batch.size());
+                for (BatchKey batchKey : batch.values()) {
+                    if (config.isCountDuplicates()) {
+                        batchKey.change = batchKey.occurrences;
+                    } else if (batchKey.count == 0) {
+                        batchKey.change = 1;
+                    }
+                    if (batchKey.change > 0) {
+                        batchKey.hash = config.getHashFunction().hash(batchKey.key);
+                        adds.add(batchKey);
+                    }
+                }
+                if (adds.isEmpty()) {
+                    return DONE;
+                }
+                final int nlevels = config.getNLevels();
+                // Where each key falls on a level does not depend on changes to lower levels, so all the
+                // lookups can be done at once, before anything is written.
+                final List<CompletableFuture<List<byte[]>>> prevKeys = new ArrayList<>(nlevels);
+                prevKeys.add(null);
+                for (int level = 1; level < nlevels; ++level) {
+                    final List<CompletableFuture<byte[]>> levelPrevKeys = new ArrayList<>(adds.size());
+                    for (BatchKey batchKey : adds) {
+                        levelPrevKeys.add(getPreviousKey(tr, level, batchKey.key, batchKey.count > 0));
+                    }
+                    prevKeys.add(AsyncUtil.getAll(levelPrevKeys));
+                }
+                for (BatchKey batchKey : adds) {
+                    final byte[] k = subspace.pack(Tuple.from(0, batchKey.key));
+                    if (batchKey.count > 0) {
+                        tr.mutate(MutationType.ADD, k, encodeLong(batchKey.change));
+                    } else {
+                        tr.set(k, encodeLong(batchKey.change));
+                    }
+                }
+                // But inserting into a level needs the counts from the level below it, so those must be done in order.
+                CompletableFuture<Void> result = DONE;
+                for (int li = 1; li < nlevels; ++li) {
+                    final int level = li;
+                    result = result.thenCompose(vignore2 -> prevKeys.get(level))
+                            .thenCompose(levelPrevKeys -> addAllLevel(tr, level, adds, levelPrevKeys));
+                }
+                return result;
+            });
+    }
+
+    private CompletableFuture<Void> addAllLevel(Transaction tr, int level, List<BatchKey> adds, List<byte[]> prevKeys) {
+        final NavigableMap<byte[], List<BatchKey>> groups = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+        for (int i = 0; i < adds.size(); i++) {
+            groups.computeIfAbsent(prevKeys.get(i), k -> new ArrayList<>()).add(adds.get(i));
+        }
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(groups.size());
+        for (Map.Entry<byte[], List<BatchKey>> group : groups.entrySet()) {
+            final byte[] prevKey = group.getKey();
+            long total = 0;
+            final List<byte[]> inserted = new ArrayList<>();
+            for (BatchKey batchKey : group.getValue()) {
+                total += batchKey.change;
+                if (batchKey.count == 0 && (batchKey.hash & LEVEL_FAN_VALUES[level]) == 0) {
+                    inserted.add(batchKey.key);
+                }
+            }
+            if (inserted.isEmpty()) {
+                tr.mutate(MutationType.ADD, subspace.pack(Tuple.from(level, prevKey)), encodeLong(total));
+                continue;
+            }
+            // Split the count of the previous key among it and the keys inserted after it by recounting the
+            // level below, which is already up-to-date. The last inserted key gets whatever is left over.
+            final long groupTotal = total;
+            final byte[] lastInserted = inserted.get(inserted.size() - 1);
+            final CompletableFuture<Long> prevCount = tr.get(subspace.pack(Tuple.from(level, prevKey))).thenApply(RankedSet::decodeLong);
+            final CompletableFuture<List<KeyValue>> lowerLevel = tr.getRange(subspace.pack(Tuple.from(level - 1, prevKey)),
+                    subspace.pack(Tuple.from(level - 1, lastInserted))).asList();
+            futures.add(prevCount.thenAcceptBoth(lowerLevel, (prev, kvs) -> {
+                final long[] counts = new long[inserted.size()];
+                int bucket = 0;
+                for (KeyValue kv : kvs) {
+                    final byte[] lowerKey = subspace.unpack(kv.getKey()).getBytes(1);
+                    while (bucket < inserted.size() - 1 && ByteArrayUtil.compareUnsigned(lowerKey, inserted.get(bucket)) >= 0) {
+                        bucket++;
+                    }
+                    counts[bucket] += decodeLong(kv.getValue());
+                }
+                long remaining = prev + groupTotal;
+                for (int i = 0; i < counts.length; i++) {
+                    final byte[] k = i == 0 ? prevKey : inserted.get(i - 1);
+                    tr.set(subspace.pack(Tuple.from(level, k)), encodeLong(counts[i]));
+                    remaining -= counts[i];
+                }
+                tr.set(subspace.pack(Tuple.from(level, lastInserted)), encodeLong(remaining));
+            }));
+        }
+        return AsyncUtil.whenAll(futures);
+    }
+
+    /**
+     * Remove a batch of keys from the set.
+     *
+     * <p>
+     * The effect is the same as calling {@link #remove} for each key in turn, but each level is updated once for the
+     * whole batch, with a single change to each key that remains on that level.
+     * </p>
+     * @param tc the transaction to use to access the database
+     * @param keys the keys to remove, in any order and possibly repeated
+     * @return a future that completes to a list with an entry for each of the given keys that is {@code true} if
+     * removing that key modified the ranked set, as the result of {@link #remove} would be
+     */
+    public CompletableFuture<List<Boolean>> removeAll(TransactionContext tc, List<byte[]> keys) {
+        keys.forEach(RankedSet::checkKey);
+        return tc.runAsync(tr -> {
+            final NavigableMap<byte[], BatchKey> batch = batchKeys(keys);
+            return removeBatch(tr, batch).thenApply(vignore -> batchResults(keys, batch));
+        });
+    }
+
+    /**
+     * Remove a number of occurrences of each of a batch of keys from the set, in the same way as {@link #removeAll}.
+     * @param tc the transaction to use to access the database
+     * @param occurrences the number of occurrences of each key to remove
+     * @return a future that completes when the keys have been removed
+     */
+    protected CompletableFuture<Void> removeOccurrences(TransactionContext tc, Map<byte[], Long> occurrences) {
+        occurrences.keySet().forEach(RankedSet::checkKey);
+        return tc.runAsync(tr -> removeBatch(tr, batchOccurrences(occurrences)));
+    }
+
+    private CompletableFuture<Void> removeBatch(Transaction tr, NavigableMap<byte[], BatchKey> batch) {
+        return preloadForLookup(tr.snapshot())
+            .thenCompose(vignore -> readBatchCounts(tr, batch))
+            .thenCompose(vignore -> {
+                final List<BatchKey> removes = new ArrayList<>(batch.size());
+                for (BatchKey batchKey : batch.values()) {
+                    batchKey.change = Math.min(batchKey.occurrences, batchKey.count);
+                    if (batchKey.change > 0) {
+                        removes.add(batchKey);
+                    }
+                }
+                if (removes.isEmpty()) {
+                    return DONE;
+                }
+                final int nlevels = config.getNLevels();
+                final List<CompletableFuture<Void>> futures = new ArrayList<>(nlevels);
+                for (BatchKey batchKey : removes) {
+                    final byte[] k = subspace.pack(Tuple.from(0, batchKey.key));
+                    if (batchKey.change < batchKey.count) {
+                        tr.set(k, encodeLong(batchKey.count - batchKey.change));
+                    } else {
+                        tr.clear(k);
+                    }
+                }
+                for (int level = 1; level < nlevels; ++level) {
+                    futures.add(removeAllLevel(tr, level, removes));
+                }
+                return AsyncUtil.whenAll(futures);
+            });
+    }
+
+    private CompletableFuture<Void> removeAllLevel(Transaction tr, int level, List<BatchKey> removes) {
+        final List<CompletableFuture<byte[]>> prevKeys = new ArrayList<>(removes.size());
+        final List<CompletableFuture<byte[]>> levelCounts = new ArrayList<>(removes.size());
+        for (BatchKey batchKey : removes) {
+            if (batchKey.change < batchKey.count) {
+                // Some occurrences remain, so the key stays wherever it is.
+                prevKeys.add(getPreviousKey(tr, level, batchKey.key, true));
+                levelCounts.add(CompletableFuture.completedFuture(null));
+            } else {
+                prevKeys.add(getPreviousKey(tr, level, batchKey.key, false));
+                levelCounts.add(tr.get(subspace.pack(Tuple.from(level, batchKey.key))));
+            }
+        }
+        return AsyncUtil.getAll(prevKeys).thenCombine(AsyncUtil.getAll(levelCounts), (prevs, counts) -> {
+            // Go from the highest key down, so that a key being taken out of this level has been given every change
+            // meant for it before it passes them on, along with its own count, to the key before it.
+            final NavigableMap<byte[], Long> changes = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+            for (int i = removes.size() - 1; i >= 0; i--) {
+                final BatchKey batchKey = removes.get(i);
+                long countChange = -batchKey.change;
+                final byte[] c = counts.get(i);
+                if (c != null) {
+                    tr.clear(subspace.pack(Tuple.from(level, batchKey.key)));
+                    final Long passedOn = changes.remove(batchKey.key);
+                    countChange += decodeLong(c) + (passedOn == null ? 0 : passedOn);
+                }
+                changes.merge(prevs.get(i), countChange, Long::sum);
+            }
+            for (Map.Entry<byte[], Long> change : changes.entrySet()) {
+                tr.mutate(MutationType.ADD, subspace.pack(Tuple.from(level, change.getKey())), encodeLong(change.getValue()));
+            }
+            return null;
+        });
+    }
+
+    private static NavigableMap<byte[], BatchKey> batchKeys(List<byte[]> keys) {
+        final NavigableMap<byte[], BatchKey> batch = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+        for (byte[] key : keys) {
+            batch.computeIfAbsent(key, BatchKey::new).occurrences++;
+        }
+        return batch;
+    }
+
+    private static NavigableMap<byte[], BatchKey> batchOccurrences(Map<byte[], Long> occurrences) {
+        final NavigableMap<byte[], BatchKey> batch = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+        for (Map.Entry<byte[], Long> entry : occurrences.entrySet()) {
+            if (entry.getValue() > 0) {
+                batch.computeIfAbsent(entry.getKey(), BatchKey::new).occurrences += entry.getValue();
+            }
+        }
+        return batch;
+    }
+
+    private CompletableFuture<Void> readBatchCounts(Transaction tr, NavigableMap<byte[], BatchKey> batch) {
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(batch.size());
+        for (BatchKey batchKey : batch.values()) {
+            futures.add(countCheckedKey(tr, batchKey.key).thenAccept(count -> batchKey.count = count == null ? 0 : count));
+        }
+        return AsyncUtil.whenAll(futures);
+    }
+
+    private static List<Boolean> batchResults(List<byte[]> keys, NavigableMap<byte[], BatchKey> batch) {
+        final List<Boolean> results = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            final BatchKey batchKey = batch.get(key);
+            results.add(batchKey.returned++ < batchKey.change);
+        }
+        return results;
+    }
+
+    // A distinct key in a batch given to addAll or removeAll.
+    private static class BatchKey {
+        private final byte[] key;
+        private long hash;
+        // Number of times the key appears in the batch.
+        private long occurrences;
+        // Number of times the key was in the set beforehand.
+        private long count;
+        // Number of occurrences actually added or removed.
+        private long change;
+        // Number of results already given for this key.
+        private int returned;
+
+        BatchKey(byte[] key) {
+            this.key = key;
+        }
+    }
+
     /**
      * Clears the entire set.
      * @param tc the transaction to use to access the database
@@ -829,7 +1116,7 @@ public class RankedSet {
     // Internal
     //
 
-    private static void checkKey(byte[] key) {
+    protected static void checkKey(byte[] key) {
         if (key.length == 0) {
             throw new IllegalArgumentException("Empty key not allowed");
         }
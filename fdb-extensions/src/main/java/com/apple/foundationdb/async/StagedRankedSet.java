@@ -0,0 +1,449 @@
+/*
+ * StagedRankedSet.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.async;
+
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.MutationType;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.ReadTransactionContext;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.TransactionContext;
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.Tuple;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link RankedSet} that stages changes instead of applying them to the skip-list directly, so that concurrent writers
+ * do not conflict with one another.
+ *
+ * <p>
+ * Adding a key to an ordinary {@code RankedSet} reads the neighboring keys on every level to find where the key goes,
+ * so two transactions that add nearby keys at the same time will usually conflict. Here, adding or removing a key
+ * instead makes an atomic add to a per-key counter in a separate staging subspace. Atomic adds never conflict with one
+ * another, so the only reads done are of the key itself (and not even that when {@linkplain Config#isCountDuplicates
+ * duplicates are counted}). Two transactions therefore only conflict if they change the same key.
+ * </p>
+ *
+ * <p>
+ * All of the read operations, such as {@link #rank} and {@link #getNth}, merge the staged changes with the skip-list
+ * on the fly, so they give the same answers as an ordinary ranked set would. The cost of this goes up with the number of
+ * keys staged, so {@link #compact} should be called regularly to fold the staged changes into the skip-list levels,
+ * for instance whenever {@link #getStagedChangeCount} passes some threshold. That does conflict with writers changing
+ * the same keys, so it is best done in batches that are not too large, in a transaction of its own. Reads that need to merge
+ * more than the staging limit of staged keys still succeed, only more slowly, but call {@link #stagingLimitExceeded}
+ * so that subclasses can report that compaction is falling behind. {@link #size} does not need to merge any keys, as the
+ * total of the staged changes is kept as well.
+ * </p>
+ *
+ * <p>
+ * The staging subspace must not overlap the keys of the skip-list itself. It can be nested inside the skip-list's
+ * subspace, so that {@link #clear} and range clears of the whole set include it, as long as its first tuple element is
+ * not an integer, which would be taken for a level number.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class StagedRankedSet extends RankedSet {
+    /**
+     * The default number of staged keys that a read can merge with the skip-list before it reports that compaction is falling behind.
+     */
+    public static final int DEFAULT_STAGING_LIMIT = 1000;
+
+    // The staged change to each key, and then counters for the number of changes staged since the last compaction
+    // and the total of all the staged changes.
+    private static final Tuple STAGED_KEYS = Tuple.from(0);
+    private static final Tuple STAGED_CHANGE_COUNT = Tuple.from(1);
+    private static final Tuple STAGED_TOTAL = Tuple.from(2);
+
+    protected final Subspace stagingSubspace;
+    protected final Subspace stagedKeysSubspace;
+    protected final int stagingLimit;
+
+    public StagedRankedSet(Subspace subspace, Subspace stagingSubspace, Executor executor, Config config, int stagingLimit) {
+        super(subspace, executor, config);
+        this.stagingSubspace = stagingSubspace;
+        this.stagedKeysSubspace = stagingSubspace.subspace(STAGED_KEYS);
+        this.stagingLimit = stagingLimit;
+    }
+
+    public StagedRankedSet(Subspace subspace, Subspace stagingSubspace, Executor executor, Config config) {
+        this(subspace, stagingSubspace, executor, config, DEFAULT_STAGING_LIMIT);
+    }
+
+    public StagedRankedSet(Subspace subspace, Subspace stagingSubspace, Executor executor) {
+        this(subspace, stagingSubspace, executor, DEFAULT_CONFIG);
+    }
+
+    /**
+     * Add a key to the set by staging the change.
+     * @param tc the transaction to use to access the database
+     * @param key the key to add
+     * @return a future that completes to {@code true} if the ranked set was modified
+     * @see RankedSet#add
+     */
+    @Override
+    public CompletableFuture<Boolean> add(TransactionContext tc, byte[] key) {
+        checkKey(key);
+        return tc.runAsync(tr -> {
+            if (config.isCountDuplicates()) {
+                // Every occurrence counts, so there is no need to look first.
+                stage(tr, key, 1);
+                return AsyncUtil.READY_TRUE;
+            }
+            return count(tr, key).thenApply(count -> {
+                if (count > 0) {
+                    return false;
+                }
+                stage(tr, key, 1);
+                return true;
+            });
+        });
+    }
+
+    /**
+     * Remove a key from the set by staging the change.
+     * @param tc the transaction to use to access the database
+     * @param key the key to remove
+     * @return a future that completes to {@code true} if the set was modified, that is, if the key was present before this operation
+     * @see RankedSet#remove
+     */
+    @Override
+    public CompletableFuture<Boolean> remove(TransactionContext tc, byte[] key) {
+        checkKey(key);
+        return tc.runAsync(tr -> count(tr, key).thenApply(count -> {
+            if (count <= 0) {
+                return false;
+            }
+            stage(tr, key, -1);
+            return true;
+        }));
+    }
+
+    /**
+     * Add a batch of keys to the set by staging the changes.
+     * @param tc the transaction to use to access the database
+     * @param keys the keys to add, in any order and possibly repeated
+     * @return a future that completes to a list with an entry for each of the given keys that is {@code true} if
+     * adding that key modified the ranked set
+     */
+    @Override
+    public CompletableFuture<List<Boolean>> addAll(TransactionContext tc, List<byte[]> keys) {
+        return tc.runAsync(tr -> {
+            final List<Boolean> results = new ArrayList<>(keys.size());
+            CompletableFuture<Void> result = AsyncUtil.DONE;
+            for (byte[] key : keys) {
+                result = result.thenCompose(vignore -> add(tr, key)).thenAccept(results::add);
+            }
+            return result.thenApply(vignore -> results);
+        });
+    }
+
+    /**
+     * Remove a batch of keys from the set by staging the changes.
+     * @param tc the transaction to use to access the database
+     * @param keys the keys to remove, in any order and possibly repeated
+     * @return a future that completes to a list with an entry for each of the given keys that is {@code true} if
+     * removing that key modified the ranked set
+     */
+    @Override
+    public CompletableFuture<List<Boolean>> removeAll(TransactionContext tc, List<byte[]> keys) {
+        return tc.runAsync(tr -> {
+            final List<Boolean> results = new ArrayList<>(keys.size());
+            CompletableFuture<Void> result = AsyncUtil.DONE;
+            for (byte[] key : keys) {
+                result = result.thenCompose(vignore -> remove(tr, key)).thenAccept(results::add);
+            }
+            return result.thenApply(vignore -> results);
+        });
+    }
+
+    /**
+     * Get the number of changes staged since the staging area was last emptied by {@link #compact}.
+     * This is at least the number of keys with staged changes, so it can be used to decide when to compact.
+     * Reading it at snapshot isolation does not conflict with writers.
+     * @param tc the transaction to use to access the database
+     * @return a future that completes to the number of staged changes
+     */
+    public CompletableFuture<Long> getStagedChangeCount(ReadTransactionContext tc) {
+        return tc.readAsync(tr -> tr.get(stagingSubspace.pack(STAGED_CHANGE_COUNT)).thenApply(b -> b == null ? 0L : Math.max(0L, decodeLong(b))));
+    }
+
+    /**
+     * Fold staged changes into the skip-list levels.
+     * The keys are taken in order, so repeatedly calling this until it returns fewer than {@code limit} will
+     * empty the staging area, apart from any changes staged concurrently.
+     * @param tc the transaction to use to access the database
+     * @param limit the maximum number of staged keys to fold in
+     * @return a future that completes to the number of staged keys that were folded in
+     */
+    public CompletableFuture<Integer> compact(TransactionContext tc, int limit) {
+        return tc.runAsync(tr -> tr.getRange(stagedKeysSubspace.range(), limit).asList().thenCompose(kvs -> {
+            final Map<byte[], Long> adds = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+            final Map<byte[], Long> removes = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+            long totalChange = 0;
+            for (KeyValue kv : kvs) {
+                final byte[] key = stagedKeysSubspace.unpack(kv.getKey()).getBytes(0);
+                final long change = decodeLong(kv.getValue());
+                if (change > 0) {
+                    adds.put(key, change);
+                } else if (change < 0) {
+                    removes.put(key, -change);
+                }
+                totalChange += change;
+                tr.clear(kv.getKey());
+            }
+            tr.mutate(MutationType.ADD, stagingSubspace.pack(STAGED_TOTAL), encodeLong(-totalChange));
+            if (kvs.size() < limit) {
+                // Everything staged before this transaction has been read, and so folded in; anything staged since is added after this.
+                tr.set(stagingSubspace.pack(STAGED_CHANGE_COUNT), encodeLong(0));
+            } else {
+                tr.mutate(MutationType.ADD, stagingSubspace.pack(STAGED_CHANGE_COUNT), encodeLong(-kvs.size()));
+            }
+            CompletableFuture<Void> result = AsyncUtil.DONE;
+            if (!removes.isEmpty()) {
+                result = result.thenCompose(vignore -> super.removeOccurrences(tr, removes));
+            }
+            if (!adds.isEmpty()) {
+                result = result.thenCompose(vignore -> super.addOccurrences(tr, adds));
+            }
+            return result.thenApply(vignore -> kvs.size());
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Void> clear(TransactionContext tc) {
+        return tc.runAsync(tr -> {
+            tr.clear(stagingSubspace.range());
+            return super.clear(tr);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> contains(ReadTransactionContext tc, byte[] key) {
+        return count(tc, key).thenApply(count -> count > 0);
+    }
+
+    @Override
+    public CompletableFuture<Long> count(ReadTransactionContext tc, byte[] key) {
+        checkKey(key);
+        return tc.readAsync(tr -> super.count(tr, key).thenCombine(
+                tr.get(stagedKeysSubspace.pack(Tuple.from(key))).thenApply(b -> b == null ? 0L : decodeLong(b)),
+                Long::sum));
+    }
+
+    @Override
+    public CompletableFuture<Long> rank(ReadTransactionContext tc, byte[] key, boolean nullIfMissing) {
+        checkKey(key);
+        return tc.readAsync(tr -> {
+            final CompletableFuture<Long> rank = super.rank(tr, key, false).thenCombine(
+                    readStaged(tr, null, key).thenApply(StagedRankedSet::totalChange),
+                    Long::sum);
+            if (!nullIfMissing) {
+                return rank;
+            }
+            return count(tr, key).thenCompose(count -> count > 0 ? rank : CompletableFuture.completedFuture(null));
+        });
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getNth(ReadTransactionContext tc, long rank) {
+        if (rank < 0) {
+            return CompletableFuture.completedFuture((byte[])null);
+        }
+        return tc.readAsync(tr -> readStaged(tr, null, null).thenCompose(staged -> {
+            if (staged.isEmpty()) {
+                return super.getNth(tr, rank);
+            }
+            final NthMerge merge = new NthMerge(tr, rank, staged);
+            return AsyncUtil.whileTrue(merge::next, executor).thenApply(vignore -> merge.result);
+        }));
+    }
+
+    @Override
+    public AsyncIterable<byte[]> getRange(ReadTransaction tr, byte[] beginKey, byte[] endKey) {
+        checkKey(beginKey);
+        final CompletableFuture<List<byte[]>> keys = tr.getRange(subspace.pack(Tuple.from(0, beginKey)), subspace.pack(Tuple.from(0, endKey))).asList()
+                .thenCombine(readStaged(tr, beginKey, endKey), (kvs, staged) -> {
+                    final NavigableMap<byte[], Long> counts = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+                    for (KeyValue kv : kvs) {
+                        counts.put(subspace.unpack(kv.getKey()).getBytes(1), decodeLong(kv.getValue()));
+                    }
+                    for (Map.Entry<byte[], Long> entry : staged.entrySet()) {
+                        counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+                    }
+                    final List<byte[]> result = new ArrayList<>(counts.size());
+                    for (Map.Entry<byte[], Long> entry : counts.entrySet()) {
+                        if (entry.getValue() > 0) {
+                            result.add(entry.getKey());
+                        }
+                    }
+                    return result;
+                });
+        return new AsyncIterable<byte[]>() {
+            @Nonnull
+            @Override
+            public CloseableAsyncIterator<byte[]> iterator() {
+                return new CloseableAsyncIterator<byte[]>() {
+                    private Iterator<byte[]> iterator;
+
+                    @Nonnull
+                    @Override
+                    public CompletableFuture<Boolean> onHasNext() {
+                        return keys.thenApply(list -> {
+                            if (iterator == null) {
+                                iterator = list.iterator();
+                            }
+                            return iterator.hasNext();
+                        });
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return onHasNext().join();
+                    }
+
+                    @Override
+                    public byte[] next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return iterator.next();
+                    }
+
+                    @Override
+                    public void close() {
+                        // The keys are read all at once, so there is nothing to stop.
+                    }
+                };
+            }
+
+            @Override
+            public CompletableFuture<List<byte[]>> asList() {
+                return keys.thenApply(ArrayList::new);
+            }
+        };
+    }
+
+    @Override
+    public CompletableFuture<Long> size(ReadTransactionContext tc) {
+        return tc.readAsync(tr -> super.size(tr).thenCombine(
+                tr.get(stagingSubspace.pack(STAGED_TOTAL)).thenApply(b -> b == null ? 0L : decodeLong(b)),
+                Long::sum));
+    }
+
+    private void stage(Transaction tr, byte[] key, long change) {
+        tr.mutate(MutationType.ADD, stagedKeysSubspace.pack(Tuple.from(key)), encodeLong(change));
+        tr.mutate(MutationType.ADD, stagingSubspace.pack(STAGED_CHANGE_COUNT), encodeLong(1));
+        tr.mutate(MutationType.ADD, stagingSubspace.pack(STAGED_TOTAL), encodeLong(change));
+    }
+
+    // Get the staged changes for keys in the given range, either end of which may be null for unbounded.
+    private CompletableFuture<NavigableMap<byte[], Long>> readStaged(ReadTransaction tr, byte[] beginKey, byte[] endKey) {
+        final byte[] begin = beginKey == null ? stagedKeysSubspace.range().begin : stagedKeysSubspace.pack(Tuple.from(beginKey));
+        final byte[] end = endKey == null ? stagedKeysSubspace.range().end : stagedKeysSubspace.pack(Tuple.from(endKey));
+        return tr.getRange(begin, end).asList().thenApply(kvs -> {
+            if (kvs.size() > stagingLimit) {
+                stagingLimitExceeded(kvs.size());
+            }
+            final NavigableMap<byte[], Long> staged = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+            for (KeyValue kv : kvs) {
+                final long change = decodeLong(kv.getValue());
+                if (change != 0) {
+                    staged.put(stagedKeysSubspace.unpack(kv.getKey()).getBytes(0), change);
+                }
+            }
+            return staged;
+        });
+    }
+
+    /**
+     * Called when a read has to merge more than the staging limit of staged keys with the skip-list.
+     * The read still goes ahead, so this does nothing by default.
+     * @param stagedKeys the number of staged keys being merged
+     */
+    protected void stagingLimitExceeded(int stagedKeys) {
+    }
+
+    private static long totalChange(NavigableMap<byte[], Long> staged) {
+        long total = 0;
+        for (long change : staged.values()) {
+            total += change;
+        }
+        return total;
+    }
+
+    // Find the Nth item by going through the staged keys in order, keeping track of how much they move the ranks
+    // of the skip-list's own keys after them, until reaching the staged key that holds the rank or the one before which it falls.
+    private class NthMerge {
+        private final ReadTransaction tr;
+        private final long rank;
+        private final Iterator<Map.Entry<byte[], Long>> staged;
+        private long adjustment = 0;
+        private byte[] result;
+
+        NthMerge(ReadTransaction tr, long rank, NavigableMap<byte[], Long> staged) {
+            this.tr = tr;
+            this.rank = rank;
+            this.staged = staged.entrySet().iterator();
+        }
+
+        CompletableFuture<Boolean> next() {
+            if (!staged.hasNext()) {
+                return findUnstaged();
+            }
+            final Map.Entry<byte[], Long> entry = staged.next();
+            final byte[] key = entry.getKey();
+            final long change = entry.getValue();
+            return StagedRankedSet.super.rank(tr, key, false)
+                    .thenCombine(StagedRankedSet.super.count(tr, key), (keyRank, keyCount) -> new long[] {keyRank + adjustment, keyCount + change})
+                    .thenCompose(rankAndCount -> {
+                        if (rank < rankAndCount[0]) {
+                            // Before this staged key, and after any earlier ones.
+                            return findUnstaged();
+                        }
+                        if (rank < rankAndCount[0] + rankAndCount[1]) {
+                            result = key;
+                            return AsyncUtil.READY_FALSE;
+                        }
+                        adjustment += change;
+                        return AsyncUtil.READY_TRUE;
+                    });
+        }
+
+        private CompletableFuture<Boolean> findUnstaged() {
+            return StagedRankedSet.super.getNth(tr, rank - adjustment).thenApply(key -> {
+                result = key;
+                return false;
+            });
+        }
+    }
+}
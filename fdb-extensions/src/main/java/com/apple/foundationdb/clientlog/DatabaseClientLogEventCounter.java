@@ -35,6 +35,8 @@ import java.util.concurrent.CompletableFuture;
 
 /**
  * Count tuple-encoded keys into {@link TupleKeyCountTree}.
+ *
+ * Events may be counted concurrently, such as when given to this counter unordered by {@link ParallelDatabaseClientLogEvents}.
  */
 @API(API.Status.EXPERIMENTAL)
 public class DatabaseClientLogEventCounter implements DatabaseClientLogEvents.EventConsumer {
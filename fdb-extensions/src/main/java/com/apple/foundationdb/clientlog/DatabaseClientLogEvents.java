@@ -34,6 +34,7 @@ import com.apple.foundationdb.tuple.ByteArrayUtil;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
@@ -63,7 +64,7 @@ public class DatabaseClientLogEvents {
         CompletableFuture<Void> accept(@Nonnull Transaction tr, @Nonnull FDBClientLogEvents.Event event);
     }
     
-    private DatabaseClientLogEvents(@Nonnull byte[] startKey, @Nonnull byte[] endKey) {
+    DatabaseClientLogEvents(@Nonnull byte[] startKey, @Nonnull byte[] endKey) {
         this.startKey = startKey;
         this.endKey = endKey;
     }
@@ -142,11 +143,7 @@ public class DatabaseClientLogEvents {
             transactionOptions.setReadLockAware();
             if (events == null) {
                 return versionRangeProducer.apply(tr).thenCompose(versions -> {
-                    final Long startVersion = versions[0];
-                    final byte[] startKey = startVersion == null ? FDBClientLogEvents.EVENT_KEY_PREFIX : FDBClientLogEvents.eventKeyForVersion(startVersion);
-                    final Long endVersion = versions[1];
-                    final byte[] endKey = endVersion == null ? ByteArrayUtil.strinc(FDBClientLogEvents.EVENT_KEY_PREFIX) : FDBClientLogEvents.eventKeyForVersion(endVersion);
-                    events = new DatabaseClientLogEvents(startKey, endKey);
+                    events = new DatabaseClientLogEvents(startKeyForVersion(versions[0]), endKeyForVersion(versions[1]));
                     return loopBody();
                 });
             } else {
@@ -196,7 +193,7 @@ public class DatabaseClientLogEvents {
         }
     }
 
-    private AsyncIterable<KeyValue> getRange(@Nonnull ReadTransaction tr) {
+    AsyncIterable<KeyValue> getRange(@Nonnull ReadTransaction tr) {
         return tr.getRange(startKey, endKey);
     }
 
@@ -220,6 +217,49 @@ public class DatabaseClientLogEvents {
         more = limitReached;    // Otherwise range was processed, possibly in multiple transactions.
     }
 
+    // Record events read from this range in a single transaction and given to the callback.
+    void updateForBatch(@Nonnull List<FDBClientLogEvents.Event> batch, @Nullable byte[] lastProcessedKey) {
+        for (FDBClientLogEvents.Event event : batch) {
+            updateForEvent(event.getStartTimestamp());
+        }
+        eventCount += batch.size();
+        updateForTransaction(lastProcessedKey);
+    }
+
+    // Accumulate the results of processing a range that follows all those processed so far.
+    void updateForRange(@Nonnull DatabaseClientLogEvents range) {
+        if (range.earliestTimestamp != null) {
+            if (earliestTimestamp == null) {
+                earliestTimestamp = range.earliestTimestamp;
+            }
+            latestTimestamp = range.latestTimestamp;
+        }
+        eventCount += range.eventCount;
+        startKey = range.startKey;
+        more = range.more;
+    }
+
+    @Nonnull
+    static byte[] startKeyForVersion(@Nullable Long startVersion) {
+        return startVersion == null ? FDBClientLogEvents.EVENT_KEY_PREFIX : FDBClientLogEvents.eventKeyForVersion(startVersion);
+    }
+
+    @Nonnull
+    static byte[] endKeyForVersion(@Nullable Long endVersion) {
+        return endVersion == null ? ByteArrayUtil.strinc(FDBClientLogEvents.EVENT_KEY_PREFIX) : FDBClientLogEvents.eventKeyForVersion(endVersion);
+    }
+
+    @Nonnull
+    static Function<ReadTransaction, CompletableFuture<Long[]>> versionsBetweenTimestamps(@Nullable Instant startTimestamp, @Nullable Instant endTimestamp) {
+        return tr -> {
+            final CompletableFuture<Long> startVersion = startTimestamp == null ? CompletableFuture.completedFuture(null) :
+                                                         VersionFromTimestamp.lastVersionBefore(tr, startTimestamp);
+            final CompletableFuture<Long> endVersion = endTimestamp == null ? CompletableFuture.completedFuture(null) :
+                                                       VersionFromTimestamp.nextVersionAfter(tr, endTimestamp);
+            return startVersion.thenCombine(endVersion, (s, e) -> new Long[] { s, e });
+        };
+    }
+
     @Nonnull
     public static CompletableFuture<DatabaseClientLogEvents> forEachEvent(@Nonnull Database database, @Nonnull Executor executor,
                                                                           @Nonnull EventConsumer callback,
@@ -267,13 +307,7 @@ public class DatabaseClientLogEvents {
                                                                                            @Nonnull EventConsumer callback,
                                                                                            @Nullable Instant startTimestamp, @Nullable Instant endTimestamp,
                                                                                            int eventCountLimit, long timeLimitMillis) {
-        return forEachEvent(database, executor, callback, tr -> {
-            final CompletableFuture<Long> startVersion = startTimestamp == null ? CompletableFuture.completedFuture(null) :
-                                                         VersionFromTimestamp.lastVersionBefore(tr, startTimestamp);
-            final CompletableFuture<Long> endVersion = endTimestamp == null ? CompletableFuture.completedFuture(null) :
-                                                       VersionFromTimestamp.nextVersionAfter(tr, endTimestamp);
-            return startVersion.thenCombine(endVersion, (s, e) -> new Long[] { s, e });
-        },
+        return forEachEvent(database, executor, callback, versionsBetweenTimestamps(startTimestamp, endTimestamp),
                 eventCountLimit, timeLimitMillis);
     }
 
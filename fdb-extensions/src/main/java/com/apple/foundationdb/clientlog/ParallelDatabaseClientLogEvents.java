@@ -0,0 +1,545 @@
+/*
+ * ParallelDatabaseClientLogEvents.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.clientlog;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDBException;
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.LocalityUtil;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.TransactionOptions;
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.async.CloseableAsyncIterator;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Parse client latency events from system keyspace, reading several parts of the keyspace at once.
+ *
+ * The version range to be read is split into sub-ranges: evenly by version and also at shard boundaries, so that different
+ * sub-ranges tend to be served by different storage servers. Up to a given number of sub-ranges are read and decoded concurrently,
+ * each in its own sequence of transactions.
+ *
+ * Each transaction reading a sub-range stops after a bounded number of events or time, well before it would become too old,
+ * and the next one resumes where it stopped. The events read by a transaction are only given to the callback once they have all been
+ * read, so that a transaction that fails and is retried does not give any event twice.
+ *
+ * Events can then be given to the callback in one of two ways.
+ * <ul>
+ * <li>In version order, as from {@link DatabaseClientLogEvents}. Each sub-range being read ahead of the one whose events are being
+ * given to the callback holds its events in a reorder buffer of bounded size, and stops reading while that is full.
+ * The reading transaction is closed before waiting for room in the buffer.
+ * The callback is invoked for one event at a time, with a transaction of its own.</li>
+ * <li>Unordered, with {@link #UNORDERED} for the buffer size. Each sub-range gives each batch of events to the callback as soon as
+ * it has been read, with the transaction used to read it. The callback must then accept events concurrently, as
+ * {@link DatabaseClientLogEventCounter} does.</li>
+ * </ul>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class ParallelDatabaseClientLogEvents {
+    /**
+     * Reorder buffer size meaning to give events to the callback in whatever order they are read.
+     */
+    public static final int UNORDERED = 0;
+
+    // Events are encoded by transaction and chunks of a transaction have the same version, so sub-ranges are split at the start of a version.
+    private static final int VERSION_KEY_LENGTH = FDBClientLogEvents.EVENT_KEY_VERSION_END_INDEX - 2;
+    // Transactions used to deliver buffered events are replaced well before they would become too old.
+    // Transactions reading a sub-range stop after this many events or this long, so that they do not become too old either.
+    private static final int TRANSACTION_EVENT_LIMIT = 1_000;
+    private static final long TRANSACTION_TIME_MILLIS = 1_000;
+    private static final long DELIVERY_TRANSACTION_MILLIS = 2_000;
+
+    @Nonnull
+    private final Database database;
+    @Nonnull
+    private final Executor executor;
+    @Nonnull
+    private final DatabaseClientLogEvents.EventConsumer callback;
+    private final int parallelism;
+    private final int reorderBufferSize;
+    @Nullable
+    private Transaction deliveryTransaction;
+    private long deliveryTransactionStartMillis;
+
+    private ParallelDatabaseClientLogEvents(@Nonnull Database database, @Nonnull Executor executor,
+                                            @Nonnull DatabaseClientLogEvents.EventConsumer callback,
+                                            int parallelism, int reorderBufferSize) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        if (reorderBufferSize < 0) {
+            throw new IllegalArgumentException("reorder buffer size must not be negative");
+        }
+        this.database = database;
+        this.executor = executor;
+        this.callback = callback;
+        this.parallelism = parallelism;
+        this.reorderBufferSize = reorderBufferSize;
+    }
+
+    /**
+     * Apply a callback to client latency events recorded in the given database between two commit versions, reading in parallel.
+     * @param database the database to open and read events from
+     * @param executor executor to use when running transactions
+     * @param callback the callback to apply
+     * @param startVersion the starting commit version
+     * @param endVersion the exclusive end version
+     * @param parallelism the maximum number of sub-ranges to read at once
+     * @param reorderBufferSize the maximum number of events to buffer for each sub-range read ahead of the callback or {@link #UNORDERED}
+     * @return a future which completes when the version range has been processed by the callback with the timestamps and number of events processed
+     */
+    @Nonnull
+    public static CompletableFuture<DatabaseClientLogEvents> forEachEventBetweenVersions(@Nonnull Database database, @Nonnull Executor executor,
+                                                                                         @Nonnull DatabaseClientLogEvents.EventConsumer callback,
+                                                                                         @Nullable Long startVersion, @Nullable Long endVersion,
+                                                                                         int parallelism, int reorderBufferSize) {
+        return new ParallelDatabaseClientLogEvents(database, executor, callback, parallelism, reorderBufferSize)
+                .run(tignore -> CompletableFuture.completedFuture(new Long[] { startVersion, endVersion }));
+    }
+
+    /**
+     * Apply a callback to client latency events recorded in the given database between two wall-clock times, reading in parallel.
+     * @param database the database to open and read events from
+     * @param executor executor to use when running transactions
+     * @param callback the callback to apply
+     * @param startTimestamp the starting wall-clock time
+     * @param endTimestamp the exclusive end time
+     * @param parallelism the maximum number of sub-ranges to read at once
+     * @param reorderBufferSize the maximum number of events to buffer for each sub-range read ahead of the callback or {@link #UNORDERED}
+     * @return a future which completes when the version range has been processed by the callback with the timestamps and number of events processed
+     */
+    @Nonnull
+    public static CompletableFuture<DatabaseClientLogEvents> forEachEventBetweenTimestamps(@Nonnull Database database, @Nonnull Executor executor,
+                                                                                           @Nonnull DatabaseClientLogEvents.EventConsumer callback,
+                                                                                           @Nullable Instant startTimestamp, @Nullable Instant endTimestamp,
+                                                                                           int parallelism, int reorderBufferSize) {
+        return new ParallelDatabaseClientLogEvents(database, executor, callback, parallelism, reorderBufferSize)
+                .run(DatabaseClientLogEvents.versionsBetweenTimestamps(startTimestamp, endTimestamp));
+    }
+
+    @Nonnull
+    private Transaction newTransaction() {
+        final Transaction tr = database.createTransaction(executor);
+        final TransactionOptions transactionOptions = tr.options();
+        transactionOptions.setReadSystemKeys();
+        transactionOptions.setReadLockAware();
+        return tr;
+    }
+
+    @Nonnull
+    private CompletableFuture<DatabaseClientLogEvents> run(@Nonnull Function<ReadTransaction, CompletableFuture<Long[]>> versionRangeProducer) {
+        final Transaction tr = newTransaction();
+        return versionRangeProducer.apply(tr)
+                .thenCompose(versions -> splitRange(tr, DatabaseClientLogEvents.startKeyForVersion(versions[0]), DatabaseClientLogEvents.endKeyForVersion(versions[1])))
+                .whenComplete((b, t) -> tr.close())
+                .thenCompose(this::readRanges);
+    }
+
+    /**
+     * Get the boundaries of sub-ranges into which to split the given range.
+     * @param tr an open transaction
+     * @param startKey the start of the range
+     * @param endKey the exclusive end of the range
+     * @return a future that completes with a list of increasing keys, beginning with {@code startKey} and ending with {@code endKey}
+     */
+    @Nonnull
+    private CompletableFuture<List<byte[]>> splitRange(@Nonnull Transaction tr, @Nonnull byte[] startKey, @Nonnull byte[] endKey) {
+        final CompletableFuture<List<KeyValue>> first = tr.getRange(startKey, endKey, 1, false).asList();
+        final CompletableFuture<List<KeyValue>> last = tr.getRange(startKey, endKey, 1, true).asList();
+        final CloseableAsyncIterator<byte[]> boundaryKeys = LocalityUtil.getBoundaryKeys(tr, startKey, endKey);
+        final CompletableFuture<List<byte[]>> shardKeys = AsyncUtil.collectRemaining(boundaryKeys).whenComplete((b, t) -> boundaryKeys.close());
+        return CompletableFuture.allOf(first, last, shardKeys).thenApply(vignore -> {
+            final SortedSet<byte[]> splits = new TreeSet<>(ByteArrayUtil::compareUnsigned);
+            if (!first.join().isEmpty() && !last.join().isEmpty()) {
+                final long firstVersion = eventVersion(first.join().get(0).getKey());
+                final long lastVersion = eventVersion(last.join().get(0).getKey());
+                for (int i = 1; i < parallelism; i++) {
+                    splits.add(FDBClientLogEvents.eventKeyForVersion(firstVersion + (lastVersion - firstVersion) * i / parallelism));
+                }
+            }
+            for (byte[] shardKey : shardKeys.join()) {
+                if (shardKey.length >= VERSION_KEY_LENGTH && ByteArrayUtil.startsWith(shardKey, FDBClientLogEvents.EVENT_KEY_PREFIX)) {
+                    splits.add(Arrays.copyOf(shardKey, VERSION_KEY_LENGTH));
+                }
+            }
+            final List<byte[]> boundaries = new ArrayList<>(splits.size() + 2);
+            boundaries.add(startKey);
+            for (byte[] split : splits) {
+                if (ByteArrayUtil.compareUnsigned(split, startKey) > 0 && ByteArrayUtil.compareUnsigned(split, endKey) < 0) {
+                    boundaries.add(split);
+                }
+            }
+            boundaries.add(endKey);
+            return boundaries;
+        });
+    }
+
+    private static long eventVersion(@Nonnull byte[] key) {
+        return ByteBuffer.wrap(key, FDBClientLogEvents.EVENT_KEY_VERSION_START_INDEX, 8).getLong();
+    }
+
+    @Nonnull
+    private CompletableFuture<DatabaseClientLogEvents> readRanges(@Nonnull List<byte[]> boundaries) {
+        final int numberOfRanges = boundaries.size() - 1;
+        final DatabaseClientLogEvents[] rangeEvents = new DatabaseClientLogEvents[numberOfRanges];
+        final List<ReorderBuffer> buffers = new ArrayList<>(reorderBufferSize == UNORDERED ? 0 : numberOfRanges);
+        for (int i = 0; i < numberOfRanges; i++) {
+            rangeEvents[i] = new DatabaseClientLogEvents(boundaries.get(i), boundaries.get(i + 1));
+            if (reorderBufferSize != UNORDERED) {
+                buffers.add(new ReorderBuffer(reorderBufferSize));
+            }
+        }
+        // Each reader takes the next sub-range in order, so that the one whose events are being delivered is always being read.
+        final AtomicInteger nextRange = new AtomicInteger();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(parallelism + 1);
+        for (int i = 0; i < Math.min(parallelism, numberOfRanges); i++) {
+            futures.add(AsyncUtil.whileTrue(() -> {
+                final int range = nextRange.getAndIncrement();
+                if (range >= numberOfRanges) {
+                    return AsyncUtil.READY_FALSE;
+                }
+                return readRange(rangeEvents[range], buffers.isEmpty() ? null : buffers.get(range)).thenApply(vignore -> true);
+            }, executor));
+        }
+        if (!buffers.isEmpty()) {
+            futures.add(deliver(buffers));
+        }
+        return AsyncUtil.whenAll(futures).thenApply(vignore -> {
+            final DatabaseClientLogEvents result = new DatabaseClientLogEvents(boundaries.get(0), boundaries.get(numberOfRanges));
+            for (DatabaseClientLogEvents range : rangeEvents) {
+                result.updateForRange(range);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Read a sub-range in a sequence of bounded transactions, giving each batch of events to the callback or buffer once it has been read.
+     * @param range the sub-range, which is updated as events are given to the callback or buffer
+     * @param buffer the reorder buffer for the sub-range or {@code null} if unordered
+     * @return a future that completes when the whole sub-range has been read
+     */
+    @Nonnull
+    private CompletableFuture<Void> readRange(@Nonnull DatabaseClientLogEvents range, @Nullable ReorderBuffer buffer) {
+        final CompletableFuture<Void> future = AsyncUtil.whileTrue(() -> {
+            final Transaction tr = newTransaction();
+            final EventBatch batch = new EventBatch(TRANSACTION_EVENT_LIMIT, TRANSACTION_TIME_MILLIS);
+            return batch.read(tr, range).whenComplete((read, t) -> {
+                // Only keep the transaction open to give the batch to an unordered callback.
+                if (t != null || !read || buffer != null) {
+                    tr.close();
+                }
+            }).thenCompose(read -> {
+                if (!read) {
+                    return AsyncUtil.READY_TRUE;    // Read the same events again with a new transaction.
+                }
+                final CompletableFuture<Void> given = buffer == null ?
+                                                      batch.forEach(event -> callback.accept(tr, event), executor).whenComplete((v, t) -> tr.close()) :
+                                                      batch.forEach(buffer::offer, executor);
+                return given.thenApply(vignore -> {
+                    range.updateForBatch(batch.getEvents(), batch.getLastProcessedKey());
+                    return batch.isLimitReached();
+                });
+            });
+        }, executor);
+        return buffer == null ? future : future.whenComplete((v, t) -> buffer.finish(t));
+    }
+
+    /**
+     * Give events from the reorder buffers to the callback, in order.
+     * @param buffers the buffers for each sub-range
+     * @return a future that completes when all events have been delivered
+     */
+    @Nonnull
+    private CompletableFuture<Void> deliver(@Nonnull List<ReorderBuffer> buffers) {
+        final AtomicInteger position = new AtomicInteger();
+        return AsyncUtil.whileTrue(() -> {
+            if (position.get() >= buffers.size()) {
+                return AsyncUtil.READY_FALSE;
+            }
+            return buffers.get(position.get()).poll().thenCompose(event -> {
+                if (event == null) {
+                    position.incrementAndGet();
+                    return AsyncUtil.READY_TRUE;
+                }
+                return callback.accept(getDeliveryTransaction(), event).thenApply(vignore -> true);
+            });
+        }, executor).whenComplete((v, t) -> {
+            closeDeliveryTransaction();
+            if (t != null) {
+                // Stop readers that would otherwise wait forever for room in their buffers.
+                final CancellationException cancelled = new CancellationException("event delivery failed");
+                cancelled.initCause(t);
+                buffers.forEach(buffer -> buffer.abandon(cancelled));
+            }
+        });
+    }
+
+    @Nonnull
+    private Transaction getDeliveryTransaction() {
+        final long now = System.currentTimeMillis();
+        if (deliveryTransaction != null && now - deliveryTransactionStartMillis >= DELIVERY_TRANSACTION_MILLIS) {
+            closeDeliveryTransaction();
+        }
+        if (deliveryTransaction == null) {
+            deliveryTransaction = newTransaction();
+            deliveryTransactionStartMillis = now;
+        }
+        return deliveryTransaction;
+    }
+
+    private void closeDeliveryTransaction() {
+        if (deliveryTransaction != null) {
+            deliveryTransaction.close();
+            deliveryTransaction = null;
+        }
+    }
+
+    /**
+     * Events read from a sub-range in a single transaction.
+     */
+    static class EventBatch implements FDBClientLogEvents.EventConsumer {
+        private final int eventCountLimit;
+        private final long timeLimitMillis;
+        private final long startTimeMillis = System.currentTimeMillis();
+        @Nonnull
+        private final List<FDBClientLogEvents.Event> events = new ArrayList<>();
+        @Nullable
+        private byte[] lastProcessedKey;
+        private boolean limitReached;
+
+        EventBatch(int eventCountLimit, long timeLimitMillis) {
+            this.eventCountLimit = eventCountLimit;
+            this.timeLimitMillis = timeLimitMillis;
+        }
+
+        /**
+         * Read events from the start of the given range until it is exhausted or a limit is reached.
+         * @param tr the transaction to read with
+         * @param range the range to read
+         * @return a future that completes with {@code true} if the events were read or {@code false} if the transaction failed
+         * in a way that means it should be retried
+         */
+        @Nonnull
+        CompletableFuture<Boolean> read(@Nonnull ReadTransaction tr, @Nonnull DatabaseClientLogEvents range) {
+            return FDBClientLogEvents.forEachEvent(range.getRange(tr), this).handle((key, t) -> {
+                if (t == null) {
+                    lastProcessedKey = key;
+                    return true;
+                }
+                final Throwable cause = t instanceof CompletionException ? t.getCause() : t;
+                if (cause instanceof FDBException && ((FDBException)cause).isRetryable()) {
+                    events.clear();
+                    return false;
+                }
+                throw t instanceof RuntimeException ? (RuntimeException)t : new CompletionException(t);
+            });
+        }
+
+        @Override
+        public CompletableFuture<Void> accept(FDBClientLogEvents.Event event) {
+            events.add(event);
+            return AsyncUtil.DONE;
+        }
+
+        @Override
+        public boolean more() {
+            if (events.size() >= eventCountLimit || System.currentTimeMillis() - startTimeMillis >= timeLimitMillis) {
+                limitReached = true;
+            }
+            return !limitReached;
+        }
+
+        /**
+         * Give each event read to a consumer in turn.
+         * @param consumer the consumer of events
+         * @param executor executor to use when waiting for the consumer
+         * @return a future that completes when the consumer has accepted every event
+         */
+        @Nonnull
+        CompletableFuture<Void> forEach(@Nonnull Function<FDBClientLogEvents.Event, CompletableFuture<Void>> consumer, @Nonnull Executor executor) {
+            final Iterator<FDBClientLogEvents.Event> iterator = events.iterator();
+            return AsyncUtil.whileTrue(() -> iterator.hasNext() ? consumer.apply(iterator.next()).thenApply(vignore -> true) : AsyncUtil.READY_FALSE,
+                    executor);
+        }
+
+        @Nonnull
+        List<FDBClientLogEvents.Event> getEvents() {
+            return events;
+        }
+
+        @Nullable
+        byte[] getLastProcessedKey() {
+            return lastProcessedKey;
+        }
+
+        /**
+         * Get whether reading stopped because of a limit, so that there may be more events in the range.
+         * @return {@code true} if a limit was reached
+         */
+        boolean isLimitReached() {
+            return limitReached;
+        }
+    }
+
+    /**
+     * Events read from one sub-range, waiting for those from earlier sub-ranges to be delivered.
+     */
+    static class ReorderBuffer {
+        private final int capacity;
+        @Nonnull
+        private final Queue<FDBClientLogEvents.Event> events;
+        @Nullable
+        private CompletableFuture<Void> spaceAvailable;
+        @Nullable
+        private CompletableFuture<Void> eventAvailable;
+        private boolean finished;
+        @Nullable
+        private Throwable error;
+
+        ReorderBuffer(int capacity) {
+            this.capacity = capacity;
+            this.events = new ArrayDeque<>(capacity);
+        }
+
+        /**
+         * Add an event read from the sub-range.
+         * @param event the next event in the sub-range
+         * @return a future that completes when there is room for another event
+         */
+        @Nonnull
+        CompletableFuture<Void> offer(@Nonnull FDBClientLogEvents.Event event) {
+            final CompletableFuture<Void> waitingForEvent;
+            final CompletableFuture<Void> result;
+            synchronized (this) {
+                if (error != null) {
+                    return failed(error);
+                }
+                events.add(event);
+                waitingForEvent = eventAvailable;
+                eventAvailable = null;
+                if (events.size() >= capacity) {
+                    spaceAvailable = new CompletableFuture<>();
+                    result = spaceAvailable;
+                } else {
+                    result = AsyncUtil.DONE;
+                }
+            }
+            if (waitingForEvent != null) {
+                waitingForEvent.complete(null);
+            }
+            return result;
+        }
+
+        /**
+         * Note that the sub-range has been read.
+         * @param t any error reading the sub-range
+         */
+        void finish(@Nullable Throwable t) {
+            final CompletableFuture<Void> waitingForEvent;
+            synchronized (this) {
+                finished = true;
+                if (t != null && error == null) {
+                    error = t;
+                }
+                waitingForEvent = eventAvailable;
+                eventAvailable = null;
+            }
+            if (waitingForEvent != null) {
+                waitingForEvent.complete(null);
+            }
+        }
+
+        /**
+         * Discard any buffered events and fail any further attempt to add one.
+         * @param t the reason events are no longer wanted
+         */
+        void abandon(@Nonnull Throwable t) {
+            final CompletableFuture<Void> waitingForSpace;
+            synchronized (this) {
+                error = t;
+                events.clear();
+                waitingForSpace = spaceAvailable;
+                spaceAvailable = null;
+            }
+            if (waitingForSpace != null) {
+                waitingForSpace.completeExceptionally(t);
+            }
+        }
+
+        /**
+         * Remove the next event.
+         * @return a future that completes with the next event or {@code null} once the whole sub-range has been delivered
+         */
+        @Nonnull
+        CompletableFuture<FDBClientLogEvents.Event> poll() {
+            final FDBClientLogEvents.Event event;
+            final CompletableFuture<Void> waitingForSpace;
+            synchronized (this) {
+                event = events.poll();
+                if (event == null) {
+                    if (error != null) {
+                        return failed(error);
+                    }
+                    if (finished) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    eventAvailable = new CompletableFuture<>();
+                    return eventAvailable.thenCompose(vignore -> poll());
+                }
+                waitingForSpace = spaceAvailable;
+                spaceAvailable = null;
+            }
+            if (waitingForSpace != null) {
+                waitingForSpace.complete(null);
+            }
+            return CompletableFuture.completedFuture(event);
+        }
+
+        @Nonnull
+        private static <T> CompletableFuture<T> failed(@Nonnull Throwable t) {
+            final CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(t);
+            return future;
+        }
+    }
+}
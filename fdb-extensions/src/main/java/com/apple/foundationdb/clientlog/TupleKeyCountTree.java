@@ -39,6 +39,13 @@ import java.util.TreeMap;
 
 /**
  * A tree of occurrence counts tuple-encoded keys.
+ *
+ * By default, every distinct prefix gets its own node, so the size of the tree grows with the number of distinct keys counted.
+ * A tree created with a maximum number of children instead keeps only the heaviest children of each node, using the
+ * Space-Saving algorithm: when a new child would exceed the maximum, it replaces the child with the smallest count,
+ * taking over that count as its possible {@linkplain #getError error}. A key that accounts for more than a
+ * {@code 1 / maxChildren} fraction of its parent's count is then kept, and the memory used by the tree is
+ * bounded by the maximum number of children raised to the depth of the keys. The subtree of a replaced child is discarded.
  */
 @API(API.Status.EXPERIMENTAL)
 @SpotBugsSuppressWarnings({"EI_EXPOSE_REP", "EI_EXPOSE_REP2"})
@@ -49,6 +56,10 @@ public class TupleKeyCountTree {
     private final Object object;
 
     private int count;
+    private int error;
+    private final int maxChildren;
+    private boolean prefixChild;
+    private int prefixChildCount;
     @Nullable
     private final TupleKeyCountTree parent;
     @Nonnull
@@ -66,14 +77,31 @@ public class TupleKeyCountTree {
     private static final Comparator<byte[]> BYTES_COMPARATOR = ByteArrayUtil::compareUnsigned;
 
     public TupleKeyCountTree() {
-        this(null, new byte[0], null);
+        this(0);
+    }
+
+    /**
+     * Create the root of a tree that keeps a bounded number of children at each node.
+     * @param maxChildren the maximum number of children to keep at each node or {@code 0} to keep all of them
+     */
+    public TupleKeyCountTree(int maxChildren) {
+        this(null, new byte[0], null, maxChildren);
     }
 
     public TupleKeyCountTree(@Nullable TupleKeyCountTree parent, @Nonnull byte[] bytes, @Nullable Object object) {
+        this(parent, bytes, object, parent == null ? 0 : parent.maxChildren);
+    }
+
+    protected TupleKeyCountTree(@Nullable TupleKeyCountTree parent, @Nonnull byte[] bytes, @Nullable Object object, int maxChildren) {
+        if (maxChildren < 0) {
+            throw new IllegalArgumentException("maximum number of children must not be negative");
+        }
         this.bytes = bytes;
         this.object = object;
 
         this.count = 0;
+        this.error = 0;
+        this.maxChildren = maxChildren;
         this.parent = parent;
         this.children = new TreeMap<>(BYTES_COMPARATOR);
     }
@@ -139,21 +167,50 @@ public class TupleKeyCountTree {
             final Object childObject = items.get(itemPosition);
             final int byteSize = childObject == UNPARSEABLE ? bytes.length - bytePosition : Tuple.from(childObject).getPackedSize();
             final byte[] childBytes = Arrays.copyOfRange(bytes, bytePosition, bytePosition + byteSize);
-            TupleKeyCountTree child = children.computeIfAbsent(childBytes, b -> newChild(b, childObject));
+            TupleKeyCountTree child = children.get(childBytes);
+            if (child == null) {
+                child = newChild(childBytes, childObject);
+                if (maxChildren > 0 && children.size() - prefixChildCount >= maxChildren) {
+                    final TupleKeyCountTree evicted = leastCountedChild();
+                    children.remove(evicted.bytes);
+                    child.count = evicted.count;
+                    child.error = evicted.count;
+                }
+                children.put(childBytes, child);
+            }
             child.addInternal(items, itemPosition + 1, bytes, bytePosition + byteSize);
         }
     }
 
+    // The number of children is bounded, so a linear search is cheaper than keeping them ordered by count as well.
+    @Nonnull
+    private TupleKeyCountTree leastCountedChild() {
+        TupleKeyCountTree least = null;
+        for (TupleKeyCountTree child : children.values()) {
+            if (!child.prefixChild && (least == null || child.count < least.count)) {
+                least = child;
+            }
+        }
+        return least;
+    }
+
     /**
      * Add a non-tuple object to the root of the tree.
+     *
+     * Prefix children do not count toward the maximum number of children and are never replaced.
      * @param prefix an object for the top level child of the tree
      * @return a subtree for the given object
      */
     @Nonnull
-    public TupleKeyCountTree addPrefixChild(@Nonnull Object prefix) {
+    public synchronized TupleKeyCountTree addPrefixChild(@Nonnull Object prefix) {
         count++;
         final byte[] prefixBytes = Tuple.from(prefix).pack();
-        return children.computeIfAbsent(prefixBytes, b -> newPrefixChild(prefixBytes, prefix));
+        return children.computeIfAbsent(prefixBytes, b -> {
+            final TupleKeyCountTree child = newPrefixChild(prefixBytes, prefix);
+            child.prefixChild = true;
+            prefixChildCount++;
+            return child;
+        });
     }
 
     @Nonnull
@@ -170,6 +227,36 @@ public class TupleKeyCountTree {
         return count;
     }
 
+    /**
+     * Get the maximum amount by which {@link #getCount} might overstate the occurrences of this node's key.
+     *
+     * This is nonzero only in a tree with a maximum number of children, for a node that replaced a sibling. The true count
+     * is at least {@code getCount() - getError()}.
+     * @return the error bound of the count
+     */
+    public int getError() {
+        return error;
+    }
+
+    /**
+     * Get the number of occurrences counted by this node that are not attributed with certainty to one of its children.
+     *
+     * This includes keys that end at this node and, in a tree with a maximum number of children, those of children that
+     * were replaced by others.
+     * @return the count of the other occurrences
+     */
+    public synchronized int getOtherCount() {
+        int other = count;
+        for (TupleKeyCountTree child : children.values()) {
+            other -= child.count - child.error;
+        }
+        return other;
+    }
+
+    public int getMaxChildren() {
+        return maxChildren;
+    }
+
     @Nullable
     public TupleKeyCountTree getParent() {
         return parent;
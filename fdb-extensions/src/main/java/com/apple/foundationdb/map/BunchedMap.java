@@ -40,11 +40,14 @@ import com.apple.foundationdb.util.LogMessageKeys;
 import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -665,6 +668,143 @@ public class BunchedMap<K,V> {
         })));
     }
 
+    /**
+     * Inserts, updates, and removes many keys at once. This has the same effect as calling
+     * {@link #put(TransactionContext, Subspace, Object, Object) put} for each entry of {@code puts} and
+     * {@link #remove(TransactionContext, Subspace, Object) remove} for each element of {@code removes},
+     * but each bunch that any of the keys falls into is read and re-written only once, no matter how many
+     * of the keys it contains. The keys within each affected bunch (together with any new keys that fall between
+     * it and the next bunch) are then re-bunched. This makes it much cheaper than individual calls when there are
+     * many keys that are close to one another, for example, when a transaction builds up a batch of updates to the
+     * same map.
+     *
+     * <p>
+     * Because a whole bunch is re-written at once, this adds conflict ranges over the whole of each re-written
+     * bunch rather than just the keys being changed, so it may conflict more with concurrent updates to nearby keys.
+     * If a key is in both {@code puts} and {@code removes}, the put takes precedence.
+     * </p>
+     *
+     * <p>
+     * Note that this method is <b>not</b> thread-safe if multiple threads call it with the same
+     * transaction and subspace. (Multiple calls with different transactions or subspaces are safe.)
+     * </p>
+     *
+     * @param tcx database or transaction to use when performing the updates
+     * @param subspace subspace within which the map's data are located
+     * @param puts map entries to insert or update
+     * @param removes keys to remove from the map
+     * @return a future that will complete when all of the updates have been made
+     */
+    @Nonnull
+    public CompletableFuture<Void> updateAll(@Nonnull TransactionContext tcx, @Nonnull Subspace subspace,
+                                             @Nonnull Map<K, V> puts, @Nonnull Collection<K> removes) {
+        if (puts.isEmpty() && removes.isEmpty()) {
+            return AsyncUtil.DONE;
+        }
+        return tcx.runAsync(tr -> {
+            final byte[] subspaceKey = subspace.pack();
+            final NavigableMap<K, Optional<V>> updates = new TreeMap<>(keyComparator);
+            removes.forEach(key -> updates.put(key, Optional.empty()));
+            puts.forEach((key, value) -> updates.put(key, Optional.of(value)));
+            return AsyncUtil.whileTrue(() -> {
+                final byte[] keyBytes = ByteArrayUtil.join(subspaceKey, serializer.serializeKey(updates.firstKey()));
+                // As with put, read the bunch containing the first remaining key and the signpost
+                // of the bunch after it. Every remaining key before that next signpost belongs in the first bunch.
+                return instrumentRangeRead(tr.snapshot().getRange(
+                        KeySelector.lastLessOrEqual(keyBytes),
+                        KeySelector.firstGreaterThan(keyBytes).add(1),
+                        ReadTransaction.ROW_LIMIT_UNLIMITED, false, StreamingMode.WANT_ALL
+                ).asList()).thenApply(keyValues -> {
+                    KeyValue kvBefore = null;
+                    KeyValue kvAfter = null;
+                    for (KeyValue next : keyValues) {
+                        if (ByteArrayUtil.startsWith(next.getKey(), subspaceKey)) {
+                            if (ByteArrayUtil.compareUnsigned(keyBytes, next.getKey()) < 0) {
+                                kvAfter = next;
+                                break;
+                            }
+                            kvBefore = next;
+                        }
+                    }
+                    final NavigableMap<K, Optional<V>> bunchUpdates = kvAfter == null ?
+                                                                      updates :
+                                                                      updates.headMap(serializer.deserializeKey(kvAfter.getKey(), subspaceKey.length), false);
+                    rewriteBunch(tr, subspaceKey, keyBytes, kvBefore, kvAfter, bunchUpdates);
+                    bunchUpdates.clear(); // also removes them from updates
+                    return !updates.isEmpty();
+                });
+            }, tr.getExecutor());
+        });
+    }
+
+    // Apply updates to the bunch in kvBefore (if any), all of which are for keys less than the key of kvAfter (if any),
+    // and re-bunch the result.
+    private void rewriteBunch(@Nonnull Transaction tr, @Nonnull byte[] subspaceKey, @Nonnull byte[] firstKeyBytes,
+                              @Nullable KeyValue kvBefore, @Nullable KeyValue kvAfter,
+                              @Nonnull NavigableMap<K, Optional<V>> bunchUpdates) {
+        final NavigableMap<K, V> entries = new TreeMap<>(keyComparator);
+        if (kvBefore != null) {
+            K beforeKey = serializer.deserializeKey(kvBefore.getKey(), subspaceKey.length);
+            for (Map.Entry<K, V> entry : serializer.deserializeEntries(beforeKey, kvBefore.getValue())) {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        boolean changed = false;
+        for (Map.Entry<K, Optional<V>> update : bunchUpdates.entrySet()) {
+            if (update.getValue().isPresent()) {
+                V oldValue = entries.put(update.getKey(), update.getValue().get());
+                changed |= oldValue == null || !oldValue.equals(update.getValue().get());
+            } else {
+                changed |= entries.remove(update.getKey()) != null;
+            }
+        }
+
+        // The region being re-written runs from the start of this bunch (or the first new key) up to the
+        // next bunch (or just past the last key if there is none). The new values depend on everything
+        // in it, including the signpost that ends it, and concurrent transactions might claim parts of
+        // it for other bunches, so add conflict ranges over the whole region. As in writeEntryListWithoutChecking,
+        // the read conflict range must be added before writing.
+        final byte[] regionBegin = kvBefore == null ? firstKeyBytes : kvBefore.getKey();
+        final byte[] regionEnd;
+        if (kvAfter != null) {
+            regionEnd = kvAfter.getKey();
+            tr.addReadConflictKey(kvAfter.getKey());
+        } else {
+            K lastKey = bunchUpdates.lastKey();
+            if (!entries.isEmpty() && keyComparator.compare(entries.lastKey(), lastKey) > 0) {
+                lastKey = entries.lastKey();
+            }
+            regionEnd = ByteArrayUtil.join(subspaceKey, serializer.serializeKey(lastKey), ZERO_ARRAY);
+        }
+        tr.addReadConflictRange(regionBegin, regionEnd);
+        if (!changed) {
+            return;
+        }
+        tr.addWriteConflictRange(regionBegin, regionEnd);
+
+        final List<Map.Entry<K, V>> entryList = new ArrayList<>(entries.size());
+        entries.forEach((key, value) -> entryList.add(new AbstractMap.SimpleImmutableEntry<>(key, value)));
+        if (kvBefore != null && (entryList.isEmpty() ||
+                                 !Arrays.equals(kvBefore.getKey(), ByteArrayUtil.join(subspaceKey, serializer.serializeKey(entryList.get(0).getKey()))))) {
+            tr.clear(kvBefore.getKey());
+            instrumentDelete(kvBefore.getKey(), kvBefore.getValue());
+        }
+        int start = 0;
+        while (start < entryList.size()) {
+            List<Map.Entry<K, V>> bunch = entryList.subList(start, Math.min(start + bunchSize, entryList.size()));
+            byte[] serializedBytes = serializer.serializeEntries(bunch);
+            while (serializedBytes.length > MAX_VALUE_SIZE && bunch.size() > 1) {
+                bunch = entryList.subList(start, start + bunch.size() / 2);
+                serializedBytes = serializer.serializeEntries(bunch);
+            }
+            final byte[] bunchKey = ByteArrayUtil.join(subspaceKey, serializer.serializeKey(bunch.get(0).getKey()));
+            final byte[] oldValue = kvBefore != null && Arrays.equals(bunchKey, kvBefore.getKey()) ? kvBefore.getValue() : null;
+            tr.set(bunchKey, serializedBytes);
+            instrumentWrite(bunchKey, serializedBytes, oldValue);
+            start += bunch.size();
+        }
+    }
+
     /**
      * Verify the integrity of the bunched map. This will read through all of the database keys associated
      * with the map and verify that all of the keys are in order. If it encounters an error, it will
@@ -171,6 +171,52 @@ public class RankedSetTest extends FDBTestBase {
         });
     }
 
+    @Test
+    public void batchUpdates() {
+        batchOperations(false);
+    }
+
+    @Test
+    public void batchUpdatesWithDuplicates() {
+        batchOperations(true);
+    }
+
+    private void batchOperations(boolean countDuplicates) {
+        config = RankedSet.newConfigBuilder().setCountDuplicates(countDuplicates).setNLevels(4).build();
+        final RankedSet batched = new RankedSet(rsSubspace.subspace(Tuple.from("batched")), ForkJoinPool.commonPool(), config);
+        final RankedSet single = new RankedSet(rsSubspace.subspace(Tuple.from("single")), ForkJoinPool.commonPool(), config);
+        batched.init(db).join();
+        single.init(db).join();
+        db.run(tr -> {
+            for (int i = 0; i < 400; i += 2) {
+                batched.add(tr, Tuple.from(i).pack()).join();
+                single.add(tr, Tuple.from(i).pack()).join();
+            }
+            return null;
+        });
+        // Apply the same adds and then the same removes, with plenty of repeats, in a batch to one set and one at a time
+        // to the other. They should end up with exactly the same structure.
+        for (int round = 0; round < 2; round++) {
+            final boolean remove = round > 0;
+            final List<byte[]> keys = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                keys.add(Tuple.from(ThreadLocalRandom.current().nextInt(800)).pack());
+            }
+            final List<Boolean> batchedResults = db.run(tr -> remove ? batched.removeAll(tr, keys).join() : batched.addAll(tr, keys).join());
+            final List<Boolean> singleResults = db.run(tr -> {
+                final List<Boolean> results = new ArrayList<>();
+                for (byte[] key : keys) {
+                    results.add(remove ? single.remove(tr, key).join() : single.add(tr, key).join());
+                }
+                return results;
+            });
+            assertEquals(singleResults, batchedResults);
+            final RankedSet.Consistency consistency = batched.checkConsistency(db);
+            assertTrue(consistency.isConsistent(), consistency.toString());
+            assertEquals(single.toDebugString(db), batched.toDebugString(db));
+        }
+    }
+
     @Test
     public void concurrentAdd() throws Exception {
         // 20 does go onto level 1, 30 and 40 do not. There should be no reason for them to conflict on level 0.
@@ -0,0 +1,216 @@
+/*
+ * StagedRankedSetTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.async;
+
+import com.apple.foundationdb.Database;
+import com.apple.foundationdb.FDB;
+import com.apple.foundationdb.FDBTestBase;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.directory.DirectoryLayer;
+import com.apple.foundationdb.directory.PathUtil;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link StagedRankedSet}.
+ */
+@Tag(Tags.RequiresFDB)
+public class StagedRankedSetTest extends FDBTestBase {
+    private Database db;
+    private Subspace rsSubspace;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        this.db = FDB.instance().open();
+        this.rsSubspace = DirectoryLayer.getDefault().createOrOpen(db, PathUtil.from(getClass().getSimpleName())).get();
+        db.run(tr -> {
+            tr.clear(rsSubspace.range());
+            return null;
+        });
+    }
+
+    @Test
+    public void sameAsRankedSet() {
+        compareWithRankedSet(false);
+    }
+
+    @Test
+    public void sameAsRankedSetWithDuplicates() {
+        compareWithRankedSet(true);
+    }
+
+    private void compareWithRankedSet(boolean countDuplicates) {
+        final RankedSet.Config config = RankedSet.newConfigBuilder().setCountDuplicates(countDuplicates).setNLevels(4).build();
+        final StagedRankedSet staged = new StagedRankedSet(rsSubspace.subspace(Tuple.from("staged")), rsSubspace.subspace(Tuple.from("staging")),
+                ForkJoinPool.commonPool(), config);
+        final RankedSet plain = new RankedSet(rsSubspace.subspace(Tuple.from("plain")), ForkJoinPool.commonPool(), config);
+        staged.init(db).join();
+        plain.init(db).join();
+        // Some keys in the skip-list itself, and then a mix of staged changes on top.
+        db.run(tr -> {
+            for (int i = 0; i < 200; i += 2) {
+                staged.add(tr, Tuple.from(i).pack()).join();
+                plain.add(tr, Tuple.from(i).pack()).join();
+            }
+            return null;
+        });
+        assertEquals(100, (int)staged.compact(db, 1000).join());
+        for (int round = 0; round < 4; round++) {
+            db.run(tr -> {
+                for (int i = 0; i < 100; i++) {
+                    final byte[] key = Tuple.from(ThreadLocalRandom.current().nextInt(300)).pack();
+                    if (ThreadLocalRandom.current().nextBoolean()) {
+                        assertEquals(plain.add(tr, key).join(), staged.add(tr, key).join());
+                    } else {
+                        assertEquals(plain.remove(tr, key).join(), staged.remove(tr, key).join());
+                    }
+                }
+                return null;
+            });
+            db.read(tr -> {
+                assertSameContents(tr, plain, staged);
+                return null;
+            });
+            // Fold some, but not all, of the staged changes in, which should not make any difference to the answers.
+            staged.compact(db, 25).join();
+            db.read(tr -> {
+                assertSameContents(tr, plain, staged);
+                return null;
+            });
+        }
+        while (staged.compact(db, 25).join() == 25) {
+            continue;
+        }
+        final RankedSet.Consistency consistency = staged.checkConsistency(db);
+        assertTrue(consistency.isConsistent(), consistency.toString());
+        assertEquals(plain.toDebugString(db), staged.toDebugString(db));
+    }
+
+    private static void assertSameContents(ReadTransaction tr, RankedSet plain, StagedRankedSet staged) {
+        final long size = plain.size(tr).join();
+        assertEquals(size, staged.size(tr).join().longValue());
+        for (int i = 0; i < 300; i++) {
+            final byte[] key = Tuple.from(i).pack();
+            assertEquals(plain.count(tr, key).join(), staged.count(tr, key).join());
+            assertEquals(plain.rank(tr, key).join(), staged.rank(tr, key).join());
+            assertEquals(plain.rank(tr, key, false).join(), staged.rank(tr, key, false).join());
+        }
+        for (long rank = 0; rank <= size; rank++) {
+            assertArrayEquals(plain.getNth(tr, rank).join(), staged.getNth(tr, rank).join());
+        }
+        final byte[] begin = Tuple.from(50).pack();
+        final byte[] end = Tuple.from(250).pack();
+        assertEquals(plain.getRangeList(tr, begin, end).stream().map(Tuple::fromBytes).collect(Collectors.toList()),
+                staged.getRangeList(tr, begin, end).stream().map(Tuple::fromBytes).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void concurrentAdjacentChanges() {
+        // Changes to nearby keys in an ordinary ranked set can conflict through the shared levels above them.
+        final StagedRankedSet rs = new StagedRankedSet(rsSubspace.subspace(Tuple.from("staged")), rsSubspace.subspace(Tuple.from("staging")),
+                ForkJoinPool.commonPool());
+        rs.init(db).join();
+        db.run(tr -> {
+            for (int i = 0; i < 100; i += 10) {
+                rs.add(tr, Tuple.from(i).pack()).join();
+            }
+            return null;
+        });
+        rs.compact(db, 100).join();
+        try (Transaction tr1 = db.createTransaction(); Transaction tr2 = db.createTransaction()) {
+            rs.add(tr1, Tuple.from(41).pack()).join();
+            rs.add(tr2, Tuple.from(42).pack()).join();
+            rs.remove(tr1, Tuple.from(50).pack()).join();
+            rs.remove(tr2, Tuple.from(60).pack()).join();
+            tr1.commit().join();
+            tr2.commit().join();
+        }
+        db.read(tr -> {
+            final List<byte[]> keys = rs.getRangeList(tr, new byte[] {0x00}, new byte[] {(byte)0xFF});
+            assertEquals(Arrays.asList(0L, 10L, 20L, 30L, 40L, 41L, 42L, 70L, 80L, 90L),
+                    keys.stream().map(k -> Tuple.fromBytes(k).getLong(0)).collect(Collectors.toList()));
+            assertEquals(6L, rs.rank(tr, Tuple.from(42).pack()).join().longValue());
+            assertArrayEquals(Tuple.from(70).pack(), rs.getNth(tr, 7).join());
+            return null;
+        });
+    }
+
+    @Test
+    public void stagingLimit() {
+        final AtomicInteger exceeded = new AtomicInteger();
+        final StagedRankedSet rs = new StagedRankedSet(rsSubspace.subspace(Tuple.from("staged")), rsSubspace.subspace(Tuple.from("staging")),
+                ForkJoinPool.commonPool(), RankedSet.DEFAULT_CONFIG, 10) {
+            @Override
+            protected void stagingLimitExceeded(int stagedKeys) {
+                assertEquals(20, stagedKeys);
+                exceeded.incrementAndGet();
+            }
+        };
+        rs.init(db).join();
+        db.run(tr -> {
+            for (int i = 0; i < 20; i++) {
+                rs.add(tr, Tuple.from(i).pack()).join();
+            }
+            return null;
+        });
+        assertEquals(20L, rs.getStagedChangeCount(db).join().longValue());
+        db.read(tr -> {
+            // Neither of these needs to merge the staged keys.
+            assertEquals(20L, rs.size(tr).join().longValue());
+            assertEquals(1L, rs.count(tr, Tuple.from(15).pack()).join().longValue());
+            assertEquals(5L, rs.rank(tr, Tuple.from(5).pack()).join().longValue());
+            return null;
+        });
+        assertEquals(0, exceeded.get());
+        // But these have to merge more staged keys than the limit, which they still do correctly.
+        assertEquals(15L, rs.rank(db, Tuple.from(15).pack()).join().longValue());
+        assertArrayEquals(Tuple.from(3).pack(), rs.getNth(db, 3).join());
+        assertEquals(2, exceeded.get());
+
+        assertEquals(10, (int)rs.compact(db, 10).join());
+        assertEquals(10L, rs.getStagedChangeCount(db).join().longValue());
+        assertEquals(10, (int)rs.compact(db, 10).join());
+        assertEquals(0, (int)rs.compact(db, 10).join());
+        assertEquals(0L, rs.getStagedChangeCount(db).join().longValue());
+        db.read(tr -> {
+            assertEquals(20L, rs.size(tr).join().longValue());
+            assertEquals(15L, rs.rank(tr, Tuple.from(15).pack()).join().longValue());
+            assertArrayEquals(Tuple.from(3).pack(), rs.getNth(tr, 3).join());
+            return null;
+        });
+    }
+}
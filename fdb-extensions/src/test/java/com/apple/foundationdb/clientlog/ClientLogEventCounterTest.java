@@ -39,6 +39,7 @@ class ClientLogEventCounterTest {
         boolean countWrites = false;
         final boolean countSingleKeys = true;
         final boolean countRanges = true;
+        int parallelism = 0;
         if (args.length > 0) {
             cluster = args[0];
         }
@@ -53,6 +54,9 @@ class ClientLogEventCounterTest {
             countReads = "READ".equals(arg) || "BOTH".equals(arg);
             countWrites = "WRITE".equals(arg) || "BOTH".equals(arg);
         }
+        if (args.length > 4) {
+            parallelism = Integer.parseInt(args[4]);
+        }
         FDB fdb = FDB.selectAPIVersion(600);
         Database database = fdb.open(cluster);
         Executor executor = database.getExecutor();
@@ -66,6 +70,14 @@ class ClientLogEventCounterTest {
             int percent = (path.get(0).getCount() * 100) / path.get(0).getParent().getCount();
             System.out.println(" " + percent + "%");
         };
+        if (parallelism > 0) {
+            DatabaseClientLogEvents events = ParallelDatabaseClientLogEvents.forEachEventBetweenTimestamps(database, executor, counter, start, end,
+                    parallelism, ParallelDatabaseClientLogEvents.UNORDERED).join();
+            System.out.println(events.getEarliestTimestamp() + " - " + events.getLatestTimestamp() + ": " + events.getEventCount());
+            root.hideLessThanFraction(0.10);
+            root.printTree(printer, "/");
+            return;
+        }
         int eventLimit = 10_000;
         long timeLimit = 15_000;
         DatabaseClientLogEvents events = DatabaseClientLogEvents.forEachEventBetweenTimestamps(database, executor, counter, start, end, eventLimit, timeLimit).join();
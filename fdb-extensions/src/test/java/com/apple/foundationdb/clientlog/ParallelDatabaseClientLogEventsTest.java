@@ -0,0 +1,132 @@
+/*
+ * ParallelDatabaseClientLogEventsTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.clientlog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link ParallelDatabaseClientLogEvents}.
+ */
+public class ParallelDatabaseClientLogEventsTest {
+
+    private static FDBClientLogEvents.Event event(int i) {
+        return new FDBClientLogEvents.EventGetVersion(i, 0.001, 0);
+    }
+
+    @Test
+    public void batchStopsAtEventLimit() {
+        final ParallelDatabaseClientLogEvents.EventBatch batch = new ParallelDatabaseClientLogEvents.EventBatch(3, Long.MAX_VALUE);
+        final List<FDBClientLogEvents.Event> read = new ArrayList<>();
+        for (int i = 0; i < 10 && batch.more(); i++) {
+            final FDBClientLogEvents.Event event = event(i);
+            read.add(event);
+            batch.accept(event).join();
+        }
+        assertFalse(batch.more());
+        assertTrue(batch.isLimitReached());
+        assertEquals(read, batch.getEvents());
+
+        // Events are only given out once the batch is complete, in the order read.
+        final List<FDBClientLogEvents.Event> given = new ArrayList<>();
+        batch.forEach(event -> {
+            given.add(event);
+            return CompletableFuture.completedFuture(null);
+        }, ForkJoinPool.commonPool()).join();
+        assertEquals(read, given);
+    }
+
+    @Test
+    public void batchWithoutLimit() {
+        final ParallelDatabaseClientLogEvents.EventBatch batch = new ParallelDatabaseClientLogEvents.EventBatch(100, Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            batch.accept(event(i)).join();
+            assertTrue(batch.more());
+        }
+        assertFalse(batch.isLimitReached());
+        assertEquals(10, batch.getEvents().size());
+    }
+
+    @Test
+    public void reorderBufferWaitsForSpace() {
+        final ParallelDatabaseClientLogEvents.ReorderBuffer buffer = new ParallelDatabaseClientLogEvents.ReorderBuffer(2);
+        final FDBClientLogEvents.Event first = event(1);
+        final FDBClientLogEvents.Event second = event(2);
+        assertTrue(buffer.offer(first).isDone());
+        final CompletableFuture<Void> space = buffer.offer(second);
+        assertFalse(space.isDone(), "full buffer should not accept another event");
+        assertSame(first, buffer.poll().join());
+        assertTrue(space.isDone(), "removing an event should make room");
+        buffer.finish(null);
+        assertSame(second, buffer.poll().join());
+        assertNull(buffer.poll().join(), "finished buffer should be exhausted");
+    }
+
+    @Test
+    public void reorderBufferWaitsForEvent() {
+        final ParallelDatabaseClientLogEvents.ReorderBuffer buffer = new ParallelDatabaseClientLogEvents.ReorderBuffer(2);
+        final CompletableFuture<FDBClientLogEvents.Event> polled = buffer.poll();
+        assertFalse(polled.isDone());
+        final FDBClientLogEvents.Event event = event(1);
+        buffer.offer(event).join();
+        assertSame(event, polled.join());
+
+        final CompletableFuture<FDBClientLogEvents.Event> exhausted = buffer.poll();
+        assertFalse(exhausted.isDone());
+        buffer.finish(null);
+        assertNull(exhausted.join());
+    }
+
+    @Test
+    public void reorderBufferReportsReadError() {
+        final ParallelDatabaseClientLogEvents.ReorderBuffer buffer = new ParallelDatabaseClientLogEvents.ReorderBuffer(2);
+        final FDBClientLogEvents.Event event = event(1);
+        buffer.offer(event).join();
+        buffer.finish(new IllegalStateException("read failed"));
+        // Events already read are still delivered before the error.
+        assertSame(event, buffer.poll().join());
+        final CompletionException err = assertThrows(CompletionException.class, () -> buffer.poll().join());
+        assertTrue(err.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void abandonedReorderBufferStopsReader() {
+        final ParallelDatabaseClientLogEvents.ReorderBuffer buffer = new ParallelDatabaseClientLogEvents.ReorderBuffer(1);
+        final CompletableFuture<Void> space = buffer.offer(event(1));
+        assertFalse(space.isDone());
+        buffer.abandon(new CancellationException("delivery failed"));
+        assertTrue(space.isCompletedExceptionally());
+        assertTrue(buffer.offer(event(2)).isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * TupleKeyCountTreeTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.clientlog;
+
+import com.apple.foundationdb.tuple.Tuple;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link TupleKeyCountTree}.
+ */
+public class TupleKeyCountTreeTest {
+
+    @Test
+    public void exactCounts() {
+        TupleKeyCountTree root = new TupleKeyCountTree();
+        for (int i = 0; i < 100; i++) {
+            root.add(Tuple.from("a", i % 10));
+        }
+        root.add(Tuple.from("b"));
+        assertEquals(101, root.getCount());
+        assertEquals(2, root.getChildren().size());
+        TupleKeyCountTree a = child(root, "a");
+        assertEquals(100, a.getCount());
+        assertEquals(10, a.getChildren().size());
+        for (TupleKeyCountTree child : a.getChildren()) {
+            assertEquals(10, child.getCount());
+            assertEquals(0, child.getError());
+        }
+        assertEquals(0, root.getOtherCount());
+    }
+
+    @Test
+    public void boundedChildren() {
+        final int maxChildren = 4;
+        TupleKeyCountTree root = new TupleKeyCountTree(maxChildren);
+        final Map<Object, Integer> trueCounts = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            // Two heavy keys, interleaved with many light ones.
+            final Object key = i % 3 == 0 ? "hot1" : i % 3 == 1 ? "hot2" : "cold" + i;
+            root.add(Tuple.from(key, i % 5));
+            trueCounts.merge(key, 1, Integer::sum);
+        }
+        assertEquals(1000, root.getCount());
+        assertEquals(maxChildren, root.getChildren().size());
+        for (TupleKeyCountTree child : root.getChildren()) {
+            final int trueCount = trueCounts.get(child.getObject());
+            assertTrue(child.getCount() >= trueCount, "count should not be less than true count");
+            assertTrue(child.getCount() - child.getError() <= trueCount, "count less error should not be more than true count");
+            assertTrue(child.getChildren().size() <= maxChildren);
+        }
+        for (String hot : new String[] {"hot1", "hot2"}) {
+            final TupleKeyCountTree child = child(root, hot);
+            assertNotNull(child, hot + " should be kept");
+            assertEquals(trueCounts.get(hot).intValue(), child.getCount());
+            assertEquals(0, child.getError());
+        }
+        int attributed = 0;
+        for (TupleKeyCountTree child : root.getChildren()) {
+            attributed += child.getCount() - child.getError();
+        }
+        assertEquals(root.getCount() - attributed, root.getOtherCount());
+    }
+
+    @Test
+    public void prefixChildrenNotReplaced() {
+        TupleKeyCountTree root = new TupleKeyCountTree(1);
+        for (int i = 0; i < 10; i++) {
+            root.addPrefixChild("server" + i).add(Tuple.from("k", i));
+        }
+        assertEquals(10, root.getChildren().size());
+        for (TupleKeyCountTree child : root.getChildren()) {
+            assertEquals(1, child.getCount());
+            assertEquals(1, child.getMaxChildren());
+        }
+    }
+
+    private static TupleKeyCountTree child(TupleKeyCountTree parent, Object object) {
+        for (TupleKeyCountTree child : parent.getChildren()) {
+            if (object.equals(child.getObject())) {
+                return child;
+            }
+        }
+        return null;
+    }
+}
@@ -255,6 +255,52 @@ public class BunchedMapTest extends FDBTestBase {
         }
     }
 
+    @Test
+    public void updateAll() throws ExecutionException, InterruptedException {
+        final Tuple value = Tuple.from("hello", "there");
+        final Random r = new Random(0x5ca1ab1e);
+        final TreeMap<Tuple, Tuple> expected = new TreeMap<>();
+        db.run(tr -> {
+            LongStream.range(100L, 150L).filter(l -> l % 3 != 0).forEach(l -> {
+                map.put(tr, bmSubspace, Tuple.from(l), value).join();
+                expected.put(Tuple.from(l), value);
+            });
+            return null;
+        });
+
+        for (int round = 0; round < 5; round++) {
+            final Map<Tuple, Tuple> puts = new TreeMap<>();
+            final List<Tuple> removes = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                Tuple key = Tuple.from(90L + r.nextInt(80));
+                if (r.nextBoolean()) {
+                    Tuple newValue = Tuple.from("round", round, i);
+                    puts.put(key, newValue);
+                    removes.remove(key);
+                } else {
+                    removes.add(key);
+                    puts.remove(key);
+                }
+            }
+            final List<KeyValue> rangeKVs = db.run(tr -> {
+                map.updateAll(tr, bmSubspace, puts, removes).join();
+                return tr.getRange(bmSubspace.range()).asList().join();
+            });
+            removes.forEach(expected::remove);
+            expected.putAll(puts);
+
+            try (Transaction tr = db.createTransaction()) {
+                map.verifyIntegrity(tr, bmSubspace).get();
+                tr.cancel();
+            }
+            List<Map.Entry<Tuple, Tuple>> entryList = rangeKVs.stream()
+                    .flatMap(kv -> serializer.deserializeEntries(bmSubspace.unpack(kv.getKey()), kv.getValue()).stream())
+                    .collect(Collectors.toList());
+            assertEquals(new ArrayList<>(expected.entrySet()), entryList);
+            rangeKVs.forEach(kv -> assertTrue(serializer.deserializeEntries(bmSubspace.unpack(kv.getKey()), kv.getValue()).size() <= map.getBunchSize()));
+        }
+    }
+
     private void verifyBoundaryKeys(@Nonnull List<Tuple> boundaryKeys) throws ExecutionException, InterruptedException {
         try (Transaction tr = db.createTransaction()) {
             map.verifyIntegrity(tr, bmSubspace).get();
@@ -74,8 +74,16 @@ public class ExecuteProperties {
 
     private final CursorStreamingMode defaultCursorStreamingMode;
 
+    // the number of index entries to read ahead of the records being loaded for them; 0 means no read ahead
+    private final int indexPrefetchSize;
+
+    // a bound on the total size of the index entries read ahead
+    private final long indexPrefetchBytes;
+
+    @SuppressWarnings("squid:S00107")
     private ExecuteProperties(int skip, int rowLimit, @Nonnull IsolationLevel isolationLevel, long timeLimit,
-                              @Nonnull ExecuteState state, boolean failOnScanLimitReached, @Nonnull CursorStreamingMode defaultCursorStreamingMode) {
+                              @Nonnull ExecuteState state, boolean failOnScanLimitReached, @Nonnull CursorStreamingMode defaultCursorStreamingMode,
+                              int indexPrefetchSize, long indexPrefetchBytes) {
         this.skip = skip;
         this.rowLimit = rowLimit;
         this.isolationLevel = isolationLevel;
@@ -83,6 +91,8 @@ public class ExecuteProperties {
         this.state = state;
         this.failOnScanLimitReached = failOnScanLimitReached;
         this.defaultCursorStreamingMode = defaultCursorStreamingMode;
+        this.indexPrefetchSize = indexPrefetchSize;
+        this.indexPrefetchBytes = indexPrefetchBytes;
     }
 
     @Nonnull
@@ -292,6 +302,25 @@ public class ExecuteProperties {
         return copy(skip, rowLimit, timeLimit, isolationLevel, state, failOnScanLimitReached, defaultCursorStreamingMode);
     }
 
+    /**
+     * Get the number of index entries that a scan of records through an index reads ahead of the records that it is
+     * loading. If this is {@code 0}, the index is only read when the next record can be loaded.
+     * @return the number of index entries to read ahead
+     * @see com.apple.foundationdb.record.cursors.PrefetchCursor
+     */
+    public int getIndexPrefetchSize() {
+        return indexPrefetchSize;
+    }
+
+    /**
+     * Get the bound on the total size in bytes of the index entries read ahead, if any.
+     * @return the maximum size of the index entries read ahead
+     * @see #getIndexPrefetchSize()
+     */
+    public long getIndexPrefetchBytes() {
+        return indexPrefetchBytes;
+    }
+
     /**
      * Reset the stateful parts of the properties to their "original" values, creating an independent mutable state.
      * @see ExecuteState#reset()
@@ -316,7 +345,8 @@ public class ExecuteProperties {
     @Nonnull
     protected ExecuteProperties copy(int skip, int rowLimit, long timeLimit, @Nonnull IsolationLevel isolationLevel,
                                      @Nonnull ExecuteState state, boolean failOnScanLimitReached, CursorStreamingMode defaultCursorStreamingMode) {
-        return new ExecuteProperties(skip, rowLimit, isolationLevel, timeLimit, state, failOnScanLimitReached, defaultCursorStreamingMode);
+        return new ExecuteProperties(skip, rowLimit, isolationLevel, timeLimit, state, failOnScanLimitReached, defaultCursorStreamingMode,
+                indexPrefetchSize, indexPrefetchBytes);
     }
 
     @Nonnull
@@ -370,6 +400,9 @@ public class ExecuteProperties {
         if (failOnScanLimitReached) {
             components.add("fail on scan limit");
         }
+        if (indexPrefetchSize > 0) {
+            components.add(String.format("indexPrefetch %d", indexPrefetchSize));
+        }
         components.add(state.toString());
         return String.format("ExecuteProperties(%s)", String.join(", ", components));
     }
@@ -390,6 +423,8 @@ public class ExecuteProperties {
         private ExecuteState executeState = null;
         private boolean failOnScanLimitReached = false;
         private CursorStreamingMode defaultCursorStreamingMode = CursorStreamingMode.ITERATOR;
+        private int indexPrefetchSize = 0;
+        private long indexPrefetchBytes = Long.MAX_VALUE;
 
         private Builder() {
         }
@@ -402,6 +437,8 @@ public class ExecuteProperties {
             this.executeState = executeProperties.state;
             this.failOnScanLimitReached = executeProperties.failOnScanLimitReached;
             this.defaultCursorStreamingMode = executeProperties.defaultCursorStreamingMode;
+            this.indexPrefetchSize = executeProperties.indexPrefetchSize;
+            this.indexPrefetchBytes = executeProperties.indexPrefetchBytes;
         }
 
         @Nonnull
@@ -520,6 +557,39 @@ public class ExecuteProperties {
             return this;
         }
 
+        /**
+         * Set the number of index entries that a scan of records through an index reads ahead of the records that it
+         * is loading. Reading ahead keeps the record loads from stalling whenever the index scan needs to fetch its next
+         * batch of entries from the database. The entries read ahead still count against the scan limits, so when
+         * a limit is reached, the scan stops early only after returning the records for them. By default this is
+         * {@code 0}, which does not read ahead.
+         * @param indexPrefetchSize the number of index entries to read ahead
+         * @return an updated builder
+         */
+        @Nonnull
+        public Builder setIndexPrefetchSize(int indexPrefetchSize) {
+            if (indexPrefetchSize < 0) {
+                throw new RecordCoreException("Invalid index prefetch size specified: " + indexPrefetchSize);
+            }
+            this.indexPrefetchSize = indexPrefetchSize;
+            return this;
+        }
+
+        /**
+         * Set a bound on the total size in bytes of the index entries read ahead, in addition to their number.
+         * @param indexPrefetchBytes the maximum size of the index entries read ahead
+         * @return an updated builder
+         * @see #setIndexPrefetchSize(int)
+         */
+        @Nonnull
+        public Builder setIndexPrefetchBytes(long indexPrefetchBytes) {
+            if (indexPrefetchBytes <= 0) {
+                throw new RecordCoreException("Invalid index prefetch bytes specified: " + indexPrefetchBytes);
+            }
+            this.indexPrefetchBytes = indexPrefetchBytes;
+            return this;
+        }
+
         @Nonnull
         public ExecuteProperties build() {
             final ExecuteState state;
@@ -534,7 +604,8 @@ public class ExecuteProperties {
             } else {
                 state = new ExecuteState(RecordScanLimiterFactory.enforce(scannedRecordsLimit), ByteScanLimiterFactory.enforce(scannedBytesLimit));
             }
-            return new ExecuteProperties(skip, rowLimit, isolationLevel, timeLimit, state, failOnScanLimitReached, defaultCursorStreamingMode);
+            return new ExecuteProperties(skip, rowLimit, isolationLevel, timeLimit, state, failOnScanLimitReached, defaultCursorStreamingMode,
+                    indexPrefetchSize, indexPrefetchBytes);
         }
     }
 }
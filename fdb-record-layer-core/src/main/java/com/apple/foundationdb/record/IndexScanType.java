@@ -45,6 +45,8 @@ public class IndexScanType implements PlanHashable {
     public static final IndexScanType BY_TIME_WINDOW = new IndexScanType("BY_TIME_WINDOW");
     @Nonnull
     public static final IndexScanType BY_TEXT_TOKEN = new IndexScanType("BY_TEXT_TOKEN");
+    @Nonnull
+    public static final IndexScanType BY_BITMAP = new IndexScanType("BY_BITMAP");
 
     private final String name;
 
@@ -51,6 +51,12 @@ public class PipelineOperation {
     @Nonnull
     public static final PipelineOperation TEXT_INDEX_UPDATE = new PipelineOperation("TEXT_INDEX_UPDATE");
     @Nonnull
+    public static final PipelineOperation TEXT_INDEX_SCORE = new PipelineOperation("TEXT_INDEX_SCORE");
+    @Nonnull
+    public static final PipelineOperation TEXT_INDEX_SEEK = new PipelineOperation("TEXT_INDEX_SEEK");
+    @Nonnull
+    public static final PipelineOperation TIME_WINDOW_LEADERBOARD_UPDATE = new PipelineOperation("TIME_WINDOW_LEADERBOARD_UPDATE");
+    @Nonnull
     public static final PipelineOperation SYNTHETIC_RECORD_JOIN = new PipelineOperation("SYNTHETIC_RECORD_JOIN");
 
     private final String name;
@@ -31,6 +31,7 @@ import com.apple.foundationdb.record.cursors.FlatMapPipelinedCursor;
 import com.apple.foundationdb.record.cursors.FutureCursor;
 import com.apple.foundationdb.record.cursors.IteratorCursor;
 import com.apple.foundationdb.record.cursors.ListCursor;
+import com.apple.foundationdb.record.cursors.MapBatchPipelinedCursor;
 import com.apple.foundationdb.record.cursors.MapCursor;
 import com.apple.foundationdb.record.cursors.MapPipelinedCursor;
 import com.apple.foundationdb.record.cursors.OrElseCursor;
@@ -551,6 +552,22 @@ public interface RecordCursor<T> extends AutoCloseable, Iterator<T> {
         return new MapPipelinedCursor<>(this, func, pipelineSize);
     }
 
+    /**
+     * Get a new cursor by applying the given asynchronous function to batches of the records in this cursor.
+     * The function is given those records that are available without waiting, and it must return one future
+     * for each of them, in the same order.
+     * @param func the function to apply to each batch of records
+     * @param pipelineSize the number of futures from applications of the mapping function to start ahead of time
+     * @param <V> the result type of the mapping function
+     * @return a new cursor that applies the given function to batches of records
+     * @see MapBatchPipelinedCursor
+     */
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    default <V> RecordCursor<V> mapBatchPipelined(@Nonnull Function<List<T>, List<CompletableFuture<V>>> func, int pipelineSize) {
+        return new MapBatchPipelinedCursor<>(this, func, pipelineSize);
+    }
+
     /**
      * Get a new cursor by applying the given cursor generating function to the records in this cursor.
      * @param func the function to apply to each record
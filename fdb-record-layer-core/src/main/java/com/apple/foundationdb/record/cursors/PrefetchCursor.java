@@ -0,0 +1,324 @@
+/*
+ * PrefetchCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.cursors;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.annotation.SpotBugsSuppressWarnings;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.ToLongFunction;
+
+/**
+ * A cursor that reads ahead of its consumer, keeping a bounded buffer of the results of another cursor.
+ *
+ * <p>
+ * The inner cursor is advanced as soon as there is room in the buffer, rather than only when the consumer asks for
+ * the next result. So, when the consumer does asynchronous work for each result, such as loading the record for an
+ * index entry, the inner cursor fetches its next batch from the database while that work is going on, and the consumer
+ * does not stall waiting for it. The buffer is bounded both by a number of entries and, optionally, by their total
+ * size as given by a size function. The inner cursor is only ever advanced one result at a time, and results are
+ * returned in order with their own continuations, so continuing from any result gives the same results as
+ * without read ahead.
+ * </p>
+ *
+ * <p>
+ * If a timer is given, the number of entries returned, the number of entries already read ahead each time, and the
+ * time spent waiting because nothing had been read ahead are all recorded.
+ * </p>
+ * @param <T> the type of elements of the cursor
+ */
+@API(API.Status.EXPERIMENTAL)
+public class PrefetchCursor<T> implements RecordCursor<T> {
+    @Nonnull
+    private final RecordCursor<T> inner;
+    private final int maxPrefetched;
+    private final long maxPrefetchedBytes;
+    @Nullable
+    private final ToLongFunction<T> sizeFunction;
+    @Nullable
+    private final FDBStoreTimer timer;
+
+    // guarded by lock
+    @Nonnull
+    private final Object lock = new Object();
+    @Nonnull
+    private final Queue<Prefetched<T>> buffer;
+    private long bufferedBytes = 0;
+    private boolean innerPending = false;
+    private boolean innerDone = false;
+    // the last result or failure of the inner cursor, once innerDone, to be given again to any later callers
+    @Nullable
+    private RecordCursorResult<T> doneResult = null;
+    @Nullable
+    private Throwable doneError = null;
+    private boolean closed = false;
+    @Nullable
+    private CompletableFuture<RecordCursorResult<T>> waiting = null;
+    private long waitStartNanos;
+
+    @Nullable
+    private CompletableFuture<Boolean> nextFuture = null;
+    @Nullable
+    private RecordCursorResult<T> nextResult = null;
+
+    // for detecting incorrect cursor usage
+    private boolean mayGetContinuation = false;
+
+    /**
+     * Create a new prefetch cursor.
+     * @param inner the cursor to read ahead
+     * @param maxPrefetched the maximum number of results to read ahead
+     * @param maxPrefetchedBytes the maximum total size of the results read ahead, or {@link Long#MAX_VALUE} for no bound
+     * @param sizeFunction a function giving the size of a result, used when {@code maxPrefetchedBytes} is bounded
+     * @param timer a timer for recording read ahead statistics or {@code null}
+     */
+    public PrefetchCursor(@Nonnull RecordCursor<T> inner, int maxPrefetched, long maxPrefetchedBytes,
+                          @Nullable ToLongFunction<T> sizeFunction, @Nullable FDBStoreTimer timer) {
+        this.inner = inner;
+        this.maxPrefetched = maxPrefetched;
+        this.maxPrefetchedBytes = maxPrefetchedBytes;
+        this.sizeFunction = maxPrefetchedBytes == Long.MAX_VALUE ? null : sizeFunction;
+        this.timer = timer;
+        this.buffer = new ArrayDeque<>(maxPrefetched);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<T>> onNext() {
+        if (nextResult != null && !nextResult.hasNext()) {
+            return CompletableFuture.completedFuture(nextResult);
+        }
+        mayGetContinuation = false;
+        final CompletableFuture<RecordCursorResult<T>> future;
+        synchronized (lock) {
+            final Prefetched<T> head = buffer.poll();
+            if (head != null) {
+                bufferedBytes -= head.size;
+                if (head.error != null) {
+                    future = new CompletableFuture<>();
+                    future.completeExceptionally(head.error);
+                } else {
+                    future = CompletableFuture.completedFuture(head.result);
+                    if (timer != null && head.result.hasNext()) {
+                        timer.increment(FDBStoreTimer.Counts.PREFETCH_ENTRY);
+                        timer.increment(FDBStoreTimer.Counts.PREFETCH_QUEUE_DEPTH, buffer.size() + 1);
+                    }
+                }
+            } else if (innerDone) {
+                // Everything has been handed out already, so there will be nothing more to wait for.
+                if (doneError != null) {
+                    future = new CompletableFuture<>();
+                    future.completeExceptionally(doneError);
+                } else {
+                    future = CompletableFuture.completedFuture(doneResult);
+                }
+            } else {
+                waiting = new CompletableFuture<>();
+                waitStartNanos = System.nanoTime();
+                future = waiting;
+            }
+        }
+        fetchMore();
+        return future.thenApply(result -> {
+            mayGetContinuation = !result.hasNext();
+            nextResult = result;
+            return result;
+        });
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public CompletableFuture<Boolean> onHasNext() {
+        if (nextFuture == null) {
+            nextFuture = onNext().thenApply(RecordCursorResult::hasNext);
+        }
+        return nextFuture;
+    }
+
+    @Nullable
+    @Override
+    @SpotBugsSuppressWarnings(value = "EI2", justification = "copies are expensive")
+    @Deprecated
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        nextFuture = null;
+        mayGetContinuation = true;
+        return nextResult.get();
+    }
+
+    @Nullable
+    @Override
+    @SpotBugsSuppressWarnings(value = "EI", justification = "copies are expensive")
+    @Deprecated
+    public byte[] getContinuation() {
+        IllegalContinuationAccessChecker.check(mayGetContinuation);
+        return nextResult.getContinuation().toBytes();
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public NoNextReason getNoNextReason() {
+        return nextResult.getNoNextReason();
+    }
+
+    @Override
+    public void close() {
+        if (nextFuture != null) {
+            nextFuture.cancel(false);
+            nextFuture = null;
+        }
+        final CompletableFuture<RecordCursorResult<T>> waiter;
+        synchronized (lock) {
+            closed = true;
+            buffer.clear();
+            bufferedBytes = 0;
+            waiter = waiting;
+            waiting = null;
+        }
+        if (waiter != null) {
+            waiter.cancel(false);
+        }
+        inner.close();
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return inner.getExecutor();
+    }
+
+    @Override
+    public boolean accept(@Nonnull RecordCursorVisitor visitor) {
+        if (visitor.visitEnter(this)) {
+            inner.accept(visitor);
+        }
+        return visitor.visitLeave(this);
+    }
+
+    /**
+     * Advance the inner cursor while there is room in the buffer or someone is waiting for a result.
+     * Inner results that are already available are handled in a loop here, rather than recursively from their
+     * completion, so that a cursor whose results are all in memory does not build up a deep stack.
+     */
+    private void fetchMore() {
+        while (true) {
+            synchronized (lock) {
+                if (closed || innerPending || innerDone) {
+                    return;
+                }
+                if (waiting == null && (buffer.size() >= maxPrefetched || bufferedBytes >= maxPrefetchedBytes)) {
+                    return;
+                }
+                innerPending = true;
+            }
+            final CompletableFuture<RecordCursorResult<T>> innerFuture = inner.onNext();
+            if (!innerFuture.isDone()) {
+                innerFuture.whenComplete((result, err) -> {
+                    if (innerCompleted(result, err)) {
+                        fetchMore();
+                    }
+                });
+                return;
+            }
+            RecordCursorResult<T> result = null;
+            Throwable err = null;
+            try {
+                result = innerFuture.join();
+            } catch (RuntimeException ex) {
+                err = ex.getCause() != null ? ex.getCause() : ex;
+            }
+            if (!innerCompleted(result, err)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hand a result of the inner cursor to a waiting consumer or else add it to the buffer.
+     * @param result the inner result or {@code null} if the inner cursor failed
+     * @param err the failure of the inner cursor or {@code null}
+     * @return {@code true} if the inner cursor can be advanced again
+     */
+    private boolean innerCompleted(@Nullable RecordCursorResult<T> result, @Nullable Throwable err) {
+        final CompletableFuture<RecordCursorResult<T>> waiter;
+        final long startNanos;
+        synchronized (lock) {
+            innerPending = false;
+            if (closed) {
+                return false;
+            }
+            if (err != null || !result.hasNext()) {
+                innerDone = true;
+                doneResult = result;
+                doneError = err;
+            }
+            waiter = waiting;
+            startNanos = waitStartNanos;
+            if (waiter != null) {
+                waiting = null;
+            } else {
+                final long size = (err == null && result.hasNext() && sizeFunction != null) ? sizeFunction.applyAsLong(result.get()) : 0;
+                buffer.add(new Prefetched<>(result, err, size));
+                bufferedBytes += size;
+            }
+        }
+        if (waiter != null) {
+            if (err != null) {
+                waiter.completeExceptionally(err);
+            } else {
+                if (timer != null && result.hasNext()) {
+                    timer.increment(FDBStoreTimer.Counts.PREFETCH_ENTRY);
+                    timer.recordSinceNanoTime(FDBStoreTimer.Events.PREFETCH_STALL, startNanos);
+                }
+                waiter.complete(result);
+            }
+        }
+        return err == null && result.hasNext();
+    }
+
+    private static class Prefetched<T> {
+        @Nullable
+        private final RecordCursorResult<T> result;
+        @Nullable
+        private final Throwable error;
+        private final long size;
+
+        Prefetched(@Nullable RecordCursorResult<T> result, @Nullable Throwable error, long size) {
+            this.result = result;
+            this.error = error;
+            this.size = size;
+        }
+    }
+}
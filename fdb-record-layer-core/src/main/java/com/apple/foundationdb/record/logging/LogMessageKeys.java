@@ -113,6 +113,7 @@ public enum LogMessageKeys {
     END_TUPLE("end_tuple"),
     REAL_END("real_end"),
     RECORDS_SCANNED("records_scanned"),
+    TOTAL_RECORDS_SCANNED("total_records_scanned"),
     ORIGINAL_RANGE("original_range"),
     SPLIT_RANGES("split_ranges"),
     REASON("reason"),
@@ -135,6 +136,8 @@ public enum LogMessageKeys {
     SESSION_ID("session_id"),
     INDEXER_SESSION_ID("indexer_session_id"),
     INDEXER_ID("indexer_id"),
+    INDEXER_WORKER("indexer_worker"),
+    INDEXER_WORKER_COUNT("indexer_worker_count"),
     INDEX_STATE_PRECONDITION("index_state_precondition"),
     INITIAL_INDEX_STATE("initial_index_state"),
     SHOULD_BUILD_INDEX("do_build_index"),
@@ -81,6 +81,31 @@ public class IndexOptions {
      * It will only be possible to determine that an indexed field contains the token someplace.
      */
     public static final String TEXT_OMIT_POSITIONS_OPTION = "textOmitPositions";
+    /**
+     * If {@code "true"}, a {@link IndexTypes#TEXT} index will buffer the token updates for all of the records saved in a
+     * transaction and apply them just before commit, re-writing each affected part of the index only once.
+     *
+     * This changes when the index is written but not what is written, so it can be turned on or off without rebuilding the index.
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static final String TEXT_BUFFER_WRITES_OPTION = "textBufferWrites";
+    /**
+     * If {@code "true"}, a {@link IndexTypes#TEXT} index will also keep the per-token document frequencies and
+     * per-document lengths needed to rank documents by relevance.
+     *
+     * Turning this on for an existing index requires rebuilding it so that the statistics cover every record.
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static final String TEXT_STORE_STATISTICS_OPTION = "textStoreStatistics";
+
+    /**
+     * If {@code "true"}, a {@link IndexTypes#TIME_WINDOW_LEADERBOARD} index will buffer the ranked set updates for all of
+     * the records saved in a transaction and apply them to each leaderboard's ranked set together just before commit.
+     *
+     * This changes when the index is written but not what is written, so it can be turned on or off without rebuilding the index.
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static final String TIME_WINDOW_LEADERBOARD_BUFFER_WRITES_OPTION = "leaderboardBufferWrites";
 
     /**
      * The number of levels in the {@link IndexTypes#RANK} skip list {@link com.apple.foundationdb.async.RankedSet}.
@@ -103,6 +128,40 @@ public class IndexOptions {
      */
     public static final String RANK_COUNT_DUPLICATES = "rankCountDuplicates";
 
+    /**
+     * Whether changes to the {@link IndexTypes#RANK} skip list are staged in a {@link com.apple.foundationdb.async.StagedRankedSet}
+     * instead of being applied directly, so that records with nearby scores can be saved concurrently without conflicts.
+     *
+     * The default is {@code false}.
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static final String RANK_STAGE_CHANGES = "rankStageChanges";
+
+    /**
+     * When {@link #RANK_STAGE_CHANGES} is set, the number of staged changes at which an update to the index also folds them
+     * into the skip list, in a separate transaction after its own has committed.
+     *
+     * The default is {@value com.apple.foundationdb.record.provider.foundationdb.indexes.RankedSetIndexHelper#DEFAULT_STAGING_COMPACTION_THRESHOLD}.
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public static final String RANK_STAGING_COMPACTION_THRESHOLD = "rankStagingCompactionThreshold";
+
+    /**
+     * The number of bits in each bitmap entry of an {@link IndexTypes#BITMAP_VALUE} index. Must be a multiple of 8.
+     *
+     * The default is {@value com.apple.foundationdb.record.provider.foundationdb.indexes.BitmapValueIndexMaintainer#DEFAULT_ENTRY_SIZE}.
+     */
+    public static final String BITMAP_VALUE_ENTRY_SIZE_OPTION = "bitmapValueEntrySize";
+
+    /**
+     * The number of trailing grouping fields of an {@link IndexTypes#PERMUTED_MIN} or {@link IndexTypes#PERMUTED_MAX}
+     * index that are stored after the aggregate value, so that groups sharing the remaining grouping fields are ordered
+     * by their minimum or maximum.
+     *
+     * The default is {@code 0}.
+     */
+    public static final String PERMUTED_SIZE_OPTION = "permutedSize";
+
     private IndexOptions() {
     }
 }
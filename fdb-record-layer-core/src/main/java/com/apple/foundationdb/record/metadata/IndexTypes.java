@@ -142,6 +142,27 @@ public class IndexTypes {
      */
     public static final String TEXT = "text";
 
+    /**
+     * An index storing fixed-size bitmaps of an integer position field for each value of the grouping fields.
+     * Set bits are maintained with atomic mutations, so concurrent writers do not conflict.
+     * @see com.apple.foundationdb.record.provider.foundationdb.indexes.BitmapValueIndexMaintainer
+     */
+    public static final String BITMAP_VALUE = "bitmap_value";
+
+    /**
+     * An index remembering the smallest value of a field for each group, which, unlike {@link #MIN_EVER_TUPLE},
+     * is kept up to date when records are deleted or updated.
+     * @see com.apple.foundationdb.record.provider.foundationdb.indexes.PermutedMinMaxIndexMaintainer
+     */
+    public static final String PERMUTED_MIN = "permuted_min";
+
+    /**
+     * An index remembering the largest value of a field for each group, which, unlike {@link #MAX_EVER_TUPLE},
+     * is kept up to date when records are deleted or updated.
+     * @see com.apple.foundationdb.record.provider.foundationdb.indexes.PermutedMinMaxIndexMaintainer
+     */
+    public static final String PERMUTED_MAX = "permuted_max";
+
     private IndexTypes() {
     }
 }
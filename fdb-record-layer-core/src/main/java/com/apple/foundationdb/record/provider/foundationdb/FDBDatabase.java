@@ -36,6 +36,7 @@ import com.apple.foundationdb.record.provider.foundationdb.keyspace.ResolverResu
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.ScopedValue;
 import com.apple.foundationdb.record.provider.foundationdb.storestate.FDBRecordStoreStateCache;
 import com.apple.foundationdb.record.provider.foundationdb.storestate.PassThroughRecordStoreStateCache;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanCache;
 import com.apple.foundationdb.tuple.Tuple;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
@@ -128,6 +129,8 @@ public class FDBDatabase {
     private final long reverseDirectoryMaxMillisPerTransaction;
     @Nonnull
     private FDBRecordStoreStateCache storeStateCache = PassThroughRecordStoreStateCache.instance();
+    @Nullable
+    private RecordQueryPlanCache planCache;
     private final Supplier<Boolean> transactionIsTracedSupplier;
     /// The number of cache entries to maintain in memory
     public static final int DEFAULT_MAX_REVERSE_CACHE_ENTRIES = 5000;
@@ -662,6 +665,7 @@ public class FDBDatabase {
         synchronized (reverseDirectoryCacheLock) {
             reverseDirectoryCache = null;
             reverseDirectoryInMemoryCache.invalidateAll();
+            SharedReverseDirectoryCache.instance().clear(clusterFile);
         }
     }
 
@@ -689,6 +693,29 @@ public class FDBDatabase {
         this.storeStateCache = storeStateCache;
     }
 
+    /**
+     * Get the query plan cache for this database. Record stores associated with this database use this cache
+     * when {@linkplain FDBRecordStore#planQuery planning queries}.
+     *
+     * @return the plan cache for this database or {@code null} if queries are always planned
+     * @see RecordQueryPlanCache
+     */
+    @Nullable
+    public RecordQueryPlanCache getPlanCache() {
+        return planCache;
+    }
+
+    /**
+     * Set the query plan cache for this database. All the record stores of this database will share the cache, but
+     * a plan is only given to stores with the same {@link com.apple.foundationdb.record.RecordMetaData} instance and
+     * index states as the store for which it was made, so stores with different meta-data can use it safely.
+     *
+     * @param planCache the plan cache or {@code null} to always plan queries
+     */
+    public void setPlanCache(@Nullable RecordQueryPlanCache planCache) {
+        this.planCache = planCache;
+    }
+
     @VisibleForTesting
     @API(API.Status.INTERNAL)
     public void clearCaches() {
@@ -696,6 +723,9 @@ public class FDBDatabase {
         clearForwardDirectoryCache();
         clearReverseDirectoryCache();
         storeStateCache.clear();
+        if (planCache != null) {
+            planCache.clear();
+        }
     }
 
     public synchronized void close() {
@@ -22,6 +22,7 @@ package com.apple.foundationdb.record.provider.foundationdb;
 
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.IsolationLevel;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.RecordMetaDataBuilder;
@@ -97,6 +98,8 @@ public class FDBMetaDataStore extends FDBStoreBase implements RecordMetaDataProv
     private final MetaDataCache cache;
     @Nullable
     private PendingCacheUpdate pendingCacheUpdate;
+    @Nullable
+    private SharedMetaDataCache sharedCache;
     private boolean maintainHistory = true;
 
     // It is recommended to use {@link #FDBMetaDataStore(FDBRecordContext, KeySpacePath)} instead.
@@ -235,6 +238,26 @@ public class FDBMetaDataStore extends FDBStoreBase implements RecordMetaDataProv
         this.maintainHistory = maintainHistory;
     }
 
+    /**
+     * Get the JVM-wide cache of built meta-data used by this store, if any.
+     * @return the shared meta-data cache or {@code null} if built meta-data is not shared
+     */
+    @Nullable
+    public SharedMetaDataCache getSharedMetaDataCache() {
+        return sharedCache;
+    }
+
+    /**
+     * Set a JVM-wide cache of built meta-data to share with other meta-data stores.
+     * When set, this store shares each version of the meta-data that it builds through the cache, and uses the
+     * {@linkplain FDBRecordContext#getMetaDataVersionStampAsync meta-data version-stamp} to tell when the version it
+     * last loaded is still current. Saving new meta-data then also updates the meta-data version-stamp key.
+     * @param sharedCache the shared meta-data cache, normally {@link SharedMetaDataCache#instance()}, or {@code null} to not share
+     */
+    public void setSharedMetaDataCache(@Nullable SharedMetaDataCache sharedCache) {
+        this.sharedCache = sharedCache;
+    }
+
     /**
      * Load current meta-data from store and set for <code>getRecordMetaData</code>.
      * @param checkCache {@code true} if the cache should be checked first
@@ -249,7 +272,7 @@ public class FDBMetaDataStore extends FDBStoreBase implements RecordMetaDataProv
                 RecordMetaDataProto.MetaData metaDataProto = parseMetaDataProto(serialized);
                 cachedSerializedVersion = metaDataProto.getVersion();
                 if (currentVersion < 0 || currentVersion == cachedSerializedVersion) {
-                    recordMetaData = buildMetaData(metaDataProto, false);
+                    recordMetaData = buildCurrentMetaData(metaDataProto);
                     addPendingCacheUpdate(recordMetaData);
                     if (LOGGER.isDebugEnabled()) {
                         LOGGER.debug(KeyValueLogMessage.of("Using cached serialized meta-data",
@@ -276,7 +299,7 @@ public class FDBMetaDataStore extends FDBStoreBase implements RecordMetaDataProv
                         return null;
                     }
                     RecordMetaDataProto.MetaData metaDataProto = parseMetaDataProto(serialized);
-                    recordMetaData = buildMetaData(metaDataProto, false);
+                    recordMetaData = buildCurrentMetaData(metaDataProto);
                     if (cache != null) {
                         int serializedVersion = recordMetaData.getVersion();
                         if (currentVersion != serializedVersion) {
@@ -297,6 +320,14 @@ public class FDBMetaDataStore extends FDBStoreBase implements RecordMetaDataProv
         return instrument(FDBStoreTimer.Events.LOAD_META_DATA, future);
     }
 
+    @Nonnull
+    private RecordMetaData buildCurrentMetaData(@Nonnull RecordMetaDataProto.MetaData metaDataProto) {
+        if (sharedCache == null) {
+            return buildMetaData(metaDataProto, false);
+        }
+        return sharedCache.getOrBuild(this, metaDataProto.getVersion(), () -> buildMetaData(metaDataProto, false));
+    }
+
     protected CompletableFuture<byte[]> loadCurrentSerialized() {
         return SplitHelper.loadWithSplit(ensureContextActive(), context, getSubspace(), CURRENT_KEY, true, false, null)
                 // TODO: Compatibility with old stores that used whole subspace for current meta-data.
@@ -400,6 +431,10 @@ public class FDBMetaDataStore extends FDBStoreBase implements RecordMetaDataProv
             recordMetaData = validatedMetaData;
             byte[] serialized = metaDataProto.toByteArray();
             SplitHelper.saveWithSplit(context, getSubspace(), CURRENT_KEY, serialized, null);
+            if (sharedCache != null) {
+                // Let other stores sharing the cache know that the version they have may no longer be current.
+                context.setMetaDataVersionStamp();
+            }
             if (cache != null) {
                 cache.setCurrentVersion(context, recordMetaData.getVersion());
                 addPendingCacheUpdate(recordMetaData);
@@ -415,7 +450,29 @@ public class FDBMetaDataStore extends FDBStoreBase implements RecordMetaDataProv
         if (recordMetaData != null) {
             return CompletableFuture.completedFuture(recordMetaData);
         }
+        if (sharedCache == null) {
+            return loadRecordMetaData(errorIfMissing);
+        }
+        final SharedMetaDataCache currentSharedCache = sharedCache;
+        return context.getMetaDataVersionStampAsync(IsolationLevel.SNAPSHOT).thenCompose(metaDataVersionStamp -> {
+            if (metaDataVersionStamp != null) {
+                final RecordMetaData sharedMetaData = currentSharedCache.getCurrent(this, metaDataVersionStamp);
+                if (sharedMetaData != null) {
+                    increment(FDBStoreTimer.Counts.SHARED_META_DATA_CACHE_HIT);
+                    recordMetaData = sharedMetaData;
+                    return CompletableFuture.completedFuture(recordMetaData);
+                }
+            }
+            return loadRecordMetaData(errorIfMissing).thenApply(metaData -> {
+                if (metaDataVersionStamp != null && metaData != null) {
+                    currentSharedCache.setCurrent(this, metaDataVersionStamp, metaData.getVersion());
+                }
+                return metaData;
+            });
+        });
+    }
 
+    private CompletableFuture<RecordMetaData> loadRecordMetaData(boolean errorIfMissing) {
         final CompletableFuture<Integer> currentVersionFuture = cache == null ? CompletableFuture.completedFuture(-1)
                                                                               : cache.getCurrentVersionAsync(context);
 
@@ -50,6 +50,7 @@ import javax.annotation.Nullable;
 import java.nio.charset.Charset;
 import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -150,6 +151,8 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
     @Nonnull
     private final Queue<CommitCheckAsync> commitChecks = new ArrayDeque<>();
     @Nonnull
+    private final Map<String, CommitCheckAsync> namedCommitChecks = new HashMap<>();
+    @Nonnull
     private final Map<String, PostCommit> postCommits = new LinkedHashMap<>();
     private boolean dirtyStoreState;
     private boolean dirtyMetaDataVersionStamp;
@@ -689,6 +692,42 @@ public class FDBRecordContext extends FDBTransactionContext implements AutoClose
         });
     }
 
+    /**
+     * Fetches a named {@link CommitCheckAsync}, creating and adding a new one if it does not already exist.
+     *
+     * This allows several operations within the same transaction to share a single check, such as one that
+     * accumulates work to be done just before commit. The check should not report itself {@linkplain CommitCheckAsync#isReady ready}
+     * before commit time, since it can then be performed and discarded by {@link #addCommitCheck(CommitCheckAsync)}
+     * while still being returned by this method.
+     *
+     * @param name name of the commit check
+     * @param ifNotExists if the commit check has not been previously added, a function that will be
+     *   called to create a new check by the provided name
+     * @return the commit check
+     */
+    @Nonnull
+    public synchronized CommitCheckAsync getOrCreateCommitCheck(@Nonnull String name, @Nonnull Function<String, CommitCheckAsync> ifNotExists) {
+        CommitCheckAsync check = namedCommitChecks.get(name);
+        if (check == null) {
+            check = ifNotExists.apply(name);
+            namedCommitChecks.put(name, check);
+            addCommitCheck(check);
+        }
+        return check;
+    }
+
+    /**
+     * Fetches a previously added named commit check.
+     *
+     * @param name name of the commit check
+     * @return the commit check, if it was previously added with {@link #getOrCreateCommitCheck(String, Function)}
+     *   or {@code null} if there is no check by the provided {@code name}
+     */
+    @Nullable
+    public synchronized CommitCheckAsync getCommitCheck(@Nonnull String name) {
+        return namedCommitChecks.get(name);
+    }
+
     /**
      * Run any {@link CommitCheckAsync}s that are still outstanding.
      * @return a future that is complete when all checks have been performed
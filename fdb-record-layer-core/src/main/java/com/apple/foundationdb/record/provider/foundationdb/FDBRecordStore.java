@@ -77,7 +77,9 @@ import com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
 import com.apple.foundationdb.record.provider.common.DynamicMessageRecordSerializer;
 import com.apple.foundationdb.record.provider.common.RecordSerializer;
+import com.apple.foundationdb.record.provider.foundationdb.indexes.TextIndexMaintainer;
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpacePath;
+import com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindowLeaderboardIndexMaintainer;
 import com.apple.foundationdb.record.provider.foundationdb.storestate.FDBRecordStoreStateCache;
 import com.apple.foundationdb.record.query.QueryToKeyMatcher;
 import com.apple.foundationdb.record.query.RecordQuery;
@@ -87,6 +89,8 @@ import com.apple.foundationdb.record.query.expressions.QueryComponent;
 import com.apple.foundationdb.record.query.expressions.RecordTypeKeyComparison;
 import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.statistics.IndexStatistics;
+import com.apple.foundationdb.record.query.plan.statistics.IndexStatisticsSketch;
 import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordFromStoredRecordPlan;
 import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordPlanner;
 import com.apple.foundationdb.subspace.Subspace;
@@ -115,6 +119,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -210,6 +215,11 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     protected static final Object INDEX_UNIQUENESS_VIOLATIONS_KEY = FDBRecordStoreKeyspace.INDEX_UNIQUENESS_VIOLATIONS_SPACE.key();
     protected static final Object RECORD_VERSION_KEY = FDBRecordStoreKeyspace.RECORD_VERSION_SPACE.key();
     protected static final Object INDEX_BUILD_SPACE_KEY = FDBRecordStoreKeyspace.INDEX_BUILD_SPACE.key();
+    protected static final Object STORE_STATE_VERSION_STAMP_KEY = FDBRecordStoreKeyspace.STORE_STATE_VERSION_STAMP.key();
+    protected static final Object INDEX_STATISTICS_SPACE_KEY = FDBRecordStoreKeyspace.INDEX_STATISTICS_SPACE.key();
+
+    // A placeholder for the version-stamp followed by its offset within the value, which is zero.
+    private static final byte[] STORE_STATE_VERSION_STAMP_VALUE = new byte[FDBRecordVersion.GLOBAL_VERSION_LENGTH + Integer.BYTES];
 
     @SuppressWarnings("squid:S2386")
     @SpotBugsSuppressWarnings("MS_MUTABLE_ARRAY")
@@ -792,6 +802,114 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return getSubspace().subspace(Tuple.from(INDEX_BUILD_SPACE_KEY, index.getSubspaceTupleKey()));
     }
 
+    /**
+     * Subspace for index in which to keep the sketches from which its {@link IndexStatistics} are computed.
+     * @param index the index to retrieve the statistics subspace for
+     * @return the subspace for the statistics of the given index
+     */
+    @Nonnull
+    public Subspace indexStatisticsSubspace(@Nonnull Index index) {
+        return getSubspace().subspace(Tuple.from(INDEX_STATISTICS_SPACE_KEY, index.getSubspaceTupleKey()));
+    }
+
+    /**
+     * Save a sketch of some of the entries of an index.
+     * All the sketches saved for an index are merged when its statistics are loaded. Saving a sketch with the same
+     * part key as an existing one replaces it, so that collecting the same entries again, such as when a transaction
+     * is retried, does not count them twice.
+     * @param index the index whose entries were sketched
+     * @param partKey a key identifying the part of the index that was sketched
+     * @param sketch the sketch of those entries
+     */
+    public void saveIndexStatisticsSketch(@Nonnull Index index, @Nonnull Tuple partKey, @Nonnull IndexStatisticsSketch sketch) {
+        ensureContextActive().set(indexStatisticsSubspace(index).pack(partKey), sketch.toBytes());
+    }
+
+    /**
+     * Load the statistics for an index by merging all of its saved sketches.
+     * The sketches are read at snapshot isolation, so that planning with them does not conflict with
+     * their being refreshed.
+     * @param index the index to load statistics for
+     * @return a future that completes to the statistics of the given index or {@code null} if none have been collected
+     */
+    @Nonnull
+    public CompletableFuture<IndexStatistics> loadIndexStatisticsAsync(@Nonnull Index index) {
+        return ensureContextActive().snapshot().getRange(indexStatisticsSubspace(index).range()).asList().thenApply(keyValues -> {
+            IndexStatisticsSketch merged = null;
+            for (KeyValue keyValue : keyValues) {
+                final IndexStatisticsSketch sketch = IndexStatisticsSketch.fromBytes(keyValue.getValue());
+                if (merged == null) {
+                    merged = sketch;
+                } else {
+                    merged.merge(sketch);
+                }
+            }
+            return merged == null ? null : merged.toStatistics();
+        });
+    }
+
+    /**
+     * Load the statistics for all of the readable value indexes that have any.
+     * The result is suitable for passing to {@link com.apple.foundationdb.record.query.plan.QueryPlanner#setIndexStatistics}.
+     * @return a future that completes to a map from index name to statistics
+     */
+    @Nonnull
+    public CompletableFuture<Map<String, IndexStatistics>> loadIndexStatisticsAsync() {
+        final List<Index> indexes = getRecordMetaData().getAllIndexes().stream()
+                .filter(index -> IndexTypes.VALUE.equals(index.getType()) && isIndexReadable(index))
+                .collect(Collectors.toList());
+        final List<CompletableFuture<IndexStatistics>> futures = indexes.stream()
+                .map(this::loadIndexStatisticsAsync)
+                .collect(Collectors.toList());
+        return AsyncUtil.getAll(futures).thenApply(statistics -> {
+            final Map<String, IndexStatistics> result = new HashMap<>();
+            for (int i = 0; i < indexes.size(); i++) {
+                if (statistics.get(i) != null) {
+                    result.put(indexes.get(i).getName(), statistics.get(i));
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Collect statistics for a value index by scanning its entries.
+     * Like other full scans, this is not expected to finish in a single transaction: the scan stops when a limit in
+     * the given scan properties is reached, saving a sketch of the entries it did read, and the returned
+     * continuation is then given to a call in a new transaction. Starting without a continuation clears any
+     * statistics already collected for the index.
+     * @param index the index to collect statistics for
+     * @param continuation the continuation returned by the previous call or {@code null} to start from the beginning
+     * @param scanProperties properties for the scan, including its limits
+     * @return a future that completes to the continuation for the next call or {@code null} if the whole index has been scanned
+     */
+    @Nonnull
+    public CompletableFuture<byte[]> collectIndexStatisticsAsync(@Nonnull Index index, @Nullable byte[] continuation,
+                                                                 @Nonnull ScanProperties scanProperties) {
+        if (!IndexTypes.VALUE.equals(index.getType())) {
+            throw new RecordCoreArgumentException("statistics can only be collected for value indexes")
+                    .addLogInfo(LogMessageKeys.INDEX_NAME, index.getName())
+                    .addLogInfo(LogMessageKeys.INDEX_TYPE, index.getType());
+        }
+        if (continuation == null) {
+            ensureContextActive().clear(indexStatisticsSubspace(index).range());
+        }
+        final IndexStatisticsSketch sketch = new IndexStatisticsSketch(index.getColumnSize());
+        final AtomicReference<Tuple> firstKey = new AtomicReference<>();
+        return scanIndex(index, IndexScanType.BY_VALUE, TupleRange.ALL, continuation, scanProperties)
+                .forEachResult(result -> {
+                    final Tuple key = result.get().getKey();
+                    firstKey.compareAndSet(null, key);
+                    sketch.add(key);
+                })
+                .thenApply(noNextResult -> {
+                    if (firstKey.get() != null) {
+                        saveIndexStatisticsSketch(index, Tuple.from(firstKey.get()), sketch);
+                    }
+                    return noNextResult.getContinuation().toBytes();
+                });
+    }
+
     /**
      * Get the maintainer for a given index.
      * @param index the required index
@@ -884,6 +1002,176 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return context.instrument(FDBStoreTimer.Events.LOAD_RECORD, result);
     }
 
+    @Override
+    @Nonnull
+    public List<CompletableFuture<FDBStoredRecord<Message>>> loadRecordsInternal(@Nonnull final List<Tuple> primaryKeys,
+                                                                                 @Nonnull ExecuteState executeState,
+                                                                                 final boolean snapshot) {
+        return loadTypedRecords(serializer, primaryKeys, executeState, snapshot);
+    }
+
+    @Nonnull
+    protected <M extends Message> List<CompletableFuture<FDBStoredRecord<M>>> loadTypedRecords(@Nonnull RecordSerializer<M> typedSerializer,
+                                                                                              @Nonnull final List<Tuple> primaryKeys,
+                                                                                              @Nonnull ExecuteState executeState,
+                                                                                              final boolean snapshot) {
+        final RecordMetaData metaData = metaDataProvider.getRecordMetaData();
+        final FDBStoreTimer timer = getTimer();
+        if (timer != null) {
+            timer.increment(FDBStoreTimer.Counts.LOAD_RECORDS_BATCH_KEY, primaryKeys.size());
+        }
+        if (useOldVersionFormat() || (!metaData.isSplitLongRecords() && omitUnsplitRecordSuffix)) {
+            // Neither versions kept in a separate subspace nor unsplit records without a suffix can be
+            // assembled from a shared range read, so load each record on its own.
+            return primaryKeys.stream()
+                    .map(primaryKey -> loadTypedRecord(typedSerializer, primaryKey, executeState, snapshot))
+                    .collect(Collectors.toList());
+        }
+
+        final long startTime = System.nanoTime();
+        final Map<Tuple, CompletableFuture<FDBRawRecord>> rawRecords = loadRawRecordsAsync(primaryKeys, executeState, snapshot);
+        final Map<Tuple, CompletableFuture<FDBStoredRecord<M>>> records = new HashMap<>();
+        final List<CompletableFuture<FDBStoredRecord<M>>> result = new ArrayList<>(primaryKeys.size());
+        for (Tuple primaryKey : primaryKeys) {
+            result.add(records.computeIfAbsent(primaryKey, key -> {
+                final CompletableFuture<FDBStoredRecord<M>> record = rawRecords.get(key).thenCompose(rawRecord -> {
+                    if (rawRecord == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    final ByteScanLimiter byteScanLimiter = executeState.getByteScanLimiter();
+                    if (byteScanLimiter != null) {
+                        byteScanLimiter.registerScannedBytes(rawRecord.getKeySize() + rawRecord.getValueSize());
+                    }
+                    return deserializeRecord(typedSerializer, rawRecord, metaData, Optional.empty());
+                });
+                return context.instrument(FDBStoreTimer.Events.LOAD_RECORD, record, startTime);
+            }));
+        }
+        return result;
+    }
+
+    /**
+     * Asynchronously read many records from the database.
+     * The distinct primary keys are sorted and grouped into runs of adjacent keys. Each run is read with a single
+     * range read, and up to the {@link PipelineOperation#KEY_TO_RECORD} pipeline size runs are read at once.
+     * Records that a range read returns but that were not asked for are counted against the byte scan limit of the
+     * given state; those that were asked for are left to the caller to count.
+     * @param primaryKeys the keys for the records to be loaded
+     * @param executeState the execution state whose byte scan limit other records read are counted against
+     * @param snapshot whether to snapshot read
+     * @return a map from each distinct primary key to a future that will return the raw record or null if there was no record with that key
+     */
+    @Nonnull
+    private Map<Tuple, CompletableFuture<FDBRawRecord>> loadRawRecordsAsync(@Nonnull final List<Tuple> primaryKeys,
+                                                                            @Nonnull ExecuteState executeState,
+                                                                            final boolean snapshot) {
+        final Map<Tuple, CompletableFuture<FDBRawRecord>> rawRecords = new HashMap<>();
+        final List<Tuple> toLoad = new ArrayList<>();
+        for (Tuple primaryKey : primaryKeys) {
+            if (!rawRecords.containsKey(primaryKey)) {
+                final FDBRawRecord recordFromCache = preloadCache.getIfPresent(primaryKey);
+                if (recordFromCache != null) {
+                    rawRecords.put(primaryKey, CompletableFuture.completedFuture(recordFromCache));
+                } else {
+                    rawRecords.put(primaryKey, new CompletableFuture<>());
+                    toLoad.add(primaryKey);
+                }
+            }
+        }
+        if (toLoad.isEmpty()) {
+            return rawRecords;
+        }
+        Collections.sort(toLoad);
+        final List<List<Tuple>> runs = new ArrayList<>();
+        List<Tuple> run = null;
+        for (Tuple primaryKey : toLoad) {
+            if (run == null || !isAdjacentPrimaryKey(run.get(run.size() - 1), primaryKey)) {
+                run = new ArrayList<>();
+                runs.add(run);
+            }
+            run.add(primaryKey);
+        }
+        RecordCursor.fromList(getExecutor(), runs)
+                .forEachAsync(keys -> loadRawRecordRunAsync(keys, rawRecords, executeState, snapshot), getPipelineSize(PipelineOperation.KEY_TO_RECORD))
+                .whenComplete((vignore, err) -> {
+                    if (err != null) {
+                        for (CompletableFuture<FDBRawRecord> rawRecord : rawRecords.values()) {
+                            rawRecord.completeExceptionally(err);
+                        }
+                    }
+                });
+        return rawRecords;
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> loadRawRecordRunAsync(@Nonnull final List<Tuple> run,
+                                                          @Nonnull final Map<Tuple, CompletableFuture<FDBRawRecord>> rawRecords,
+                                                          @Nonnull ExecuteState executeState,
+                                                          final boolean snapshot) {
+        if (run.size() == 1) {
+            final Tuple primaryKey = run.get(0);
+            return loadRawRecordAsync(primaryKey, null, snapshot).thenAccept(rawRecords.get(primaryKey)::complete);
+        }
+        final FDBStoreTimer timer = getTimer();
+        if (timer != null) {
+            timer.increment(FDBStoreTimer.Counts.LOAD_RECORDS_COALESCED_READ);
+            timer.increment(FDBStoreTimer.Counts.LOAD_RECORDS_COALESCED_KEY, run.size());
+        }
+        final Subspace recordsSubspace = recordsSubspace();
+        final ScanProperties scanProperties = new ScanProperties(ExecuteProperties.newBuilder()
+                .setIsolationLevel(snapshot ? IsolationLevel.SNAPSHOT : IsolationLevel.SERIALIZABLE)
+                .setDefaultCursorStreamingMode(CursorStreamingMode.WANT_ALL)
+                .build());
+        final RecordCursor<KeyValue> keyValues = KeyValueCursor.Builder.withSubspace(recordsSubspace)
+                .setContext(context)
+                .setLow(run.get(0), EndpointType.RANGE_INCLUSIVE)
+                .setHigh(run.get(run.size() - 1), EndpointType.RANGE_INCLUSIVE)
+                .setScanProperties(scanProperties)
+                .build();
+        final Set<Tuple> runKeys = new HashSet<>(run);
+        return new SplitHelper.KeyValueUnsplitter(context, recordsSubspace, keyValues, false, null, scanProperties)
+                .forEach(rawRecord -> {
+                    if (runKeys.contains(rawRecord.getPrimaryKey())) {
+                        rawRecords.get(rawRecord.getPrimaryKey()).complete(rawRecord);
+                    } else {
+                        // A record with a longer primary key that lies between two requested ones was still read.
+                        final ByteScanLimiter byteScanLimiter = executeState.getByteScanLimiter();
+                        if (byteScanLimiter != null) {
+                            byteScanLimiter.registerScannedBytes(rawRecord.getKeySize() + rawRecord.getValueSize());
+                        }
+                    }
+                })
+                .thenAccept(vignore -> {
+                    // Anything not found in the range does not exist.
+                    for (Tuple primaryKey : run) {
+                        rawRecords.get(primaryKey).complete(null);
+                    }
+                });
+    }
+
+    /**
+     * Determine whether two sorted primary keys are adjacent, that is, whether no other record with a primary key of
+     * the same length can lie between them. This is the case when they only differ in their last element, which is an
+     * integer one greater in the second key. Records with longer primary keys that extend the lesser key can still lie
+     * between them; for example, {@code (1, "x")} sorts between {@code (1)} and {@code (2)}. A range read over such
+     * keys returns those records as well, which are then discarded.
+     * @param previous the lesser primary key
+     * @param next the greater primary key
+     * @return whether a single range read will return both records and no other records with primary keys of the same length
+     */
+    static boolean isAdjacentPrimaryKey(@Nonnull Tuple previous, @Nonnull Tuple next) {
+        final int size = previous.size();
+        if (size == 0 || next.size() != size) {
+            return false;
+        }
+        final Object previousLast = previous.get(size - 1);
+        final Object nextLast = next.get(size - 1);
+        if (!(previousLast instanceof Long) || !(nextLast instanceof Long) || (Long)nextLast - (Long)previousLast != 1L) {
+            return false;
+        }
+        return size == 1 || TupleHelpers.equals(TupleHelpers.subTuple(previous, 0, size - 1), TupleHelpers.subTuple(next, 0, size - 1));
+    }
+
     /**
      * Async version of {@link #loadRecordVersion(Tuple)}. If the
      * record does not have a version, but that cannot be determined
@@ -1316,6 +1604,8 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         // meta-data is cacheable, but we can't know that from here.
         context.setMetaDataVersionStamp();
         context.setDirtyStoreState(true);
+        TextIndexMaintainer.discardBufferedUpdates(context, subspace);
+        TimeWindowLeaderboardIndexMaintainer.discardBufferedUpdates(context, subspace);
         final Transaction transaction = context.ensureActive();
         transaction.clear(subspace.range());
     }
@@ -1325,12 +1615,16 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         preloadCache.invalidateAll();
         Transaction tr = ensureContextActive();
 
-        // Clear out all data except for the store header key and the index state space.
-        // Those two subspaces are determined by the configuration of the record store rather then
+        // Clear out all data except for the store header key, the index state space and the store state version-stamp.
+        // Those are determined by the configuration of the record store rather then
         // the records.
         Range indexStateRange = indexStateSubspace().range();
+        byte[] storeStateVersionStampKey = getSubspace().pack(STORE_STATE_VERSION_STAMP_KEY);
+        TextIndexMaintainer.discardBufferedUpdates(context, getSubspace());
+        TimeWindowLeaderboardIndexMaintainer.discardBufferedUpdates(context, getSubspace());
         tr.clear(recordsSubspace().getKey(), indexStateRange.begin);
-        tr.clear(indexStateRange.end, getSubspace().range().end);
+        tr.clear(indexStateRange.end, storeStateVersionStampKey);
+        tr.clear(ByteArrayUtil.join(storeStateVersionStampKey, new byte[] {0x00}), getSubspace().range().end);
     }
 
     @Override
@@ -1664,7 +1958,8 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     @Override
     @Nonnull
     public RecordQueryPlan planQuery(@Nonnull RecordQuery query) {
-        final RecordQueryPlanner planner = new RecordQueryPlanner(getRecordMetaData(), getRecordStoreState());
+        final RecordQueryPlanner planner = new RecordQueryPlanner(getRecordMetaData(), getRecordStoreState(), getTimer());
+        planner.setPlanCache(context.getDatabase().getPlanCache());
         return planner.plan(query);
     }
 
@@ -2024,6 +2319,10 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         RecordMetaDataProto.DataStoreInfo oldStoreHeader = oldStoreHeaderRef.get();
         RecordMetaDataProto.DataStoreInfo newStoreHeader = newStoreHeaderRef.get();
 
+        if (oldStoreHeader.getCacheable() || newStoreHeader.getCacheable()) {
+            updateStoreStateVersionStamp();
+        }
+
         // Update the meta-data version-stamp key as appropriate.
         if (oldStoreHeader.getCacheable()) {
             // The old store header had a cacheable store header, so update the database's meta-data version-stamp
@@ -2128,6 +2427,16 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         return context.asyncToSync(FDBStoreTimer.Waits.WAIT_SET_STATE_CACHEABILITY, setStateCacheabilityAsync(cacheable));
     }
 
+    /**
+     * Set this store's store state version-stamp key to the version-stamp of the current transaction. This key
+     * changes whenever the cacheable state of this store does, so caches such as the
+     * {@link com.apple.foundationdb.record.provider.foundationdb.storestate.StoreVersionStampStoreStateCache StoreVersionStampStoreStateCache}
+     * can validate a cached state for this one store without depending on changes to any other store.
+     */
+    private void updateStoreStateVersionStamp() {
+        ensureContextActive().mutate(MutationType.SET_VERSIONSTAMPED_VALUE, getSubspace().pack(STORE_STATE_VERSION_STAMP_KEY), STORE_STATE_VERSION_STAMP_VALUE);
+    }
+
     private boolean isStateCacheableInternal() {
         if (recordStoreStateRef.get() == null) {
             throw uninitializedStoreException("cannot check record store state cacheability on uninitialized store");
@@ -2356,6 +2665,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
                 // The cache contains index state information, so updates to this information must also
                 // update the meta-data version stamp or instances might cache state index states.
                 context.setMetaDataVersionStamp();
+                updateStoreStateVersionStamp();
             }
             Transaction tr = context.ensureActive();
             if (IndexState.READABLE.equals(indexState)) {
@@ -3499,10 +3809,13 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
     // TODO: Better to go through the index maintainer?
     void clearIndexData(@Nonnull Index index) {
         Transaction tr = ensureContextActive();
+        TextIndexMaintainer.discardBufferedUpdates(context, indexSubspace(index));
+        TimeWindowLeaderboardIndexMaintainer.discardBufferedUpdates(context, indexSecondarySubspace(index));
         tr.clear(Range.startsWith(indexSubspace(index).pack())); // startsWith to handle ungrouped aggregate indexes
         tr.clear(indexSecondarySubspace(index).range());
         tr.clear(indexRangeSubspace(index).range());
         tr.clear(indexUniquenessViolationsSubspace(index).range());
+        tr.clear(indexStatisticsSubspace(index).range());
         // Under the index build subspace, there are two lower level subspaces, the lock space and the scanned records
         // subspace. We are not supposed to clear the lock subspace, which is used to run online index jobs which may
         // invoke this method. But we should clear the scanned records subspace, which, roughly speaking, counts how
@@ -3527,6 +3840,7 @@ public class FDBRecordStore extends FDBStoreBase implements FDBRecordStoreBase<M
         tr.clear(getSubspace().range(Tuple.from(INDEX_RANGE_SPACE_KEY, formerIndex.getSubspaceTupleKey())));
         tr.clear(getSubspace().pack(Tuple.from(INDEX_STATE_SPACE_KEY, formerIndex.getSubspaceTupleKey())));
         tr.clear(getSubspace().range(Tuple.from(INDEX_UNIQUENESS_VIOLATIONS_KEY, formerIndex.getSubspaceTupleKey())));
+        tr.clear(getSubspace().range(Tuple.from(INDEX_STATISTICS_SPACE_KEY, formerIndex.getSubspaceTupleKey())));
         if (getTimer() != null) {
             getTimer().recordSinceNanoTime(FDBStoreTimer.Events.REMOVE_FORMER_INDEX, startTime);
         }
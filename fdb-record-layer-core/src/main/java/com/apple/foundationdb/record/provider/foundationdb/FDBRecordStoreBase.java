@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.provider.foundationdb;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.EndpointType;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.ExecuteProperties;
@@ -40,6 +41,7 @@ import com.apple.foundationdb.record.RecordMetaDataProvider;
 import com.apple.foundationdb.record.RecordScanLimiter;
 import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.cursors.PrefetchCursor;
 import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
@@ -63,6 +65,7 @@ import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -518,6 +521,56 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
     @API(API.Status.INTERNAL)
     CompletableFuture<FDBStoredRecord<M>> loadRecordInternal(@Nonnull Tuple primaryKey, @Nonnull ExecuteState executeState, boolean snapshot);
 
+    /**
+     * Load the records with the given primary keys.
+     * @param primaryKeys the primary keys of the records to load
+     * @return a list of the loaded records in the same order as {@code primaryKeys}, with <code>null</code> for any key with no record
+     * @see #loadRecordsAsync(List)
+     */
+    @Nonnull
+    default List<FDBStoredRecord<M>> loadRecords(@Nonnull final List<Tuple> primaryKeys) {
+        return getContext().asyncToSync(FDBStoreTimer.Waits.WAIT_LOAD_RECORDS, loadRecordsAsync(primaryKeys));
+    }
+
+    /**
+     * Asynchronously load a batch of records.
+     * Records whose primary keys are adjacent are read using a single range read, and the reads are run in parallel
+     * up to the pipeline size for {@link PipelineOperation#KEY_TO_RECORD}.
+     * @param primaryKeys the primary keys of the records to load
+     * @return a future that will complete with a list of the loaded records in the same order as {@code primaryKeys},
+     * with <code>null</code> for any key with no record
+     */
+    @Nonnull
+    default CompletableFuture<List<FDBStoredRecord<M>>> loadRecordsAsync(@Nonnull final List<Tuple> primaryKeys) {
+        return loadRecordsAsync(primaryKeys, false);
+    }
+
+    /**
+     * Asynchronously load a batch of records.
+     * @param primaryKeys the primary keys of the records to load
+     * @param snapshot whether to load at snapshot isolation
+     * @return a future that will complete with a list of the loaded records in the same order as {@code primaryKeys},
+     * with <code>null</code> for any key with no record
+     * @see #loadRecordsAsync(List)
+     */
+    @Nonnull
+    default CompletableFuture<List<FDBStoredRecord<M>>> loadRecordsAsync(@Nonnull final List<Tuple> primaryKeys, final boolean snapshot) {
+        return getContext().instrument(FDBStoreTimer.Events.LOAD_RECORDS,
+                AsyncUtil.getAll(loadRecordsInternal(primaryKeys, ExecuteState.NO_LIMITS, snapshot)));
+    }
+
+    /**
+     * Load a batch of records, returning a separate future for each primary key so that callers can consume
+     * each record as soon as it is ready.
+     * @param primaryKeys the primary keys of the records to load
+     * @param executeState an execution state object to be used to enforce limits on query execution
+     * @param snapshot whether to load at snapshot isolation
+     * @return a list of futures for the loaded records in the same order as {@code primaryKeys}
+     */
+    @Nonnull
+    @API(API.Status.INTERNAL)
+    List<CompletableFuture<FDBStoredRecord<M>>> loadRecordsInternal(@Nonnull List<Tuple> primaryKeys, @Nonnull ExecuteState executeState, boolean snapshot);
+
     /**
      * Get record into FDB RYW cache.
      * Caller needs to hold on to result until ready or else there is a chance it will get
@@ -824,8 +877,26 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
                                                                @Nonnull IndexOrphanBehavior orphanBehavior,
                                                                @Nonnull ScanProperties scanProperties) {
         final Index index = getRecordMetaData().getIndex(indexName);
-        return fetchIndexRecords(index, scanIndex(index, scanType, range, continuation, scanProperties), orphanBehavior,
-                scanProperties.getExecuteProperties().getState());
+        final RecordCursor<IndexEntry> indexCursor = prefetchIndexEntries(scanIndex(index, scanType, range, continuation, scanProperties),
+                scanProperties.getExecuteProperties());
+        return fetchIndexRecords(index, indexCursor, orphanBehavior, scanProperties.getExecuteProperties().getState());
+    }
+
+    /**
+     * Read ahead of the records being loaded for the entries of an index scan, if the execute properties ask for it.
+     * @param indexCursor a cursor iterating over entries in the index
+     * @param executeProperties the execute properties giving how far to read ahead
+     * @return a cursor returning the same entries as {@code indexCursor}
+     * @see ExecuteProperties#getIndexPrefetchSize()
+     */
+    @Nonnull
+    default RecordCursor<IndexEntry> prefetchIndexEntries(@Nonnull RecordCursor<IndexEntry> indexCursor,
+                                                          @Nonnull ExecuteProperties executeProperties) {
+        if (executeProperties.getIndexPrefetchSize() <= 0) {
+            return indexCursor;
+        }
+        return new PrefetchCursor<>(indexCursor, executeProperties.getIndexPrefetchSize(), executeProperties.getIndexPrefetchBytes(),
+                entry -> entry.getKey().pack().length + entry.getValue().pack().length, getTimer());
     }
 
     /**
@@ -927,8 +998,8 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
     default RecordCursor<FDBIndexedRecord<M>> fetchIndexRecords(@Nonnull RecordCursor<IndexEntry> indexCursor,
                                                                 @Nonnull IndexOrphanBehavior orphanBehavior,
                                                                 @Nonnull ExecuteState executeState) {
-        RecordCursor<FDBIndexedRecord<M>> recordCursor = indexCursor.mapPipelined(entry ->
-                loadIndexEntryRecord(entry, orphanBehavior, executeState), getPipelineSize(PipelineOperation.INDEX_TO_RECORD));
+        RecordCursor<FDBIndexedRecord<M>> recordCursor = indexCursor.mapBatchPipelined(entries ->
+                loadIndexEntryRecords(entries, orphanBehavior, executeState), getPipelineSize(PipelineOperation.INDEX_TO_RECORD));
         if (orphanBehavior == IndexOrphanBehavior.SKIP) {
             recordCursor = recordCursor.filter(Objects::nonNull);
         }
@@ -1056,28 +1127,67 @@ public interface FDBRecordStoreBase<M extends Message> extends RecordMetaDataPro
                                                                         @Nonnull final IndexOrphanBehavior orphanBehavior,
                                                                         @Nonnull final ExecuteState executeState) {
         final Tuple primaryKey = entry.getPrimaryKey();
-        return loadRecordInternal(primaryKey, executeState,false).thenApply(record -> {
-            if (record == null) {
-                switch (orphanBehavior) {
-                    case SKIP:
-                        return null;
-                    case RETURN:
-                        break;
-                    case ERROR:
-                        if (getTimer() != null) {
-                            getTimer().increment(FDBStoreTimer.Counts.BAD_INDEX_ENTRY);
-                        }
-                        throw new RecordCoreStorageException("record not found from index entry").addLogInfo(
-                                LogMessageKeys.INDEX_NAME, entry.getIndex().getName(),
-                                LogMessageKeys.PRIMARY_KEY, primaryKey,
-                                LogMessageKeys.INDEX_KEY, entry.getKey(),
-                                getSubspaceProvider().logKey(), getSubspaceProvider().toString(getContext()));
-                    default:
-                        throw new RecordCoreException("Unexpected index orphan behavior: " + orphanBehavior);
-                }
+        return loadRecordInternal(primaryKey, executeState,false).thenApply(record -> indexedRecord(entry, record, orphanBehavior));
+    }
+
+    /**
+     * Using the given index entries, resolve their primary keys and asynchronously return the referenced records.
+     * The records are loaded as a batch using {@link #loadRecordsInternal(List, ExecuteState, boolean)}.
+     * @param entries the index entries to be resolved
+     * @param orphanBehavior the {@link IndexOrphanBehavior} to apply if a record is not found
+     * @param executeState an execution state object to be used to enforce limits on query execution
+     * @return a list of futures for the records referred to by the given index entries, in the same order as {@code entries}
+     */
+    @Nonnull
+    default List<CompletableFuture<FDBIndexedRecord<M>>> loadIndexEntryRecords(@Nonnull final List<IndexEntry> entries,
+                                                                               @Nonnull final IndexOrphanBehavior orphanBehavior,
+                                                                               @Nonnull final ExecuteState executeState) {
+        final List<Tuple> primaryKeys = new ArrayList<>(entries.size());
+        for (IndexEntry entry : entries) {
+            primaryKeys.add(entry.getPrimaryKey());
+        }
+        final List<CompletableFuture<FDBStoredRecord<M>>> records = loadRecordsInternal(primaryKeys, executeState, false);
+        final List<CompletableFuture<FDBIndexedRecord<M>>> result = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            final IndexEntry entry = entries.get(i);
+            result.add(records.get(i).thenApply(record -> indexedRecord(entry, record, orphanBehavior)));
+        }
+        return result;
+    }
+
+    /**
+     * Combine an index entry with the record that it references, applying the given orphan behavior if
+     * there is no such record.
+     * @param entry the index entry
+     * @param record the record loaded using the entry's primary key or <code>null</code> if there was no such record
+     * @param orphanBehavior the {@link IndexOrphanBehavior} to apply if the record is not found
+     * @return the indexed record or <code>null</code> if the record is missing and orphans are skipped
+     */
+    @Nullable
+    @API(API.Status.INTERNAL)
+    default FDBIndexedRecord<M> indexedRecord(@Nonnull final IndexEntry entry,
+                                              @Nullable final FDBStoredRecord<M> record,
+                                              @Nonnull final IndexOrphanBehavior orphanBehavior) {
+        if (record == null) {
+            switch (orphanBehavior) {
+                case SKIP:
+                    return null;
+                case RETURN:
+                    break;
+                case ERROR:
+                    if (getTimer() != null) {
+                        getTimer().increment(FDBStoreTimer.Counts.BAD_INDEX_ENTRY);
+                    }
+                    throw new RecordCoreStorageException("record not found from index entry").addLogInfo(
+                            LogMessageKeys.INDEX_NAME, entry.getIndex().getName(),
+                            LogMessageKeys.PRIMARY_KEY, entry.getPrimaryKey(),
+                            LogMessageKeys.INDEX_KEY, entry.getKey(),
+                            getSubspaceProvider().logKey(), getSubspaceProvider().toString(getContext()));
+                default:
+                    throw new RecordCoreException("Unexpected index orphan behavior: " + orphanBehavior);
             }
-            return new FDBIndexedRecord<>(entry, record);
-        });
+        }
+        return new FDBIndexedRecord<>(entry, record);
     }
 
     /**
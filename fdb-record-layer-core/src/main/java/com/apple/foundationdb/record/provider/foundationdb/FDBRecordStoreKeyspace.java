@@ -40,6 +40,8 @@ public enum FDBRecordStoreKeyspace {
     INDEX_UNIQUENESS_VIOLATIONS_SPACE(7L),
     RECORD_VERSION_SPACE(8L),
     INDEX_BUILD_SPACE(9L),
+    STORE_STATE_VERSION_STAMP(10L),
+    INDEX_STATISTICS_SPACE(11L),
     ;
 
     private long id;
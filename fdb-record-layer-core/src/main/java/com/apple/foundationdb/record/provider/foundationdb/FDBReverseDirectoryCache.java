@@ -50,6 +50,7 @@ import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A persistent cache providing reverse lookup facilities from the FDB {@link com.apple.foundationdb.directory.DirectoryLayer}.
@@ -84,6 +85,8 @@ public class FDBReverseDirectoryCache {
 
     private FDBDatabase fdb;
     private CompletableFuture<Long> reverseDirectoryCacheEntry;
+    @Nonnull
+    private final SharedReverseDirectoryCache sharedCache = SharedReverseDirectoryCache.instance();
     // TODO: Log FDBReverseDirectoryCache cache stats to StoreTimer (https://github.com/FoundationDB/fdb-record-layer/issues/12)
     private AtomicLong persistentCacheMissCount = new AtomicLong(0L);
     private AtomicLong persistentCacheHitCount = new AtomicLong(0L);
@@ -208,6 +211,11 @@ public class FDBReverseDirectoryCache {
      * directory layer entry that was just created within an as-of-yet uncommitted transaction will not be visible
      * and, thus, result in a <code>NoSuchElementException</code>.
      *
+     * <p>
+     * The {@link SharedReverseDirectoryCache} is checked before reading the database, and the result of reading the
+     * database is added to it, including the result that there is no entry for the value.
+     * </p>
+     *
      * @param timer {@link FDBStoreTimer} for collecting metrics
      * @param scopedReverseDirectoryKey the value of the entry in the directory layer
      * @return an Optional of the key (path) associated with the provided directory layer value, if no such value exists
@@ -216,12 +224,79 @@ public class FDBReverseDirectoryCache {
     @Nonnull
     @SuppressWarnings("squid:S2095") // SonarQube doesn't realize that the context is closed in the returned future
     public CompletableFuture<Optional<String>> get(@Nullable FDBStoreTimer timer, @Nonnull final ScopedValue<Long> scopedReverseDirectoryKey) {
-        FDBRecordContext context = fdb.openContext();
-        context.setTimer(timer);
         CompletableFuture<Subspace> reverseCacheSubspaceFuture = getReverseCacheSubspace(scopedReverseDirectoryKey.getScope());
-        return reverseCacheSubspaceFuture
-                .thenCompose(subspace -> getFromSubspace(context, subspace, scopedReverseDirectoryKey))
-                .whenComplete((result, exception) -> context.close());
+        return reverseCacheSubspaceFuture.thenCompose(subspace -> {
+            final int partition = getSharedPartition(subspace);
+            final long value = scopedReverseDirectoryKey.getData();
+            final Optional<String> shared = sharedCache.getIfPresent(partition, value);
+            if (shared != null) {
+                if (timer != null) {
+                    timer.increment(shared.isPresent()
+                                    ? FDBStoreTimer.Counts.REVERSE_DIR_SHARED_CACHE_HIT_COUNT
+                                    : FDBStoreTimer.Counts.REVERSE_DIR_SHARED_CACHE_NEGATIVE_HIT_COUNT);
+                }
+                return CompletableFuture.completedFuture(shared);
+            }
+            FDBRecordContext context = fdb.openContext();
+            context.setTimer(timer);
+            return getFromSubspace(context, subspace, scopedReverseDirectoryKey)
+                    .thenApply(found -> {
+                        sharedCache.put(partition, value, found.orElse(null));
+                        return found;
+                    })
+                    .whenComplete((result, exception) -> context.close());
+        });
+    }
+
+    /**
+     * Load all of the entries of the reverse directory for the given scope into the {@link SharedReverseDirectoryCache}.
+     * The entries are read with range reads, many at a time, rather than one lookup per value, so this is much faster than
+     * looking up each value separately when a large number of values are going to be looked up. Entries beyond the size
+     * of the shared cache replace earlier ones. The scan uses a new transaction for each
+     * {@linkplain #getMaxRowsPerTransaction() maximum number of rows}.
+     *
+     * @param timer {@link FDBStoreTimer} for collecting metrics
+     * @param scope the resolver whose entries to load
+     * @return a future that completes when all of the entries have been loaded
+     */
+    @Nonnull
+    public CompletableFuture<Void> preloadSharedCache(@Nullable FDBStoreTimer timer, @Nonnull LocatableResolver scope) {
+        return getReverseCacheSubspace(scope).thenCompose(subspace -> {
+            final int partition = getSharedPartition(subspace);
+            final AtomicReference<byte[]> continuation = new AtomicReference<>(null);
+            return AsyncUtil.whileTrue(() -> fdb.runAsync(timer, null, context -> loadRegion(context, subspace, partition, continuation.get()))
+                    .thenApply(nextContinuation -> {
+                        continuation.set(nextContinuation);
+                        return nextContinuation != null;
+                    }), fdb.getExecutor());
+        });
+    }
+
+    @Nonnull
+    private CompletableFuture<byte[]> loadRegion(@Nonnull FDBRecordContext context,
+                                                 @Nonnull Subspace reverseDirectorySubspace,
+                                                 int partition,
+                                                 @Nullable byte[] continuation) {
+        final RecordCursor<KeyValue> cursor = KeyValueCursor.Builder.withSubspace(reverseDirectorySubspace)
+                .setContext(context)
+                .setRange(TupleRange.ALL)
+                .setContinuation(continuation)
+                .setScanProperties(new ScanProperties(ExecuteProperties.newBuilder()
+                        .setReturnedRowLimit(maxRowsPerTransaction)
+                        .setTimeLimit(maxMillisPerTransaction)
+                        .setIsolationLevel(IsolationLevel.SNAPSHOT)
+                        .build()))
+                .build();
+
+        return cursor.forEachResult(result -> {
+            final KeyValue kv = result.get();
+            final long value = reverseDirectorySubspace.unpack(kv.getKey()).getLong(0);
+            sharedCache.put(partition, value, Tuple.fromBytes(kv.getValue()).getString(0));
+        }).thenApply(result -> result.getContinuation().toBytes());
+    }
+
+    private int getSharedPartition(@Nonnull Subspace reverseCacheSubspace) {
+        return sharedCache.getPartition(fdb.getClusterFile(), reverseCacheSubspace.getKey());
     }
 
     /**
@@ -280,6 +355,7 @@ public class FDBReverseDirectoryCache {
                                                 LogMessageKeys.VALUE, value));
                             }
                             context.ensureActive().set(reverseCacheSubspace.pack(value), Tuple.from(pathKey.getData()).pack());
+                            sharedCache.invalidate(getSharedPartition(reverseCacheSubspace), value);
                             return null;
                         }));
     }
@@ -347,6 +423,8 @@ public class FDBReverseDirectoryCache {
                 // Take care NOT to place the value in our cache. We don't own the calling context/transaction
                 // so it is possible it could fail/rollback leaving our cache inconsistent.
                 transaction.set(reverseCacheSubspace.pack(pathValue), Tuple.from(pathString).pack());
+                // Do forget any earlier lookup that found it missing, though.
+                sharedCache.invalidate(getSharedPartition(reverseCacheSubspace), pathValue);
                 persistentCacheMissCount.incrementAndGet();
                 logStatsToStoreTimer(context, FDBStoreTimer.Counts.REVERSE_DIR_PERSISTENT_CACHE_MISS_COUNT);
             }
@@ -116,6 +116,11 @@ public class FDBStoreTimer extends StoreTimer {
          * This time includes fetching from the database and deserialization.
          */
         LOAD_RECORD("load record"),
+        /**
+         * The amount of time taken loading a batch of records by their primary keys.
+         * Each of the records loaded is also counted as a {@link #LOAD_RECORD}.
+         */
+        LOAD_RECORDS("load records"),
         /**
          * The amount of time taken loading record versions.
          * @deprecated this is no longer published
@@ -146,6 +151,10 @@ public class FDBStoreTimer extends StoreTimer {
         DELETE_INDEX_ENTRY("delete index entry"),
         /** The amount of time spent updating an entry in an atomic mutation index. */
         MUTATE_INDEX_ENTRY("mutate index entry"),
+        /** The amount of time spent applying text index updates that were buffered within a transaction. */
+        FLUSH_TEXT_INDEX_BUFFER("flush text index buffer"),
+        /** The amount of time spent ranking the documents of a text index by relevance to a query. */
+        SCORE_TEXT_INDEX("score text index"),
         /** The amount of time spent deleting an entry from a secondary index. */
         REBUILD_INDEX("rebuild index"),
         /** The amount of time spent clearing the space taken by an index that has been removed from the meta-data. */
@@ -199,6 +208,8 @@ public class FDBStoreTimer extends StoreTimer {
         QUERY_DISTINCT("compare query records for distinct"),
         /** The amount of time spent in {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedPrimaryKeyDistinctPlan} as part of executing a query. */
         QUERY_PK_DISTINCT("compare record primary key for distinct"),
+        /** The amount of time spent in {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan} as part of executing a query. */
+        QUERY_SORT("sort query records"),
         /** The amount of time spent in {@link com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindowLeaderboardDirectoryOperation}. */
         TIME_WINDOW_LEADERBOARD_GET_DIRECTORY("leaderboard get directory"),
         /** The amount of time spent in {@link com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindowLeaderboardWindowUpdate}. */
@@ -209,10 +220,14 @@ public class FDBStoreTimer extends StoreTimer {
         TIME_WINDOW_LEADERBOARD_GET_SUB_DIRECTORY("leaderboard get sub-directory"),
         /** The amount of time spent in {@link com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindowLeaderboardSaveSubDirectory}. */
         TIME_WINDOW_LEADERBOARD_SAVE_SUB_DIRECTORY("leaderboard save sub-directory"),
+        /** The amount of time spent applying leaderboard ranked set updates that were buffered within a transaction. */
+        FLUSH_TIME_WINDOW_LEADERBOARD_BUFFER("flush leaderboard buffer"),
         /** The total number of timeouts that have happened during asyncToSync and their durations. */
         TIMEOUTS("timeouts"),
         /** Total number and duration of commits. */
-        COMMITS("commits")
+        COMMITS("commits"),
+        /** The amount of time spent waiting for a {@link com.apple.foundationdb.record.cursors.PrefetchCursor} whose read-ahead buffer was empty. */
+        PREFETCH_STALL("prefetch stall")
         ;
 
         private final String title;
@@ -264,6 +279,8 @@ public class FDBStoreTimer extends StoreTimer {
         RANKED_SET_ADD_INCREMENT_LEVEL_KEY("ranked set add increment level key"),
         /** The amount of time spent incrementing an splitting a level of a {@link com.apple.foundationdb.async.RankedSet} skip list by inserting another key. */
         RANKED_SET_ADD_INSERT_LEVEL_KEY("ranked set add insert level key"),
+        /** The amount of time spent folding the staged changes of a {@link com.apple.foundationdb.async.StagedRankedSet} into its skip list. */
+        RANKED_SET_COMPACT("ranked set compact"),
         /** The amount of time spent reading the lock state of a {@link com.apple.foundationdb.record.provider.foundationdb.keyspace.LocatableResolver}. */
         RESOLVER_STATE_READ("read resolver state"),
         /** The amount of time spent scanning the directory subspace after a hard miss in {@link FDBReverseDirectoryCache}. */
@@ -323,6 +340,8 @@ public class FDBStoreTimer extends StoreTimer {
         WAIT_LOAD_RECORD_STORE_STATE("wait for load record store state"),
         /** Wait for loading a record. */
         WAIT_LOAD_RECORD("wait for load record"),
+        /** Wait for loading a batch of records. */
+        WAIT_LOAD_RECORDS("wait for load records"),
         /** Wait for loading a record's version. */
         WAIT_LOAD_RECORD_VERSION("wait for load record version"),
         /** Wait for saving a record. */
@@ -464,6 +483,12 @@ public class FDBStoreTimer extends StoreTimer {
         LOAD_RECORD_KEY_BYTES("number of record key bytes loaded", true),
         /** The size of values for record key-value pairs loaded. */
         LOAD_RECORD_VALUE_BYTES("number of record value bytes loaded", true),
+        /** The number of primary keys requested by batched record loads. */
+        LOAD_RECORDS_BATCH_KEY("number of record keys requested by batched loads", false),
+        /** The number of range reads by batched record loads that were shared by records with adjacent primary keys. */
+        LOAD_RECORDS_COALESCED_READ("number of coalesced reads by batched loads", false),
+        /** The number of records loaded by batched record loads using a range read shared with other records. */
+        LOAD_RECORDS_COALESCED_KEY("number of record keys loaded by coalesced reads", false),
         /** The number of index key-value pairs saved. */
         SAVE_INDEX_KEY("number of index keys saved", false),
         /** The size of keys for index key-value pairs saved. */
@@ -500,6 +525,14 @@ public class FDBStoreTimer extends StoreTimer {
         REVERSE_DIR_PERSISTENT_CACHE_MISS_COUNT("number of persistent cache misses", false),
         /** The number of reverse directory cache hits.  */
         REVERSE_DIR_PERSISTENT_CACHE_HIT_COUNT("number of persistent cache hits", false),
+        /** The number of reverse directory lookups found in the {@link SharedReverseDirectoryCache}. */
+        REVERSE_DIR_SHARED_CACHE_HIT_COUNT("number of shared cache hits", false),
+        /** The number of reverse directory lookups found to be missing by the {@link SharedReverseDirectoryCache}. */
+        REVERSE_DIR_SHARED_CACHE_NEGATIVE_HIT_COUNT("number of shared cache negative hits", false),
+        /** The number of times built meta-data was found in the {@link SharedMetaDataCache}. */
+        SHARED_META_DATA_CACHE_HIT("shared meta-data cache hit", false),
+        /** The number of times meta-data was built to add to the {@link SharedMetaDataCache}. */
+        SHARED_META_DATA_CACHE_BUILD("shared meta-data cache build", false),
         /** The number of query plans that use a covering index. */
         PLAN_COVERING_INDEX("number of covering index plans", false),
         /** The number of query plans that include a {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan}. */
@@ -528,6 +561,18 @@ public class FDBStoreTimer extends StoreTimer {
         PLAN_DISTINCT("number of unordered distinct plans", false),
         /** The number of query plans that include a {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedPrimaryKeyDistinctPlan}. */
         PLAN_PK_DISTINCT("number of unordered distinct plans by primary key", false),
+        /** The number of query plans that include a {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan}. */
+        PLAN_SORT("number of sort plans", false),
+        /** The number of query plans that include a {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryAggregatePlan}. */
+        PLAN_AGGREGATE("number of aggregate plans", false),
+        /** The number of query plans that include a {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryComposedBitmapPlan}. */
+        PLAN_COMPOSED_BITMAP_INDEX("number of composed bitmap index plans", false),
+        /** The number of times the {@link com.apple.foundationdb.record.query.plan.RecordQueryPlanCache} returned a cached plan. */
+        PLAN_CACHE_HIT("plan cache hit", false),
+        /** The number of times the {@link com.apple.foundationdb.record.query.plan.RecordQueryPlanCache} did not have a plan for a query. */
+        PLAN_CACHE_MISS("plan cache miss", false),
+        /** The number of plans evicted from a {@link com.apple.foundationdb.record.query.plan.RecordQueryPlanCache} because it was full. */
+        PLAN_CACHE_EVICTION("plan cache eviction", false),
         /** The number of records given given to any filter within any plan. */
         QUERY_FILTER_GIVEN("number of records given to any filter within any plan", false),
         /** The number of records passed by any filter within any plan. */
@@ -552,6 +597,18 @@ public class FDBStoreTimer extends StoreTimer {
         QUERY_PK_DISTINCT_PLAN_DUPLICATES("number of duplicates found by RecordQueryUnorderedPrimaryKeyDistinctPlan", false),
         /** The number of unique records found by {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedPrimaryKeyDistinctPlan}. */
         QUERY_PK_DISTINCT_PLAN_UNIQUES("number of unique records found by RecordQueryUnorderedPrimaryKeyDistinctPlan", false),
+        /** The number of records given to {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan}. */
+        QUERY_SORT_PLAN_GIVEN("number of records given to RecordQuerySortPlan", false),
+        /** The number of records discarded by {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan} because they were already returned or cannot be among those needed. */
+        QUERY_SORT_PLAN_DISCARDED("number of records discarded by RecordQuerySortPlan", false),
+        /** The number of sorted runs written to local files by {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan}. */
+        QUERY_SORT_PLAN_SPILLED_RUNS("number of sorted runs spilled by RecordQuerySortPlan", false),
+        /** The number of records written to local files by {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan}. */
+        QUERY_SORT_PLAN_SPILLED_RECORDS("number of records spilled by RecordQuerySortPlan", false),
+        /** The number of records given to {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryAggregatePlan}. */
+        QUERY_AGGREGATE_PLAN_GIVEN("number of records given to RecordQueryAggregatePlan", false),
+        /** The number of groups returned by {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryAggregatePlan}. */
+        QUERY_AGGREGATE_PLAN_GROUPS("number of groups returned by RecordQueryAggregatePlan", false),
         /** The number of matching records found by {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryIntersectionPlan}. */
         QUERY_INTERSECTION_PLAN_MATCHES("number of matching records found by RecordQueryIntersectionPlan", false),
         /** The number of non-matching records found by {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryIntersectionPlan}. */
@@ -574,6 +631,10 @@ public class FDBStoreTimer extends StoreTimer {
         TIME_WINDOW_LEADERBOARD_DELETE_WINDOW("number of leaderboard windows deleted", false),
         /** The number of times that a leaderboard needs to be rebuilt because a window was added after a score it should contain. */
         TIME_WINDOW_LEADERBOARD_OVERLAPPING_CHANGED("number of leaderboard conditional rebuilds", false),
+        /** The number of score updates buffered by a leaderboard index for application at commit time. */
+        TIME_WINDOW_LEADERBOARD_BUFFERED_UPDATE("leaderboard buffered score updates", false),
+        /** The number of leaderboard ranked sets to which buffered score updates were applied, each with a single batch. */
+        TIME_WINDOW_LEADERBOARD_BUFFER_FLUSHED_RANKED_SET("leaderboard buffer flushed ranked sets", false),
         /** The number of times that an index entry does not point to a valid record. */
         BAD_INDEX_ENTRY("number of occurrences of bad index entries", false),
         /** The number of record keys repaired by {@link FDBRecordStore#repairRecordKeys(byte[], com.apple.foundationdb.record.ScanProperties)}. */
@@ -596,6 +657,33 @@ public class FDBStoreTimer extends StoreTimer {
         DELETES("deletes", false),
         /** Total number of mutation operations. */
         MUTATIONS("mutations", false),
+        /** The number of entries returned by a {@link com.apple.foundationdb.record.cursors.PrefetchCursor}. */
+        PREFETCH_ENTRY("prefetch entry", false),
+        /**
+         * The total number of entries already read ahead by a {@link com.apple.foundationdb.record.cursors.PrefetchCursor}
+         * each time it returns an entry. Dividing this by {@link #PREFETCH_ENTRY} gives the average read-ahead depth.
+         */
+        PREFETCH_QUEUE_DEPTH("prefetch queue depth", false),
+        /** The number of values allocated by a {@link com.apple.foundationdb.record.provider.foundationdb.layers.interning.HighContentionAllocator}. */
+        HCA_ALLOCATION("high contention allocator allocations", false),
+        /**
+         * The number of candidate values picked by a
+         * {@link com.apple.foundationdb.record.provider.foundationdb.layers.interning.HighContentionAllocator} that
+         * had already been taken, forcing it to pick again.
+         */
+        HCA_CANDIDATE_COLLISION("high contention allocator candidate collisions", false),
+        /** The number of times a {@link com.apple.foundationdb.record.provider.foundationdb.layers.interning.HighContentionAllocator} moved on to a new window. */
+        HCA_WINDOW_ADVANCE("high contention allocator window advances", false),
+        /** The number of reads of a {@link com.apple.foundationdb.async.StagedRankedSet} that had to merge more staged keys than its limit. */
+        RANKED_SET_STAGING_LIMIT_EXCEEDED("ranked set staging limit exceeded", false),
+        /** The number of token updates buffered by a text index for application at commit time. */
+        TEXT_INDEX_BUFFERED_UPDATE("text index buffered updates", false),
+        /** The number of token maps to which buffered text index updates were applied, each with a single batch. */
+        TEXT_INDEX_BUFFER_FLUSHED_TOKEN("text index buffer flushed tokens", false),
+        /** The number of documents given a relevance score by a ranked text index scan. */
+        TEXT_INDEX_SCORED_DOCUMENT("text index scored documents", false),
+        /** The number of times a text index was read at a single key to check whether a document contains a token. */
+        TEXT_INDEX_SEEK("text index seeks", false),
         ;
 
         private final String title;
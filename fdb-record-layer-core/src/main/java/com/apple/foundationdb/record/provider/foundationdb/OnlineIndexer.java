@@ -32,8 +32,10 @@ import com.apple.foundationdb.async.MoreAsyncUtil;
 import com.apple.foundationdb.async.RangeSet;
 import com.apple.foundationdb.record.EndpointType;
 import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.IndexState;
 import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.PipelineOperation;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCoreStorageException;
 import com.apple.foundationdb.record.RecordCursor;
@@ -45,12 +47,16 @@ import com.apple.foundationdb.record.TupleRange;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
 import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexTypes;
 import com.apple.foundationdb.record.metadata.Key;
 import com.apple.foundationdb.record.metadata.MetaDataException;
 import com.apple.foundationdb.record.metadata.RecordType;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.metadata.expressions.KeyWithValueExpression;
 import com.apple.foundationdb.record.provider.common.RecordSerializer;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.synchronizedsession.SynchronizedSessionRunner;
+import com.apple.foundationdb.record.query.plan.statistics.IndexStatisticsSketch;
 import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordFromStoredRecordPlan;
 import com.apple.foundationdb.record.query.plan.synthetic.SyntheticRecordPlanner;
 import com.apple.foundationdb.subspace.Subspace;
@@ -72,12 +78,14 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -166,6 +174,9 @@ public class OnlineIndexer implements AutoCloseable {
     private static final Object INDEX_BUILD_LOCK_KEY = 0L;
     private static final Object INDEX_BUILD_SCANNED_RECORDS = 1L;
 
+    // The number of ranges into which a parallel build splits the records for each of its workers.
+    private static final int PARALLEL_RANGES_PER_WORKER = 4;
+
     @Nonnull private UUID onlineIndexerId = UUID.randomUUID();
 
     @Nonnull private final FDBDatabaseRunner runner;
@@ -201,6 +212,20 @@ public class OnlineIndexer implements AutoCloseable {
     private final boolean useSynchronizedSession;
     private final long leaseLengthMills;
     private final boolean trackProgress;
+    private final int parallelism;
+
+    /**
+     * For a worker of a parallel build, the indexer that started it, which also counts the records scanned by all of its workers.
+     */
+    @Nullable private OnlineIndexer parent;
+    /**
+     * For a worker of a parallel build, its position among the workers, used to identify it in the logs.
+     */
+    private int workerIndex = -1;
+    /**
+     * For a worker of a parallel build, the budget of records per second that it shares with the other workers.
+     */
+    @Nullable private SharedRateLimit sharedRateLimit;
 
     @SuppressWarnings("squid:S00107")
     OnlineIndexer(@Nonnull FDBDatabaseRunner runner,
@@ -211,7 +236,8 @@ public class OnlineIndexer implements AutoCloseable {
                   @Nonnull IndexStatePrecondition indexStatePrecondition,
                   boolean useSynchronizedSession,
                   long leaseLengthMillis,
-                  boolean trackProgress) {
+                  boolean trackProgress,
+                  int parallelism) {
         this.runner = runner;
         this.recordStoreBuilder = recordStoreBuilder;
         this.index = index;
@@ -224,6 +250,7 @@ public class OnlineIndexer implements AutoCloseable {
         this.useSynchronizedSession = useSynchronizedSession;
         this.leaseLengthMills = leaseLengthMillis;
         this.trackProgress = trackProgress;
+        this.parallelism = parallelism;
 
         this.recordsRange = computeRecordsRange();
         timeOfLastProgressLogMillis = System.currentTimeMillis();
@@ -465,6 +492,9 @@ public class OnlineIndexer implements AutoCloseable {
                     // Update records scanned.
                     if (exception == null) {
                         totalRecordsScanned.addAndGet(recordsScanned.get());
+                        if (parent != null) {
+                            parent.totalRecordsScanned.addAndGet(recordsScanned.get());
+                        }
                     } else {
                         recordsScanned.set(0);
                     }
@@ -553,13 +583,25 @@ public class OnlineIndexer implements AutoCloseable {
         } else {
             syntheticPlan = null;
         }
+        // Sketch the entries of value indexes as they are built, so that the planner has statistics for them.
+        final IndexStatisticsSketch statisticsSketch = syntheticPlan == null && IndexTypes.VALUE.equals(index.getType()) ?
+                                                       new IndexStatisticsSketch(index.getColumnSize()) : null;
+
+        final RecordCursor<Pair<FDBStoredRecord<Message>, List<FDBSyntheticRecord>>> joinedCursor;
+        if (syntheticPlan == null) {
+            joinedCursor = cursor.map(rec -> Pair.of(rec, null));
+        } else {
+            // Derive synthetic records for as many scanned records at once as are ready, so that their join lookups can be shared.
+            joinedCursor = cursor.mapBatchPipelined(recs -> executeSyntheticBatch(store, syntheticPlan, recs),
+                    store.getPipelineSize(PipelineOperation.SYNTHETIC_RECORD_JOIN));
+        }
 
         AtomicLong recordsScannedCounter = new AtomicLong();
         // Note: This runs all of the updates in serial in order to not invoke a race condition
         // in the rank code that was causing incorrect results. If everything were thread safe,
         // a larger pipeline size would be possible.
-        return cursor.forEachResultAsync(result -> {
-            final FDBStoredRecord<Message> rec = result.get();
+        return joinedCursor.forEachResultAsync(result -> {
+            final FDBStoredRecord<Message> rec = result.get().getLeft();
             empty.set(false);
             if (timer != null) {
                 timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_SCANNED);
@@ -570,10 +612,14 @@ public class OnlineIndexer implements AutoCloseable {
                     timer.increment(FDBStoreTimer.Counts.ONLINE_INDEX_BUILDER_RECORDS_INDEXED);
                 }
                 if (syntheticPlan == null) {
+                    if (statisticsSketch != null) {
+                        addIndexEntries(statisticsSketch, store.getIndexMaintenanceFilter(), rec);
+                    }
                     return maintainer.update(null, rec);
                 } else {
                     // Pipeline size is 1, since not all maintainers are thread-safe.
-                    return syntheticPlan.execute(store, rec).forEachAsync(syntheticRecord -> maintainer.update(null, syntheticRecord), 1);
+                    return RecordCursor.fromList(store.getExecutor(), result.get().getRight())
+                            .forEachAsync(syntheticRecord -> maintainer.update(null, syntheticRecord), 1);
                 }
             } else {
                 return AsyncUtil.DONE;
@@ -587,6 +633,10 @@ public class OnlineIndexer implements AutoCloseable {
                 store.context.ensureActive().mutate(MutationType.ADD, scannedRecordsSubspace.getKey(),
                         FDBRecordStore.encodeRecordCount(recordsScannedInTransaction));
             }
+            if (statisticsSketch != null && statisticsSketch.getEntryCount() > 0) {
+                // Keyed by where this range starts, so that building it again replaces rather than adds to the sketch.
+                store.saveIndexStatisticsSketch(index, Tuple.from(range.getLow()), statisticsSketch);
+            }
             byte[] nextCont = empty.get() ? null : noNextResult.getContinuation().toBytes();
             if (nextCont == null) {
                 return CompletableFuture.completedFuture(null);
@@ -607,6 +657,48 @@ public class OnlineIndexer implements AutoCloseable {
         });
     }
 
+    @Nonnull
+    private List<CompletableFuture<Pair<FDBStoredRecord<Message>, List<FDBSyntheticRecord>>>> executeSyntheticBatch(@Nonnull FDBRecordStore store,
+                                                                                                                   @Nonnull SyntheticRecordFromStoredRecordPlan syntheticPlan,
+                                                                                                                   @Nonnull List<FDBStoredRecord<Message>> recs) {
+        final List<FDBStoredRecord<Message>> indexedRecs = new ArrayList<>(recs.size());
+        for (FDBStoredRecord<Message> rec : recs) {
+            if (recordTypes.contains(rec.getRecordType())) {
+                indexedRecs.add(rec);
+            }
+        }
+        final Iterator<CompletableFuture<List<FDBSyntheticRecord>>> syntheticRecords = syntheticPlan.executeBatch(store, indexedRecs).iterator();
+        final List<CompletableFuture<Pair<FDBStoredRecord<Message>, List<FDBSyntheticRecord>>>> results = new ArrayList<>(recs.size());
+        for (FDBStoredRecord<Message> rec : recs) {
+            if (recordTypes.contains(rec.getRecordType())) {
+                results.add(syntheticRecords.next().thenApply(syntheticRecordList -> Pair.of(rec, syntheticRecordList)));
+            } else {
+                results.add(CompletableFuture.completedFuture(Pair.of(rec, Collections.emptyList())));
+            }
+        }
+        return results;
+    }
+
+    // Only the entries that the index maintenance filter lets into the index are sketched, as the maintainer does.
+    private void addIndexEntries(@Nonnull IndexStatisticsSketch statisticsSketch, @Nonnull IndexMaintenanceFilter filter,
+                                 @Nonnull FDBStoredRecord<Message> rec) {
+        final IndexMaintenanceFilter.IndexValues indexValues = filter.maintainIndex(index, rec.getRecord());
+        if (indexValues == IndexMaintenanceFilter.IndexValues.NONE) {
+            return;
+        }
+        final KeyExpression rootExpression = index.getRootExpression();
+        for (Key.Evaluated evaluated : rootExpression.evaluate(rec)) {
+            final IndexEntry entry = rootExpression instanceof KeyWithValueExpression ?
+                                     new IndexEntry(index, ((KeyWithValueExpression)rootExpression).getKey(evaluated),
+                                             ((KeyWithValueExpression)rootExpression).getValue(evaluated)) :
+                                     new IndexEntry(index, evaluated);
+            if (indexValues == IndexMaintenanceFilter.IndexValues.SOME && !filter.maintainIndexValue(index, rec.getRecord(), entry)) {
+                continue;
+            }
+            statisticsSketch.add(FDBRecordStoreBase.indexEntryKey(index, entry.getKey(), rec.getPrimaryKey()));
+        }
+    }
+
     // Builds a range within a single transaction. It will look for the missing ranges within the given range and build those while
     // updating the range set.
     @Nonnull
@@ -745,7 +837,14 @@ public class OnlineIndexer implements AutoCloseable {
                                                         Tuple startTuple, Tuple endTuple, Tuple realEnd,
                                                         Throwable ex) {
         final RuntimeException unwrappedEx = ex == null ? null : getRunner().getDatabase().mapAsyncToSyncException(ex);
-        long toWait = (config.recordsPerSecond == UNLIMITED) ? 0 : 1000 * limit / config.recordsPerSecond;
+        final long toWait;
+        if (config.recordsPerSecond == UNLIMITED) {
+            toWait = 0;
+        } else if (sharedRateLimit != null) {
+            toWait = sharedRateLimit.reserve(limit, config.recordsPerSecond);
+        } else {
+            toWait = 1000L * limit / config.recordsPerSecond;
+        }
         if (unwrappedEx == null) {
             if (realEnd != null && !realEnd.equals(endTuple)) {
                 // We didn't make it to the end. Continue on to the next item.
@@ -785,15 +884,20 @@ public class OnlineIndexer implements AutoCloseable {
                 && (config.progressLogIntervalMillis > 0
                     && System.currentTimeMillis() - timeOfLastProgressLogMillis > config.progressLogIntervalMillis)
                 || config.progressLogIntervalMillis == 0) {
-            LOGGER.info(KeyValueLogMessage.of("Built Range",
+            final KeyValueLogMessage message = KeyValueLogMessage.build("Built Range",
                             LogMessageKeys.INDEX_NAME, index.getName(),
                             LogMessageKeys.INDEX_VERSION, index.getLastModifiedVersion(),
                             subspaceProvider.logKey(), subspaceProvider,
                             LogMessageKeys.START_TUPLE, startTuple,
                             LogMessageKeys.END_TUPLE, endTuple,
                             LogMessageKeys.REAL_END, realEnd,
-                            LogMessageKeys.RECORDS_SCANNED, totalRecordsScanned.get()),
+                            LogMessageKeys.RECORDS_SCANNED, totalRecordsScanned.get(),
                             LogMessageKeys.INDEXER_ID, onlineIndexerId);
+            if (parent != null) {
+                message.addKeyAndValue(LogMessageKeys.INDEXER_WORKER, workerIndex);
+                message.addKeyAndValue(LogMessageKeys.TOTAL_RECORDS_SCANNED, parent.totalRecordsScanned.get());
+            }
+            LOGGER.info(message.toString());
             timeOfLastProgressLogMillis = System.currentTimeMillis();
         }
     }
@@ -1214,7 +1318,9 @@ public class OnlineIndexer implements AutoCloseable {
     @Nonnull
     private CompletableFuture<Void> doBuildIndexAsync(boolean markReadable) {
         CompletableFuture<Void> buildFuture = buildEndpoints().thenCompose(tupleRange -> {
-            if (tupleRange != null) {
+            if (tupleRange != null && parallelism > 1) {
+                return buildRangeInParallel(tupleRange);
+            } else if (tupleRange != null) {
                 return buildRange(Key.Evaluated.fromTuple(tupleRange.getLow()), Key.Evaluated.fromTuple(tupleRange.getHigh()));
             } else {
                 return CompletableFuture.completedFuture(null);
@@ -1232,6 +1338,70 @@ public class OnlineIndexer implements AutoCloseable {
         }
     }
 
+    // Builds the given range with parallelism workers, each of which takes the next sub-range from a shared queue
+    // when it finishes its current one. The sub-ranges are cut at the primary key boundaries, so that the workers
+    // are spread across storage servers, and there are several per worker so that a worker that falls behind
+    // does not hold up the others. The workers go through buildRange, which only builds what is still missing
+    // from the index's range set, so it is safe to resume a parallel build with a serial one or vice versa.
+    @Nonnull
+    private CompletableFuture<Void> buildRangeInParallel(@Nonnull TupleRange tupleRange) {
+        return getPrimaryKeyBoundariesAsync(tupleRange).thenCompose(boundaries -> {
+            final Queue<Pair<Tuple, Tuple>> pendingRanges = new ConcurrentLinkedQueue<>(
+                    splitBoundaries(boundaries, parallelism * PARALLEL_RANGES_PER_WORKER));
+            final int workerCount = Math.min(parallelism, pendingRanges.size());
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info(KeyValueLogMessage.of("starting parallel index build",
+                                LogMessageKeys.INDEX_NAME, index.getName(),
+                                LogMessageKeys.ORIGINAL_RANGE, tupleRange,
+                                LogMessageKeys.SPLIT_RANGES, pendingRanges.size(),
+                                LogMessageKeys.INDEXER_WORKER_COUNT, workerCount,
+                                LogMessageKeys.INDEXER_ID, onlineIndexerId));
+            }
+            final SharedRateLimit rateLimit = new SharedRateLimit();
+            final List<CompletableFuture<Void>> workerFutures = new ArrayList<>(workerCount);
+            for (int i = 0; i < workerCount; i++) {
+                final OnlineIndexer worker = newParallelWorker(i, rateLimit);
+                final CompletableFuture<Void> workerFuture = AsyncUtil.whileTrue(() -> {
+                    final Pair<Tuple, Tuple> range = pendingRanges.poll();
+                    if (range == null) {
+                        return AsyncUtil.READY_FALSE;
+                    }
+                    return worker.buildRange(Key.Evaluated.fromTuple(range.getLeft()), Key.Evaluated.fromTuple(range.getRight()))
+                            .thenApply(vignore -> true);
+                }, getRunner().getExecutor()).whenComplete((vignore, err) -> {
+                    if (err != null) {
+                        // Stop the other workers once they finish their current range.
+                        pendingRanges.clear();
+                    }
+                });
+                workerFutures.add(workerFuture);
+            }
+            return AsyncUtil.whenAll(workerFutures).thenApply(vignore -> {
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info(KeyValueLogMessage.of("finished parallel index build",
+                                    LogMessageKeys.INDEX_NAME, index.getName(),
+                                    LogMessageKeys.RECORDS_SCANNED, totalRecordsScanned.get(),
+                                    LogMessageKeys.INDEXER_ID, onlineIndexerId));
+                }
+                return null;
+            });
+        });
+    }
+
+    @Nonnull
+    private OnlineIndexer newParallelWorker(int position, @Nonnull SharedRateLimit rateLimit) {
+        final OnlineIndexer worker = new OnlineIndexer(runner, recordStoreBuilder, index, recordTypes,
+                configLoader, config, syntheticIndex, indexStatePrecondition,
+                false, leaseLengthMills, trackProgress, 1);
+        // The workers run within this indexer's session, if any, rather than each taking a lock of their own.
+        worker.synchronizedSessionRunner = synchronizedSessionRunner;
+        worker.onlineIndexerId = onlineIndexerId;
+        worker.parent = this;
+        worker.workerIndex = position;
+        worker.sharedRateLimit = rateLimit;
+        return worker;
+    }
+
     /**
      * Builds an index across multiple transactions.
      * Synchronous version of {@link #buildIndexAsync}.
@@ -1282,6 +1452,21 @@ public class OnlineIndexer implements AutoCloseable {
             return Collections.singletonList(Pair.of(originalRange.getLow(), originalRange.getHigh()));
         }
 
+        List<Pair<Tuple, Tuple>> splitRanges = splitBoundaries(boundaries, maxSplit);
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(KeyValueLogMessage.of("split index build range",
+                            LogMessageKeys.INDEX_NAME, index.getName(),
+                            LogMessageKeys.ORIGINAL_RANGE, originalRange,
+                            LogMessageKeys.SPLIT_RANGES, splitRanges));
+        }
+
+        return splitRanges;
+    }
+
+    // Cut the range between the first and last of the given boundaries into at most maxSplit ranges.
+    @Nonnull
+    private static List<Pair<Tuple, Tuple>> splitBoundaries(@Nonnull List<Tuple> boundaries, int maxSplit) {
         List<Pair<Tuple, Tuple>> splitRanges = new ArrayList<>(Math.min(boundaries.size() - 1, maxSplit));
 
         // step size >= 1
@@ -1297,14 +1482,6 @@ public class OnlineIndexer implements AutoCloseable {
             }
             start = next;
         }
-
-        if (LOGGER.isInfoEnabled()) {
-            LOGGER.info(KeyValueLogMessage.of("split index build range",
-                            LogMessageKeys.INDEX_NAME, index.getName(),
-                            LogMessageKeys.ORIGINAL_RANGE, originalRange,
-                            LogMessageKeys.SPLIT_RANGES, splitRanges));
-        }
-
         return splitRanges;
     }
 
@@ -1315,7 +1492,19 @@ public class OnlineIndexer implements AutoCloseable {
                     .getPrimaryKeyBoundaries(tupleRange.getLow(), tupleRange.getHigh());
             return context.asyncToSync(FDBStoreTimer.Waits.WAIT_GET_BOUNDARY, cursor.asList());
         });
+        return addEndpoints(tupleRange, boundaries);
+    }
 
+    @Nonnull
+    private CompletableFuture<List<Tuple>> getPrimaryKeyBoundariesAsync(@Nonnull TupleRange tupleRange) {
+        return getRunner().runAsync(context -> context.getReadVersionAsync().thenCompose(vignore ->
+                openRecordStore(context).thenCompose(store ->
+                        store.getPrimaryKeyBoundaries(tupleRange.getLow(), tupleRange.getHigh()).asList())))
+                .thenApply(boundaries -> addEndpoints(tupleRange, new ArrayList<>(boundaries)));
+    }
+
+    @Nonnull
+    private static List<Tuple> addEndpoints(@Nonnull TupleRange tupleRange, @Nonnull List<Tuple> boundaries) {
         // Add the two endpoints if they are not in the result
         if (boundaries.isEmpty() || tupleRange.getLow().compareTo(boundaries.get(0)) < 0) {
             boundaries.add(0, tupleRange.getLow());
@@ -1410,6 +1599,23 @@ public class OnlineIndexer implements AutoCloseable {
         }
     }
 
+    /**
+     * The records per second budget shared by the workers of a parallel build. Each worker reserves the records of the
+     * transaction it has just committed, and waits until the budget has room for them, so that together the workers
+     * do not go faster than the configured rate, whatever their individual limits.
+     */
+    private static class SharedRateLimit {
+        private long nextAvailableNanos = System.nanoTime();
+
+        // Returns how long in milliseconds the caller should wait before starting its next transaction.
+        synchronized long reserve(int records, int recordsPerSecond) {
+            final long now = System.nanoTime();
+            final long start = Math.max(now, nextAvailableNanos);
+            nextAvailableNanos = start + TimeUnit.SECONDS.toNanos(records) / recordsPerSecond;
+            return TimeUnit.NANOSECONDS.toMillis(start - now);
+        }
+    }
+
     /**
      * A holder for the mutable configuration parameters needed to rebuild an online index. These parameters are
      * designed to be safe to be updated while a build is running.
@@ -1623,6 +1829,7 @@ public class OnlineIndexer implements AutoCloseable {
         private IndexStatePrecondition indexStatePrecondition = IndexStatePrecondition.BUILD_IF_DISABLED_CONTINUE_BUILD_IF_WRITE_ONLY;
         private boolean useSynchronizedSession = true;
         private long leaseLengthMillis = DEFAULT_LEASE_LENGTH_MILLIS;
+        private int parallelism = 1;
 
         protected Builder() {
         }
@@ -2298,6 +2505,34 @@ public class OnlineIndexer implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Get the number of ranges built concurrently by {@link #buildIndexAsync()}.
+         * @return the number of parallel workers
+         * @see #setParallelism(int)
+         */
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * Set the number of ranges built concurrently by {@link #buildIndexAsync()} (or its variations). By default this
+         * is {@code 1}, which builds the whole index in a single chain of transactions.
+         * <p>
+         * With a larger value, the records are split at their primary key boundaries (see {@link OnlineIndexer#splitIndexBuildRange})
+         * and that many workers build the resulting ranges concurrently, each in its own chain of transactions. Each
+         * worker adjusts its own limit as described in {@link #setLimit(int)}, but the
+         * {@linkplain #setRecordsPerSecond(int) records per second} are shared among all of them. Progress logs report
+         * both the records scanned by the worker and the total for the build. The built ranges are recorded in the same
+         * way as for a serial build, so an interrupted build can be resumed with a different parallelism.
+         * </p>
+         * @param parallelism the number of parallel workers
+         * @return this builder
+         */
+        public Builder setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
         /**
          * Build an {@link OnlineIndexer}.
          * @return a new online indexer
@@ -2306,7 +2541,7 @@ public class OnlineIndexer implements AutoCloseable {
             validate();
             Config conf = new Config(limit, maxRetries, recordsPerSecond, progressLogIntervalMillis, increaseLimitAfter);
             return new OnlineIndexer(runner, recordStoreBuilder, index, recordTypes, configLoader, conf, syntheticIndex,
-                    indexStatePrecondition, useSynchronizedSession, leaseLengthMillis, trackProgress);
+                    indexStatePrecondition, useSynchronizedSession, leaseLengthMillis, trackProgress, parallelism);
         }
 
         protected void validate() {
@@ -2345,6 +2580,7 @@ public class OnlineIndexer implements AutoCloseable {
             checkPositive(maxRetries, "maximum retries");
             checkPositive(limit, "record limit");
             checkPositive(recordsPerSecond, "records per second value");
+            checkPositive(parallelism, "parallelism");
         }
 
         private static void checkPositive(int value, String desc) {
@@ -0,0 +1,233 @@
+/*
+ * SharedMetaDataCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.protobuf.Descriptors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * A cache of built {@link RecordMetaData}, shared by all of the {@link FDBMetaDataStore}s in the JVM that are
+ * {@linkplain FDBMetaDataStore#setSharedMetaDataCache given it}.
+ *
+ * <p>
+ * Building meta-data from its serialized form means building Protobuf descriptors and parsing key expressions
+ * for every record type and index, which is expensive to do each time a record store is opened. When many record
+ * stores share a few versions of meta-data from the same meta-data store, they can share the built meta-data
+ * as well. Entries are keyed by the cluster, the meta-data store's subspace and the meta-data version, which always
+ * increases when the meta-data is saved, so an entry never needs invalidating. The built meta-data is only held
+ * weakly, so versions that are no longer in use by any store are garbage collected. Concurrent loads of the same
+ * version wait for a single build.
+ * </p>
+ *
+ * <p>
+ * In addition, the cache remembers which version was current for each meta-data store as of a given value of the
+ * database's {@linkplain FDBRecordContext#getMetaDataVersionStampAsync meta-data version-stamp}. While that key is
+ * unchanged, a meta-data store can use the cached meta-data without reading anything from the database but the
+ * version-stamp key itself. Meta-data stores using this cache update the version-stamp key whenever they save new
+ * meta-data. Anything else that changes the meta-data must do the same, or else stores may continue to see the
+ * previous version.
+ * </p>
+ *
+ * <p>
+ * All of the meta-data stores for the same subspace that use this cache must be configured with the same
+ * dependencies and extension registry. Stores with different {@linkplain FDBMetaDataStore#setLocalFileDescriptor
+ * local file descriptors} are cached separately.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class SharedMetaDataCache {
+    /**
+     * The default maximum number of meta-data stores for which the current version is remembered.
+     */
+    public static final int DEFAULT_MAX_CURRENT_ENTRIES = 1_000;
+
+    private static final SharedMetaDataCache INSTANCE = new SharedMetaDataCache(DEFAULT_MAX_CURRENT_ENTRIES);
+
+    @Nonnull
+    private final Cache<VersionKey, RecordMetaData> built;
+    @Nonnull
+    private final Cache<StoreKey, CurrentVersion> current;
+
+    @VisibleForTesting
+    SharedMetaDataCache(int maxCurrentEntries) {
+        this.built = CacheBuilder.newBuilder().weakValues().build();
+        this.current = CacheBuilder.newBuilder().maximumSize(maxCurrentEntries).build();
+    }
+
+    /**
+     * Get the cache shared by all meta-data stores in this JVM.
+     * @return the shared meta-data cache
+     */
+    @Nonnull
+    public static SharedMetaDataCache instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the meta-data that was current for the given meta-data store when the meta-data version-stamp had the given value.
+     * @param store the meta-data store
+     * @param metaDataVersionStamp the current value of the meta-data version-stamp key
+     * @return the cached meta-data or {@code null} if it is not known or has been garbage collected
+     */
+    @Nullable
+    RecordMetaData getCurrent(@Nonnull FDBMetaDataStore store, @Nonnull byte[] metaDataVersionStamp) {
+        final StoreKey storeKey = new StoreKey(store);
+        final CurrentVersion currentVersion = current.getIfPresent(storeKey);
+        if (currentVersion == null || !Arrays.equals(currentVersion.metaDataVersionStamp, metaDataVersionStamp)) {
+            return null;
+        }
+        return built.getIfPresent(new VersionKey(storeKey, currentVersion.version));
+    }
+
+    /**
+     * Remember which version of the meta-data was current for the given meta-data store when the meta-data
+     * version-stamp had the given value.
+     * @param store the meta-data store
+     * @param metaDataVersionStamp the value of the meta-data version-stamp key read before the meta-data was loaded
+     * @param version the version of the meta-data that was loaded
+     */
+    void setCurrent(@Nonnull FDBMetaDataStore store, @Nonnull byte[] metaDataVersionStamp, int version) {
+        current.put(new StoreKey(store), new CurrentVersion(metaDataVersionStamp, version));
+    }
+
+    /**
+     * Get the built meta-data for the given version of the given meta-data store, building it if necessary.
+     * If another thread is already building the same version, wait for it instead.
+     * @param store the meta-data store
+     * @param version the version of the meta-data
+     * @param builder a function to build the meta-data if it is not cached
+     * @return the built meta-data
+     */
+    @Nonnull
+    RecordMetaData getOrBuild(@Nonnull FDBMetaDataStore store, int version, @Nonnull Supplier<RecordMetaData> builder) {
+        final VersionKey versionKey = new VersionKey(new StoreKey(store), version);
+        final RecordMetaData existing = built.getIfPresent(versionKey);
+        if (existing != null) {
+            store.increment(FDBStoreTimer.Counts.SHARED_META_DATA_CACHE_HIT);
+            return existing;
+        }
+        try {
+            return built.get(versionKey, () -> {
+                store.increment(FDBStoreTimer.Counts.SHARED_META_DATA_CACHE_BUILD);
+                return builder.get();
+            });
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ex.getCause();
+            }
+            throw new RecordCoreException(ex.getCause());
+        }
+    }
+
+    /**
+     * Forget all of the entries in the cache.
+     */
+    public void clear() {
+        built.invalidateAll();
+        current.invalidateAll();
+    }
+
+    private static final class StoreKey {
+        @Nullable
+        private final String clusterFile;
+        @Nonnull
+        private final byte[] subspaceKey;
+        // Compared by identity, since descriptors do not define equality
+        @Nullable
+        private final Descriptors.FileDescriptor localFileDescriptor;
+
+        StoreKey(@Nonnull FDBMetaDataStore store) {
+            this.clusterFile = store.getRecordContext().getDatabase().getClusterFile();
+            this.subspaceKey = store.getSubspace().getKey();
+            this.localFileDescriptor = store.getLocalFileDescriptor();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            StoreKey that = (StoreKey)o;
+            return Objects.equals(clusterFile, that.clusterFile) && Arrays.equals(subspaceKey, that.subspaceKey) &&
+                   localFileDescriptor == that.localFileDescriptor;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(clusterFile, Arrays.hashCode(subspaceKey), System.identityHashCode(localFileDescriptor));
+        }
+    }
+
+    private static final class VersionKey {
+        @Nonnull
+        private final StoreKey storeKey;
+        private final int version;
+
+        VersionKey(@Nonnull StoreKey storeKey, int version) {
+            this.storeKey = storeKey;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            VersionKey that = (VersionKey)o;
+            return version == that.version && storeKey.equals(that.storeKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * storeKey.hashCode() + version;
+        }
+    }
+
+    private static final class CurrentVersion {
+        @Nonnull
+        private final byte[] metaDataVersionStamp;
+        private final int version;
+
+        CurrentVersion(@Nonnull byte[] metaDataVersionStamp, int version) {
+            this.metaDataVersionStamp = metaDataVersionStamp;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * SharedReverseDirectoryCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import com.apple.foundationdb.annotation.API;
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A second level for reverse directory lookups, shared by all of the {@link FDBDatabase}s in the JVM.
+ *
+ * <p>
+ * Each {@link FDBDatabase} has its own in-memory cache of reverse lookups. Lookups that miss there are looked for
+ * here before the {@link FDBReverseDirectoryCache} reads the database. Entries are kept in flat arrays of primitive
+ * values and their names, arranged as a set-associative table: each value can only go in one of a few slots, and
+ * adding it to a full set replaces one of the entries there. So the cache is bounded without allocating anything
+ * per entry other than the names themselves.
+ * </p>
+ *
+ * <p>
+ * Lookups of values that are not in the reverse directory are also remembered, for a limited time, so that
+ * repeatedly looking up a missing value does not read the database each time. This does mean that a value
+ * created meanwhile is not found until that time has passed or the cache is cleared.
+ * </p>
+ *
+ * <p>
+ * Entries are partitioned by cluster file and reverse directory subspace, so that the same value in different
+ * directory layers does not collide.
+ * </p>
+ */
+@API(API.Status.INTERNAL)
+public class SharedReverseDirectoryCache {
+    /**
+     * The default maximum number of entries in the cache.
+     */
+    public static final int DEFAULT_MAX_SIZE = 100_000;
+    /**
+     * The default time for which a lookup of a missing value is remembered.
+     */
+    public static final long DEFAULT_NEGATIVE_ENTRY_TTL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final int WAYS = 4;
+    private static final int LOCK_STRIPES = 64;
+
+    private static final SharedReverseDirectoryCache INSTANCE = new SharedReverseDirectoryCache(DEFAULT_MAX_SIZE);
+
+    @Nonnull
+    private final ConcurrentMap<Partition, Integer> partitionIds = new ConcurrentHashMap<>();
+    // partition ids are never reused, so that entries for a cleared partition can never be found again
+    @Nonnull
+    private final AtomicInteger nextPartitionId = new AtomicInteger(1);
+    @Nonnull
+    private final Object[] locks;
+    @Nonnull
+    private volatile Table table;
+    private volatile long negativeEntryTtlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_NEGATIVE_ENTRY_TTL_MILLIS);
+
+    @VisibleForTesting
+    SharedReverseDirectoryCache(int maxSize) {
+        this.locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        this.table = new Table(maxSize);
+    }
+
+    /**
+     * Get the cache shared by all databases in this JVM.
+     * @return the shared reverse directory cache
+     */
+    @Nonnull
+    public static SharedReverseDirectoryCache instance() {
+        return INSTANCE;
+    }
+
+    public int getMaxSize() {
+        return table.maxSize;
+    }
+
+    /**
+     * Set the maximum number of entries in the cache. This clears the cache. A size of {@code 0} disables it.
+     * @param maxSize the new maximum number of entries
+     */
+    public void setMaxSize(int maxSize) {
+        table = new Table(maxSize);
+    }
+
+    public long getNegativeEntryTtlMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(negativeEntryTtlNanos);
+    }
+
+    /**
+     * Set the time for which a lookup of a value that is not in the reverse directory is remembered.
+     * A time of {@code 0} disables remembering missing values.
+     * @param negativeEntryTtlMillis the time to remember missing values, in milliseconds
+     */
+    public void setNegativeEntryTtlMillis(long negativeEntryTtlMillis) {
+        this.negativeEntryTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, negativeEntryTtlMillis));
+    }
+
+    /**
+     * Get the partition of the cache for a reverse directory subspace.
+     * @param clusterFile the cluster file of the database
+     * @param reverseDirectorySubspaceKey the key of the reverse directory subspace
+     * @return an identifier for the partition
+     */
+    int getPartition(@Nullable String clusterFile, @Nonnull byte[] reverseDirectorySubspaceKey) {
+        return partitionIds.computeIfAbsent(new Partition(clusterFile, reverseDirectorySubspaceKey),
+                partition -> nextPartitionId.getAndIncrement());
+    }
+
+    /**
+     * Look up a value in the cache.
+     * @param partition the partition of the value
+     * @param value the directory layer value
+     * @return the name for the value, or an empty optional if the value is known not to exist, or {@code null}
+     * if nothing is cached for the value
+     */
+    @Nullable
+    @SuppressWarnings({"squid:S2789", "OptionalAssignedToNull"}) // null means not cached, as opposed to known not to exist
+    Optional<String> getIfPresent(int partition, long value) {
+        final Table current = table;
+        if (current.sets == 0) {
+            return null;
+        }
+        final int set = current.setFor(partition, value);
+        synchronized (lockFor(set)) {
+            final int start = set * WAYS;
+            for (int slot = start; slot < start + WAYS; slot++) {
+                if (current.partitions[slot] == partition && current.values[slot] == value) {
+                    final String name = current.names[slot];
+                    if (name != null) {
+                        return Optional.of(name);
+                    }
+                    if (System.nanoTime() - current.expirations[slot] < 0) {
+                        return Optional.empty();
+                    }
+                    current.partitions[slot] = 0;
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a value to the cache.
+     * @param partition the partition of the value
+     * @param value the directory layer value
+     * @param name the name for the value or {@code null} if the value does not exist
+     */
+    void put(int partition, long value, @Nullable String name) {
+        final Table current = table;
+        final long ttlNanos = negativeEntryTtlNanos;
+        if (current.sets == 0 || (name == null && ttlNanos == 0)) {
+            return;
+        }
+        final int set = current.setFor(partition, value);
+        synchronized (lockFor(set)) {
+            final int start = set * WAYS;
+            int target = -1;
+            for (int slot = start; slot < start + WAYS; slot++) {
+                if (current.partitions[slot] == partition && current.values[slot] == value) {
+                    target = slot;
+                    break;
+                }
+                if (target < 0 && current.partitions[slot] == 0) {
+                    target = slot;
+                }
+            }
+            if (target < 0) {
+                target = start + current.victims[set];
+                current.victims[set] = (byte)((current.victims[set] + 1) % WAYS);
+            }
+            current.partitions[target] = partition;
+            current.values[target] = value;
+            current.names[target] = name;
+            current.expirations[target] = name == null ? System.nanoTime() + ttlNanos : 0L;
+        }
+    }
+
+    /**
+     * Remove a value from the cache, for instance when it has just been added to the reverse directory.
+     * @param partition the partition of the value
+     * @param value the directory layer value
+     */
+    void invalidate(int partition, long value) {
+        final Table current = table;
+        if (current.sets == 0) {
+            return;
+        }
+        final int set = current.setFor(partition, value);
+        synchronized (lockFor(set)) {
+            final int start = set * WAYS;
+            for (int slot = start; slot < start + WAYS; slot++) {
+                if (current.partitions[slot] == partition && current.values[slot] == value) {
+                    current.partitions[slot] = 0;
+                    current.names[slot] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget all of the entries for the given cluster. The entries remain in the table until they are replaced,
+     * but can no longer be found.
+     * @param clusterFile the cluster file of the database
+     */
+    public void clear(@Nullable String clusterFile) {
+        partitionIds.keySet().removeIf(partition -> Objects.equals(partition.clusterFile, clusterFile));
+    }
+
+    /**
+     * Forget all of the entries in the cache.
+     */
+    public void clear() {
+        partitionIds.clear();
+        table = new Table(table.maxSize);
+    }
+
+    @Nonnull
+    private Object lockFor(int set) {
+        return locks[set & (LOCK_STRIPES - 1)];
+    }
+
+    private static final class Table {
+        private final int maxSize;
+        private final int sets;
+        // a partition of 0 marks an empty slot
+        @Nonnull
+        private final int[] partitions;
+        @Nonnull
+        private final long[] values;
+        // a null name marks a value that is known not to exist
+        @Nonnull
+        private final String[] names;
+        // when a negative entry stops being valid, in System.nanoTime() terms
+        @Nonnull
+        private final long[] expirations;
+        // the next slot to replace in each full set
+        @Nonnull
+        private final byte[] victims;
+
+        Table(int maxSize) {
+            this.maxSize = Math.max(0, maxSize);
+            if (this.maxSize == 0) {
+                this.sets = 0;
+            } else {
+                // a power of two number of sets, holding at most maxSize entries
+                this.sets = Integer.highestOneBit(Math.max(1, this.maxSize / WAYS));
+            }
+            this.partitions = new int[sets * WAYS];
+            this.values = new long[sets * WAYS];
+            this.names = new String[sets * WAYS];
+            this.expirations = new long[sets * WAYS];
+            this.victims = new byte[sets];
+        }
+
+        int setFor(int partition, long value) {
+            long hash = value * 0x9E3779B97F4A7C15L + partition;
+            hash ^= hash >>> 32;
+            hash ^= hash >>> 16;
+            return (int)hash & (sets - 1);
+        }
+    }
+
+    private static final class Partition {
+        @Nullable
+        private final String clusterFile;
+        @Nonnull
+        private final byte[] subspaceKey;
+
+        Partition(@Nullable String clusterFile, @Nonnull byte[] subspaceKey) {
+            this.clusterFile = clusterFile;
+            this.subspaceKey = subspaceKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Partition that = (Partition)o;
+            return Objects.equals(clusterFile, that.clusterFile) && Arrays.equals(subspaceKey, that.subspaceKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(clusterFile, Arrays.hashCode(subspaceKey));
+        }
+    }
+}
@@ -375,7 +375,17 @@ public class KeySpaceCountTree extends TupleKeyCountTree {
     }
 
     public KeySpaceCountTree(@Nonnull KeySpace keySpace) {
-        super();
+        this(keySpace, 0);
+    }
+
+    /**
+     * Create the root of a tree that keeps a bounded number of children at each node.
+     * @param keySpace the key space against which to resolve keys
+     * @param maxChildren the maximum number of children to keep at each node or {@code 0} to keep all of them
+     * @see TupleKeyCountTree#TupleKeyCountTree(int)
+     */
+    public KeySpaceCountTree(@Nonnull KeySpace keySpace, int maxChildren) {
+        super(maxChildren);
         this.resolved = new ResolvedRoot(keySpace);
     }
 
@@ -397,6 +407,15 @@ public class KeySpaceCountTree extends TupleKeyCountTree {
         return result;
     }
 
+    /**
+     * Resolve the visible descendants of this node.
+     *
+     * Nodes hidden by {@link #hideLessThanFraction} are skipped, along with their descendants, as are any that were never
+     * kept because the tree has a maximum number of children. So resolution, which may need to read from the database,
+     * is only done for the keys that will be shown.
+     * @param context an open transaction to use to read from the database
+     * @return a future that completes when all visible descendants have been resolved
+     */
     public CompletableFuture<Void> resolveVisibleChildren(@Nonnull FDBRecordContext context) {
         if (resolved != null) {
             final Iterator<TupleKeyCountTree> children = getChildren().iterator();
@@ -405,6 +424,9 @@ public class KeySpaceCountTree extends TupleKeyCountTree {
                     return AsyncUtil.READY_FALSE;
                 }
                 KeySpaceCountTree child = (KeySpaceCountTree)children.next();
+                if (!child.isVisible()) {
+                    return AsyncUtil.READY_TRUE;
+                }
                 return child.resolve(context, resolved)
                         .thenCompose(vignore -> child.resolveVisibleChildren(context))
                         .thenApply(vignore -> true);
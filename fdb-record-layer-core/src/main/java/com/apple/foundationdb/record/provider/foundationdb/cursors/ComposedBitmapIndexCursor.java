@@ -0,0 +1,204 @@
+/*
+ * ComposedBitmapIndexCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.cursors;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.tuple.Tuple;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A cursor that combines the entries of several {@link com.apple.foundationdb.record.IndexScanType#BY_BITMAP BY_BITMAP}
+ * index scans with bitwise operations.
+ *
+ * <p>
+ * Each child cursor returns bitmap entries whose last key element is the offset of the entry, in ascending order.
+ * The children are merged by offset and, for each offset present in any child, the bitmaps at that offset are handed
+ * to a {@link Composer} along with {@code null} for those children that have no entry there. The cursor returns
+ * an entry with the offset as its key and the composed bitmap as its value, which may be all zeros.
+ * </p>
+ *
+ * <p>
+ * The continuation is that of a {@link UnionCursor}: the continuations of all the children.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class ComposedBitmapIndexCursor extends UnionCursorBase<IndexEntry, KeyedMergeCursorState<IndexEntry>> {
+    @Nonnull
+    private final Composer composer;
+
+    private ComposedBitmapIndexCursor(@Nonnull List<KeyedMergeCursorState<IndexEntry>> cursorStates,
+                                      @Nullable FDBStoreTimer timer,
+                                      @Nonnull Composer composer) {
+        super(cursorStates, timer);
+        this.composer = composer;
+    }
+
+    @Nonnull
+    @Override
+    CompletableFuture<List<KeyedMergeCursorState<IndexEntry>>> computeNextResultStates() {
+        final List<KeyedMergeCursorState<IndexEntry>> cursorStates = getCursorStates();
+        return whenAll(cursorStates).thenApply(vignore -> {
+            List<Object> nextKey = null;
+            final List<KeyedMergeCursorState<IndexEntry>> chosenStates = new ArrayList<>(cursorStates.size());
+            for (KeyedMergeCursorState<IndexEntry> cursorState : cursorStates) {
+                final RecordCursorResult<IndexEntry> result = cursorState.getResult();
+                if (result.hasNext()) {
+                    final List<Object> resultKey = cursorState.getComparisonKey();
+                    final int compare = nextKey == null ? -1 : KeyComparisons.KEY_COMPARATOR.compare(resultKey, nextKey);
+                    if (compare < 0) {
+                        chosenStates.clear();
+                        nextKey = resultKey;
+                    }
+                    if (compare <= 0) {
+                        chosenStates.add(cursorState);
+                    }
+                } else if (result.getNoNextReason().isLimitReached()) {
+                    // Cannot compose an offset without knowing whether this child has an entry for it.
+                    return Collections.emptyList();
+                }
+            }
+            return chosenStates;
+        });
+    }
+
+    @Nonnull
+    @Override
+    IndexEntry getNextResult(@Nonnull List<KeyedMergeCursorState<IndexEntry>> chosenStates) {
+        final List<KeyedMergeCursorState<IndexEntry>> cursorStates = getCursorStates();
+        final List<byte[]> bitmaps = new ArrayList<>(Collections.nCopies(cursorStates.size(), null));
+        IndexEntry first = null;
+        for (KeyedMergeCursorState<IndexEntry> chosenState : chosenStates) {
+            final IndexEntry entry = chosenState.getResult().get();
+            bitmaps.set(cursorStates.indexOf(chosenState), entry.getValue().getBytes(0));
+            if (first == null) {
+                first = entry;
+            }
+        }
+        // A child supplies at least one entry, so first is not null.
+        final Object offset = first.getKey().get(first.getKeySize() - 1);
+        byte[] bitmap = composer.compose(bitmaps);
+        if (bitmap == null) {
+            bitmap = new byte[0];
+        }
+        return new IndexEntry(first.getIndex(), Tuple.from(offset), Tuple.from((Object)bitmap));
+    }
+
+    /**
+     * Create a cursor composing the bitmap entries of two or more child cursors.
+     * Note that this will throw an error if the list of cursors does not have at least two elements.
+     * @param cursorFunctions a list of functions to produce {@link RecordCursor}s of bitmap index entries from a continuation
+     * @param composer the bitwise operation to apply to the children's bitmaps at each offset
+     * @param byteContinuation any continuation from a previous scan
+     * @param timer the timer used to instrument events
+     * @return a cursor returning composed bitmaps keyed by offset
+     */
+    @Nonnull
+    public static ComposedBitmapIndexCursor create(@Nonnull List<Function<byte[], RecordCursor<IndexEntry>>> cursorFunctions,
+                                                   @Nonnull Composer composer,
+                                                   @Nullable byte[] byteContinuation,
+                                                   @Nullable FDBStoreTimer timer) {
+        if (cursorFunctions.size() < 2) {
+            throw new RecordCoreArgumentException("not enough child cursors provided to ComposedBitmapIndexCursor")
+                    .addLogInfo(LogMessageKeys.CHILD_COUNT, cursorFunctions.size());
+        }
+        final List<KeyedMergeCursorState<IndexEntry>> cursorStates = new ArrayList<>(cursorFunctions.size());
+        final UnionCursorContinuation continuation = UnionCursorContinuation.from(byteContinuation, cursorFunctions.size());
+        int i = 0;
+        for (Function<byte[], RecordCursor<IndexEntry>> cursorFunction : cursorFunctions) {
+            cursorStates.add(KeyedMergeCursorState.from(cursorFunction, continuation.getContinuations().get(i),
+                    ComposedBitmapIndexCursor::getOffsetKey));
+            i++;
+        }
+        return new ComposedBitmapIndexCursor(cursorStates, timer, composer);
+    }
+
+    @Nonnull
+    private static List<Object> getOffsetKey(@Nonnull IndexEntry entry) {
+        return Collections.singletonList(entry.getKey().get(entry.getKeySize() - 1));
+    }
+
+    /**
+     * A bitwise combination of the bitmaps of the children of a {@link ComposedBitmapIndexCursor} at one offset.
+     */
+    @FunctionalInterface
+    public interface Composer {
+        /**
+         * Combine the bitmaps of the children at a single offset.
+         * @param bitmaps the bitmap of each child, in order, or {@code null} for a child with no entry at this offset
+         * @return the combined bitmap or {@code null} if no bits are set
+         */
+        @Nullable
+        byte[] compose(@Nonnull List<byte[]> bitmaps);
+    }
+
+    /**
+     * Bitwise and of two bitmaps, either of which may be {@code null} for all zeros.
+     * @param bitmap1 the first bitmap
+     * @param bitmap2 the second bitmap
+     * @return the bitwise and, which is {@code null} if either is
+     */
+    @Nullable
+    public static byte[] and(@Nullable byte[] bitmap1, @Nullable byte[] bitmap2) {
+        if (bitmap1 == null || bitmap2 == null) {
+            return null;
+        }
+        final byte[] result = new byte[Math.min(bitmap1.length, bitmap2.length)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte)(bitmap1[i] & bitmap2[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Bitwise or of two bitmaps, either of which may be {@code null} for all zeros.
+     * @param bitmap1 the first bitmap
+     * @param bitmap2 the second bitmap
+     * @return the bitwise or, which is {@code null} if both are
+     */
+    @Nullable
+    public static byte[] or(@Nullable byte[] bitmap1, @Nullable byte[] bitmap2) {
+        if (bitmap1 == null) {
+            return bitmap2;
+        }
+        if (bitmap2 == null) {
+            return bitmap1;
+        }
+        final byte[] result = Arrays.copyOf(bitmap1, Math.max(bitmap1.length, bitmap2.length));
+        for (int i = 0; i < bitmap2.length; i++) {
+            result[i] |= bitmap2[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * BitmapValueIndexMaintainer.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.MutationType;
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.FunctionNames;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
+import com.apple.foundationdb.record.metadata.IndexOptions;
+import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.record.provider.foundationdb.FDBIndexableRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.IndexFunctionHelper;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.foundationdb.tuple.TupleHelpers;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An index that maintains a bitmap of an integer position field for each value of the grouping fields.
+ *
+ * <p>
+ * The index's root expression must be a {@link com.apple.foundationdb.record.metadata.expressions.GroupingKeyExpression}
+ * with a single grouped field, the position, which is usually the record's integer primary key. The grouping fields are
+ * typically of low cardinality. Each index entry is a fixed-size bitmap covering {@link #getEntrySize entry size}
+ * consecutive positions, keyed by the grouping values followed by the offset of the first position covered.
+ * A record sets the bit for its position in the entry for its grouping values.
+ * </p>
+ *
+ * <p>
+ * Bits are set with {@link MutationType#BIT_OR} and cleared with {@link MutationType#BIT_AND}, so that concurrent
+ * writers of records with nearby positions do not conflict with one another. Entries whose bits have all been cleared
+ * are left in place and are treated the same as missing entries when scanned.
+ * </p>
+ *
+ * <p>
+ * The {@link IndexScanType#BY_BITMAP BY_BITMAP} scan returns entries whose key is the grouping values followed by the
+ * offset and whose value is a tuple of the bitmap bytes. Bit {@code i} of an entry, counting from zero, is
+ * {@code (bitmap[i / 8] & (1 << (i % 8))) != 0} and stands for position {@code offset + i}.
+ * The {@link FunctionNames#COUNT COUNT} aggregate function is evaluated by counting set bits, without needing to
+ * enumerate positions.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class BitmapValueIndexMaintainer extends StandardIndexMaintainer {
+    /**
+     * The default number of positions in each bitmap entry.
+     */
+    public static final int DEFAULT_ENTRY_SIZE = 10_000;
+
+    private final int entrySize;
+
+    public BitmapValueIndexMaintainer(IndexMaintainerState state) {
+        super(state);
+        this.entrySize = getEntrySize(state.index);
+    }
+
+    /**
+     * Get the number of positions in each bitmap entry of the given index.
+     * @param index a {@link com.apple.foundationdb.record.metadata.IndexTypes#BITMAP_VALUE} index
+     * @return the number of bits in each entry
+     */
+    @SuppressWarnings("PMD.PreserveStackTrace")
+    public static int getEntrySize(@Nonnull Index index) {
+        final String option = index.getOption(IndexOptions.BITMAP_VALUE_ENTRY_SIZE_OPTION);
+        if (option == null) {
+            return DEFAULT_ENTRY_SIZE;
+        }
+        final int entrySize;
+        try {
+            entrySize = Integer.parseInt(option);
+        } catch (NumberFormatException ex) {
+            throw new MetaDataException("bitmap entry size is not an integer",
+                    LogMessageKeys.INDEX_NAME, index.getName(),
+                    LogMessageKeys.VALUE, option);
+        }
+        if (entrySize <= 0 || entrySize % 8 != 0) {
+            throw new MetaDataException("bitmap entry size must be a positive multiple of 8",
+                    LogMessageKeys.INDEX_NAME, index.getName(),
+                    LogMessageKeys.VALUE, entrySize);
+        }
+        return entrySize;
+    }
+
+    /**
+     * Get the offset of the bitmap entry that holds the given position.
+     * @param position the position
+     * @param entrySize the number of positions in each entry
+     * @return the first position of the entry containing {@code position}
+     */
+    public static long getOffset(long position, int entrySize) {
+        return Math.floorDiv(position, entrySize) * entrySize;
+    }
+
+    /**
+     * Count the number of set bits in a bitmap.
+     * @param bitmap the bitmap
+     * @return the number of positions present in the bitmap
+     */
+    public static long countBits(@Nullable byte[] bitmap) {
+        if (bitmap == null) {
+            return 0;
+        }
+        long count = 0;
+        for (byte b : bitmap) {
+            count += Integer.bitCount(b & 0xFF);
+        }
+        return count;
+    }
+
+    @Nonnull
+    @Override
+    public RecordCursor<IndexEntry> scan(@Nonnull IndexScanType scanType,
+                                         @Nonnull TupleRange range,
+                                         @Nullable byte[] continuation,
+                                         @Nonnull ScanProperties scanProperties) {
+        if (scanType != IndexScanType.BY_BITMAP) {
+            throw new RecordCoreException("Can only scan bitmap index by bitmap.");
+        }
+        return scan(range, continuation, scanProperties);
+    }
+
+    @Override
+    protected <M extends Message> CompletableFuture<Void> updateIndexKeys(@Nonnull final FDBIndexableRecord<M> savedRecord,
+                                                                          final boolean remove,
+                                                                          @Nonnull final List<IndexEntry> indexEntries) {
+        final int groupPrefixSize = getGroupingCount();
+        for (IndexEntry indexEntry : indexEntries) {
+            final long startTime = System.nanoTime();
+            final Object positionValue = indexEntry.getKeyValue(groupPrefixSize);
+            if (positionValue == null) {
+                continue;
+            }
+            if (!(positionValue instanceof Number)) {
+                throw new RecordCoreException("bitmap index position is not an integer")
+                        .addLogInfo(LogMessageKeys.INDEX_NAME, state.index.getName())
+                        .addLogInfo(LogMessageKeys.PRIMARY_KEY, savedRecord.getPrimaryKey());
+            }
+            final long position = ((Number)positionValue).longValue();
+            final long offset = getOffset(position, entrySize);
+            final int bit = (int)(position - offset);
+            final Tuple groupKey = TupleHelpers.subTuple(indexEntry.getKey(), 0, groupPrefixSize);
+            final byte[] key = state.indexSubspace.pack(groupKey.add(offset));
+            final byte[] param = new byte[entrySize / 8];
+            if (remove) {
+                Arrays.fill(param, (byte)0xFF);
+                param[bit / 8] &= (byte)~(1 << (bit % 8));
+                state.transaction.mutate(MutationType.BIT_AND, key, param);
+            } else {
+                param[bit / 8] |= (byte)(1 << (bit % 8));
+                state.transaction.mutate(MutationType.BIT_OR, key, param);
+            }
+            if (state.store.getTimer() != null) {
+                state.store.getTimer().recordSinceNanoTime(FDBStoreTimer.Events.MUTATE_INDEX_ENTRY, startTime);
+            }
+        }
+        return AsyncUtil.DONE;
+    }
+
+    @Override
+    protected Tuple decodeValue(@Nonnull byte[] value) {
+        return Tuple.from((Object)value);
+    }
+
+    @Override
+    public boolean canEvaluateAggregateFunction(@Nonnull IndexAggregateFunction function) {
+        return FunctionNames.COUNT.equals(function.getName()) &&
+               IndexFunctionHelper.isGroupPrefix(function.getOperand(), state.index.getRootExpression());
+    }
+
+    @Override
+    @Nonnull
+    public CompletableFuture<Tuple> evaluateAggregateFunction(@Nonnull IndexAggregateFunction function,
+                                                              @Nonnull TupleRange range,
+                                                              @Nonnull IsolationLevel isolationLevel) {
+        if (!FunctionNames.COUNT.equals(function.getName())) {
+            throw new MetaDataException("this index does not support aggregate function: " + function);
+        }
+        final RecordCursor<IndexEntry> cursor = scan(IndexScanType.BY_BITMAP, range,
+                null, new ScanProperties(ExecuteProperties.newBuilder().setIsolationLevel(isolationLevel).build()));
+        return cursor.reduce(0L, (count, entry) -> count + countBits(entry.getValue().getBytes(0)))
+                .thenApply(Tuple::from);
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        // Setting a bit twice is harmless, but BIT_AND stores its whole parameter when there is no existing entry,
+        // so clearing the bit of a record that was never indexed would set all the others.
+        return false;
+    }
+}
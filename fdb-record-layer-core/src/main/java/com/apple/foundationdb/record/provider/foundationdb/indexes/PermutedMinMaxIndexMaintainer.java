@@ -0,0 +1,336 @@
+/*
+ * PermutedMinMaxIndexMaintainer.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.FunctionNames;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
+import com.apple.foundationdb.record.metadata.IndexOptions;
+import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.record.provider.foundationdb.FDBIndexableRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.IndexFunctionHelper;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
+import com.apple.foundationdb.record.provider.foundationdb.KeyValueCursor;
+import com.apple.foundationdb.record.query.QueryToKeyMatcher;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.foundationdb.tuple.TupleHelpers;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An index that maintains the minimum or maximum value of a field for each group, in a way that allows records to be
+ * deleted and updated.
+ *
+ * <p>
+ * The {@link IndexTypes#MIN_EVER_TUPLE MIN_EVER} and {@link IndexTypes#MAX_EVER_TUPLE MAX_EVER} indexes keep a single
+ * entry per group, which cannot go back when the record holding the extremum is removed. This index instead keeps
+ * two subspaces:
+ * </p>
+ * <ul>
+ * <li>The <em>primary</em> subspace has an entry for every record, ordered by the grouping values, then the grouped
+ * value, then the primary key, just like a {@link IndexTypes#VALUE VALUE} index. The current extremum of a group is
+ * found with a single read of the first (or last) entry of the group's range.</li>
+ * <li>The <em>permuted</em> subspace has one entry per group, holding just that group's extremum. The last
+ * {@link IndexOptions#PERMUTED_SIZE_OPTION permuted size} grouping values are moved after the value, so that the groups
+ * that share the remaining prefix are ordered by their extremum.</li>
+ * </ul>
+ *
+ * <p>
+ * The permuted entry of a group is only rewritten when a record changes that group's extremum. Unlike the
+ * atomic-mutation aggregate indexes, updates read the group's current extremum, so concurrent updates to the same
+ * group can conflict.
+ * </p>
+ *
+ * <p>
+ * The {@link IndexScanType#BY_VALUE BY_VALUE} scan returns entries from the primary subspace. The
+ * {@link IndexScanType#BY_GROUP BY_GROUP} scan returns entries from the permuted subspace, whose keys are the
+ * non-permuted grouping values, then the value, then the permuted grouping values.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class PermutedMinMaxIndexMaintainer extends StandardIndexMaintainer {
+    private static final Object PRIMARY_SUBSPACE_KEY = 0L;
+    private static final Object PERMUTED_SUBSPACE_KEY = 1L;
+
+    private final boolean max;
+    private final int permutedSize;
+    @Nonnull
+    private final Subspace primarySubspace;
+    @Nonnull
+    private final Subspace permutedSubspace;
+
+    public PermutedMinMaxIndexMaintainer(IndexMaintainerState state) {
+        super(state);
+        this.max = IndexTypes.PERMUTED_MAX.equals(state.index.getType());
+        this.permutedSize = getPermutedSize(state.index);
+        this.primarySubspace = state.indexSubspace.subspace(Tuple.from(PRIMARY_SUBSPACE_KEY));
+        this.permutedSubspace = state.indexSubspace.subspace(Tuple.from(PERMUTED_SUBSPACE_KEY));
+    }
+
+    /**
+     * Get the number of trailing grouping values that are stored after the value in the permuted subspace.
+     * @param index a {@link IndexTypes#PERMUTED_MIN} or {@link IndexTypes#PERMUTED_MAX} index
+     * @return the permuted size
+     */
+    @SuppressWarnings("PMD.PreserveStackTrace")
+    public static int getPermutedSize(@Nonnull Index index) {
+        final String option = index.getOption(IndexOptions.PERMUTED_SIZE_OPTION);
+        if (option == null) {
+            return 0;
+        }
+        final int permutedSize;
+        try {
+            permutedSize = Integer.parseInt(option);
+        } catch (NumberFormatException ex) {
+            throw new MetaDataException("permuted size is not an integer",
+                    LogMessageKeys.INDEX_NAME, index.getName(),
+                    LogMessageKeys.VALUE, option);
+        }
+        if (permutedSize < 0) {
+            throw new MetaDataException("permuted size cannot be negative",
+                    LogMessageKeys.INDEX_NAME, index.getName(),
+                    LogMessageKeys.VALUE, permutedSize);
+        }
+        return permutedSize;
+    }
+
+    @Nonnull
+    @Override
+    public RecordCursor<IndexEntry> scan(@Nonnull IndexScanType scanType,
+                                         @Nonnull TupleRange range,
+                                         @Nullable byte[] continuation,
+                                         @Nonnull ScanProperties scanProperties) {
+        if (scanType == IndexScanType.BY_VALUE) {
+            return scan(primarySubspace, range, continuation, scanProperties);
+        } else if (scanType == IndexScanType.BY_GROUP) {
+            return scan(permutedSubspace, range, continuation, scanProperties);
+        } else {
+            throw new RecordCoreException("Can only scan permuted index by value or group.");
+        }
+    }
+
+    @Nonnull
+    private RecordCursor<IndexEntry> scan(@Nonnull Subspace subspace,
+                                          @Nonnull TupleRange range,
+                                          @Nullable byte[] continuation,
+                                          @Nonnull ScanProperties scanProperties) {
+        final RecordCursor<KeyValue> keyValues = KeyValueCursor.Builder.withSubspace(subspace)
+                .setContext(state.context)
+                .setRange(range)
+                .setContinuation(continuation)
+                .setScanProperties(scanProperties)
+                .build();
+        return keyValues.map(kv -> {
+            state.store.countKeyValue(FDBStoreTimer.Counts.LOAD_INDEX_KEY, FDBStoreTimer.Counts.LOAD_INDEX_KEY_BYTES, FDBStoreTimer.Counts.LOAD_INDEX_VALUE_BYTES,
+                    kv);
+            return unpackKeyValue(subspace, kv);
+        });
+    }
+
+    @Override
+    protected <M extends Message> CompletableFuture<Void> updateIndexKeys(@Nonnull final FDBIndexableRecord<M> savedRecord,
+                                                                          final boolean remove,
+                                                                          @Nonnull final List<IndexEntry> indexEntries) {
+        // Each update depends on the extremum left by the previous one, so they are done in order.
+        CompletableFuture<Void> future = AsyncUtil.DONE;
+        final int groupPrefixSize = getGroupingCount();
+        for (IndexEntry indexEntry : indexEntries) {
+            if (TupleHelpers.subTuple(indexEntry.getKey(), groupPrefixSize, indexEntry.getKey().size()).getItems().contains(null)) {
+                // Like other aggregates, ignore missing values.
+                continue;
+            }
+            future = future.thenCompose(vignore -> updateOneKeyAsync(savedRecord, remove, indexEntry));
+        }
+        return future;
+    }
+
+    @Nonnull
+    private <M extends Message> CompletableFuture<Void> updateOneKeyAsync(@Nonnull final FDBIndexableRecord<M> savedRecord,
+                                                                         final boolean remove,
+                                                                         @Nonnull final IndexEntry indexEntry) {
+        final int groupPrefixSize = getGroupingCount();
+        final Tuple valueKey = indexEntry.getKey();
+        final Tuple groupKey = TupleHelpers.subTuple(valueKey, 0, groupPrefixSize);
+        final Tuple value = TupleHelpers.subTuple(valueKey, groupPrefixSize, valueKey.size());
+        final byte[] keyBytes = primarySubspace.pack(indexEntryKey(valueKey, savedRecord.getPrimaryKey()));
+        if (remove) {
+            final long startTime = System.nanoTime();
+            state.transaction.clear(keyBytes);
+            if (state.store.getTimer() != null) {
+                state.store.getTimer().recordSinceNanoTime(FDBStoreTimer.Events.DELETE_INDEX_ENTRY, startTime);
+            }
+            // The deleted value was the extremum if it is still better than whatever is left.
+            return getExtremum(groupKey).thenAccept(remaining -> {
+                if (remaining == null) {
+                    state.transaction.clear(permutedSubspace.pack(permutedKey(groupKey, value)));
+                } else if (isBetter(value, remaining)) {
+                    state.transaction.clear(permutedSubspace.pack(permutedKey(groupKey, value)));
+                    state.transaction.set(permutedSubspace.pack(permutedKey(groupKey, remaining)), TupleHelpers.EMPTY.pack());
+                }
+            });
+        } else {
+            return getExtremum(groupKey).thenAccept(current -> {
+                final long startTime = System.nanoTime();
+                checkKeyValueSizes(savedRecord, valueKey, TupleHelpers.EMPTY, keyBytes, TupleHelpers.EMPTY.pack());
+                state.transaction.set(keyBytes, TupleHelpers.EMPTY.pack());
+                if (current == null) {
+                    state.transaction.set(permutedSubspace.pack(permutedKey(groupKey, value)), TupleHelpers.EMPTY.pack());
+                } else if (isBetter(value, current)) {
+                    state.transaction.clear(permutedSubspace.pack(permutedKey(groupKey, current)));
+                    state.transaction.set(permutedSubspace.pack(permutedKey(groupKey, value)), TupleHelpers.EMPTY.pack());
+                }
+                if (state.store.getTimer() != null) {
+                    state.store.getTimer().recordSinceNanoTime(FDBStoreTimer.Events.SAVE_INDEX_ENTRY, startTime);
+                }
+            });
+        }
+    }
+
+    /**
+     * Read the current extremum of a group from the primary subspace.
+     * @param groupKey the grouping values
+     * @return a future that completes with the group's minimum or maximum value or {@code null} if the group is empty
+     */
+    @Nonnull
+    private CompletableFuture<Tuple> getExtremum(@Nonnull Tuple groupKey) {
+        final int groupPrefixSize = groupKey.size();
+        final int valueSize = getGroupedCount();
+        return state.transaction.getRange(primarySubspace.range(groupKey), 1, max).asList().thenApply(kvs -> {
+            if (kvs.isEmpty()) {
+                return null;
+            }
+            final Tuple entryKey = primarySubspace.unpack(kvs.get(0).getKey());
+            return TupleHelpers.subTuple(entryKey, groupPrefixSize, groupPrefixSize + valueSize);
+        });
+    }
+
+    private boolean isBetter(@Nonnull Tuple value, @Nonnull Tuple than) {
+        final int compare = TupleHelpers.compare(value, than);
+        return max ? compare > 0 : compare < 0;
+    }
+
+    @Nonnull
+    private Tuple permutedKey(@Nonnull Tuple groupKey, @Nonnull Tuple value) {
+        final int permutePosition = groupKey.size() - permutedSize;
+        return TupleHelpers.subTuple(groupKey, 0, permutePosition)
+                .addAll(value)
+                .addAll(TupleHelpers.subTuple(groupKey, permutePosition, groupKey.size()));
+    }
+
+    @Override
+    public boolean canEvaluateAggregateFunction(@Nonnull IndexAggregateFunction function) {
+        return getAggregateFunctionName().equals(function.getName()) &&
+               IndexFunctionHelper.isGroupPrefix(function.getOperand(), state.index.getRootExpression());
+    }
+
+    @Nonnull
+    private String getAggregateFunctionName() {
+        return max ? FunctionNames.MAX : FunctionNames.MIN;
+    }
+
+    @Override
+    @Nonnull
+    public CompletableFuture<Tuple> evaluateAggregateFunction(@Nonnull IndexAggregateFunction function,
+                                                              @Nonnull TupleRange range,
+                                                              @Nonnull IsolationLevel isolationLevel) {
+        if (!getAggregateFunctionName().equals(function.getName())) {
+            throw new MetaDataException("this index does not support aggregate function: " + function);
+        }
+        final int groupPrefixSize = getGroupingCount();
+        final int valueSize = getGroupedCount();
+        final int permutePosition = groupPrefixSize - permutedSize;
+        final int prefixSize = range.isEquals() ? range.getLow().size() : -1;
+        final ScanProperties firstOnly = new ScanProperties(ExecuteProperties.newBuilder()
+                .setReturnedRowLimit(1)
+                .setIsolationLevel(isolationLevel)
+                .build(), max);
+        if (prefixSize == groupPrefixSize) {
+            // A whole group: the first (or last) entry in the primary subspace.
+            return scan(primarySubspace, range, null, firstOnly).first()
+                    .thenApply(entry -> entry.map(e -> TupleHelpers.subTuple(e.getKey(), groupPrefixSize, groupPrefixSize + valueSize)).orElse(null));
+        } else if (prefixSize == permutePosition) {
+            // All the groups ordered by value: the first (or last) entry in the permuted subspace.
+            return scan(permutedSubspace, range, null, firstOnly).first()
+                    .thenApply(entry -> entry.map(e -> TupleHelpers.subTuple(e.getKey(), permutePosition, permutePosition + valueSize)).orElse(null));
+        } else {
+            // Some of the groups: every entry in the permuted subspace under the prefix. When the prefix reaches into
+            // the permuted grouping, only the part before the value can be scanned; the rest has to be filtered,
+            // since in the permuted key the value comes before those grouping columns.
+            final TupleRange scanRange;
+            final Tuple permutedPrefix;
+            if (prefixSize > permutePosition) {
+                scanRange = TupleRange.allOf(TupleHelpers.subTuple(range.getLow(), 0, permutePosition));
+                permutedPrefix = TupleHelpers.subTuple(range.getLow(), permutePosition, prefixSize);
+            } else {
+                scanRange = range;
+                permutedPrefix = null;
+            }
+            final int permutedStart = permutePosition + valueSize;
+            final RecordCursor<IndexEntry> cursor = scan(permutedSubspace, scanRange, null,
+                    new ScanProperties(ExecuteProperties.newBuilder().setIsolationLevel(isolationLevel).build()));
+            return cursor.reduce((Tuple)null, (extremum, entry) -> {
+                if (permutedPrefix != null &&
+                        !TupleHelpers.equals(permutedPrefix, TupleHelpers.subTuple(entry.getKey(), permutedStart, permutedStart + permutedPrefix.size()))) {
+                    return extremum;
+                }
+                final Tuple value = TupleHelpers.subTuple(entry.getKey(), permutePosition, permutedStart);
+                return extremum == null || isBetter(value, extremum) ? value : extremum;
+            });
+        }
+    }
+
+    @Override
+    public boolean canDeleteWhere(@Nonnull QueryToKeyMatcher matcher, @Nonnull Key.Evaluated evaluated) {
+        // The permuted subspace can only be cleared by a prefix that comes before the value.
+        return super.canDeleteWhere(matcher, evaluated) && evaluated.size() <= getGroupingCount() - permutedSize;
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteWhere(Transaction tr, @Nonnull Tuple prefix) {
+        final byte[] primaryKey = primarySubspace.pack(prefix);
+        tr.clear(primaryKey, ByteArrayUtil.strinc(primaryKey));
+        final byte[] permutedKey = permutedSubspace.pack(prefix);
+        tr.clear(permutedKey, ByteArrayUtil.strinc(permutedKey));
+        return AsyncUtil.DONE;
+    }
+}
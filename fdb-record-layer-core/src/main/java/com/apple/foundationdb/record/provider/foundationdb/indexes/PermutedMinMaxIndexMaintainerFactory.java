@@ -0,0 +1,94 @@
+/*
+ * PermutedMinMaxIndexMaintainerFactory.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexOptions;
+import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.IndexValidator;
+import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.record.metadata.MetaDataValidator;
+import com.apple.foundationdb.record.metadata.expressions.GroupingKeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainer;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerFactory;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
+import com.google.auto.service.AutoService;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A factory for {@link PermutedMinMaxIndexMaintainer} indexes.
+ */
+@AutoService(IndexMaintainerFactory.class)
+@API(API.Status.EXPERIMENTAL)
+public class PermutedMinMaxIndexMaintainerFactory implements IndexMaintainerFactory {
+    @Override
+    @Nonnull
+    public Iterable<String> getIndexTypes() {
+        return Arrays.asList(IndexTypes.PERMUTED_MIN, IndexTypes.PERMUTED_MAX);
+    }
+
+    @Override
+    @Nonnull
+    public IndexValidator getIndexValidator(Index index) {
+        return new IndexValidator(index) {
+            @Override
+            public void validate(@Nonnull MetaDataValidator metaDataValidator) {
+                super.validate(metaDataValidator);
+                validateGrouping(1);
+                validateNotVersion();
+                if (index.isUnique()) {
+                    throw new MetaDataException(String.format("%s index does not allow unique", index.getType()),
+                            LogMessageKeys.INDEX_NAME, index.getName());
+                }
+                final int permutedSize = PermutedMinMaxIndexMaintainer.getPermutedSize(index);
+                if (permutedSize > ((GroupingKeyExpression)index.getRootExpression()).getGroupingCount()) {
+                    throw new MetaDataException("permuted size exceeds number of grouping fields",
+                            LogMessageKeys.INDEX_NAME, index.getName(),
+                            LogMessageKeys.VALUE, permutedSize);
+                }
+            }
+
+            @Override
+            public void validateChangedOptions(@Nonnull Index oldIndex, @Nonnull Set<String> changedOptions) {
+                if (changedOptions.contains(IndexOptions.PERMUTED_SIZE_OPTION)) {
+                    if (PermutedMinMaxIndexMaintainer.getPermutedSize(oldIndex) != PermutedMinMaxIndexMaintainer.getPermutedSize(index)) {
+                        throw new MetaDataException("permuted size changed",
+                                LogMessageKeys.INDEX_NAME, index.getName());
+                    }
+                    changedOptions.remove(IndexOptions.PERMUTED_SIZE_OPTION);
+                }
+                super.validateChangedOptions(oldIndex, changedOptions);
+            }
+        };
+    }
+
+    @Override
+    @Nonnull
+    public IndexMaintainer getIndexMaintainer(IndexMaintainerState state) {
+        return new PermutedMinMaxIndexMaintainer(state);
+    }
+
+}
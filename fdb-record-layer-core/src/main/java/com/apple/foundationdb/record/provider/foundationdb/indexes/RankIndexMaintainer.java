@@ -182,7 +182,7 @@ public class RankIndexMaintainer extends StandardIndexMaintainer {
             rankSubspace = rankSubspace.subspace(prefix);
             scoreValue = Tuple.fromList(scoreValue.getItems().subList(groupPrefixSize, scoreValue.size()));
         }
-        RankedSet rankedSet = new RankedSetIndexHelper.InstrumentedRankedSet(state, rankSubspace, config);
+        RankedSet rankedSet = RankedSetIndexHelper.newRankedSet(state, rankSubspace, config);
         return RankedSetIndexHelper.rankForScore(state, rankedSet, scoreValue, true);
     }
 
@@ -261,7 +261,7 @@ public class RankIndexMaintainer extends StandardIndexMaintainer {
             rankSubspace = rankSubspace.subspace(TupleHelpers.subTuple(values, 0, groupingCount));
             values = TupleHelpers.subTuple(values, groupingCount, values.size());
         }
-        final RankedSet rankedSet = new RankedSetIndexHelper.InstrumentedRankedSet(state, rankSubspace, config);
+        final RankedSet rankedSet = RankedSetIndexHelper.newRankedSet(state, rankSubspace, config);
         return function.apply(rankedSet, values);
     }
 
@@ -90,6 +90,16 @@ public class RankIndexMaintainerFactory implements IndexMaintainerFactory {
                         }
                         changedOptions.remove(IndexOptions.RANK_COUNT_DUPLICATES);
                     }
+                    if (changedOptions.contains(IndexOptions.RANK_STAGE_CHANGES)) {
+                        // Existing staged changes would be ignored if staging were turned off, and vice versa.
+                        if (RankedSetIndexHelper.isStageChanges(oldIndex) != RankedSetIndexHelper.isStageChanges(index)) {
+                            throw new MetaDataException("rank stage changes changed",
+                                    LogMessageKeys.INDEX_NAME, index.getName());
+                        }
+                        changedOptions.remove(IndexOptions.RANK_STAGE_CHANGES);
+                    }
+                    // The compaction threshold only affects when staged changes are folded in, so it can be changed freely.
+                    changedOptions.remove(IndexOptions.RANK_STAGING_COMPACTION_THRESHOLD);
                 }
                 super.validateChangedOptions(oldIndex, changedOptions);
             }
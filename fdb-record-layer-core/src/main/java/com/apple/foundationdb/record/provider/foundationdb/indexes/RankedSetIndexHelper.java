@@ -27,12 +27,17 @@ import com.apple.foundationdb.TransactionContext;
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.async.RankedSet;
+import com.apple.foundationdb.async.StagedRankedSet;
 import com.apple.foundationdb.record.EndpointType;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.logging.KeyValueLogMessage;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.metadata.IndexOptions;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBDatabaseRunner;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBTransactionContext;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
@@ -40,9 +45,12 @@ import com.apple.foundationdb.record.query.expressions.Comparisons;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.ByteArrayUtil2;
 import com.apple.foundationdb.tuple.Tuple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -51,6 +59,11 @@ import java.util.concurrent.CompletableFuture;
 @API(API.Status.INTERNAL)
 public class RankedSetIndexHelper {
     public static final Tuple COMPARISON_SKIPPED_SCORE = Tuple.from(Comparisons.COMPARISON_SKIPPED_BINDING);
+    public static final int DEFAULT_STAGING_COMPACTION_THRESHOLD = 100;
+    private static final Logger LOGGER = LoggerFactory.getLogger(RankedSetIndexHelper.class);
+    private static final String COMPACT_POST_COMMIT_PREFIX = "rankedSetCompact:";
+    // Staged changes are kept inside the ranked set's own subspace, before the skip list levels, so that they are cleared along with it.
+    private static final Tuple STAGING_SUBSPACE_KEY = Tuple.from("staged");
 
     /**
      * Parse standard options into {@link RankedSet.Config}.
@@ -74,6 +87,46 @@ public class RankedSetIndexHelper {
         return builder.build();
     }
 
+    /**
+     * Get whether the ranked sets of the given index stage their changes, according to {@link IndexOptions#RANK_STAGE_CHANGES}.
+     * @param index the index definition to get options from
+     * @return {@code true} if changes are staged in a {@link StagedRankedSet}
+     */
+    public static boolean isStageChanges(@Nonnull Index index) {
+        return index.getBooleanOption(IndexOptions.RANK_STAGE_CHANGES, false);
+    }
+
+    /**
+     * Get the number of staged changes at which an update folds them into the skip list once it has committed,
+     * according to {@link IndexOptions#RANK_STAGING_COMPACTION_THRESHOLD}.
+     * @param index the index definition to get options from
+     * @return the compaction threshold
+     */
+    public static int getStagingCompactionThreshold(@Nonnull Index index) {
+        String thresholdOption = index.getOption(IndexOptions.RANK_STAGING_COMPACTION_THRESHOLD);
+        return thresholdOption == null ? DEFAULT_STAGING_COMPACTION_THRESHOLD : Integer.parseInt(thresholdOption);
+    }
+
+    /**
+     * Get an instrumented ranked set for the given index, which stages its changes if the index's options say to.
+     * @param state the index maintainer state
+     * @param rankSubspace the subspace of the ranked set
+     * @param config the ranked set configuration
+     * @return a new ranked set
+     */
+    @Nonnull
+    public static RankedSet newRankedSet(@Nonnull IndexMaintainerState state,
+                                         @Nonnull Subspace rankSubspace,
+                                         @Nonnull RankedSet.Config config) {
+        if (isStageChanges(state.index)) {
+            // Leave enough headroom above the threshold that reads only go past the limit when compaction is falling behind.
+            final int stagingLimit = Math.max(StagedRankedSet.DEFAULT_STAGING_LIMIT, getStagingCompactionThreshold(state.index) * 10);
+            return new InstrumentedStagedRankedSet(state, rankSubspace, rankSubspace.subspace(STAGING_SUBSPACE_KEY), config, stagingLimit);
+        } else {
+            return new InstrumentedRankedSet(state, rankSubspace, config);
+        }
+    }
+
     /**
      * Instrumentation events specific to rank index maintenance.
      */
@@ -141,7 +194,7 @@ public class RankedSetIndexHelper {
             return CompletableFuture.completedFuture(TupleRange.allOf(prefix));
         }
 
-        final RankedSet rankedSet = new InstrumentedRankedSet(state, rankSubspace, config);
+        final RankedSet rankedSet = newRankedSet(state, rankSubspace, config);
         return init(state, rankedSet).thenCompose(v -> {
             CompletableFuture<Tuple> lowScoreFuture = scoreForRank(state, rankedSet, startFromBeginning ? 0L : lowRankNum, null);
             CompletableFuture<Tuple> highScoreFuture = scoreForRank(state, rankedSet, highRankNum, null);
@@ -248,7 +301,7 @@ public class RankedSetIndexHelper {
                                                           @Nonnull Tuple valueKey,
                                                           @Nonnull Tuple scoreKey,
                                                           boolean remove) {
-        final RankedSet rankedSet = new InstrumentedRankedSet(state, rankSubspace, config);
+        final RankedSet rankedSet = newRankedSet(state, rankSubspace, config);
         final byte[] score = scoreKey.pack();
         CompletableFuture<Void> result = init(state, rankedSet).thenCompose(v -> {
             if (remove) {
@@ -263,10 +316,88 @@ public class RankedSetIndexHelper {
             } else {
                 return rankedSet.add(state.transaction, score).thenApply(added -> null);
             }
-        });
+        }).thenCompose(v -> compactIfNeeded(state, rankSubspace, rankedSet));
+        return state.store.instrument(Events.RANKED_SET_UPDATE, result);
+    }
+
+    /**
+     * Apply a batch of changes to a ranked set using {@link RankedSet#removeAll} and {@link RankedSet#addAll}.
+     * Unlike {@link #updateRankedSet(IndexMaintainerState, Subspace, RankedSet.Config, Tuple, Tuple, boolean)}, this
+     * does not look at the index to decide whether a score should stay in the ranked set: the caller must already
+     * have worked out which scores are to be added and removed.
+     * @param state the index maintainer state
+     * @param rankSubspace the subspace of the ranked set
+     * @param config the ranked set configuration
+     * @param addScores the packed scores to be added, repeated if more than one occurrence is to be added
+     * @param removeScores the packed scores to be removed, repeated if more than one occurrence is to be removed
+     * @param mustBePresent for each entry in {@code removeScores}, whether it is an error for it not to be in the ranked set
+     * @return a future that completes when the ranked set has been updated
+     */
+    @Nonnull
+    public static CompletableFuture<Void> updateRankedSet(@Nonnull IndexMaintainerState state,
+                                                          @Nonnull Subspace rankSubspace,
+                                                          @Nonnull RankedSet.Config config,
+                                                          @Nonnull List<byte[]> addScores,
+                                                          @Nonnull List<byte[]> removeScores,
+                                                          @Nonnull List<Boolean> mustBePresent) {
+        final RankedSet rankedSet = newRankedSet(state, rankSubspace, config);
+        CompletableFuture<Void> result = init(state, rankedSet).thenCompose(v -> {
+            if (removeScores.isEmpty()) {
+                return AsyncUtil.DONE;
+            }
+            return rankedSet.removeAll(state.transaction, removeScores).thenAccept(removed -> {
+                for (int i = 0; i < removed.size(); i++) {
+                    // As with a single removal, a score missing from a write-only index has just not been added yet.
+                    if (!removed.get(i) && mustBePresent.get(i) && !state.store.isIndexWriteOnly(state.index)) {
+                        throw new RecordCoreException("Score was not present in ranked set.");
+                    }
+                }
+            });
+        }).thenCompose(v -> {
+            if (addScores.isEmpty()) {
+                return AsyncUtil.DONE;
+            }
+            return rankedSet.addAll(state.transaction, addScores).thenApply(added -> null);
+        }).thenCompose(v -> compactIfNeeded(state, rankSubspace, rankedSet));
         return state.store.instrument(Events.RANKED_SET_UPDATE, result);
     }
 
+    // Once enough changes have been staged, fold some of them into the skip list, so that reads do not need to merge too many.
+    // The count is read at snapshot isolation and the compaction is done in its own transaction once this one has committed,
+    // so that concurrent updates never conflict because of it. Concurrent compactions can still conflict with one another, but
+    // then only one of them succeeds, which is enough, and the rest give up instead of retrying.
+    @Nonnull
+    private static CompletableFuture<Void> compactIfNeeded(@Nonnull IndexMaintainerState state, @Nonnull Subspace rankSubspace,
+                                                           @Nonnull RankedSet rankedSet) {
+        if (!(rankedSet instanceof StagedRankedSet)) {
+            return AsyncUtil.DONE;
+        }
+        final StagedRankedSet stagedRankedSet = (StagedRankedSet)rankedSet;
+        final int threshold = getStagingCompactionThreshold(state.index);
+        return stagedRankedSet.getStagedChangeCount(state.context.readTransaction(true)).thenAccept(count -> {
+            if (count >= threshold) {
+                state.context.getOrCreatePostCommit(COMPACT_POST_COMMIT_PREFIX + ByteArrayUtil2.toHexString(rankSubspace.getKey()),
+                        name -> () -> compactAfterCommit(state.context, rankSubspace, stagedRankedSet, threshold));
+            }
+        });
+    }
+
+    @Nonnull
+    private static CompletableFuture<Void> compactAfterCommit(@Nonnull FDBRecordContext context, @Nonnull Subspace rankSubspace,
+                                                              @Nonnull StagedRankedSet stagedRankedSet, int threshold) {
+        final FDBDatabaseRunner runner = context.newRunner();
+        runner.setMaxAttempts(1);
+        final CompletableFuture<Integer> compacted = runner.runAsync(compactContext -> stagedRankedSet.compact(compactContext.ensureActive(), threshold));
+        return context.instrument(FDBStoreTimer.DetailEvents.RANKED_SET_COMPACT, compacted).handle((count, err) -> {
+            runner.close();
+            if (err != null && LOGGER.isDebugEnabled()) {
+                LOGGER.debug(KeyValueLogMessage.of("ranked set compaction failed",
+                        LogMessageKeys.SUBSPACE, ByteArrayUtil2.loggable(rankSubspace.getKey())), err);
+            }
+            return null;
+        });
+    }
+
     private static CompletableFuture<Void> removeFromRankedSet(@Nonnull IndexMaintainerState state, @Nonnull RankedSet rankedSet, @Nonnull byte[] score) {
         return rankedSet.remove(state.transaction, score).thenApply(exists -> {
             // It is okay if the score isn't in the ranked set yet if the index is
@@ -337,4 +468,69 @@ public class RankedSetIndexHelper {
         }
     }
 
+    /**
+     * A {@link StagedRankedSet} that adds {@link StoreTimer} instrumentation.
+     */
+    public static class InstrumentedStagedRankedSet extends StagedRankedSet {
+        private final FDBTransactionContext context;
+
+        public InstrumentedStagedRankedSet(@Nonnull IndexMaintainerState state,
+                                           @Nonnull Subspace rankSubspace,
+                                           @Nonnull Subspace stagingSubspace,
+                                           @Nonnull Config config,
+                                           int stagingLimit) {
+            super(rankSubspace, stagingSubspace, state.context.getExecutor(), config, stagingLimit);
+            this.context = state.context;
+        }
+
+        @Override
+        public CompletableFuture<Void> init(TransactionContext tc) {
+            CompletableFuture<Void> result = super.init(tc);
+            return context.instrument(FDBStoreTimer.DetailEvents.RANKED_SET_INIT, result);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> contains(ReadTransactionContext tc, byte[] key) {
+            CompletableFuture<Boolean> result = super.contains(tc, key);
+            return context.instrument(FDBStoreTimer.DetailEvents.RANKED_SET_CONTAINS, result);
+        }
+
+        @Override
+        protected CompletableFuture<Boolean> nextLookup(RankedSet.Lookup lookup, ReadTransaction tr) {
+            CompletableFuture<Boolean> result = super.nextLookup(lookup, tr);
+            return context.instrument(FDBStoreTimer.DetailEvents.RANKED_SET_NEXT_LOOKUP, result);
+        }
+
+        @Override
+        protected void nextLookupKey(long duration, boolean newIter, boolean hasNext, int level, boolean rankLookup) {
+            if (context.getTimer() != null) {
+                FDBStoreTimer.DetailEvents event = FDBStoreTimer.DetailEvents.RANKED_SET_NEXT_LOOKUP_KEY;
+                context.getTimer().record(event, duration);
+            }
+        }
+
+        @Override
+        protected CompletableFuture<Void> addLevelZeroKey(Transaction tr, byte[] key, int level, boolean increment) {
+            CompletableFuture<Void> result = super.addLevelZeroKey(tr, key, level, increment);
+            return context.instrument(FDBStoreTimer.DetailEvents.RANKED_SET_ADD_LEVEL_ZERO_KEY, result);
+        }
+
+        @Override
+        protected CompletableFuture<Void> addIncrementLevelKey(Transaction tr, byte[] key, int level, boolean orEqual) {
+            CompletableFuture<Void> result = super.addIncrementLevelKey(tr, key, level, orEqual);
+            return context.instrument(FDBStoreTimer.DetailEvents.RANKED_SET_ADD_INCREMENT_LEVEL_KEY, result);
+        }
+
+        @Override
+        protected CompletableFuture<Void> addInsertLevelKey(Transaction tr, byte[] key, int level) {
+            CompletableFuture<Void> result = super.addInsertLevelKey(tr, key, level);
+            return context.instrument(FDBStoreTimer.DetailEvents.RANKED_SET_ADD_INSERT_LEVEL_KEY, result);
+        }
+
+        @Override
+        protected void stagingLimitExceeded(int stagedKeys) {
+            context.increment(FDBStoreTimer.Counts.RANKED_SET_STAGING_LIMIT_EXCEEDED);
+        }
+    }
+
 }
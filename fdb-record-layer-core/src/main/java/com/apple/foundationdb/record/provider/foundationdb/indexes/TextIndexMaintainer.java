@@ -21,9 +21,15 @@
 package com.apple.foundationdb.record.provider.foundationdb.indexes;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.KeySelector;
 import com.apple.foundationdb.KeyValue;
+import com.apple.foundationdb.MutationType;
 import com.apple.foundationdb.Range;
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.StreamingMode;
+import com.apple.foundationdb.Transaction;
 import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.async.MoreAsyncUtil;
 import com.apple.foundationdb.map.BunchedMap;
 import com.apple.foundationdb.map.BunchedMapMultiIterator;
 import com.apple.foundationdb.record.ByteScanLimiter;
@@ -36,6 +42,7 @@ import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.annotation.SpotBugsSuppressWarnings;
 import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.cursors.LazyCursor;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
 import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.Index;
@@ -66,8 +73,12 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -123,6 +134,26 @@ import java.util.function.Function;
  * </p>
  *
  * <p>
+ * Each token update reads and re-writes the part of the index holding the record's entry for that token, so
+ * a transaction that saves many records with common tokens reads and re-writes the same parts of the index many
+ * times. Setting the {@value IndexOptions#TEXT_BUFFER_WRITES_OPTION} option to {@code true} instead buffers the
+ * updates from all of the records saved in a transaction and applies them just before the transaction commits
+ * (or when the index is scanned within the transaction), so that each affected part of the index is written once.
+ * This makes bulk loading of text-heavy records much cheaper, but, like aggressive conflict ranges, it makes conflicts
+ * more likely between transactions that update nearby records at the same time. <b>Warning:</b> This feature is
+ * currently experimental, and may change at any moment without prior notice.
+ * </p>
+ *
+ * <p>
+ * Setting the {@value IndexOptions#TEXT_STORE_STATISTICS_OPTION} option to {@code true} makes the index also keep the
+ * number of documents containing each token and the length of each document. These are used to rank documents by
+ * relevance with {@link #scanByScore}, and to let queries for documents containing <em>all</em> of a set of tokens
+ * walk only the postings of the rarest token, checking each candidate against the other tokens with
+ * {@link #seekTokenEntry}. <b>Warning:</b> This feature is currently experimental, and may change at any moment
+ * without prior notice.
+ * </p>
+ *
+ * <p>
  * <b>Note:</b> At the moment, this index is under active development and should be considered
  * experimental. At the current time, this index will be correctly updated on insert and removal
  * and can be manually scanned, but it will only be selected by the query planner in limited circumstances
@@ -139,17 +170,40 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
     private static final BunchedMap<Tuple, List<Integer>> BUNCHED_MAP = new BunchedMap<>(TextIndexBunchedSerializer.instance(), Comparator.naturalOrder(), BUNCH_SIZE);
 
     // Subspaces used within the index secondary subspace for additional meta-data.
-    // (Currently, there is only one, but this allows for expansion if we ever decide
-    // to use a more compact format or add an indirection layer for keys to reduce the key-size, etc.)
+    // (This allows for expansion if we ever decide to use a more compact format or
+    // add an indirection layer for keys to reduce the key-size, etc.)
     @VisibleForTesting
     @Nonnull
     static final Tuple TOKENIZER_VERSION_SUBSPACE_TUPLE = Tuple.from(0L);
+    // The remaining subspaces hold the statistics used for relevance scoring, each keyed by grouping key first.
+    // Number of tokens in each document.
+    @Nonnull
+    static final Tuple DOCUMENT_LENGTH_SUBSPACE_TUPLE = Tuple.from(1L);
+    // Number of documents containing each token, maintained with atomic adds.
+    @Nonnull
+    static final Tuple TOKEN_FREQUENCY_SUBSPACE_TUPLE = Tuple.from(2L);
+    // Number of documents and total number of tokens in each group, maintained with atomic adds.
+    @Nonnull
+    static final Tuple GROUP_TOTALS_SUBSPACE_TUPLE = Tuple.from(3L);
+    static final long DOCUMENT_COUNT_KEY = 0L;
+    static final long TOTAL_LENGTH_KEY = 1L;
+
+    /**
+     * The default value of the BM25 term frequency saturation parameter.
+     */
+    public static final double DEFAULT_BM25_K1 = 1.2;
+    /**
+     * The default value of the BM25 document length normalization parameter.
+     */
+    public static final double DEFAULT_BM25_B = 0.75;
 
     @Nonnull
     private final TextTokenizer tokenizer;
     private final int tokenizerVersion;
     private final boolean addAggressiveConflictRanges;
     private final boolean omitPositionLists;
+    private final boolean bufferWrites;
+    private final boolean storeStatistics;
 
     /**
      * Get the text tokenizer associated with this index. This uses the
@@ -199,6 +253,35 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
         return index.getBooleanOption(IndexOptions.TEXT_OMIT_POSITIONS_OPTION, false);
     }
 
+    static boolean getIfBufferWrites(@Nonnull Index index) {
+        return index.getBooleanOption(IndexOptions.TEXT_BUFFER_WRITES_OPTION, false);
+    }
+
+    /**
+     * Get whether the given index keeps the statistics enabled by the
+     * "{@value IndexOptions#TEXT_STORE_STATISTICS_OPTION}" option.
+     *
+     * @param index the index to check
+     * @return whether the index stores token and document statistics
+     */
+    public static boolean getIfStoreStatistics(@Nonnull Index index) {
+        return index.getBooleanOption(IndexOptions.TEXT_STORE_STATISTICS_OPTION, false);
+    }
+
+    /**
+     * Throw away any text index updates buffered within the given transaction for indexes within the given subspace.
+     * This must be called before clearing the data of a text index that might have the
+     * {@value IndexOptions#TEXT_BUFFER_WRITES_OPTION} option set, as otherwise the buffered updates
+     * would be written back at commit time.
+     *
+     * @param context the transaction that might have buffered updates
+     * @param subspace the subspace being cleared
+     */
+    @API(API.Status.INTERNAL)
+    public static void discardBufferedUpdates(@Nonnull FDBRecordContext context, @Nonnull Subspace subspace) {
+        TextIndexWriteBuffer.discard(context, subspace);
+    }
+
     // Gets the position of the text field this index is tokenizing from within the
     // index's expression. This is the first column of the index expression after
     // all grouping columns (or the first column if there are no grouping columns).
@@ -225,6 +308,8 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
         this.tokenizerVersion = getIndexTokenizerVersion(state.index);
         this.addAggressiveConflictRanges = getIfAddAggressiveConflictRanges(state.index);
         this.omitPositionLists = getIfOmitPositions(state.index);
+        this.bufferWrites = getIfBufferWrites(state.index);
+        this.storeStatistics = getIfStoreStatistics(state.index);
     }
 
     private static int varIntSize(int val) {
@@ -260,6 +345,34 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
         state.transaction.clear(getRecordTokenizerKey(primaryKey));
     }
 
+    // Update the relevance statistics for one document. The counts are only ever changed with atomic
+    // mutations so that concurrent updates to different documents do not conflict over them.
+    private void updateStatistics(@Nullable Tuple groupingKey, @Nonnull Tuple groupedKey,
+                                  @Nonnull Map<String, List<Integer>> positionMap, boolean remove) {
+        final Tuple group = groupingKey == null ? TupleHelpers.EMPTY : groupingKey;
+        final Subspace statistics = getSecondarySubspace();
+        final byte[] delta = remove ? FDBRecordStore.LITTLE_ENDIAN_INT64_MINUS_ONE : FDBRecordStore.LITTLE_ENDIAN_INT64_ONE;
+        final Subspace frequencies = statistics.subspace(TOKEN_FREQUENCY_SUBSPACE_TUPLE).subspace(group);
+        for (String token : positionMap.keySet()) {
+            state.transaction.mutate(MutationType.ADD, frequencies.pack(token), delta);
+        }
+        final long length = positionMap.values().stream().mapToLong(positions -> Math.max(1, positions.size())).sum();
+        final Subspace totals = statistics.subspace(GROUP_TOTALS_SUBSPACE_TUPLE).subspace(group);
+        state.transaction.mutate(MutationType.ADD, totals.pack(DOCUMENT_COUNT_KEY), delta);
+        state.transaction.mutate(MutationType.ADD, totals.pack(TOTAL_LENGTH_KEY), encodeLong(remove ? -length : length));
+        final byte[] lengthKey = statistics.subspace(DOCUMENT_LENGTH_SUBSPACE_TUPLE).subspace(group).pack(groupedKey);
+        if (remove) {
+            state.transaction.clear(lengthKey);
+        } else {
+            state.transaction.set(lengthKey, Tuple.from(length).pack());
+        }
+    }
+
+    @Nonnull
+    private static byte[] encodeLong(long value) {
+        return ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(value).array();
+    }
+
     @Nonnull
     private Pair<Integer, Integer> estimateSize(@Nullable Tuple groupingKey, @Nonnull Map<String, List<Integer>> positionMap, @Nonnull Tuple groupedKey) {
         final int idSize = groupedKey.pack().length;
@@ -324,6 +437,9 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
             }
             return AsyncUtil.DONE;
         }
+        if (storeStatistics) {
+            updateStatistics(groupingKey, groupedKey, positionMap, remove);
+        }
         if (addAggressiveConflictRanges) {
             // Add a read and write conflict range over the whole index to decrease the number of mutations
             // sent to the resolver. In theory, this will increase the number of conflicts in that if two
@@ -334,6 +450,22 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
             state.context.ensureActive().addReadConflictRange(indexRange.begin, indexRange.end);
             state.context.ensureActive().addWriteConflictRange(indexRange.begin, indexRange.end);
         }
+        if (bufferWrites) {
+            final TextIndexWriteBuffer buffer = TextIndexWriteBuffer.forContext(state.context, state.store.getPipelineSize(PipelineOperation.TEXT_INDEX_UPDATE));
+            for (Map.Entry<String, List<Integer>> tokenEntry : positionMap.entrySet()) {
+                final Tuple subspaceTuple = groupingKey == null ? Tuple.from(tokenEntry.getKey()) : groupingKey.add(tokenEntry.getKey());
+                final Subspace mapSubspace = state.indexSubspace.subspace(subspaceTuple);
+                if (remove) {
+                    buffer.remove(mapSubspace, groupedKey);
+                } else {
+                    buffer.put(mapSubspace, groupedKey, omitPositionLists ? Collections.emptyList() : tokenEntry.getValue());
+                }
+            }
+            if (state.store.getTimer() != null) {
+                state.store.getTimer().recordSinceNanoTime(indexUpdateEvent, startTime);
+            }
+            return AsyncUtil.DONE;
+        }
         final BunchedMap<Tuple, List<Integer>> bunchedMap = getBunchedMap(state.context);
         CompletableFuture<Void> tokenInsertFuture = RecordCursor.fromIterator(state.context.getExecutor(), positionMap.entrySet().iterator())
                 .forEachAsync((Map.Entry<String, List<Integer>> tokenEntry) -> {
@@ -504,6 +636,26 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
         }
     }
 
+    /**
+     * Delete the index entries for records whose primary key starts with the given prefix.
+     * Any updates to those entries that were {@linkplain IndexOptions#TEXT_BUFFER_WRITES_OPTION buffered}
+     * within this transaction are thrown away.
+     *
+     * @param tr the transaction in which to delete
+     * @param prefix the prefix of the grouping key
+     * @return a future that is complete when the entries have been deleted
+     */
+    @Override
+    public CompletableFuture<Void> deleteWhere(Transaction tr, @Nonnull Tuple prefix) {
+        TextIndexWriteBuffer.discard(state.context, state.indexSubspace.subspace(prefix));
+        if (storeStatistics) {
+            for (Tuple statisticsTuple : new Tuple[] {DOCUMENT_LENGTH_SUBSPACE_TUPLE, TOKEN_FREQUENCY_SUBSPACE_TUPLE, GROUP_TOTALS_SUBSPACE_TUPLE}) {
+                tr.clear(getSecondarySubspace().subspace(statisticsTuple).range(prefix));
+            }
+        }
+        return super.deleteWhere(tr, prefix);
+    }
+
     /**
      * Scan this index between a range of tokens. This index type requires that it be scanned only
      * by text token. The range to scan can otherwise be between any two entries in the list, and
@@ -532,6 +684,170 @@ public class TextIndexMaintainer extends StandardIndexMaintainer {
         if (scanType != IndexScanType.BY_TEXT_TOKEN) {
             throw new RecordCoreException("Can only scan text index by text token.");
         }
+        // Updates buffered within this transaction need to be in the database to be seen by the scan.
+        final CompletableFuture<Void> flushed = TextIndexWriteBuffer.flush(state.context, state.indexSubspace);
+        if (!MoreAsyncUtil.isCompletedNormally(flushed)) {
+            return new LazyCursor<>(flushed.thenApply(vignore -> scanTokens(range, continuation, scanProperties)), state.store.getExecutor());
+        }
+        return scanTokens(range, continuation, scanProperties);
+    }
+
+    /**
+     * Scan this index for the documents most relevant to the given text, ranked by their
+     * <a href="https://en.wikipedia.org/wiki/Okapi_BM25">BM25</a> score using the default parameters.
+     *
+     * @param groupingKey the grouping key of the documents to rank, which must be empty if the index is not grouped
+     * @param text the query text, which is tokenized with this index's tokenizer
+     * @param topK the maximum number of documents to return
+     * @param continuation any continuation from a previous scan invocation
+     * @param scanProperties properties of the scan
+     * @return a cursor over index entries for the best scoring documents
+     * @see #scanByScore(Tuple, String, int, double, double, byte[], ScanProperties)
+     */
+    @Nonnull
+    public RecordCursor<IndexEntry> scanByScore(@Nonnull Tuple groupingKey, @Nonnull String text, int topK,
+                                                @Nullable byte[] continuation, @Nonnull ScanProperties scanProperties) {
+        return scanByScore(groupingKey, text, topK, DEFAULT_BM25_K1, DEFAULT_BM25_B, continuation, scanProperties);
+    }
+
+    /**
+     * Scan this index for the documents most relevant to the given text, ranked by their
+     * <a href="https://en.wikipedia.org/wiki/Okapi_BM25">BM25</a> score. This requires the
+     * {@value IndexOptions#TEXT_STORE_STATISTICS_OPTION} option to be set on the index. Entries are returned from
+     * the highest score to the lowest (with ties broken by key), and at most <code>topK</code> of them are returned
+     * by each scan. The key of each index entry has the grouping key followed by an empty token column and then
+     * the rest of the record's key, so that the primary key can be found in the usual way. The value of each
+     * index entry is a tuple whose only element is the document's score.
+     *
+     * <p>
+     * The whole ranking is computed before the first entry is returned, so the returned row limit of
+     * <code>scanProperties</code> is not applied; <code>topK</code> bounds the size of the result instead. The
+     * scanned records and time limits of <code>scanProperties</code> bound the number of postings read while
+     * scoring. If one of them is reached, the scan fails with a {@link com.apple.foundationdb.record.ScanLimitReachedException}
+     * if <code>scanProperties</code> say to; otherwise, the cursor stops without returning anything, with that limit's
+     * {@link com.apple.foundationdb.record.RecordCursor.NoNextReason} and a continuation that carries on scoring where
+     * it left off. That continuation holds the best documents scored so far, so it grows with <code>topK</code>.
+     * </p>
+     *
+     * <p>
+     * If there may be more documents after the last one returned, the cursor stops with
+     * {@link com.apple.foundationdb.record.RecordCursor.NoNextReason#RETURN_LIMIT_REACHED RETURN_LIMIT_REACHED} and
+     * a continuation that resumes with the next document in the ranking. Resuming from it ranks the documents again,
+     * reading all the postings of every query token, so paging through a ranking costs the number of pages times the
+     * number of postings; asking for a larger <code>topK</code> up front is cheaper. Changes made in the mean time
+     * can also shift documents across the boundary.
+     * </p>
+     *
+     * @param groupingKey the grouping key of the documents to rank, which must be empty if the index is not grouped
+     * @param text the query text, which is tokenized with this index's tokenizer
+     * @param topK the maximum number of documents to return
+     * @param k1 the term frequency saturation parameter
+     * @param b the document length normalization parameter
+     * @param continuation any continuation from a previous scan invocation
+     * @param scanProperties properties of the scan
+     * @return a cursor over index entries for the best scoring documents
+     * @throws RecordCoreException if the index does not store statistics
+     */
+    @Nonnull
+    @SuppressWarnings("squid:S2095") // not closing the returned cursor
+    public RecordCursor<IndexEntry> scanByScore(@Nonnull Tuple groupingKey, @Nonnull String text, int topK,
+                                                double k1, double b,
+                                                @Nullable byte[] continuation, @Nonnull ScanProperties scanProperties) {
+        if (!storeStatistics) {
+            throw new RecordCoreException("text index does not store statistics needed for scoring")
+                    .addLogInfo(LogMessageKeys.INDEX_NAME, state.index.getName());
+        }
+        if (topK <= 0) {
+            throw new RecordCoreException("number of documents to return must be positive")
+                    .addLogInfo(LogMessageKeys.INDEX_NAME, state.index.getName());
+        }
+        if (groupingKey.size() != textFieldPosition(state.index.getRootExpression())) {
+            throw new RecordCoreException("grouping key does not match index grouping")
+                    .addLogInfo(LogMessageKeys.INDEX_NAME, state.index.getName());
+        }
+        final List<String> tokens = new ArrayList<>(new LinkedHashSet<>(
+                tokenizer.tokenizeToList(text, tokenizerVersion, TextTokenizer.TokenizerMode.QUERY)));
+        tokens.remove("");
+        if (tokens.isEmpty()) {
+            return RecordCursor.empty(state.store.getExecutor());
+        }
+        final TextScorer.Position position = continuation == null ? null : TextScorer.Position.fromContinuation(continuation);
+        final TextScorer scorer = new TextScorer(state, getSecondarySubspace(), k1, b);
+        final CompletableFuture<RecordCursor<IndexEntry>> cursorFuture = TextIndexWriteBuffer.flush(state.context, state.indexSubspace)
+                .thenCompose(vignore -> scorer.score(groupingKey, tokens, topK, position, scanProperties))
+                .thenApply(ranking -> new TextScoringCursor(state.store.getExecutor(), state, groupingKey, ranking, topK));
+        return new LazyCursor<>(cursorFuture, state.store.getExecutor());
+    }
+
+    /**
+     * Get the number of documents that contain each of the given tokens. This requires the
+     * {@value IndexOptions#TEXT_STORE_STATISTICS_OPTION} option to be set on the index. The counts are
+     * maintained as documents are indexed, so this only reads one key per token.
+     *
+     * @param groupingKey the grouping key of the documents to count, which must be empty if the index is not grouped
+     * @param tokens the tokens to count
+     * @param snapshot whether to read at snapshot isolation
+     * @return a future that will contain the number of documents containing each token, in the same order as <code>tokens</code>
+     * @throws RecordCoreException if the index does not store statistics
+     */
+    @Nonnull
+    public CompletableFuture<List<Long>> getTokenDocumentCounts(@Nonnull Tuple groupingKey, @Nonnull List<String> tokens, boolean snapshot) {
+        if (!storeStatistics) {
+            throw new RecordCoreException("text index does not store token document counts")
+                    .addLogInfo(LogMessageKeys.INDEX_NAME, state.index.getName());
+        }
+        final ReadTransaction tr = state.context.readTransaction(snapshot);
+        final Subspace frequencies = getSecondarySubspace().subspace(TOKEN_FREQUENCY_SUBSPACE_TUPLE).subspace(groupingKey);
+        final List<CompletableFuture<Long>> countFutures = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            countFutures.add(tr.get(frequencies.pack(token)).thenApply(value -> value == null ? 0L : FDBRecordStore.decodeRecordCount(value)));
+        }
+        return AsyncUtil.getAll(countFutures);
+    }
+
+    /**
+     * Get the index entry for the given token and document, if there is one. Rather than scanning the token's
+     * postings up to the document, this reads only the single bunch of postings that would contain the document,
+     * which makes it an efficient way of checking whether a known document contains a token. The returned
+     * entry is the same as would be returned by a {@link #scan} of the token.
+     *
+     * @param groupingKey the grouping key of the document, which must be empty if the index is not grouped
+     * @param token the token to look for
+     * @param groupedKey the rest of the document's index key after the token
+     * @param snapshot whether to read at snapshot isolation
+     * @return a future that will contain the index entry or {@code null} if the document does not contain the token
+     */
+    @Nonnull
+    public CompletableFuture<IndexEntry> seekTokenEntry(@Nonnull Tuple groupingKey, @Nonnull String token, @Nonnull Tuple groupedKey,
+                                                        boolean snapshot) {
+        state.context.increment(FDBStoreTimer.Counts.TEXT_INDEX_SEEK);
+        final Subspace mapSubspace = state.indexSubspace.subspace(groupingKey.add(token));
+        final byte[] keyBytes = mapSubspace.pack(groupedKey);
+        // The bunch containing the key, if any, starts at the last key less than or equal to it.
+        return state.context.readTransaction(snapshot).getRange(
+                KeySelector.lastLessOrEqual(keyBytes), KeySelector.firstGreaterThan(keyBytes),
+                ReadTransaction.ROW_LIMIT_UNLIMITED, false, StreamingMode.WANT_ALL
+        ).asList().thenApply(keyValues -> {
+            for (KeyValue kv : keyValues) {
+                if (!mapSubspace.contains(kv.getKey())) {
+                    continue;
+                }
+                final Tuple bunchKey = mapSubspace.unpack(kv.getKey());
+                for (Map.Entry<Tuple, List<Integer>> entry : BUNCHED_MAP.getSerializer().deserializeEntries(bunchKey, kv.getValue())) {
+                    if (entry.getKey().equals(groupedKey)) {
+                        return new IndexEntry(state.index, groupingKey.add(token).addAll(groupedKey), Tuple.from(entry.getValue()));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    @Nonnull
+    @SuppressWarnings("squid:S2095") // not closing the returned cursor
+    private RecordCursor<IndexEntry> scanTokens(@Nonnull TupleRange range,
+                                                @Nullable byte[] continuation,
+                                                @Nonnull ScanProperties scanProperties) {
         int textPosition = textFieldPosition(state.index.getRootExpression());
         TextSubspaceSplitter subspaceSplitter = new TextSubspaceSplitter(state.indexSubspace, textPosition + 1);
         Range byteRange = range.toRange();
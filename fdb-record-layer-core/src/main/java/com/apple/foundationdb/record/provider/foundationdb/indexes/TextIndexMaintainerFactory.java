@@ -57,7 +57,9 @@ public class TextIndexMaintainerFactory implements IndexMaintainerFactory {
             IndexOptions.TEXT_TOKENIZER_NAME_OPTION,
             IndexOptions.TEXT_TOKENIZER_VERSION_OPTION,
             IndexOptions.TEXT_OMIT_POSITIONS_OPTION,
-            IndexOptions.TEXT_ADD_AGGRESSIVE_CONFLICT_RANGES_OPTION
+            IndexOptions.TEXT_ADD_AGGRESSIVE_CONFLICT_RANGES_OPTION,
+            IndexOptions.TEXT_BUFFER_WRITES_OPTION,
+            IndexOptions.TEXT_STORE_STATISTICS_OPTION
     );
 
     /**
@@ -135,10 +137,13 @@ public class TextIndexMaintainerFactory implements IndexMaintainerFactory {
              *          are added at index update time and thus has no impact on the on-disk representation</li>
              *     <li>{@link IndexOptions#TEXT_OMIT_POSITIONS_OPTION} which changes whether the position lists are included
              *          in index entries</li>
+             *     <li>{@link IndexOptions#TEXT_BUFFER_WRITES_OPTION} which only affects when index updates are written
+             *          within a transaction</li>
              * </ul>
              *
              * <p>
-             * Note that the {@link IndexOptions#TEXT_TOKENIZER_NAME_OPTION} is <em>not</em> allowed to change
+             * Note that the {@link IndexOptions#TEXT_TOKENIZER_NAME_OPTION} and the
+             * {@link IndexOptions#TEXT_STORE_STATISTICS_OPTION} are <em>not</em> allowed to change
              * (without rebuilding the index).
              * </p>
              *
@@ -151,6 +156,7 @@ public class TextIndexMaintainerFactory implements IndexMaintainerFactory {
                     switch (changedOption) {
                         case IndexOptions.TEXT_ADD_AGGRESSIVE_CONFLICT_RANGES_OPTION:
                         case IndexOptions.TEXT_OMIT_POSITIONS_OPTION:
+                        case IndexOptions.TEXT_BUFFER_WRITES_OPTION:
                             // These options either don't affect the on-disk format or can be changed
                             // without breaking compatibility.
                             break;
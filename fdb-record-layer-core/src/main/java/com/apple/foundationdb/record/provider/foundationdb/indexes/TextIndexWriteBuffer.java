@@ -0,0 +1,179 @@
+/*
+ * TextIndexWriteBuffer.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.map.BunchedMap;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.Tuple;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Token updates for {@link TextIndexMaintainer text indexes} buffered within a transaction.
+ *
+ * <p>
+ * Without buffering, each token of each record saved is written with a separate
+ * {@link BunchedMap#put(com.apple.foundationdb.TransactionContext, Subspace, Object, Object) BunchedMap.put}, each of
+ * which reads and re-writes the bunch that the record falls into. When many records are saved in one transaction,
+ * the same bunches are therefore read and re-written over and over. This buffer instead gathers up the updates for
+ * each token's map and applies them together with
+ * {@link BunchedMap#updateAll(com.apple.foundationdb.TransactionContext, Subspace, Map, java.util.Collection) BunchedMap.updateAll},
+ * so that each affected bunch is written once. There is a single buffer per transaction, shared by all buffered text indexes,
+ * which is applied by a {@linkplain FDBRecordContext#getOrCreateCommitCheck commit check} just before the transaction commits.
+ * </p>
+ *
+ * <p>
+ * Because the updates are not in the database until then, anything that reads or clears a text index within the same
+ * transaction must first {@link #flush(FDBRecordContext, Subspace) flush} or {@link #discard(FDBRecordContext, Subspace) discard}
+ * the updates for that index.
+ * </p>
+ */
+@API(API.Status.INTERNAL)
+class TextIndexWriteBuffer implements FDBRecordContext.CommitCheckAsync {
+    private static final String COMMIT_CHECK_NAME = "textIndexWriteBuffer";
+
+    @Nonnull
+    private final FDBRecordContext context;
+    private final int pipelineSize;
+    // Pending updates by the key of the subspace of each token's map
+    @Nonnull
+    private final NavigableMap<byte[], PendingUpdates> pending = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+    // Flushes are applied one after another so that two never update the same map at once
+    @Nonnull
+    private CompletableFuture<Void> lastFlush = AsyncUtil.DONE;
+
+    private TextIndexWriteBuffer(@Nonnull FDBRecordContext context, int pipelineSize) {
+        this.context = context;
+        this.pipelineSize = pipelineSize;
+    }
+
+    /**
+     * Get the buffer for the given transaction, creating it if necessary.
+     * @param context the transaction in which updates are being made
+     * @param pipelineSize the number of token maps to update concurrently when the buffer is applied
+     * @return the transaction's buffer
+     */
+    @Nonnull
+    static TextIndexWriteBuffer forContext(@Nonnull FDBRecordContext context, int pipelineSize) {
+        return (TextIndexWriteBuffer)context.getOrCreateCommitCheck(COMMIT_CHECK_NAME, name -> new TextIndexWriteBuffer(context, pipelineSize));
+    }
+
+    /**
+     * Apply any buffered updates within the given subspace.
+     * @param context the transaction in which updates might have been buffered
+     * @param subspace the subspace of the index to be read
+     * @return a future that completes when the updates are in the transaction
+     */
+    @Nonnull
+    static CompletableFuture<Void> flush(@Nonnull FDBRecordContext context, @Nonnull Subspace subspace) {
+        final TextIndexWriteBuffer buffer = (TextIndexWriteBuffer)context.getCommitCheck(COMMIT_CHECK_NAME);
+        return buffer == null ? AsyncUtil.DONE : buffer.flush(subspace.pack());
+    }
+
+    /**
+     * Throw away any buffered updates within the given subspace, because it is about to be cleared.
+     * @param context the transaction in which updates might have been buffered
+     * @param subspace the subspace being cleared
+     */
+    static void discard(@Nonnull FDBRecordContext context, @Nonnull Subspace subspace) {
+        final TextIndexWriteBuffer buffer = (TextIndexWriteBuffer)context.getCommitCheck(COMMIT_CHECK_NAME);
+        if (buffer != null) {
+            buffer.takeUpdates(subspace.pack());
+        }
+    }
+
+    synchronized void put(@Nonnull Subspace mapSubspace, @Nonnull Tuple key, @Nonnull List<Integer> positions) {
+        final PendingUpdates updates = pending.computeIfAbsent(mapSubspace.pack(), k -> new PendingUpdates(mapSubspace));
+        updates.removes.remove(key);
+        updates.puts.put(key, positions);
+        context.increment(FDBStoreTimer.Counts.TEXT_INDEX_BUFFERED_UPDATE);
+    }
+
+    synchronized void remove(@Nonnull Subspace mapSubspace, @Nonnull Tuple key) {
+        final PendingUpdates updates = pending.computeIfAbsent(mapSubspace.pack(), k -> new PendingUpdates(mapSubspace));
+        updates.puts.remove(key);
+        updates.removes.add(key);
+        context.increment(FDBStoreTimer.Counts.TEXT_INDEX_BUFFERED_UPDATE);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> checkAsync() {
+        return flush(null);
+    }
+
+    @Nonnull
+    private synchronized List<PendingUpdates> takeUpdates(@Nullable byte[] prefix) {
+        final NavigableMap<byte[], PendingUpdates> range = prefix == null ?
+                                                           pending :
+                                                           pending.subMap(prefix, true, ByteArrayUtil.strinc(prefix), false);
+        final List<PendingUpdates> updates = new ArrayList<>(range.values());
+        range.clear();
+        return updates;
+    }
+
+    @Nonnull
+    private synchronized CompletableFuture<Void> flush(@Nullable byte[] prefix) {
+        final List<PendingUpdates> updates = takeUpdates(prefix);
+        if (updates.isEmpty()) {
+            return lastFlush;
+        }
+        context.increment(FDBStoreTimer.Counts.TEXT_INDEX_BUFFER_FLUSHED_TOKEN, updates.size());
+        final BunchedMap<Tuple, List<Integer>> bunchedMap = TextIndexMaintainer.getBunchedMap(context);
+        lastFlush = lastFlush.thenCompose(vignore -> {
+            final long startTime = System.nanoTime();
+            return context.instrument(FDBStoreTimer.Events.FLUSH_TEXT_INDEX_BUFFER,
+                    RecordCursor.fromList(context.getExecutor(), updates).forEachAsync(mapUpdates ->
+                            bunchedMap.updateAll(context.ensureActive(), mapUpdates.subspace, mapUpdates.puts, mapUpdates.removes),
+                            pipelineSize),
+                    startTime);
+        });
+        return lastFlush;
+    }
+
+    private static class PendingUpdates {
+        @Nonnull
+        private final Subspace subspace;
+        @Nonnull
+        private final Map<Tuple, List<Integer>> puts = new TreeMap<>();
+        @Nonnull
+        private final Set<Tuple> removes = new TreeSet<>();
+
+        PendingUpdates(@Nonnull Subspace subspace) {
+            this.subspace = subspace;
+        }
+    }
+}
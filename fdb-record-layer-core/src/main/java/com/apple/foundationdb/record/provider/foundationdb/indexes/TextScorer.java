@@ -0,0 +1,358 @@
+/*
+ * TextScorer.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.ReadTransaction;
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.map.BunchedMap;
+import com.apple.foundationdb.map.BunchedMapIterator;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.PipelineOperation;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.ScanLimitReachedException;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.cursors.CursorLimitManager;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.Tuple;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Ranks the documents of a text index by their <a href="https://en.wikipedia.org/wiki/Okapi_BM25">BM25</a>
+ * relevance to a set of query tokens. This relies on the statistics that the {@link TextIndexMaintainer} keeps
+ * when the {@value com.apple.foundationdb.record.metadata.IndexOptions#TEXT_STORE_STATISTICS_OPTION} option is set.
+ *
+ * <p>
+ * The postings for each query token are read from the index in key order and merged, so that each document's
+ * term frequencies are complete when it is reached. Each candidate document's length is then read (with a bounded
+ * number of reads outstanding at once) to complete its score, and only the best scoring documents are kept, so
+ * memory use does not grow with the number of postings. The number of postings read is bounded by the scanned
+ * records and time limits of the scan. When one of them is reached, scoring stops between two documents and its
+ * {@link Position} records the last document whose postings were read and the best documents so far, so that a later
+ * scan can carry on from there. Documents are ordered by descending
+ * score and then by ascending key, which gives a total order that can be resumed from the last document returned.
+ * </p>
+ */
+@API(API.Status.INTERNAL)
+class TextScorer {
+    // Orders scored documents from best to worst.
+    @Nonnull
+    private static final Comparator<ScoredDocument> RANKING = Comparator.comparingDouble((ScoredDocument doc) -> -doc.score)
+            .thenComparing(doc -> doc.key);
+
+    @Nonnull
+    private final IndexMaintainerState state;
+    @Nonnull
+    private final Subspace statisticsSubspace;
+    private final double k1;
+    private final double b;
+
+    TextScorer(@Nonnull IndexMaintainerState state, @Nonnull Subspace statisticsSubspace, double k1, double b) {
+        this.state = state;
+        this.statisticsSubspace = statisticsSubspace;
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    /**
+     * Get the best scoring documents that come after the given position in the ranking.
+     *
+     * @param groupingKey the grouping key of the documents to rank
+     * @param tokens the distinct query tokens
+     * @param topK the maximum number of documents to return
+     * @param position where an earlier scan stopped, or {@code null} to start at the beginning
+     * @param scanProperties properties of the scan, whose isolation level is used for reads and whose scanned
+     * records and time limits bound the number of postings read
+     * @return a future that will contain the scored documents from best to worst, or where scoring stopped if a limit was reached
+     * @throws ScanLimitReachedException if a limit is reached before all the postings have been read and the scan
+     * properties say to fail when that happens
+     */
+    @Nonnull
+    CompletableFuture<Ranking> score(@Nonnull Tuple groupingKey, @Nonnull List<String> tokens, int topK,
+                                     @Nullable Position position, @Nonnull ScanProperties scanProperties) {
+        final long startTime = System.nanoTime();
+        final ReadTransaction tr = state.context.readTransaction(scanProperties.getExecuteProperties().getIsolationLevel().isSnapshot());
+        final Subspace totals = statisticsSubspace.subspace(TextIndexMaintainer.GROUP_TOTALS_SUBSPACE_TUPLE).subspace(groupingKey);
+        final Subspace frequencies = statisticsSubspace.subspace(TextIndexMaintainer.TOKEN_FREQUENCY_SUBSPACE_TUPLE).subspace(groupingKey);
+        final CompletableFuture<byte[]> documentCountFuture = tr.get(totals.pack(TextIndexMaintainer.DOCUMENT_COUNT_KEY));
+        final CompletableFuture<byte[]> totalLengthFuture = tr.get(totals.pack(TextIndexMaintainer.TOTAL_LENGTH_KEY));
+        final List<CompletableFuture<byte[]>> frequencyFutures = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            frequencyFutures.add(tr.get(frequencies.pack(token)));
+        }
+        final List<CompletableFuture<byte[]>> statisticsFutures = new ArrayList<>(frequencyFutures);
+        statisticsFutures.add(documentCountFuture);
+        statisticsFutures.add(totalLengthFuture);
+        final CompletableFuture<Ranking> result = AsyncUtil.whenAll(statisticsFutures).thenCompose(vignore -> {
+            final long documentCount = decode(documentCountFuture.join());
+            if (documentCount <= 0) {
+                return CompletableFuture.completedFuture(new Ranking(Collections.emptyList(), null, null));
+            }
+            final double averageLength = Math.max(1.0, (double)decode(totalLengthFuture.join()) / documentCount);
+            final double[] idfs = new double[tokens.size()];
+            for (int i = 0; i < tokens.size(); i++) {
+                final long documentFrequency = decode(frequencyFutures.get(i).join());
+                idfs[i] = Math.log(1.0 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            }
+            return rank(tr, groupingKey, tokens, topK, position == null ? new Position(null, null, Collections.emptyList()) : position,
+                    scanProperties, idfs, averageLength);
+        });
+        return state.context.instrument(FDBStoreTimer.Events.SCORE_TEXT_INDEX, result, startTime);
+    }
+
+    // Merge the postings of all the tokens, which are each in key order, so that each document's term frequencies
+    // are complete when it is reached. Only the best documents so far and the documents whose lengths are being
+    // read are held in memory.
+    @Nonnull
+    private CompletableFuture<Ranking> rank(@Nonnull ReadTransaction tr, @Nonnull Tuple groupingKey,
+                                            @Nonnull List<String> tokens, int topK,
+                                            @Nonnull Position position, @Nonnull ScanProperties scanProperties,
+                                            @Nonnull double[] idfs, double averageLength) {
+        final BunchedMap<Tuple, List<Integer>> bunchedMap = TextIndexMaintainer.getBunchedMap(state.context);
+        final byte[] postingsContinuation = position.lastScanned == null ? null : bunchedMap.getSerializer().serializeKey(position.lastScanned);
+        final List<BunchedMapIterator<Tuple, List<Integer>>> postings = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            postings.add(bunchedMap.scan(tr, state.indexSubspace.subspace(groupingKey.add(token)), postingsContinuation));
+        }
+        final ScoredDocument after = position.after;
+        final Subspace lengths = statisticsSubspace.subspace(TextIndexMaintainer.DOCUMENT_LENGTH_SUBSPACE_TUPLE).subspace(groupingKey);
+        final CursorLimitManager limitManager = new CursorLimitManager(state.context, scanProperties);
+        final int pipelineSize = state.store.getPipelineSize(PipelineOperation.TEXT_INDEX_SCORE);
+        final PriorityQueue<ScoredDocument> best = new PriorityQueue<>(topK + 1, RANKING.reversed());
+        best.addAll(position.best);
+        final List<CompletableFuture<ScoredDocument>> pending = new ArrayList<>(pipelineSize);
+        // The last document all of whose postings have been read, and whether a limit stopped the scan after it.
+        final Tuple[] lastScanned = {position.lastScanned};
+        final boolean[] stopped = {false};
+        final Supplier<CompletableFuture<Void>> onHasNext = () ->
+                AsyncUtil.whenAll(postings.stream().map(BunchedMapIterator::onHasNext).collect(Collectors.toList()));
+        return AsyncUtil.whileTrue(() -> onHasNext.get().thenCompose(vignore -> {
+            Tuple documentKey = null;
+            for (BunchedMapIterator<Tuple, List<Integer>> iterator : postings) {
+                if (iterator.hasNext() && (documentKey == null || iterator.peek().getKey().compareTo(documentKey) < 0)) {
+                    documentKey = iterator.peek().getKey();
+                }
+            }
+            if (documentKey == null) {
+                return AsyncUtil.READY_FALSE;
+            }
+            // Stop before a document rather than part way through its postings, so that resuming reads all of them.
+            // Once the first of them is allowed, the rest are counted but read regardless.
+            if (!limitManager.tryRecordScan()) {
+                stopped[0] = true;
+                return AsyncUtil.READY_FALSE;
+            }
+            boolean first = true;
+            final int[] tfs = new int[tokens.size()];
+            for (int i = 0; i < tokens.size(); i++) {
+                final BunchedMapIterator<Tuple, List<Integer>> iterator = postings.get(i);
+                if (iterator.hasNext() && iterator.peek().getKey().equals(documentKey)) {
+                    if (!first) {
+                        limitManager.tryRecordScan();
+                    }
+                    first = false;
+                    // Without position lists, all that is known is that the token occurs.
+                    tfs[i] = Math.max(1, iterator.next().getValue().size());
+                }
+            }
+            final Tuple key = documentKey;
+            lastScanned[0] = key;
+            pending.add(tr.get(lengths.pack(key)).thenApply(rawLength -> {
+                final double length = rawLength == null ? averageLength : Tuple.fromBytes(rawLength).getLong(0);
+                final double norm = k1 * (1.0 - b + b * length / averageLength);
+                double score = 0.0;
+                for (int i = 0; i < tfs.length; i++) {
+                    if (tfs[i] > 0) {
+                        score += idfs[i] * tfs[i] * (k1 + 1.0) / (tfs[i] + norm);
+                    }
+                }
+                return new ScoredDocument(key, score);
+            }));
+            if (pending.size() < pipelineSize) {
+                return AsyncUtil.READY_TRUE;
+            }
+            return collect(pending, best, topK, after).thenApply(vignore2 -> true);
+        }), state.context.getExecutor()).thenCompose(vignore -> collect(pending, best, topK, after)).thenApply(vignore -> {
+            final List<ScoredDocument> ranked = new ArrayList<>(best);
+            ranked.sort(RANKING);
+            if (stopped[0]) {
+                return new Ranking(Collections.emptyList(), new Position(after, lastScanned[0], ranked),
+                        limitManager.getStoppedReason().orElse(RecordCursor.NoNextReason.SCAN_LIMIT_REACHED));
+            }
+            return new Ranking(ranked, null, null);
+        });
+    }
+
+    // Wait for the pending documents to be scored and keep the best of them.
+    @Nonnull
+    private CompletableFuture<Void> collect(@Nonnull List<CompletableFuture<ScoredDocument>> pending,
+                                            @Nonnull PriorityQueue<ScoredDocument> best, int topK,
+                                            @Nullable ScoredDocument after) {
+        return AsyncUtil.whenAll(pending).thenAccept(vignore -> {
+            for (CompletableFuture<ScoredDocument> future : pending) {
+                final ScoredDocument doc = future.join();
+                state.context.increment(FDBStoreTimer.Counts.TEXT_INDEX_SCORED_DOCUMENT);
+                if (after == null || RANKING.compare(doc, after) > 0) {
+                    best.add(doc);
+                    if (best.size() > topK) {
+                        best.poll();
+                    }
+                }
+            }
+            pending.clear();
+        });
+    }
+
+    private static long decode(@Nullable byte[] value) {
+        return value == null ? 0L : FDBRecordStore.decodeRecordCount(value);
+    }
+
+    /**
+     * The outcome of scoring: either the complete ranking of the documents after the starting position, or, if a
+     * scan limit was reached first, where scoring stopped and which limit it was.
+     */
+    static class Ranking {
+        @Nonnull
+        private final List<ScoredDocument> documents;
+        @Nullable
+        private final Position stoppedAt;
+        @Nullable
+        private final RecordCursor.NoNextReason stoppedReason;
+
+        Ranking(@Nonnull List<ScoredDocument> documents, @Nullable Position stoppedAt, @Nullable RecordCursor.NoNextReason stoppedReason) {
+            this.documents = documents;
+            this.stoppedAt = stoppedAt;
+            this.stoppedReason = stoppedReason;
+        }
+
+        @Nonnull
+        List<ScoredDocument> getDocuments() {
+            return documents;
+        }
+
+        @Nullable
+        Position getStoppedAt() {
+            return stoppedAt;
+        }
+
+        @Nullable
+        RecordCursor.NoNextReason getStoppedReason() {
+            return stoppedReason;
+        }
+    }
+
+    /**
+     * Where a scan of the ranking stopped: after the last document returned, if any, and, if a scan limit stopped
+     * the scoring, after the last document whose postings were read, with the best documents scored so far.
+     * A continuation that was only returned from a document has just the first part, so it is the same as the
+     * document's own continuation.
+     */
+    static class Position {
+        @Nullable
+        private final ScoredDocument after;
+        @Nullable
+        private final Tuple lastScanned;
+        @Nonnull
+        private final List<ScoredDocument> best;
+
+        Position(@Nullable ScoredDocument after, @Nullable Tuple lastScanned, @Nonnull List<ScoredDocument> best) {
+            this.after = after;
+            this.lastScanned = lastScanned;
+            this.best = best;
+        }
+
+        @Nonnull
+        byte[] toContinuation() {
+            Tuple tuple = after == null ? Tuple.from(null, null) : Tuple.from(after.score, after.key);
+            if (lastScanned != null) {
+                final List<Tuple> bestTuples = new ArrayList<>(best.size());
+                for (ScoredDocument doc : best) {
+                    bestTuples.add(Tuple.from(doc.score, doc.key));
+                }
+                tuple = tuple.add(lastScanned).add(Tuple.fromList(bestTuples));
+            }
+            return tuple.pack();
+        }
+
+        @Nonnull
+        static Position fromContinuation(@Nonnull byte[] continuation) {
+            final Tuple tuple = Tuple.fromBytes(continuation);
+            final ScoredDocument after = tuple.get(0) == null ? null : new ScoredDocument(tuple.getNestedTuple(1), tuple.getDouble(0));
+            if (tuple.size() <= 2) {
+                return new Position(after, null, Collections.emptyList());
+            }
+            final Tuple bestTuples = tuple.getNestedTuple(3);
+            final List<ScoredDocument> best = new ArrayList<>(bestTuples.size());
+            for (int i = 0; i < bestTuples.size(); i++) {
+                final Tuple doc = bestTuples.getNestedTuple(i);
+                best.add(new ScoredDocument(doc.getNestedTuple(1), doc.getDouble(0)));
+            }
+            return new Position(after, tuple.getNestedTuple(2), best);
+        }
+    }
+
+    /**
+     * A document together with its relevance score.
+     */
+    static class ScoredDocument {
+        @Nonnull
+        private final Tuple key;
+        private final double score;
+
+        ScoredDocument(@Nonnull Tuple key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        @Nonnull
+        Tuple getKey() {
+            return key;
+        }
+
+        double getScore() {
+            return score;
+        }
+
+        @Nonnull
+        byte[] toContinuation() {
+            return Tuple.from(score, key).pack();
+        }
+
+        @Nonnull
+        IndexEntry toIndexEntry(@Nonnull IndexMaintainerState state, @Nonnull Tuple groupingKey) {
+            // The token column is left empty, as the document may have matched several of the query tokens.
+            return new IndexEntry(state.index, groupingKey.addObject(null).addAll(key), Tuple.from(score));
+        }
+    }
+}
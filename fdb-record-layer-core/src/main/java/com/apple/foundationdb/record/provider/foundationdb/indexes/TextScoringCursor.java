@@ -0,0 +1,153 @@
+/*
+ * TextScoringCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.ByteArrayContinuation;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.cursors.BaseCursor;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
+import com.apple.foundationdb.tuple.Tuple;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link com.apple.foundationdb.record.RecordCursor RecordCursor} over the documents of a text index ranked by
+ * {@link TextScorer}. Each index entry has an empty token column and a value that is a {@link Tuple} whose first
+ * element is the document's score. The continuation of each entry is its score and key, so that a later scan
+ * picks up with the next document in the ranking. If as many documents were ranked as were asked for, the
+ * cursor stops with {@link NoNextReason#RETURN_LIMIT_REACHED}, as there may be more documents to return. If a
+ * scan limit stopped the scoring, the cursor returns nothing and stops with that limit's reason and a continuation
+ * that carries on scoring.
+ *
+ * @see TextIndexMaintainer#scanByScore
+ */
+@API(API.Status.EXPERIMENTAL)
+class TextScoringCursor implements BaseCursor<IndexEntry> {
+    @Nonnull
+    private final Executor executor;
+    @Nonnull
+    private final IndexMaintainerState state;
+    @Nonnull
+    private final Tuple groupingKey;
+    @Nonnull
+    private final TextScorer.Ranking ranking;
+    @Nonnull
+    private final List<TextScorer.ScoredDocument> ranked;
+    private final boolean mayHaveMore;
+    private int nextPosition;
+    @Nullable
+    private RecordCursorResult<IndexEntry> nextResult;
+    @Nullable
+    private CompletableFuture<Boolean> hasNextFuture;
+
+    TextScoringCursor(@Nonnull Executor executor, @Nonnull IndexMaintainerState state, @Nonnull Tuple groupingKey,
+                      @Nonnull TextScorer.Ranking ranking, int topK) {
+        this.executor = executor;
+        this.state = state;
+        this.groupingKey = groupingKey;
+        this.ranking = ranking;
+        this.ranked = ranking.getDocuments();
+        this.mayHaveMore = ranked.size() == topK;
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<IndexEntry>> onNext() {
+        if (nextPosition < ranked.size()) {
+            final TextScorer.ScoredDocument doc = ranked.get(nextPosition);
+            nextResult = RecordCursorResult.withNextValue(doc.toIndexEntry(state, groupingKey),
+                    ByteArrayContinuation.fromNullable(doc.toContinuation()));
+            nextPosition++;
+        } else if (ranking.getStoppedAt() != null) {
+            nextResult = RecordCursorResult.withoutNextValue(ByteArrayContinuation.fromNullable(ranking.getStoppedAt().toContinuation()),
+                    ranking.getStoppedReason());
+        } else if (mayHaveMore && !ranked.isEmpty()) {
+            final TextScorer.ScoredDocument last = ranked.get(ranked.size() - 1);
+            nextResult = RecordCursorResult.withoutNextValue(ByteArrayContinuation.fromNullable(last.toContinuation()),
+                    NoNextReason.RETURN_LIMIT_REACHED);
+        } else {
+            nextResult = RecordCursorResult.exhausted();
+        }
+        return CompletableFuture.completedFuture(nextResult);
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public CompletableFuture<Boolean> onHasNext() {
+        if (hasNextFuture == null) {
+            hasNextFuture = onNext().thenApply(RecordCursorResult::hasNext);
+        }
+        return hasNextFuture;
+    }
+
+    @Nullable
+    @Override
+    @Deprecated
+    public IndexEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasNextFuture = null;
+        return nextResult.get();
+    }
+
+    @Nullable
+    @Override
+    @Deprecated
+    public byte[] getContinuation() {
+        return nextResult.getContinuation().toBytes();
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public NoNextReason getNoNextReason() {
+        return nextResult.getNoNextReason();
+    }
+
+    @Override
+    public void close() {
+        if (hasNextFuture != null) {
+            hasNextFuture.cancel(false);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public boolean accept(@Nonnull RecordCursorVisitor visitor) {
+        visitor.visitEnter(this);
+        return visitor.visitLeave(this);
+    }
+}
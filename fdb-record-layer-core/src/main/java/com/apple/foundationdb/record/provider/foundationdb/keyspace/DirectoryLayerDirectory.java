@@ -290,8 +290,33 @@ public class DirectoryLayerDirectory extends KeySpaceDirectory {
             resolver.resolveWithMetadata(context, key, createHooks));
     }
 
+    /**
+     * Get the name that resolving the given value for this directory looks up in the directory layer, so that
+     * the lookups for several directories can be done together.
+     * @param value the value provided for this directory
+     * @return the name to look up or {@code null} if resolving the value is not just a lookup of a name
+     * @see LocatableResolver#resolveAllWithMetadata
+     */
+    @Nullable
+    String getNameToResolve(@Nullable Object value) {
+        if (value instanceof String && (this.value == ANY_VALUE || areEqual(this.value, value))) {
+            return (String) value;
+        }
+        return null;
+    }
+
+    @Nonnull
+    CompletableFuture<LocatableResolver> getScope(@Nonnull FDBRecordContext context) {
+        return scopeGenerator.apply(context);
+    }
+
+    @Nonnull
+    ResolverCreateHooks getCreateHooks() {
+        return createHooks;
+    }
+
     @Nonnull
-    private static PathValue toPathValue(@Nonnull ResolverResult result) {
+    static PathValue toPathValue(@Nonnull ResolverResult result) {
         return new PathValue(result.getValue(), result.getMetadata());
     }
 }
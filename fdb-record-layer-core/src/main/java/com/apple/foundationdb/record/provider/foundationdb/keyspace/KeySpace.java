@@ -32,6 +32,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
@@ -257,6 +259,34 @@ public class KeySpace {
         return context.asyncToSync(FDBStoreTimer.Waits.WAIT_KEYSPACE_PATH_RESOLVE, resolveFromKeyAsync(context, key));
     }
 
+    /**
+     * Load the directory cache of the database with the directory layer values for every level of the given paths.
+     * The lookups for all of the paths are done together, so calling this once at process start with the paths that
+     * are going to be used saves each of them paying for its own lookups the first time it is opened.
+     *
+     * @param context context used, if needed, for any database operations
+     * @param paths the paths whose directory layer values should be cached
+     * @return a future that completes when the values are in the cache
+     */
+    @Nonnull
+    public static CompletableFuture<Void> preloadDirectoryCacheAsync(@Nonnull FDBRecordContext context, @Nonnull Collection<KeySpacePath> paths) {
+        final List<KeySpacePath> levels = new ArrayList<>();
+        for (KeySpacePath path : paths) {
+            levels.addAll(path.flatten());
+        }
+        return KeySpacePathImpl.resolveAllAsync(context, levels).thenApply(vignore -> null);
+    }
+
+    /**
+     * Synchronous/blocking version of <code>preloadDirectoryCacheAsync</code>.
+     *
+     * @param context context used, if needed, for any database operations
+     * @param paths the paths whose directory layer values should be cached
+     */
+    public static void preloadDirectoryCache(@Nonnull FDBRecordContext context, @Nonnull Collection<KeySpacePath> paths) {
+        context.asyncToSync(FDBStoreTimer.Waits.WAIT_DIRECTORY_RESOLVE, preloadDirectoryCacheAsync(context, paths));
+    }
+
     /**
      * List the available paths from a directory.
      *
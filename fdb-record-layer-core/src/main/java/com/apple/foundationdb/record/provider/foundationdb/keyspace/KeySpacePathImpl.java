@@ -33,7 +33,9 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
@@ -215,21 +217,16 @@ class KeySpacePathImpl implements KeySpacePath {
     @Nonnull
     @Override
     public CompletableFuture<Tuple> toTupleAsync(@Nonnull FDBRecordContext context) {
-        final List<CompletableFuture<Object>> work = flatten().stream()
-                .map(entry -> entry.resolveAsync(context).thenApply(PathValue::getResolvedValue))
-                .collect(Collectors.toList());
-
-        return AsyncUtil.getAll(work).thenApply(Tuple::fromList);
+        return resolveAllAsync(context, flatten()).thenApply(pathValues -> Tuple.fromList(pathValues.stream()
+                .map(PathValue::getResolvedValue)
+                .collect(Collectors.toList())));
     }
 
     @Nonnull
     @Override
     public CompletableFuture<ResolvedKeySpacePath> toResolvedPathAsync(@Nonnull FDBRecordContext context) {
         final List<KeySpacePath> flatPath = flatten();
-        final List<CompletableFuture<PathValue>> work = flatPath.stream()
-                .map(entry -> entry.resolveAsync(context))
-                .collect(Collectors.toList());
-        return AsyncUtil.getAll(work).thenApply( pathValues -> {
+        return resolveAllAsync(context, flatPath).thenApply( pathValues -> {
             ResolvedKeySpacePath current = null;
             for (int i = 0; i < pathValues.size(); i++) {
                 final KeySpacePath path = flatPath.get(i);
@@ -240,6 +237,62 @@ class KeySpacePathImpl implements KeySpacePath {
         });
     }
 
+    /**
+     * Resolve the values of the given path elements. Rather than each element that is a {@link DirectoryLayerDirectory}
+     * doing its own directory layer lookup, the names for all of them are gathered up and looked up together with
+     * {@link LocatableResolver#resolveAllWithMetadata(FDBRecordContext, Map)}.
+     * @param context the context in which to perform the resolution
+     * @param paths the path elements to resolve, each of which only has its own value resolved
+     * @return a future for the resolved values, in the same order as the given path elements
+     */
+    @Nonnull
+    @SuppressWarnings("deprecation") // the stored value of a path from a key needs no lookup
+    static CompletableFuture<List<PathValue>> resolveAllAsync(@Nonnull FDBRecordContext context, @Nonnull List<KeySpacePath> paths) {
+        final List<CompletableFuture<PathValue>> work = new ArrayList<>(paths.size());
+        final List<Integer> lookupIndexes = new ArrayList<>();
+        final List<String> lookupNames = new ArrayList<>();
+        final List<DirectoryLayerDirectory> lookupDirectories = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            final KeySpacePath path = paths.get(i);
+            final KeySpaceDirectory directory = path.getDirectory();
+            final String name = directory instanceof DirectoryLayerDirectory && !path.hasStoredValue()
+                                ? ((DirectoryLayerDirectory)directory).getNameToResolve(path.getValue())
+                                : null;
+            if (name == null) {
+                work.add(path.resolveAsync(context));
+            } else {
+                work.add(null);
+                lookupIndexes.add(i);
+                lookupNames.add(name);
+                lookupDirectories.add((DirectoryLayerDirectory)directory);
+            }
+        }
+        if (lookupIndexes.isEmpty()) {
+            return AsyncUtil.getAll(work);
+        }
+
+        final List<CompletableFuture<LocatableResolver>> scopes = lookupDirectories.stream()
+                .map(directory -> directory.getScope(context))
+                .collect(Collectors.toList());
+        return AsyncUtil.getAll(scopes).thenCompose(resolvers -> {
+            final List<ScopedValue<String>> scopedNames = new ArrayList<>(resolvers.size());
+            final Map<ScopedValue<String>, ResolverCreateHooks> toResolve = new LinkedHashMap<>();
+            for (int i = 0; i < resolvers.size(); i++) {
+                final ScopedValue<String> scopedName = resolvers.get(i).wrap(lookupNames.get(i));
+                scopedNames.add(scopedName);
+                toResolve.putIfAbsent(scopedName, lookupDirectories.get(i).getCreateHooks());
+            }
+            return LocatableResolver.resolveAllWithMetadata(context, toResolve).thenCompose(resolved -> {
+                for (int i = 0; i < scopedNames.size(); i++) {
+                    final PathValue pathValue = DirectoryLayerDirectory.toPathValue(resolved.get(scopedNames.get(i)));
+                    lookupDirectories.get(i).validateResolvedValue(pathValue.getResolvedValue());
+                    work.set(lookupIndexes.get(i), CompletableFuture.completedFuture(pathValue));
+                }
+                return AsyncUtil.getAll(work);
+            });
+        });
+    }
+
     @Nonnull
     @Override
     public CompletableFuture<Boolean> hasDataAsync(@Nonnull FDBRecordContext context) {
@@ -41,10 +41,16 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
@@ -351,6 +357,98 @@ public abstract class LocatableResolver {
                         resolveWithCache(context, wrap(name), directoryCache, hooks));
     }
 
+    /**
+     * Map many names, each within the scope of its own resolver, to their {@link ResolverResult}s at once.
+     * Names that are already in the directory cache are taken from there. All of the others are read in parallel in
+     * a single transaction that reuses the {@linkplain FDBRecordContext#getReadVersion() read version} of the given
+     * context, and any that do not exist yet are created in that same transaction, running the
+     * {@link ResolverCreateHooks} given for them. So, resolving the names for all the levels of a path on a cold cache
+     * costs one round of reads rather than one per name.
+     *
+     * <p>
+     * This method is {@link API.Status#UNSTABLE} for the same reasons as {@link #resolveWithMetadata(FDBRecordContext, String, ResolverCreateHooks)}.
+     * </p>
+     *
+     * @param context the {@link FDBRecordContext} used to base the child transaction on
+     * @param toResolve the scoped names to resolve, each with the hooks to run if it is created
+     * @return a future for a map from each of the scoped names to its {@link ResolverResult}
+     */
+    @API(API.Status.UNSTABLE)
+    @Nonnull
+    public static CompletableFuture<Map<ScopedValue<String>, ResolverResult>> resolveAllWithMetadata(@Nonnull FDBRecordContext context,
+                                                                                                  @Nonnull Map<ScopedValue<String>, ResolverCreateHooks> toResolve) {
+        final FDBDatabase database = context.getDatabase();
+        final Set<LocatableResolver> resolvers = new HashSet<>();
+        for (ScopedValue<String> scopedName : toResolve.keySet()) {
+            if (!database.equals(scopedName.getScope().database)) {
+                throw new RecordCoreArgumentException("attempted to resolve value against incorrect database");
+            }
+            resolvers.add(scopedName.getScope());
+        }
+        if (resolvers.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+
+        // as in resolveWithMetadata, the directory cache is only trusted at the newest version of any of the resolvers
+        final List<CompletableFuture<Integer>> versions = resolvers.stream()
+                .map(resolver -> resolver.getVersion(context))
+                .collect(Collectors.toList());
+        return AsyncUtil.getAll(versions).thenCompose(versionList -> {
+            final Cache<ScopedValue<String>, ResolverResult> directoryCache = database.getDirectoryCache(Collections.max(versionList));
+            final Map<ScopedValue<String>, ResolverResult> results = new HashMap<>();
+            final List<ScopedValue<String>> misses = new ArrayList<>();
+            for (ScopedValue<String> scopedName : toResolve.keySet()) {
+                final ResolverResult cached = directoryCache.getIfPresent(scopedName);
+                if (cached != null) {
+                    results.put(scopedName, cached);
+                } else {
+                    misses.add(scopedName);
+                }
+            }
+            if (misses.isEmpty()) {
+                return CompletableFuture.completedFuture(results);
+            }
+            final LocatableResolver first = misses.get(0).getScope();
+            return context.instrument(FDBStoreTimer.Events.DIRECTORY_READ,
+                    first.runAsyncBorrowingReadVersion(context, childContext -> readOrCreateAll(childContext, misses, toResolve))
+            ).thenApply(fetched -> {
+                for (int i = 0; i < misses.size(); i++) {
+                    directoryCache.put(misses.get(i), fetched.get(i));
+                    results.put(misses.get(i), fetched.get(i));
+                }
+                return results;
+            });
+        });
+    }
+
+    @Nonnull
+    private static CompletableFuture<List<ResolverResult>> readOrCreateAll(@Nonnull FDBRecordContext context,
+                                                                           @Nonnull List<ScopedValue<String>> scopedNames,
+                                                                           @Nonnull Map<ScopedValue<String>, ResolverCreateHooks> hooks) {
+        final List<CompletableFuture<Optional<ResolverResult>>> reads = scopedNames.stream()
+                .map(scopedName -> scopedName.getScope().read(context, scopedName.getData()))
+                .collect(Collectors.toList());
+        return AsyncUtil.getAll(reads).thenCompose(readResults -> {
+            // creating allocates new values, so do that one name at a time rather than racing allocations within the transaction
+            final List<ResolverResult> results = new ArrayList<>(readResults.size());
+            CompletableFuture<Void> creates = AsyncUtil.DONE;
+            for (int i = 0; i < readResults.size(); i++) {
+                final int index = i;
+                final Optional<ResolverResult> maybeRead = readResults.get(i);
+                if (maybeRead.isPresent()) {
+                    results.add(maybeRead.get());
+                } else {
+                    results.add(null);
+                    final ScopedValue<String> scopedName = scopedNames.get(i);
+                    creates = creates.thenCompose(vignore ->
+                            scopedName.getScope().createIfNotLocked(context, scopedName.getData(), hooks.get(scopedName))
+                                    .thenAccept(created -> results.set(index, created)));
+                }
+            }
+            return creates.thenApply(vignore -> results);
+        });
+    }
+
     /**
      * Lookup the mapping and metadata for <code>name</code> within the scope of the path that this object was constructed with.
      * Unlike {@link #resolveWithMetadata(FDBRecordContext, String, ResolverCreateHooks)} this method will not attempt to
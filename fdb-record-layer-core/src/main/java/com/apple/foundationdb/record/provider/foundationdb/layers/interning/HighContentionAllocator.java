@@ -21,11 +21,13 @@
 package com.apple.foundationdb.record.provider.foundationdb.layers.interning;
 
 import com.apple.foundationdb.annotation.API;
-import com.apple.foundationdb.KeyValue;
 import com.apple.foundationdb.MutationType;
 import com.apple.foundationdb.Range;
 import com.apple.foundationdb.Transaction;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpacePath;
 import com.apple.foundationdb.subspace.Subspace;
 import com.apple.foundationdb.tuple.ByteArrayUtil;
@@ -33,16 +35,36 @@ import com.apple.foundationdb.tuple.Tuple;
 import com.google.common.annotations.VisibleForTesting;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 
 /**
  * A supplier of unique integers that tries to balance size of the integer and conflicts on the assignment.
  *
  * Values are chosen randomly from a window that moves forward as the available lower-numbered space fills up.
+ *
+ * <p>
+ * When many transactions allocate at once, they all bump the same window counter and pick candidates from the
+ * same window, so they tend to collide with one another. A <em>sharded</em> allocator (see
+ * {@link #sharded(FDBRecordContext, Subspace, Subspace, int)}) splits that state: each of {@code shardCount} shards
+ * keeps its own counter and window, and a value chosen from position {@code i} of shard {@code s}'s window is
+ * {@code i * shardCount + s}, so shards never offer the same value. Allocations are still written to the common
+ * allocation subspace, so reverse lookups are unaffected, and sharded and unsharded allocators (or allocators with
+ * different shard counts) can safely be used against the same subspaces. The cost is that values grow roughly
+ * {@code shardCount} times faster.
+ * </p>
+ *
+ * <p>
+ * A shard's window only counts the shard's own allocations, so it can be filled by other allocators' values without
+ * knowing it. A new shard therefore starts at the unsharded allocator's window, and any allocator moves its window
+ * forward after {@link #MAX_CANDIDATE_COLLISIONS} collisions in a row, as the window must then be mostly taken.
+ * </p>
  */
 @API(API.Status.INTERNAL)
 public class HighContentionAllocator {
@@ -50,10 +72,22 @@ public class HighContentionAllocator {
     private static final byte[] KEY_UPDATING_BYTE = new byte[0];
     private static final byte[] INVALID_ALLOCATION_VALUE = new byte[]{(byte) 0xFD};
     private static final Function<Long, CompletableFuture<Boolean>> NOOP_CHECK = ignored -> CompletableFuture.completedFuture(true);
+    private static final String SHARDS_KEY = "shards";
+    /**
+     * The number of candidates in a row that can be found taken before the window is moved forward.
+     * Windows are advanced once half full, so this is very unlikely unless values were allocated by another allocator.
+     */
+    public static final int MAX_CANDIDATE_COLLISIONS = 20;
     private final Subspace counterSubspace;
     private final Subspace allocationSubspace;
     private final Transaction transaction;
     private final Function<Long, CompletableFuture<Boolean>> candidateCheck;
+    private final int shardCount;
+    private final int shard;
+    // counters for this allocator's windows: the counter subspace itself when unsharded, otherwise one per shard
+    private final Subspace windowSubspace;
+    @Nullable
+    private final FDBStoreTimer timer;
 
     public HighContentionAllocator(@Nonnull FDBRecordContext context,
                                    @Nonnull KeySpacePath basePath) {
@@ -82,10 +116,27 @@ public class HighContentionAllocator {
                                       @Nonnull Subspace counterSubspace,
                                       @Nonnull Subspace allocationSubspace,
                                       @Nonnull Function<Long, CompletableFuture<Boolean>> candidateCheck) {
+        this(context, counterSubspace, allocationSubspace, candidateCheck, 1, 0);
+    }
+
+    private HighContentionAllocator(@Nonnull FDBRecordContext context,
+                                    @Nonnull Subspace counterSubspace,
+                                    @Nonnull Subspace allocationSubspace,
+                                    @Nonnull Function<Long, CompletableFuture<Boolean>> candidateCheck,
+                                    int shardCount, int shard) {
+        if (shardCount < 1 || shard < 0 || shard >= shardCount) {
+            throw new RecordCoreException("invalid allocator shard")
+                    .addLogInfo("shardCount", shardCount)
+                    .addLogInfo("shard", shard);
+        }
         this.transaction = context.ensureActive();
         this.counterSubspace = counterSubspace;
         this.allocationSubspace = allocationSubspace;
         this.candidateCheck = candidateCheck;
+        this.shardCount = shardCount;
+        this.shard = shard;
+        this.windowSubspace = shardCount == 1 ? counterSubspace : counterSubspace.subspace(Tuple.from(SHARDS_KEY, shardCount, shard));
+        this.timer = context.getTimer();
     }
 
     public static HighContentionAllocator forRoot(@Nonnull FDBRecordContext context,
@@ -99,6 +150,66 @@ public class HighContentionAllocator {
         return new HighContentionAllocator(context, basePath, value -> hasConflictAtRoot(context.ensureActive(), value));
     }
 
+    /**
+     * Create an allocator that uses a randomly chosen one of {@code shardCount} shards.
+     * @param context the transaction in which to allocate
+     * @param counterSubspace subspace holding the window counters
+     * @param allocationSubspace subspace holding the allocated values
+     * @param shardCount the number of shards into which allocation is split
+     * @return a new allocator
+     */
+    public static HighContentionAllocator sharded(@Nonnull FDBRecordContext context,
+                                                  @Nonnull Subspace counterSubspace,
+                                                  @Nonnull Subspace allocationSubspace,
+                                                  int shardCount) {
+        return sharded(context, counterSubspace, allocationSubspace, shardCount, randomShard(shardCount));
+    }
+
+    /**
+     * Create an allocator that uses the given one of {@code shardCount} shards.
+     * @param context the transaction in which to allocate
+     * @param counterSubspace subspace holding the window counters
+     * @param allocationSubspace subspace holding the allocated values
+     * @param shardCount the number of shards into which allocation is split
+     * @param shard the shard to use, from {@code 0} to {@code shardCount - 1}
+     * @return a new allocator
+     */
+    public static HighContentionAllocator sharded(@Nonnull FDBRecordContext context,
+                                                  @Nonnull Subspace counterSubspace,
+                                                  @Nonnull Subspace allocationSubspace,
+                                                  int shardCount, int shard) {
+        return new HighContentionAllocator(context, counterSubspace, allocationSubspace, NOOP_CHECK, shardCount, shard);
+    }
+
+    /**
+     * Create an allocator for the root of the database that uses a randomly chosen one of {@code shardCount} shards.
+     * @param context the transaction in which to allocate
+     * @param counterSubspace subspace holding the window counters
+     * @param allocationSubspace subspace holding the allocated values
+     * @param shardCount the number of shards into which allocation is split
+     * @return a new allocator
+     * @see #forRoot(FDBRecordContext, Subspace, Subspace)
+     */
+    public static HighContentionAllocator shardedForRoot(@Nonnull FDBRecordContext context,
+                                                         @Nonnull Subspace counterSubspace,
+                                                         @Nonnull Subspace allocationSubspace,
+                                                         int shardCount) {
+        return new HighContentionAllocator(context, counterSubspace, allocationSubspace,
+                value -> hasConflictAtRoot(context.ensureActive(), value), shardCount, randomShard(shardCount));
+    }
+
+    private static int randomShard(int shardCount) {
+        return shardCount > 1 ? ThreadLocalRandom.current().nextInt(shardCount) : 0;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
     @VisibleForTesting
     public Subspace getAllocationSubspace() {
         return allocationSubspace;
@@ -108,26 +219,35 @@ public class HighContentionAllocator {
         final byte[] valueBytes = Tuple.from(valueToStore).pack();
         return initialWindow()
                 .thenCompose(initialWindow -> chooseWindow(initialWindow, false))
-                .thenCompose(window -> chooseCandidate(window, valueBytes));
+                .thenCompose(window -> chooseCandidate(window, valueBytes, 0));
     }
 
-    private CompletableFuture<Optional<KeyValue>> currentCounter() {
-        return transaction.snapshot().getRange(counterSubspace.range(), 1, true)
+    private CompletableFuture<Optional<Long>> currentCounter(@Nonnull Subspace subspace) {
+        // only non-negative integer keys are counters; this skips over any shard subspaces
+        final Range counters = new Range(subspace.pack(0L), subspace.range().end);
+        return transaction.snapshot().getRange(counters, 1, true)
                 .asList()
                 .thenApply(list ->
-                        list.isEmpty() ? Optional.empty() : Optional.of(list.get(0)));
+                        list.isEmpty() ? Optional.empty() : Optional.of(subspace.unpack(list.get(0).getKey()).getLong(0)));
     }
 
     private CompletableFuture<AllocationWindow> initialWindow() {
-        return currentCounter().thenApply(counter ->
-                counter.map(kv -> AllocationWindow.startingFrom(counterSubspace.unpack(kv.getKey()).getLong(0)))
-                        .orElse(AllocationWindow.startingFrom(0))
-        );
+        return currentCounter(windowSubspace).thenCompose(counter -> {
+            if (counter.isPresent()) {
+                return CompletableFuture.completedFuture(AllocationWindow.startingFrom(counter.get()));
+            }
+            if (shardCount == 1) {
+                return CompletableFuture.completedFuture(AllocationWindow.startingFrom(0));
+            }
+            // A new shard starts where the unsharded allocator is, since the values below that are likely to be taken.
+            return currentCounter(counterSubspace).thenApply(unsharded ->
+                    AllocationWindow.startingFrom(unsharded.map(start -> (start + shardCount - 1) / shardCount).orElse(0L)));
+        });
     }
 
     private CompletableFuture<AllocationWindow> chooseWindow(final AllocationWindow currentWindow, boolean wipeOld) {
-        byte[] counterKey = counterSubspace.pack(currentWindow.getStart());
-        Range oldCounters = new Range(counterSubspace.getKey(), counterKey);
+        byte[] counterKey = windowSubspace.pack(currentWindow.getStart());
+        Range oldCounters = new Range(windowSubspace.pack(0L), counterKey);
 
         CompletableFuture<byte[]> newCount;
 
@@ -143,6 +263,7 @@ public class HighContentionAllocator {
                 .thenCompose(count -> {
                     if (count * 2 > currentWindow.size()) {
                         // advance the window and retry
+                        increment(FDBStoreTimer.Counts.HCA_WINDOW_ADVANCE, ShardCount.Kind.WINDOW_ADVANCE);
                         final AllocationWindow newWindow = AllocationWindow.startingFrom(currentWindow.getEnd());
                         return chooseWindow(newWindow, true);
                     }
@@ -150,8 +271,14 @@ public class HighContentionAllocator {
                 });
     }
 
-    private CompletableFuture<Long> chooseCandidate(final AllocationWindow window, final byte[] valueToStore) {
-        final long candidate = window.random();
+    private CompletableFuture<Long> chooseCandidate(final AllocationWindow window, final byte[] valueToStore, int collisions) {
+        if (collisions >= MAX_CANDIDATE_COLLISIONS) {
+            // The window is mostly taken by values that its counter does not know about, so move on from it.
+            increment(FDBStoreTimer.Counts.HCA_WINDOW_ADVANCE, ShardCount.Kind.WINDOW_ADVANCE);
+            return chooseWindow(AllocationWindow.startingFrom(window.getEnd()), true)
+                    .thenCompose(newWindow -> chooseCandidate(newWindow, valueToStore, 0));
+        }
+        final long candidate = window.random() * shardCount + shard;
         final byte[] allocationKey = allocationSubspace.pack(candidate);
 
         CompletableFuture<byte[]> previousAllocationValue;
@@ -171,9 +298,12 @@ public class HighContentionAllocator {
                         if (!isGood) {
                             throw new IllegalStateException("database already has keys in allocation range");
                         }
+                        increment(FDBStoreTimer.Counts.HCA_ALLOCATION, ShardCount.Kind.ALLOCATION);
                         return CompletableFuture.completedFuture(candidate);
                     }
 
+                    increment(FDBStoreTimer.Counts.HCA_CANDIDATE_COLLISION, ShardCount.Kind.CANDIDATE_COLLISION);
+
                     if (!Arrays.equals(valueBytes, KEY_UPDATING_BYTE)) {
                         // we overwrote a real allocation value, need to roll it back
                         synchronized (transaction) {
@@ -181,12 +311,21 @@ public class HighContentionAllocator {
                             transaction.set(allocationKey, valueBytes);
                         }
                     }
-                    return chooseCandidate(window, valueToStore);
+                    return chooseCandidate(window, valueToStore, collisions + 1);
                 }).thenCompose(Function.identity());
     }
 
     public void setWindow(long count) {
-        transaction.mutate(MutationType.ADD, counterSubspace.pack(count), LITTLE_ENDIAN_LONG_ONE);
+        transaction.mutate(MutationType.ADD, windowSubspace.pack(count), LITTLE_ENDIAN_LONG_ONE);
+    }
+
+    private void increment(@Nonnull FDBStoreTimer.Counts total, @Nonnull ShardCount.Kind kind) {
+        if (timer != null) {
+            timer.increment(total);
+            if (shardCount > 1) {
+                timer.increment(new ShardCount(kind, shard));
+            }
+        }
     }
 
     public void forceAllocate(@Nonnull String key, @Nonnull Long value) {
@@ -204,6 +343,82 @@ public class HighContentionAllocator {
         return transaction.snapshot().getRange(checkRange, 1).iterator().onHasNext().thenApply(hasKeys -> !hasKeys);
     }
 
+    /**
+     * A count of allocator activity within a single shard of a {@linkplain #sharded sharded} allocator.
+     * The totals over all shards are recorded under the corresponding {@link FDBStoreTimer.Counts}.
+     */
+    public static class ShardCount implements StoreTimer.Count {
+        /**
+         * The kind of activity being counted.
+         */
+        public enum Kind {
+            ALLOCATION("allocation"),
+            CANDIDATE_COLLISION("candidate collision"),
+            WINDOW_ADVANCE("window advance");
+
+            private final String title;
+
+            Kind(String title) {
+                this.title = title;
+            }
+        }
+
+        @Nonnull
+        private final Kind kind;
+        private final int shard;
+
+        public ShardCount(@Nonnull Kind kind, int shard) {
+            this.kind = kind;
+            this.shard = shard;
+        }
+
+        @Nonnull
+        public Kind getKind() {
+            return kind;
+        }
+
+        public int getShard() {
+            return shard;
+        }
+
+        @Override
+        public String name() {
+            return "HCA_" + kind.name() + "_SHARD_" + shard;
+        }
+
+        @Override
+        public String title() {
+            return "high contention allocator " + kind.title + " in shard " + shard;
+        }
+
+        @Override
+        public boolean isSize() {
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ShardCount that = (ShardCount) o;
+            return shard == that.shard && kind == that.kind;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, shard);
+        }
+
+        @Override
+        public String toString() {
+            return name();
+        }
+    }
+
     /**
      * A range of possible values to try.
      */
@@ -74,9 +74,29 @@ public class ScopedInterningLayer extends LocatableResolver {
         this(database, path.toPath(), CompletableFuture.completedFuture(path));
     }
 
+    /**
+     * Creates a resolver rooted at the provided <code>KeySpacePath</code> that allocates new values using a
+     * sharded {@link HighContentionAllocator}. This reduces conflicts when many transactions create new
+     * mappings at once, at the cost of larger values. Resolvers with different shard counts can share the
+     * same path.
+     * @param database database that will be used when resolving values
+     * @param path the {@link ResolvedKeySpacePath} where this resolver is rooted
+     * @param allocatorShardCount the number of allocator shards
+     */
+    public ScopedInterningLayer(@Nonnull FDBDatabase database, @Nonnull ResolvedKeySpacePath path, int allocatorShardCount) {
+        this(database, path.toPath(), CompletableFuture.completedFuture(path), allocatorShardCount);
+    }
+
     private ScopedInterningLayer(@Nonnull FDBDatabase database,
                                  @Nullable KeySpacePath path,
                                  @Nullable CompletableFuture<ResolvedKeySpacePath> resolvedPath) {
+        this(database, path, resolvedPath, 1);
+    }
+
+    private ScopedInterningLayer(@Nonnull FDBDatabase database,
+                                 @Nullable KeySpacePath path,
+                                 @Nullable CompletableFuture<ResolvedKeySpacePath> resolvedPath,
+                                 int allocatorShardCount) {
         super(database, path, resolvedPath);
         boolean isRootLevel;
         if (path == null && resolvedPath == null) {
@@ -89,7 +109,7 @@ public class ScopedInterningLayer extends LocatableResolver {
             this.nodeSubspaceFuture = baseSubspaceFuture;
         }
         this.stateSubspaceFuture = nodeSubspaceFuture.thenApply(node -> node.get(STATE_SUBSPACE_KEY_SUFFIX));
-        this.interningLayerFuture = nodeSubspaceFuture.thenApply(node -> new StringInterningLayer(node, isRootLevel));
+        this.interningLayerFuture = nodeSubspaceFuture.thenApply(node -> new StringInterningLayer(node, isRootLevel, allocatorShardCount));
     }
 
     /**
@@ -51,26 +51,41 @@ public class StringInterningLayer {
     @Nonnull
     private final Subspace counterSubspace;
     private final boolean isRootLevel;
+    private final int allocatorShardCount;
 
     public StringInterningLayer(@Nonnull Subspace baseSubspace) {
         this(baseSubspace, false);
     }
 
     public StringInterningLayer(@Nonnull Subspace baseSubspace, boolean isRootLevel) {
+        this(baseSubspace, isRootLevel, 1);
+    }
+
+    /**
+     * Creates an interning layer whose new values are allocated by a sharded {@link HighContentionAllocator}.
+     * @param baseSubspace the subspace holding the mappings
+     * @param isRootLevel whether allocated values must not collide with keys at the root of the database
+     * @param allocatorShardCount the number of allocator shards, {@code 1} for an unsharded allocator
+     * @see HighContentionAllocator#sharded(FDBRecordContext, Subspace, Subspace, int)
+     */
+    public StringInterningLayer(@Nonnull Subspace baseSubspace, boolean isRootLevel, int allocatorShardCount) {
         this(baseSubspace.get(2),
                 baseSubspace.get(1),
                 baseSubspace.get(0),
-                isRootLevel);
+                isRootLevel,
+                allocatorShardCount);
     }
 
     private StringInterningLayer(@Nonnull Subspace mappingSubspace,
                                  @Nonnull Subspace reverseMappingSubspace,
                                  @Nonnull Subspace counterSubspace,
-                                 boolean isRootLevel) {
+                                 boolean isRootLevel,
+                                 int allocatorShardCount) {
         this.mappingSubspace = mappingSubspace;
         this.reverseMappingSubspace = reverseMappingSubspace;
         this.counterSubspace = counterSubspace;
         this.isRootLevel = isRootLevel;
+        this.allocatorShardCount = allocatorShardCount;
     }
 
     protected CompletableFuture<ResolverResult> intern(@Nonnull FDBRecordContext context, @Nonnull final String toIntern) {
@@ -175,6 +190,11 @@ public class StringInterningLayer {
     }
 
     private HighContentionAllocator getHca(@Nonnull FDBRecordContext context) {
+        if (allocatorShardCount > 1) {
+            return isRootLevel ?
+                    HighContentionAllocator.shardedForRoot(context, counterSubspace, reverseMappingSubspace, allocatorShardCount) :
+                    HighContentionAllocator.sharded(context, counterSubspace, reverseMappingSubspace, allocatorShardCount);
+        }
         return isRootLevel ?
                 HighContentionAllocator.forRoot(context, counterSubspace, reverseMappingSubspace) :
                 new HighContentionAllocator(context, counterSubspace, reverseMappingSubspace);
@@ -41,10 +41,12 @@ import com.apple.foundationdb.record.TupleRange;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
 import com.apple.foundationdb.record.logging.LogMessageKeys;
 import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
+import com.apple.foundationdb.record.metadata.IndexOptions;
 import com.apple.foundationdb.record.metadata.IndexRecordFunction;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBIndexableRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
 import com.apple.foundationdb.record.provider.foundationdb.IndexOperation;
@@ -90,10 +92,26 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
     private static final Tuple SUB_DIRECTORY_PREFIX = Tuple.from((Object)null); // Must not conflict with leaderboard subspace keys.
 
     private final RankedSet.Config config;
+    private final boolean bufferWrites;
 
     public TimeWindowLeaderboardIndexMaintainer(IndexMaintainerState state) {
         super(state);
         this.config = RankedSetIndexHelper.getConfig(state.index);
+        this.bufferWrites = state.index.getBooleanOption(IndexOptions.TIME_WINDOW_LEADERBOARD_BUFFER_WRITES_OPTION, false);
+    }
+
+    /**
+     * Throw away any ranked set updates buffered within the given transaction for leaderboard indexes within the given subspace.
+     * This must be called before clearing the data of a leaderboard index that might have the
+     * {@value IndexOptions#TIME_WINDOW_LEADERBOARD_BUFFER_WRITES_OPTION} option set, as otherwise the buffered updates
+     * would be written back at commit time.
+     *
+     * @param context the transaction that might have buffered updates
+     * @param subspace the subspace being cleared
+     */
+    @API(API.Status.INTERNAL)
+    public static void discardBufferedUpdates(@Nonnull FDBRecordContext context, @Nonnull Subspace subspace) {
+        TimeWindowLeaderboardWriteBuffer.discard(context, subspace);
     }
 
     @Nonnull
@@ -199,8 +217,9 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
                 final Subspace extraSubspace = getSecondarySubspace();
                 final Subspace leaderboardSubspace = extraSubspace.subspace(leaderboard.getSubspaceKey());
                 final RankedSet.Config leaderboardConfig = config.toBuilder().setNLevels(leaderboard.getNLevels()).build();
-                return RankedSetIndexHelper.rankRangeToScoreRange(state, groupPrefixSize,
-                        leaderboardSubspace, leaderboardConfig, leaderboardRange);
+                return TimeWindowLeaderboardWriteBuffer.flush(state.context, leaderboardSubspace).thenCompose(vignore ->
+                        RankedSetIndexHelper.rankRangeToScoreRange(state, groupPrefixSize,
+                                leaderboardSubspace, leaderboardConfig, leaderboardRange));
             });
         }
         // Add leaderboard's key to the front and take it off of the results.
@@ -367,8 +386,13 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
                                 // indexed in this rankSubspace. Compare/contrast: RankIndexMaintainer::updateIndexKeys
                                 final Subspace rankSubspace = extraSubspace.subspace(leaderboardGroupKey);
                                 final RankedSet.Config leaderboardConfig = config.toBuilder().setNLevels(leaderboard.getNLevels()).build();
-                                futures.add(RankedSetIndexHelper.updateRankedSet(state, rankSubspace,
-                                        leaderboardConfig, entryKey, indexKey.scoreKey, remove));
+                                if (bufferWrites) {
+                                    TimeWindowLeaderboardWriteBuffer.forContext(state.context).update(state, rankSubspace,
+                                            leaderboardConfig, entryKey, indexKey.scoreKey, remove);
+                                } else {
+                                    futures.add(RankedSetIndexHelper.updateRankedSet(state, rankSubspace,
+                                            leaderboardConfig, entryKey, indexKey.scoreKey, remove));
+                                }
                             }
                         }
                     }
@@ -494,8 +518,9 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
             final Subspace extraSubspace = getSecondarySubspace();
             final Subspace rankSubspace = extraSubspace.subspace(leaderboardGroupKey);
             final RankedSet.Config leaderboardConfig = config.toBuilder().setNLevels(leaderboard.getNLevels()).build();
-            final RankedSet rankedSet = new RankedSetIndexHelper.InstrumentedRankedSet(state, rankSubspace, leaderboardConfig);
-            return function.apply(leaderboard, rankedSet, groupKey, values);
+            final RankedSet rankedSet = RankedSetIndexHelper.newRankedSet(state, rankSubspace, leaderboardConfig);
+            return TimeWindowLeaderboardWriteBuffer.flush(state.context, rankSubspace).thenCompose(vignore ->
+                    function.apply(leaderboard, rankedSet, groupKey, values));
         });
     }
 
@@ -542,10 +567,11 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
                             final Subspace extraSubspace = getSecondarySubspace();
                             final Subspace rankSubspace = extraSubspace.subspace(leaderboardGroupKey);
                             final RankedSet.Config leaderboardConfig = config.toBuilder().setNLevels(leaderboard.getNLevels()).build();
-                            final RankedSet rankedSet = new RankedSetIndexHelper.InstrumentedRankedSet(state, rankSubspace, leaderboardConfig);
+                            final RankedSet rankedSet = RankedSetIndexHelper.newRankedSet(state, rankSubspace, leaderboardConfig);
                             // Undo any negation needed to find entry.
                             final Tuple entry = highScoreFirst ? negateScoreForHighScoreFirst(indexKey.scoreKey, 0) : indexKey.scoreKey;
-                            return RankedSetIndexHelper.rankForScore(state, rankedSet, indexKey.scoreKey, true).thenApply(rank -> Pair.of(rank, entry));
+                            return TimeWindowLeaderboardWriteBuffer.flush(state.context, rankSubspace).thenCompose(vignore ->
+                                    RankedSetIndexHelper.rankForScore(state, rankedSet, indexKey.scoreKey, true).thenApply(rank -> Pair.of(rank, entry)));
                         });
             });
         });
@@ -567,6 +593,7 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
                         final byte[] indexKey = indexSubspace.pack(leaderboardGroupKey);
                         tr.clear(indexKey, ByteArrayUtil.strinc(indexKey));
                         final byte[] ranksetKey = extraSubspace.pack(leaderboardGroupKey);
+                        TimeWindowLeaderboardWriteBuffer.discard(state.context, extraSubspace.subspace(leaderboardGroupKey));
                         tr.clear(ranksetKey, ByteArrayUtil.strinc(ranksetKey));
                     }
                 }
@@ -675,6 +702,7 @@ public class TimeWindowLeaderboardIndexMaintainer extends StandardIndexMaintaine
                     if (update.getDeleteBefore() >= leaderboard.getEndTimestamp()) {
                         state.transaction.clear(indexSubspace.pack(leaderboard.getSubspaceKey()));
                         state.transaction.clear(extraSubspace.pack(leaderboard.getSubspaceKey()));
+                        TimeWindowLeaderboardWriteBuffer.discard(state.context, extraSubspace.subspace(leaderboard.getSubspaceKey()));
                         iter.remove();
                         changed = true;
                         if (getTimer() != null) {
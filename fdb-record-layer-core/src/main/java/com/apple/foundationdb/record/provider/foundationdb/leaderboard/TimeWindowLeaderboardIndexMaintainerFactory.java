@@ -22,6 +22,7 @@ package com.apple.foundationdb.record.provider.foundationdb.leaderboard;
 
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexOptions;
 import com.apple.foundationdb.record.metadata.IndexTypes;
 import com.apple.foundationdb.record.metadata.IndexValidator;
 import com.apple.foundationdb.record.metadata.MetaDataValidator;
@@ -32,6 +33,7 @@ import com.google.auto.service.AutoService;
 
 import javax.annotation.Nonnull;
 import java.util.Arrays;
+import java.util.Set;
 
 /**
  * Factory for the <code>TIME_WINDOW_LEADERBOARD</code> index type.
@@ -57,6 +59,20 @@ public class TimeWindowLeaderboardIndexMaintainerFactory implements IndexMaintai
                 validateGrouping(1);
                 validateNotVersion();
             }
+
+            /**
+             * Validate any options that have changed. {@link IndexOptions#TIME_WINDOW_LEADERBOARD_BUFFER_WRITES_OPTION}
+             * may change without rebuilding the index, since it only affects when index updates are written within a
+             * transaction.
+             *
+             * @param oldIndex an older version of this index
+             * @param changedOptions the set of changed options
+             */
+            @Override
+            protected void validateChangedOptions(@Nonnull Index oldIndex, @Nonnull Set<String> changedOptions) {
+                changedOptions.remove(IndexOptions.TIME_WINDOW_LEADERBOARD_BUFFER_WRITES_OPTION);
+                super.validateChangedOptions(oldIndex, changedOptions);
+            }
         };
     }
 
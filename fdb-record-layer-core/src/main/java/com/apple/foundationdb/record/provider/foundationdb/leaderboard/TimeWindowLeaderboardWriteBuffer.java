@@ -0,0 +1,240 @@
+/*
+ * TimeWindowLeaderboardWriteBuffer.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.leaderboard;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.async.RankedSet;
+import com.apple.foundationdb.record.PipelineOperation;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainerState;
+import com.apple.foundationdb.record.provider.foundationdb.indexes.RankedSetIndexHelper;
+import com.apple.foundationdb.subspace.Subspace;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.apple.foundationdb.tuple.Tuple;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Ranked set updates for {@link TimeWindowLeaderboardIndexMaintainer leaderboard indexes} buffered within a transaction.
+ *
+ * <p>
+ * Without buffering, each score of each record saved is added to or removed from the ranked set of every time window
+ * that contains it separately, each walking every level of the ranked set's skip list. When many records are saved in
+ * one transaction, the same levels are therefore read and written over and over. This buffer instead gathers up the
+ * score changes for each ranked set, sorted by score, and applies them together with
+ * {@link RankedSet#removeAll(com.apple.foundationdb.TransactionContext, List) RankedSet.removeAll} and
+ * {@link RankedSet#addAll(com.apple.foundationdb.TransactionContext, List) RankedSet.addAll}, which update each level
+ * once for the whole batch. There is a single buffer per transaction, shared by all buffered leaderboard indexes,
+ * which is applied by a {@linkplain FDBRecordContext#getOrCreateCommitCheck commit check} just before the transaction commits.
+ * </p>
+ *
+ * <p>
+ * Because the updates are not in the database until then, anything that reads or clears a leaderboard's ranked sets within
+ * the same transaction must first {@link #flush(FDBRecordContext, Subspace) flush} or {@link #discard(FDBRecordContext, Subspace) discard}
+ * the updates for that index. The ordinary B-tree entries of the index are not buffered.
+ * </p>
+ */
+@API(API.Status.INTERNAL)
+class TimeWindowLeaderboardWriteBuffer implements FDBRecordContext.CommitCheckAsync {
+    private static final String COMMIT_CHECK_NAME = "timeWindowLeaderboardWriteBuffer";
+
+    @Nonnull
+    private final FDBRecordContext context;
+    // Pending updates by the key of the subspace of each ranked set
+    @Nonnull
+    private final NavigableMap<byte[], PendingUpdates> pending = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+    // Flushes are applied one after another so that two never update the same ranked set at once
+    @Nonnull
+    private CompletableFuture<Void> lastFlush = AsyncUtil.DONE;
+
+    private TimeWindowLeaderboardWriteBuffer(@Nonnull FDBRecordContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Get the buffer for the given transaction, creating it if necessary.
+     * @param context the transaction in which updates are being made
+     * @return the transaction's buffer
+     */
+    @Nonnull
+    static TimeWindowLeaderboardWriteBuffer forContext(@Nonnull FDBRecordContext context) {
+        return (TimeWindowLeaderboardWriteBuffer)context.getOrCreateCommitCheck(COMMIT_CHECK_NAME, name -> new TimeWindowLeaderboardWriteBuffer(context));
+    }
+
+    /**
+     * Apply any buffered updates within the given subspace.
+     * @param context the transaction in which updates might have been buffered
+     * @param subspace the subspace of the ranked sets to be read
+     * @return a future that completes when the updates are in the transaction
+     */
+    @Nonnull
+    static CompletableFuture<Void> flush(@Nonnull FDBRecordContext context, @Nonnull Subspace subspace) {
+        final TimeWindowLeaderboardWriteBuffer buffer = (TimeWindowLeaderboardWriteBuffer)context.getCommitCheck(COMMIT_CHECK_NAME);
+        return buffer == null ? AsyncUtil.DONE : buffer.flush(subspace.pack());
+    }
+
+    /**
+     * Throw away any buffered updates within the given subspace, because it is about to be cleared.
+     * @param context the transaction in which updates might have been buffered
+     * @param subspace the subspace being cleared
+     */
+    static void discard(@Nonnull FDBRecordContext context, @Nonnull Subspace subspace) {
+        final TimeWindowLeaderboardWriteBuffer buffer = (TimeWindowLeaderboardWriteBuffer)context.getCommitCheck(COMMIT_CHECK_NAME);
+        if (buffer != null) {
+            buffer.takeUpdates(subspace.pack());
+        }
+    }
+
+    /**
+     * Record a score being added to or removed from a ranked set.
+     * @param state the state of the index maintainer making the change
+     * @param rankSubspace the subspace of the ranked set
+     * @param config the configuration of the ranked set
+     * @param valueKey the key of the index entry for the score, used to check whether any record still has that score
+     * @param scoreKey the score
+     * @param remove {@code true} if the score is being removed
+     */
+    synchronized void update(@Nonnull IndexMaintainerState state, @Nonnull Subspace rankSubspace, @Nonnull RankedSet.Config config,
+                             @Nonnull Tuple valueKey, @Nonnull Tuple scoreKey, boolean remove) {
+        final PendingUpdates updates = pending.computeIfAbsent(rankSubspace.pack(), k -> new PendingUpdates(state, rankSubspace, config));
+        final ScoreUpdates scoreUpdates = updates.scores.computeIfAbsent(scoreKey.pack(), k -> new ScoreUpdates(valueKey));
+        if (remove) {
+            scoreUpdates.removes++;
+        } else {
+            scoreUpdates.adds++;
+        }
+        context.increment(FDBStoreTimer.Counts.TIME_WINDOW_LEADERBOARD_BUFFERED_UPDATE);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> checkAsync() {
+        return flush(null);
+    }
+
+    @Nonnull
+    private synchronized List<PendingUpdates> takeUpdates(@Nullable byte[] prefix) {
+        final NavigableMap<byte[], PendingUpdates> range = prefix == null ?
+                                                           pending :
+                                                           pending.subMap(prefix, true, ByteArrayUtil.strinc(prefix), false);
+        final List<PendingUpdates> updates = new ArrayList<>(range.values());
+        range.clear();
+        return updates;
+    }
+
+    @Nonnull
+    private synchronized CompletableFuture<Void> flush(@Nullable byte[] prefix) {
+        final List<PendingUpdates> updates = takeUpdates(prefix);
+        if (updates.isEmpty()) {
+            return lastFlush;
+        }
+        context.increment(FDBStoreTimer.Counts.TIME_WINDOW_LEADERBOARD_BUFFER_FLUSHED_RANKED_SET, updates.size());
+        final int pipelineSize = updates.get(0).state.store.getPipelineSize(PipelineOperation.TIME_WINDOW_LEADERBOARD_UPDATE);
+        lastFlush = lastFlush.thenCompose(vignore -> {
+            final long startTime = System.nanoTime();
+            return context.instrument(FDBStoreTimer.Events.FLUSH_TIME_WINDOW_LEADERBOARD_BUFFER,
+                    RecordCursor.fromList(context.getExecutor(), updates).forEachAsync(PendingUpdates::apply, pipelineSize),
+                    startTime);
+        });
+        return lastFlush;
+    }
+
+    private static class PendingUpdates {
+        @Nonnull
+        private final IndexMaintainerState state;
+        @Nonnull
+        private final Subspace rankSubspace;
+        @Nonnull
+        private final RankedSet.Config config;
+        // Updates by packed score, so that they are in the order of the ranked set
+        @Nonnull
+        private final NavigableMap<byte[], ScoreUpdates> scores = new TreeMap<>(ByteArrayUtil::compareUnsigned);
+
+        PendingUpdates(@Nonnull IndexMaintainerState state, @Nonnull Subspace rankSubspace, @Nonnull RankedSet.Config config) {
+            this.state = state;
+            this.rankSubspace = rankSubspace;
+            this.config = config;
+        }
+
+        @Nonnull
+        CompletableFuture<Void> apply() {
+            final List<byte[]> addScores = new ArrayList<>();
+            final List<byte[]> removeScores = new ArrayList<>();
+            final List<Boolean> mustBePresent = new ArrayList<>();
+            if (config.isCountDuplicates()) {
+                // Only the net change in the number of occurrences of each score matters.
+                for (Map.Entry<byte[], ScoreUpdates> entry : scores.entrySet()) {
+                    final int change = entry.getValue().adds - entry.getValue().removes;
+                    if (change > 0) {
+                        addScores.addAll(Collections.nCopies(change, entry.getKey()));
+                    } else if (change < 0) {
+                        removeScores.addAll(Collections.nCopies(-change, entry.getKey()));
+                        mustBePresent.addAll(Collections.nCopies(-change, true));
+                    }
+                }
+                return RankedSetIndexHelper.updateRankedSet(state, rankSubspace, config, addScores, removeScores, mustBePresent);
+            }
+            // Otherwise, a score belongs in the ranked set as long as some record still has it. That can only have
+            // changed for a score that something was removed from.
+            final List<CompletableFuture<Boolean>> stillPresent = new ArrayList<>(scores.size());
+            for (ScoreUpdates scoreUpdates : scores.values()) {
+                stillPresent.add(scoreUpdates.removes == 0 ?
+                                 AsyncUtil.READY_TRUE :
+                                 state.transaction.getRange(state.indexSubspace.range(scoreUpdates.valueKey)).iterator().onHasNext());
+            }
+            return AsyncUtil.getAll(stillPresent).thenCompose(present -> {
+                int i = 0;
+                for (Map.Entry<byte[], ScoreUpdates> entry : scores.entrySet()) {
+                    if (present.get(i++)) {
+                        addScores.add(entry.getKey());
+                    } else {
+                        removeScores.add(entry.getKey());
+                        // A score added and removed again in this transaction might never have reached the ranked set.
+                        mustBePresent.add(entry.getValue().adds == 0);
+                    }
+                }
+                return RankedSetIndexHelper.updateRankedSet(state, rankSubspace, config, addScores, removeScores, mustBePresent);
+            });
+        }
+    }
+
+    private static class ScoreUpdates {
+        @Nonnull
+        private final Tuple valueKey;
+        private int adds;
+        private int removes;
+
+        ScoreUpdates(@Nonnull Tuple valueKey) {
+            this.valueKey = valueKey;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * StoreVersionStampStoreStateCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.storestate;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCoreRetriableTransactionException;
+import com.apple.foundationdb.record.logging.LogMessageKeys;
+import com.apple.foundationdb.record.provider.foundationdb.FDBDatabase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreKeyspace;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.SubspaceProvider;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+import com.google.common.cache.Cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An implementation of the {@link FDBRecordStoreStateCache} that validates each cached entry against a version-stamp
+ * key kept within that record store's own subspace. A record store whose state is cacheable (see
+ * {@link FDBRecordStore#setStateCacheability(boolean)}) sets this key to its commit version whenever it changes its
+ * store header or the state of one of its indexes.
+ *
+ * <p>
+ * Unlike the {@link MetaDataVersionStampStoreStateCache}, which is invalidated for every store in the database
+ * whenever the database's single meta-data version-stamp key is updated, entries here are only invalidated by
+ * changes to that store. This makes it better suited to databases with many record stores whose states change
+ * frequently. Reading the store's key is added as a read conflict, so a transaction that used a cached state will
+ * not commit if the store's state was changed concurrently.
+ * </p>
+ *
+ * <p>
+ * By default, opening a record store waits for the store's key to be read before deciding whether the cached state is
+ * still valid. If validation is {@linkplain StoreVersionStampStoreStateCacheFactory#setDeferValidation(boolean) deferred},
+ * the cached state is instead used right away and the key is read in parallel with whatever else the transaction
+ * does. The transaction then fails to commit with a retriable exception if the cached state turns out to have been stale.
+ * This saves a round trip when opening the store, but means that reads done before committing may be based on an
+ * out-of-date state, so it should only be used when transactions are always committed, even if they only read.
+ * </p>
+ *
+ * <p>
+ * Record stores that were made cacheable before this key existed will not have it, and so will not be cached until
+ * their state is next changed.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class StoreVersionStampStoreStateCache implements FDBRecordStoreStateCache {
+    @Nonnull
+    private final FDBDatabase database;
+    @Nonnull
+    private final Cache<SubspaceProvider, Entry> cache;
+    private final boolean deferValidation;
+
+    StoreVersionStampStoreStateCache(@Nonnull FDBDatabase database, @Nonnull Cache<SubspaceProvider, Entry> cache, boolean deferValidation) {
+        this.database = database;
+        this.cache = cache;
+        this.deferValidation = deferValidation;
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<FDBRecordStoreStateCacheEntry> get(@Nonnull FDBRecordStore recordStore, @Nonnull FDBRecordStoreBase.StoreExistenceCheck existenceCheck) {
+        final FDBRecordContext context = recordStore.getContext();
+        validateContext(context);
+        if (context.hasDirtyStoreState()) {
+            recordStore.increment(FDBStoreTimer.Counts.STORE_STATE_CACHE_MISS);
+            return FDBRecordStoreStateCacheEntry.load(recordStore, existenceCheck);
+        }
+        final SubspaceProvider subspaceProvider = recordStore.getSubspaceProvider();
+        // Not a snapshot read, so that a concurrent change to the store's state conflicts with this transaction.
+        final CompletableFuture<byte[]> versionStampFuture = context.ensureActive()
+                .get(recordStore.getSubspace().pack(FDBRecordStoreKeyspace.STORE_STATE_VERSION_STAMP.key()));
+        final Entry existingEntry = cache.getIfPresent(subspaceProvider);
+        if (existingEntry == null) {
+            recordStore.increment(FDBStoreTimer.Counts.STORE_STATE_CACHE_MISS);
+            return load(recordStore, existenceCheck, subspaceProvider, versionStampFuture);
+        }
+        if (deferValidation) {
+            context.addCommitCheck(versionStampFuture.thenAccept(versionStamp -> {
+                if (!Arrays.equals(versionStamp, existingEntry.versionStamp)) {
+                    invalidateOlderEntry(subspaceProvider, versionStamp);
+                    throw new RecordCoreRetriableTransactionException("cached record store state was out of date")
+                            .addLogInfo(subspaceProvider.logKey(), subspaceProvider.toString(context),
+                                    LogMessageKeys.CACHED_VERSION, ByteArrayUtil.printable(existingEntry.versionStamp));
+                }
+            }));
+            recordStore.increment(FDBStoreTimer.Counts.STORE_STATE_CACHE_HIT);
+            return existingEntry.storeState.handleCachedState(context, existenceCheck).thenApply(ignore -> existingEntry.storeState);
+        }
+        return versionStampFuture.thenCompose(versionStamp -> {
+            if (versionStamp == null || !Arrays.equals(versionStamp, existingEntry.versionStamp)) {
+                recordStore.increment(FDBStoreTimer.Counts.STORE_STATE_CACHE_MISS);
+                return load(recordStore, existenceCheck, subspaceProvider, versionStampFuture);
+            }
+            recordStore.increment(FDBStoreTimer.Counts.STORE_STATE_CACHE_HIT);
+            return existingEntry.storeState.handleCachedState(context, existenceCheck).thenApply(ignore -> existingEntry.storeState);
+        });
+    }
+
+    @Nonnull
+    private CompletableFuture<FDBRecordStoreStateCacheEntry> load(@Nonnull FDBRecordStore recordStore,
+                                                                  @Nonnull FDBRecordStoreBase.StoreExistenceCheck existenceCheck,
+                                                                  @Nonnull SubspaceProvider subspaceProvider,
+                                                                  @Nonnull CompletableFuture<byte[]> versionStampFuture) {
+        return FDBRecordStoreStateCacheEntry.load(recordStore, existenceCheck).thenCombine(versionStampFuture, (storeState, versionStamp) -> {
+            if (versionStamp != null) {
+                if (storeState.getRecordStoreState().getStoreHeader().getCacheable()) {
+                    addToCache(subspaceProvider, new Entry(storeState, versionStamp));
+                } else {
+                    invalidateOlderEntry(subspaceProvider, versionStamp);
+                }
+            }
+            return storeState;
+        });
+    }
+
+    private void addToCache(@Nonnull SubspaceProvider subspaceProvider, @Nonnull Entry entry) {
+        // Version-stamps increase with each commit, so keep whichever entry is the more recent.
+        cache.asMap().merge(subspaceProvider, entry, (entry1, entry2) ->
+                ByteArrayUtil.compareUnsigned(entry1.versionStamp, entry2.versionStamp) >= 0 ? entry1 : entry2);
+    }
+
+    private void invalidateOlderEntry(@Nonnull SubspaceProvider subspaceProvider, @Nullable byte[] versionStamp) {
+        cache.asMap().computeIfPresent(subspaceProvider, (ignore, existingEntry) -> {
+            if (versionStamp == null || ByteArrayUtil.compareUnsigned(versionStamp, existingEntry.versionStamp) > 0) {
+                return null;
+            } else {
+                return existingEntry;
+            }
+        });
+    }
+
+    @Override
+    public void validateDatabase(@Nonnull FDBDatabase database) {
+        if (database != this.database) {
+            throw new RecordCoreArgumentException("record store state cache used with different database than the one it was initialized with");
+        }
+    }
+
+    @Override
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * A cached store state along with the value of the store's version-stamp key when it was loaded.
+     */
+    static final class Entry {
+        @Nonnull
+        private final FDBRecordStoreStateCacheEntry storeState;
+        @Nonnull
+        private final byte[] versionStamp;
+
+        Entry(@Nonnull FDBRecordStoreStateCacheEntry storeState, @Nonnull byte[] versionStamp) {
+            this.storeState = storeState;
+            this.versionStamp = versionStamp;
+        }
+    }
+}
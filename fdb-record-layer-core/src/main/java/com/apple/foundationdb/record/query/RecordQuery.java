@@ -29,9 +29,11 @@ import com.google.protobuf.Descriptors;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * The logical form of a query.
@@ -44,6 +46,9 @@ import java.util.List;
  * </ul>
  * Executing a query means returning records of the given type(s) that match the filter in the indicated order.
  *
+ * A query can instead ask for {@link RecordQueryAggregate aggregates} of the matching records, optionally grouped by
+ * a key. Such a query is planned with {@link com.apple.foundationdb.record.query.plan.RecordQueryPlanner#planAggregate}.
+ *
  * @see com.apple.foundationdb.record.query.plan.RecordQueryPlanner#plan
  */
 @API(API.Status.STABLE)
@@ -64,6 +69,10 @@ public class RecordQuery {
     private final boolean removeDuplicates;
     @Nullable
     private final List<KeyExpression> requiredResults;
+    @Nullable
+    private final KeyExpression groupBy;
+    @Nonnull
+    private final List<RecordQueryAggregate> aggregates;
 
     private RecordQuery(@Nonnull Collection<String> recordTypes,
                         @Nullable Collection<String> allowedIndexes,
@@ -72,7 +81,9 @@ public class RecordQuery {
                         @Nullable KeyExpression sort,
                         boolean sortReverse,
                         boolean removeDuplicates,
-                        @Nullable List<KeyExpression> requiredResults) {
+                        @Nullable List<KeyExpression> requiredResults,
+                        @Nullable KeyExpression groupBy,
+                        @Nonnull List<RecordQueryAggregate> aggregates) {
         this.recordTypes = recordTypes;
         this.allowedIndexes = allowedIndexes;
         this.queryabilityFilter = queryabilityFilter;
@@ -81,6 +92,8 @@ public class RecordQuery {
         this.sortReverse = sortReverse;
         this.removeDuplicates = removeDuplicates;
         this.requiredResults = requiredResults;
+        this.groupBy = groupBy;
+        this.aggregates = aggregates;
     }
 
     @Nonnull
@@ -126,6 +139,27 @@ public class RecordQuery {
         return requiredResults;
     }
 
+    @API(API.Status.EXPERIMENTAL)
+    @Nullable
+    public KeyExpression getGroupBy() {
+        return groupBy;
+    }
+
+    @API(API.Status.EXPERIMENTAL)
+    @Nonnull
+    public List<RecordQueryAggregate> getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * Get whether this query asks for aggregates rather than records.
+     * @return {@code true} if this query has aggregates
+     */
+    @API(API.Status.EXPERIMENTAL)
+    public boolean isAggregate() {
+        return !aggregates.isEmpty();
+    }
+
     /**
      * Validates that this record query is valid with the provided metadata.
      * @param metaData the metadata that you want to use with this query
@@ -145,6 +179,14 @@ public class RecordQuery {
                     result.validate(descriptor);
                 }
             }
+            if (groupBy != null) {
+                groupBy.validate(descriptor);
+            }
+            for (RecordQueryAggregate aggregate : aggregates) {
+                if (aggregate.getOperand() != null) {
+                    aggregate.getOperand().validate(descriptor);
+                }
+            }
         }
     }
 
@@ -155,9 +197,42 @@ public class RecordQuery {
         if (filter != null) {
             str.append(" | ").append(filter);
         }
+        if (isAggregate()) {
+            str.append(" | ");
+            if (groupBy != null) {
+                str.append(groupBy).append(": ");
+            }
+            str.append(aggregates);
+        }
         return str.toString();
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQuery that = (RecordQuery) o;
+        return sortReverse == that.sortReverse &&
+               removeDuplicates == that.removeDuplicates &&
+               recordTypes.equals(that.recordTypes) &&
+               Objects.equals(allowedIndexes, that.allowedIndexes) &&
+               queryabilityFilter.equals(that.queryabilityFilter) &&
+               Objects.equals(filter, that.filter) &&
+               Objects.equals(sort, that.sort) &&
+               Objects.equals(requiredResults, that.requiredResults) &&
+               Objects.equals(groupBy, that.groupBy) &&
+               aggregates.equals(that.aggregates);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(recordTypes, allowedIndexes, filter, sort, sortReverse, removeDuplicates, requiredResults, groupBy, aggregates);
+    }
+
     public static Builder newBuilder() {
         return new Builder();
     }
@@ -194,6 +269,10 @@ public class RecordQuery {
         private boolean removeDuplicates = true;
         @Nullable
         private List<KeyExpression> requiredResults = null;
+        @Nullable
+        private KeyExpression groupBy = null;
+        @Nonnull
+        private List<RecordQueryAggregate> aggregates = Collections.emptyList();
 
         protected Builder() {
         }
@@ -207,11 +286,13 @@ public class RecordQuery {
             this.sortReverse = query.sortReverse;
             this.removeDuplicates = query.removeDuplicates;
             this.requiredResults = query.requiredResults;
+            this.groupBy = query.groupBy;
+            this.aggregates = query.aggregates;
         }
 
         public RecordQuery build() {
             return new RecordQuery(recordTypes, allowedIndexes, queryabilityFilter,
-                    filter, sort, sortReverse, removeDuplicates, requiredResults);
+                    filter, sort, sortReverse, removeDuplicates, requiredResults, groupBy, aggregates);
         }
 
         @Nonnull
@@ -303,5 +384,46 @@ public class RecordQuery {
             this.requiredResults = requiredResults;
             return this;
         }
+
+        @API(API.Status.EXPERIMENTAL)
+        @Nullable
+        public KeyExpression getGroupBy() {
+            return groupBy;
+        }
+
+        /**
+         * Set the key by which to group records when computing aggregates.
+         * Groups are returned in the order of this key, reversed if the sort is reversed.
+         * If there are aggregates and no group by, all matching records form a single group.
+         * @param groupBy the key to group by
+         * @return this builder
+         */
+        @API(API.Status.EXPERIMENTAL)
+        public Builder setGroupBy(@Nullable KeyExpression groupBy) {
+            this.groupBy = groupBy;
+            return this;
+        }
+
+        @API(API.Status.EXPERIMENTAL)
+        @Nonnull
+        public List<RecordQueryAggregate> getAggregates() {
+            return aggregates;
+        }
+
+        /**
+         * Set the aggregates to compute for each group of matching records.
+         * @param aggregates the aggregates to compute
+         * @return this builder
+         */
+        @API(API.Status.EXPERIMENTAL)
+        public Builder setAggregates(@Nonnull List<RecordQueryAggregate> aggregates) {
+            this.aggregates = aggregates;
+            return this;
+        }
+
+        @API(API.Status.EXPERIMENTAL)
+        public Builder setAggregates(@Nonnull RecordQueryAggregate... aggregates) {
+            return setAggregates(Arrays.asList(aggregates));
+        }
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * RecordQueryAggregate.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.query;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+
+/**
+ * An aggregate to compute for each group of a {@link RecordQuery} with a {@linkplain RecordQuery#getGroupBy group by}.
+ *
+ * <p>
+ * Each aggregate applies a function to the value of an operand, a single-column key expression, evaluated against
+ * every record in the group. Records for which the operand has no value are ignored, except by a {@link #count()}
+ * without an operand, which counts all records.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryAggregate implements PlanHashable {
+    @Nonnull
+    private final Type type;
+    @Nullable
+    private final KeyExpression operand;
+
+    /**
+     * The function that an aggregate computes.
+     */
+    public enum Type {
+        /** The number of records or of values. */
+        COUNT,
+        /** The sum of the values, as a {@code Long} if they are all integers, otherwise as a {@code Double}. */
+        SUM,
+        /** The least value, in tuple order. */
+        MIN,
+        /** The greatest value, in tuple order. */
+        MAX,
+        /** The average of the values, as a {@code Double}. */
+        AVG
+    }
+
+    protected RecordQueryAggregate(@Nonnull Type type, @Nullable KeyExpression operand) {
+        this.type = type;
+        this.operand = operand;
+    }
+
+    /**
+     * Count the records in each group.
+     * @return a new aggregate
+     */
+    @Nonnull
+    public static RecordQueryAggregate count() {
+        return new RecordQueryAggregate(Type.COUNT, null);
+    }
+
+    /**
+     * Count the records in each group that have a value for the given operand.
+     * @param operand the value to count
+     * @return a new aggregate
+     */
+    @Nonnull
+    public static RecordQueryAggregate count(@Nonnull KeyExpression operand) {
+        return new RecordQueryAggregate(Type.COUNT, operand);
+    }
+
+    @Nonnull
+    public static RecordQueryAggregate sum(@Nonnull KeyExpression operand) {
+        return new RecordQueryAggregate(Type.SUM, operand);
+    }
+
+    @Nonnull
+    public static RecordQueryAggregate min(@Nonnull KeyExpression operand) {
+        return new RecordQueryAggregate(Type.MIN, operand);
+    }
+
+    @Nonnull
+    public static RecordQueryAggregate max(@Nonnull KeyExpression operand) {
+        return new RecordQueryAggregate(Type.MAX, operand);
+    }
+
+    @Nonnull
+    public static RecordQueryAggregate avg(@Nonnull KeyExpression operand) {
+        return new RecordQueryAggregate(Type.AVG, operand);
+    }
+
+    @Nonnull
+    public Type getType() {
+        return type;
+    }
+
+    @Nullable
+    public KeyExpression getOperand() {
+        return operand;
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + (operand == null ? "*" : operand.toString()) + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQueryAggregate that = (RecordQueryAggregate) o;
+        return type == that.type && Objects.equals(operand, that.operand);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, operand);
+    }
+
+    @Override
+    public int planHash() {
+        return type.name().hashCode() + (operand == null ? 0 : operand.planHash());
+    }
+}
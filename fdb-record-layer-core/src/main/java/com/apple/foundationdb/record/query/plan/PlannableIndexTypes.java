@@ -25,6 +25,8 @@ import com.apple.foundationdb.record.metadata.IndexTypes;
 import com.google.common.collect.Sets;
 
 import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -43,7 +45,8 @@ public class PlannableIndexTypes {
     public static final PlannableIndexTypes DEFAULT = new PlannableIndexTypes(
             Sets.newHashSet(IndexTypes.VALUE, IndexTypes.VERSION),
             Sets.newHashSet(IndexTypes.RANK, IndexTypes.TIME_WINDOW_LEADERBOARD),
-            Sets.newHashSet(IndexTypes.TEXT));
+            Sets.newHashSet(IndexTypes.TEXT),
+            Sets.newHashSet(IndexTypes.BITMAP_VALUE));
 
     @Nonnull
     private final Set<String> valueTypes;
@@ -51,15 +54,25 @@ public class PlannableIndexTypes {
     private final Set<String> rankTypes;
     @Nonnull
     private final Set<String> textTypes;
+    @Nonnull
+    private final Set<String> bitmapTypes;
 
     // TODO extend with more in the future?
 
     public PlannableIndexTypes(@Nonnull Set<String> valueTypes,
                                @Nonnull Set<String> rankTypes,
                                @Nonnull Set<String> textTypes) {
+        this(valueTypes, rankTypes, textTypes, Collections.emptySet());
+    }
+
+    public PlannableIndexTypes(@Nonnull Set<String> valueTypes,
+                               @Nonnull Set<String> rankTypes,
+                               @Nonnull Set<String> textTypes,
+                               @Nonnull Set<String> bitmapTypes) {
         this.valueTypes = valueTypes;
         this.rankTypes = rankTypes;
         this.textTypes = textTypes;
+        this.bitmapTypes = bitmapTypes;
     }
 
     @Nonnull
@@ -76,4 +89,29 @@ public class PlannableIndexTypes {
     public Set<String> getTextTypes() {
         return textTypes;
     }
+
+    @Nonnull
+    public Set<String> getBitmapTypes() {
+        return bitmapTypes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PlannableIndexTypes that = (PlannableIndexTypes) o;
+        return valueTypes.equals(that.valueTypes) &&
+               rankTypes.equals(that.rankTypes) &&
+               textTypes.equals(that.textTypes) &&
+               bitmapTypes.equals(that.bitmapTypes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(valueTypes, rankTypes, textTypes, bitmapTypes);
+    }
 }
@@ -23,8 +23,10 @@ package com.apple.foundationdb.record.query.plan;
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.record.query.RecordQuery;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.statistics.IndexStatistics;
 
 import javax.annotation.Nonnull;
+import java.util.Map;
 
 /**
  * A common interface for classes that can plan a {@link RecordQuery} into a {@link RecordQueryPlan}. The common
@@ -75,4 +77,16 @@ public interface QueryPlanner {
      * @param indexScanPreference whether to prefer index scan over record scan
      */
     void setIndexScanPreference(@Nonnull IndexScanPreference indexScanPreference);
+
+    /**
+     * Set statistics about the contents of indexes, which the planner uses to estimate how many index entries
+     * each candidate plan reads and to prefer the one that reads fewer.
+     * Indexes without statistics are compared using the planner's usual heuristics.
+     * @param indexStatistics statistics for indexes, by index name
+     * @see com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore#loadIndexStatisticsAsync()
+     */
+    @API(API.Status.EXPERIMENTAL)
+    default void setIndexStatistics(@Nonnull Map<String, IndexStatistics> indexStatistics) {
+        // statistics are not used by default
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * RecordQueryPlanCache.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.IndexState;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.statistics.IndexStatistics;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of query plans that can be shared by the {@link RecordQueryPlanner}s of many record stores.
+ *
+ * <p>
+ * A plan is cached under the query for which it was made, together with everything else that the planner consults:
+ * the meta-data, the states of the store's indexes, the planner's configuration, and any index statistics. Queries that compare
+ * against {@linkplain com.apple.foundationdb.record.query.expressions.Query#parameter parameters} rather than
+ * constants are equal regardless of the values later bound to those parameters, so a single cached plan serves all of
+ * them. When an index changes state, stores see a different key, so plans made for the old state are no longer
+ * returned and are eventually evicted. Index statistics are compared by their contents, so stores only share plans
+ * chosen using statistics while those statistics stay the same.
+ * </p>
+ *
+ * <p>
+ * Meta-data from different sources can have the same version, so the meta-data is identified by instance rather than
+ * by version. Stores share plans when they share a {@link RecordMetaData} instance, as do stores opened with the same
+ * {@link com.apple.foundationdb.record.RecordMetaDataProvider} or with meta-data stores whose meta-data is shared by a
+ * {@link com.apple.foundationdb.record.provider.foundationdb.SharedMetaDataCache}.
+ * </p>
+ *
+ * @see RecordQueryPlanner#setPlanCache
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryPlanCache {
+    /**
+     * The default maximum number of plans in the cache.
+     */
+    public static final long DEFAULT_MAX_SIZE = 1000;
+
+    @Nonnull
+    private final Cache<Key, RecordQueryPlan> cache;
+    // Evictions happen inside the cache, which does not know which timer to charge, so they are counted here until
+    // the next planner to use the cache reports them.
+    @Nonnull
+    private final AtomicLong unreportedEvictions = new AtomicLong();
+
+    public RecordQueryPlanCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public RecordQueryPlanCache(long maxSize) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .removalListener(notification -> {
+                    if (notification.wasEvicted()) {
+                        unreportedEvictions.incrementAndGet();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Get the cached plan for the given key, making and caching one if there is none.
+     * @param key the key identifying the query and the state under which it is planned
+     * @param planner a function to make the plan on a miss
+     * @param timer a timer to which to report hits, misses and evictions
+     * @return the plan for the key
+     */
+    @Nonnull
+    RecordQueryPlan get(@Nonnull Key key, @Nonnull Supplier<RecordQueryPlan> planner, @Nullable StoreTimer timer) {
+        RecordQueryPlan plan = cache.getIfPresent(key);
+        if (plan != null) {
+            if (timer != null) {
+                timer.increment(FDBStoreTimer.Counts.PLAN_CACHE_HIT);
+            }
+            return plan;
+        }
+        if (timer != null) {
+            timer.increment(FDBStoreTimer.Counts.PLAN_CACHE_MISS);
+        }
+        // Planning is not done under any lock, so two planners that miss together both plan; the plans are the same.
+        plan = planner.get();
+        cache.put(key, plan);
+        final long evictions = unreportedEvictions.getAndSet(0);
+        if (evictions > 0 && timer != null) {
+            timer.increment(FDBStoreTimer.Counts.PLAN_CACHE_EVICTION, (int)evictions);
+        }
+        return plan;
+    }
+
+    /**
+     * Get the number of plans in the cache.
+     * @return the approximate number of cached plans
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove all plans from the cache.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * The key under which a plan is cached.
+     */
+    static class Key {
+        @Nonnull
+        private final RecordQuery query;
+        @Nonnull
+        private final RecordMetaData metaData;
+        @Nonnull
+        private final Map<String, IndexState> indexStates;
+        @Nonnull
+        private final RecordQueryPlannerConfiguration configuration;
+        @Nonnull
+        private final PlannableIndexTypes indexTypes;
+        private final int complexityThreshold;
+        @Nonnull
+        private final Map<String, IndexStatistics> indexStatistics;
+
+        Key(@Nonnull RecordQuery query, @Nonnull RecordMetaData metaData, @Nonnull Map<String, IndexState> indexStates,
+            @Nonnull RecordQueryPlannerConfiguration configuration, @Nonnull PlannableIndexTypes indexTypes,
+            int complexityThreshold, @Nonnull Map<String, IndexStatistics> indexStatistics) {
+            this.query = query;
+            this.metaData = metaData;
+            // A mutable store state changes its map in place, which must not change keys already in the cache.
+            this.indexStates = ImmutableMap.copyOf(indexStates);
+            this.configuration = configuration;
+            this.indexTypes = indexTypes;
+            this.complexityThreshold = complexityThreshold;
+            // Plans chosen using statistics are only given to planners with the same statistics.
+            this.indexStatistics = ImmutableMap.copyOf(indexStatistics);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key) o;
+            // Meta-data is immutable and compared by identity, as comparing its contents would cost more than planning.
+            return metaData == that.metaData &&
+                   complexityThreshold == that.complexityThreshold &&
+                   query.equals(that.query) &&
+                   indexStates.equals(that.indexStates) &&
+                   configuration.equals(that.configuration) &&
+                   indexTypes.equals(that.indexTypes) &&
+                   indexStatistics.equals(that.indexStatistics);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, System.identityHashCode(metaData), indexStates, configuration, indexTypes, complexityThreshold,
+                    indexStatistics);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.RecordStoreState;
 import com.apple.foundationdb.record.logging.KeyValueLogMessage;
 import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexTypes;
 import com.apple.foundationdb.record.metadata.Key;
 import com.apple.foundationdb.record.metadata.RecordType;
 import com.apple.foundationdb.record.metadata.expressions.EmptyKeyExpression;
@@ -42,9 +43,13 @@ import com.apple.foundationdb.record.metadata.expressions.RecordTypeKeyExpressio
 import com.apple.foundationdb.record.metadata.expressions.ThenKeyExpression;
 import com.apple.foundationdb.record.metadata.expressions.VersionKeyExpression;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.indexes.PermutedMinMaxIndexMaintainer;
 import com.apple.foundationdb.record.provider.foundationdb.leaderboard.TimeWindowRecordFunction;
 import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.RecordQueryAggregate;
 import com.apple.foundationdb.record.query.expressions.AndComponent;
+import com.apple.foundationdb.record.query.expressions.AndOrComponent;
 import com.apple.foundationdb.record.query.expressions.Comparisons;
 import com.apple.foundationdb.record.query.expressions.FieldWithComparison;
 import com.apple.foundationdb.record.query.expressions.NestedField;
@@ -61,19 +66,27 @@ import com.apple.foundationdb.record.query.plan.planning.FilterSatisfiedMask;
 import com.apple.foundationdb.record.query.plan.planning.InExtractor;
 import com.apple.foundationdb.record.query.plan.planning.RankComparisons;
 import com.apple.foundationdb.record.query.plan.planning.TextScanPlanner;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryAggregatePlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryComposedBitmapPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryCoveringIndexPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryCoveringIntersectionPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryIntersectionPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlanWithChildren;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlanWithIndex;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryScanPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryTextIndexPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryTypeFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnionPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedPrimaryKeyDistinctPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedUnionPlan;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQuerySortKey;
+import com.apple.foundationdb.record.query.plan.statistics.IndexStatistics;
 import com.apple.foundationdb.record.query.plan.temp.explain.PlannerGraphProperty;
+import com.apple.foundationdb.record.query.plan.temp.properties.EstimatedIndexEntriesProperty;
 import com.apple.foundationdb.record.query.plan.temp.properties.FieldWithComparisonCountProperty;
 import com.google.common.annotations.VisibleForTesting;
 import org.slf4j.Logger;
@@ -87,7 +100,9 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -120,10 +135,14 @@ public class RecordQueryPlanner implements QueryPlanner {
     private final StoreTimer timer;
     @Nonnull
     private final PlannableIndexTypes indexTypes;
+    @Nonnull
+    private Map<String, IndexStatistics> indexStatistics = Collections.emptyMap();
 
     private boolean primaryKeyHasRecordTypePrefix;
     @Nonnull
     private RecordQueryPlannerConfiguration configuration;
+    @Nullable
+    private RecordQueryPlanCache planCache;
 
     public RecordQueryPlanner(@Nonnull RecordMetaData metaData, @Nonnull RecordStoreState recordStoreState) {
         this(metaData, recordStoreState, null);
@@ -189,6 +208,11 @@ public class RecordQueryPlanner implements QueryPlanner {
                 .build();
     }
 
+    @Override
+    public void setIndexStatistics(@Nonnull Map<String, IndexStatistics> indexStatistics) {
+        this.indexStatistics = indexStatistics;
+    }
+
     /**
      * Set the {@link RecordQueryPlannerConfiguration} for this planner.
      * If an {@link com.apple.foundationdb.record.query.plan.QueryPlanner.IndexScanPreference} is already set using
@@ -204,17 +228,54 @@ public class RecordQueryPlanner implements QueryPlanner {
         return configuration;
     }
 
+    /**
+     * Set a cache of plans to consult before planning a query and to which to add the plans of queries that
+     * were not in it. The same cache can be shared by the planners of many record stores. Any
+     * {@linkplain #setIndexStatistics index statistics} are part of the key, since plans chosen using one store's
+     * statistics do not suit stores with different ones.
+     * @param planCache the plan cache to use or {@code null} to always plan queries
+     */
+    public void setPlanCache(@Nullable RecordQueryPlanCache planCache) {
+        this.planCache = planCache;
+    }
+
+    @Nullable
+    public RecordQueryPlanCache getPlanCache() {
+        return planCache;
+    }
+
     /**
      * Create a plan to get the results of the provided query.
      *
      * @param query a query for records on this planner's metadata
      * @return a plan that will return the results of the provided query when executed
      * @throws com.apple.foundationdb.record.RecordCoreException if there is no index that matches the sort in the provided query
+     * and the configuration does not {@linkplain RecordQueryPlannerConfiguration#shouldAllowNonIndexSort() allow sorting without one}
      */
     @Nonnull
     @Override
     public RecordQueryPlan plan(@Nonnull RecordQuery query) {
+        if (planCache == null) {
+            return planWithoutCache(query);
+        }
+        final RecordQueryPlanCache.Key key;
+        recordStoreState.beginRead();
+        try {
+            key = new RecordQueryPlanCache.Key(query, metaData, recordStoreState.getIndexStates(),
+                    configuration, indexTypes, complexityThreshold, indexStatistics);
+        } finally {
+            recordStoreState.endRead();
+        }
+        return planCache.get(key, () -> planWithoutCache(query), timer);
+    }
+
+    @Nonnull
+    private RecordQueryPlan planWithoutCache(@Nonnull RecordQuery query) {
         query.validate(metaData);
+        if (query.isAggregate()) {
+            throw new RecordCoreException("Cannot plan aggregate query for records; use planAggregate")
+                    .addLogInfo("query", query);
+        }
 
         final PlanContext planContext = getPlanContext(query);
 
@@ -228,6 +289,11 @@ public class RecordQueryPlanner implements QueryPlanner {
             plan = planNoFilter(planContext, sort, sortReverse);
         } else {
             ScoredPlan bestPlan = planFilter(planContext, filter);
+            // Only use bitmaps when they satisfy more of the filter than the best ordinary index plan does.
+            final ScoredPlan bitmapPlan = planComposedBitmap(planContext, filter);
+            if (bitmapPlan != null && (bestPlan == null || bitmapPlan.score > bestPlan.score)) {
+                bestPlan = bitmapPlan;
+            }
             if (bestPlan != null) {
                 plan = bestPlan.plan;
             }
@@ -238,6 +304,8 @@ public class RecordQueryPlanner implements QueryPlanner {
                 if (filter != null) {
                     plan = new RecordQueryFilterPlan(plan, filter);
                 }
+            } else if (configuration.shouldAllowNonIndexSort() && !sort.createsDuplicates()) {
+                plan = planNonIndexSort(query, filter);
             } else {
                 throw new RecordCoreException("Cannot sort without appropriate index: " + sort);
             }
@@ -262,6 +330,141 @@ public class RecordQueryPlanner implements QueryPlanner {
         return plan;
     }
 
+    /**
+     * Create a plan to compute the aggregates of the provided query.
+     *
+     * <p>
+     * The records are planned as though the query were sorted by its group by key and needed only the group by
+     * key and the aggregate operands, so that an index whose key begins with the group by key, possibly after some
+     * fields bound by equality comparisons in the filter, is scanned in order and, where it has all those fields,
+     * without loading the records.
+     * </p>
+     *
+     * @param query a query with aggregates for records on this planner's metadata
+     * @return a plan that will return the aggregates of each group when executed
+     * @throws com.apple.foundationdb.record.RecordCoreException if the query does not have aggregates or there is no
+     * index that provides the group by order and the configuration does not allow sorting without one
+     */
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    public RecordQueryAggregatePlan planAggregate(@Nonnull RecordQuery query) {
+        if (!query.isAggregate()) {
+            throw new RecordCoreException("Cannot plan query without aggregates")
+                    .addLogInfo("query", query);
+        }
+        final KeyExpression groupBy = query.getGroupBy();
+        if (groupBy != null && groupBy.createsDuplicates()) {
+            throw new RecordCoreException("Cannot group by key that creates duplicates: " + groupBy);
+        }
+        if (query.getSort() != null && !query.getSort().equals(groupBy)) {
+            throw new RecordCoreException("Cannot sort aggregate query other than by group by: " + query.getSort());
+        }
+        final List<KeyExpression> requiredResults = new ArrayList<>();
+        if (groupBy != null) {
+            requiredResults.add(groupBy);
+        }
+        for (RecordQueryAggregate aggregate : query.getAggregates()) {
+            final KeyExpression operand = aggregate.getOperand();
+            if (operand != null) {
+                if (operand.createsDuplicates() || operand.getColumnSize() != 1) {
+                    throw new RecordCoreException("Aggregate operand must be a single value: " + aggregate);
+                }
+                requiredResults.add(operand);
+            }
+        }
+        final RecordQuery recordQuery = query.toBuilder()
+                .setGroupBy(null)
+                .setAggregates(Collections.emptyList())
+                .setSort(groupBy, query.isSortReverse())
+                .setRequiredResults(requiredResults.isEmpty() ? null : requiredResults)
+                .build();
+        RecordQueryPlan inner = planPermutedMinMax(recordQuery, groupBy, query.getAggregates());
+        if (inner == null) {
+            inner = plan(recordQuery);
+        }
+        final RecordQueryAggregatePlan plan = new RecordQueryAggregatePlan(inner, groupBy, query.getAggregates());
+        if (timer != null) {
+            timer.increment(FDBStoreTimer.Counts.PLAN_AGGREGATE);
+        }
+        return plan;
+    }
+
+    /**
+     * Plan the records of an aggregate query whose aggregates are all the minimum (or all the maximum) of a single
+     * operand as a scan of the per-group extrema of a {@link IndexTypes#PERMUTED_MIN} or {@link IndexTypes#PERMUTED_MAX}
+     * index. The scan returns one entry per index group, so the aggregate plan combines no more than one entry for each
+     * of them, and the result is the same as that of aggregating all the records.
+     * @param recordQuery the query for the records to be aggregated
+     * @param groupBy the group by key of the aggregate query
+     * @param aggregates the aggregates of the query
+     * @return a covering plan of the extrema of each group or {@code null} if there is no suitable index
+     */
+    @Nullable
+    private RecordQueryPlan planPermutedMinMax(@Nonnull RecordQuery recordQuery, @Nullable KeyExpression groupBy,
+                                               @Nonnull List<RecordQueryAggregate> aggregates) {
+        final RecordQueryAggregate.Type type = aggregates.get(0).getType();
+        final KeyExpression operand = aggregates.get(0).getOperand();
+        if (type != RecordQueryAggregate.Type.MIN && type != RecordQueryAggregate.Type.MAX) {
+            return null;
+        }
+        for (RecordQueryAggregate aggregate : aggregates) {
+            if (aggregate.getType() != type || !Objects.equals(aggregate.getOperand(), operand)) {
+                return null;
+            }
+        }
+        final String indexType = type == RecordQueryAggregate.Type.MIN ? IndexTypes.PERMUTED_MIN : IndexTypes.PERMUTED_MAX;
+        // The covering record needs each field by itself, so flatten the group by key.
+        final List<KeyExpression> requiredResults = new ArrayList<>();
+        if (groupBy != null) {
+            requiredResults.addAll(groupBy.normalizeKeyForPositions());
+        }
+        requiredResults.add(operand);
+        final RecordQuery coveringQuery = recordQuery.toBuilder().setRequiredResults(requiredResults).build();
+        for (Index index : getPlanContext(recordQuery).indexes) {
+            if (!indexType.equals(index.getType()) || PermutedMinMaxIndexMaintainer.getPermutedSize(index) != 0) {
+                continue;
+            }
+            final GroupingKeyExpression indexKey = (GroupingKeyExpression)index.getRootExpression();
+            if (!indexKey.getGroupedSubKey().equals(operand)) {
+                continue;
+            }
+            final RecordQueryPlan plan = planCoveringAggregateIndex(coveringQuery, index, indexKey.getGroupingSubKey());
+            if (plan != null) {
+                return plan;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Plan a query whose sort cannot be satisfied by any index by planning it as though it had no sort and then
+     * sorting the results. The sort needs whole records, so the unsorted plan is never a covering plan.
+     * @param query the query to plan
+     * @param filter the normalized filter of the query
+     * @return a plan that sorts the results of the query without an index
+     */
+    @Nonnull
+    private RecordQueryPlan planNonIndexSort(@Nonnull RecordQuery query, @Nullable QueryComponent filter) {
+        final PlanContext planContext = getPlanContext(query.toBuilder().setSort(null).setRequiredResults(null).build());
+        RecordQueryPlan plan = null;
+        if (filter == null) {
+            plan = planNoFilter(planContext, null, false);
+        } else {
+            ScoredPlan bestPlan = planFilter(planContext, filter);
+            if (bestPlan != null) {
+                plan = bestPlan.plan;
+            }
+        }
+        if (plan == null) {
+            plan = planScan(new CandidateScan(planContext, null, false));
+            if (filter != null) {
+                plan = new RecordQueryFilterPlan(plan, filter);
+            }
+        }
+        return new RecordQuerySortPlan(plan, new RecordQuerySortKey(query.getSort(), query.isSortReverse()),
+                configuration.getMaxSortRecordsInMemory());
+    }
+
     @Nullable
     private RecordQueryPlan planNoFilter(PlanContext planContext, KeyExpression sort, boolean sortReverse) {
         ScoredPlan bestPlan = null;
@@ -313,6 +516,19 @@ public class RecordQueryPlanner implements QueryPlanner {
         return new ScoredPlan(0, planScan(new CandidateScan(planContext, index, false), scanComparisons));
     }
 
+    // Compare the estimated number of index entries read by two plans, if statistics make that possible for both.
+    private int compareEstimatedEntries(@Nonnull ScoredPlan plan1, @Nonnull ScoredPlan plan2) {
+        if (indexStatistics.isEmpty()) {
+            return 0;
+        }
+        final double estimated1 = EstimatedIndexEntriesProperty.evaluate(indexStatistics, plan1.plan);
+        final double estimated2 = EstimatedIndexEntriesProperty.evaluate(indexStatistics, plan2.plan);
+        if (Double.isNaN(estimated1) || Double.isNaN(estimated2)) {
+            return 0;
+        }
+        return Double.compare(estimated1, estimated2);
+    }
+
     private int compareIndexes(PlanContext planContext, @Nullable Index index1, @Nullable Index index2) {
         if (index1 == null) {
             if (index2 == null) {
@@ -351,6 +567,101 @@ public class RecordQueryPlanner implements QueryPlanner {
         }
     }
 
+    /**
+     * Plan a filter that is a combination of {@code AND} and {@code OR} of equality comparisons, every one of which
+     * is on the grouping field of a bitmap index, as bitwise operations on those indexes' bitmaps. The bitmap indexes
+     * must have the primary key as their position, so the results are in primary key order.
+     * Unlike a scan of an ordinary index, a bitmap cannot be filtered by record type, so only bitmap indexes on no
+     * record types other than those of the query are used.
+     * The plan's score is the number of comparisons in the filter, all of which it satisfies.
+     * @param planContext the context for the query
+     * @param filter the normalized filter of the query
+     * @return a composed bitmap plan or {@code null} if the filter cannot be evaluated that way
+     */
+    @Nullable
+    private ScoredPlan planComposedBitmap(@Nonnull PlanContext planContext, @Nonnull QueryComponent filter) {
+        if (!(filter instanceof AndOrComponent) || planContext.commonPrimaryKey == null ||
+                planContext.commonPrimaryKey.getColumnSize() != 1) {
+            return null;
+        }
+        final KeyExpression sort = planContext.query.getSort();
+        if (sort != null && (planContext.query.isSortReverse() || !sort.equals(planContext.commonPrimaryKey))) {
+            return null;
+        }
+        final Collection<String> allowedTypes = planContext.query.getRecordTypes();
+        final List<Index> bitmapIndexes = new ArrayList<>();
+        for (Index index : planContext.indexes) {
+            if (indexTypes.getBitmapTypes().contains(index.getType()) &&
+                    ((GroupingKeyExpression)index.getRootExpression()).getGroupedSubKey().equals(planContext.commonPrimaryKey) &&
+                    (allowedTypes.isEmpty() || allowedTypes.containsAll(getPossibleTypes(index)))) {
+                bitmapIndexes.add(index);
+            }
+        }
+        if (bitmapIndexes.isEmpty()) {
+            return null;
+        }
+        final List<RecordQueryIndexPlan> indexPlans = new ArrayList<>();
+        final RecordQueryComposedBitmapPlan.ComposerBase composer = planBitmapComposer(filter, bitmapIndexes, indexPlans);
+        if (composer == null || indexPlans.size() < 2) {
+            return null;
+        }
+        return new ScoredPlan(countComparisons(filter), new RecordQueryComposedBitmapPlan(indexPlans, composer));
+    }
+
+    private static int countComparisons(@Nonnull QueryComponent filter) {
+        if (filter instanceof AndOrComponent) {
+            int count = 0;
+            for (QueryComponent child : ((AndOrComponent)filter).getChildren()) {
+                count += countComparisons(child);
+            }
+            return count;
+        }
+        return 1;
+    }
+
+    @Nullable
+    private RecordQueryComposedBitmapPlan.ComposerBase planBitmapComposer(@Nonnull QueryComponent filter,
+                                                                          @Nonnull List<Index> bitmapIndexes,
+                                                                          @Nonnull List<RecordQueryIndexPlan> indexPlans) {
+        if (filter instanceof AndOrComponent) {
+            final List<RecordQueryComposedBitmapPlan.ComposerBase> childComposers = new ArrayList<>();
+            for (QueryComponent child : ((AndOrComponent)filter).getChildren()) {
+                final RecordQueryComposedBitmapPlan.ComposerBase childComposer = planBitmapComposer(child, bitmapIndexes, indexPlans);
+                if (childComposer == null) {
+                    return null;
+                }
+                childComposers.add(childComposer);
+            }
+            return filter instanceof AndComponent ?
+                   new RecordQueryComposedBitmapPlan.AndComposer(childComposers) :
+                   new RecordQueryComposedBitmapPlan.OrComposer(childComposers);
+        }
+        if (!(filter instanceof FieldWithComparison)) {
+            return null;
+        }
+        final FieldWithComparison fieldWithComparison = (FieldWithComparison)filter;
+        if (fieldWithComparison.getComparison().getType() != Comparisons.Type.EQUALS) {
+            return null;
+        }
+        for (Index index : bitmapIndexes) {
+            final KeyExpression groupingKey = ((GroupingKeyExpression)index.getRootExpression()).getGroupingSubKey();
+            if (groupingKey instanceof FieldKeyExpression &&
+                    ((FieldKeyExpression)groupingKey).getFanType() == FanType.None &&
+                    ((FieldKeyExpression)groupingKey).getFieldName().equals(fieldWithComparison.getFieldName())) {
+                final ScanComparisons comparisons = new ScanComparisons(
+                        Collections.singletonList(fieldWithComparison.getComparison()), Collections.emptySet());
+                final RecordQueryIndexPlan indexPlan = new RecordQueryIndexPlan(index.getName(), IndexScanType.BY_BITMAP, comparisons, false);
+                int position = indexPlans.indexOf(indexPlan);
+                if (position < 0) {
+                    position = indexPlans.size();
+                    indexPlans.add(indexPlan);
+                }
+                return new RecordQueryComposedBitmapPlan.IndexComposer(position);
+            }
+        }
+        return null;
+    }
+
     @Nullable
     private ScoredPlan planFilter(@Nonnull PlanContext planContext, @Nonnull QueryComponent filter) {
         if (filter instanceof AndComponent) {
@@ -418,9 +729,11 @@ public class RecordQueryPlanner implements QueryPlanner {
                 //   * predicates handled / unhandled.
                 //   * size of row.
                 //   * need for type filtering if row scan with multiple types.
-                if (bestPlan == null || p.score > bestPlan.score ||
+                final int estimatedEntriesCompare = bestPlan == null ? 0 : compareEstimatedEntries(p, bestPlan);
+                if (bestPlan == null || estimatedEntriesCompare < 0 ||
+                        (estimatedEntriesCompare == 0 && (p.score > bestPlan.score ||
                         p.unsatisfiedFilters.size() < bestPlan.unsatisfiedFilters.size() ||
-                        (p.score == bestPlan.score && compareIndexes(planContext, index, bestIndex) > 0)) {
+                        (p.score == bestPlan.score && compareIndexes(planContext, index, bestIndex) > 0)))) {
                     bestPlan = p;
                     bestIndex = index;
                 }
@@ -1355,15 +1668,19 @@ public class RecordQueryPlanner implements QueryPlanner {
         if (chosenPlan instanceof RecordQueryPlanWithIndex) {
             // Check if the index scan covers, then convert it to a covering plan.
             return tryToConvertToCoveringPlan(planContext, (RecordQueryPlanWithIndex) chosenPlan);
+        } else if (chosenPlan instanceof RecordQueryIntersectionPlan) {
+            // Check if the index scans cover between them, then stitch together what each of them covers.
+            return tryToConvertToCoveringIntersection(planContext, (RecordQueryIntersectionPlan) chosenPlan);
+        } else if (chosenPlan instanceof RecordQueryUnionPlan || chosenPlan instanceof RecordQueryUnorderedUnionPlan) {
+            // Each branch of a union returns complete results, so each must cover by itself.
+            return tryToConvertToCoveringUnion(planContext, (RecordQueryPlanWithChildren) chosenPlan);
         } else if (chosenPlan instanceof RecordQueryUnorderedPrimaryKeyDistinctPlan) {
             // If possible, push down the covering index transformation so that
             // it happens before checking for distinct primary keys
             final RecordQueryUnorderedPrimaryKeyDistinctPlan distinctPlan = (RecordQueryUnorderedPrimaryKeyDistinctPlan) chosenPlan;
-            if (distinctPlan.getChild() instanceof RecordQueryPlanWithIndex) {
-                final RecordQueryPlan newChildPlan = tryToConvertToCoveringPlan(planContext, (RecordQueryPlanWithIndex) distinctPlan.getChild());
-                if (newChildPlan != distinctPlan.getChild()) {
-                    return new RecordQueryUnorderedPrimaryKeyDistinctPlan(newChildPlan);
-                }
+            final RecordQueryPlan newChildPlan = tryToConvertToCoveringPlan(planContext, distinctPlan.getChild());
+            if (newChildPlan != distinctPlan.getChild()) {
+                return new RecordQueryUnorderedPrimaryKeyDistinctPlan(newChildPlan);
             }
         }
         // No valid transformations could be applied. Just return the original plan.
@@ -1376,41 +1693,137 @@ public class RecordQueryPlanner implements QueryPlanner {
             // This should already be true when calling, but as a safety precaution, check here anyway.
             return chosenPlan;
         }
-        final Index index = metaData.getIndex(chosenPlan.getIndexName());
-        Collection<RecordType> recordTypes = metaData.recordTypesForIndex(index);
-        if (recordTypes.size() != 1) {
+        final RecordQueryPlan coveringPlan = planCoveringIndexScan(context, chosenPlan, getRequiredFields(context));
+        return coveringPlan == null ? chosenPlan : coveringPlan;
+    }
+
+    @Nonnull
+    private RecordQueryPlan tryToConvertToCoveringIntersection(@Nonnull PlanContext context, @Nonnull RecordQueryIntersectionPlan chosenPlan) {
+        if (context.query.getRequiredResults() == null) {
             return chosenPlan;
         }
-        final RecordType recordType = recordTypes.iterator().next();
+        final List<RecordQueryPlan> children = chosenPlan.getChildren();
+        final List<IndexEntryFields> childEntryFields = new ArrayList<>(children.size());
+        final List<Set<KeyExpression>> childRequiredFields = new ArrayList<>(children.size());
+        final List<KeyExpression> comparisonFields = getComparisonFields(context, chosenPlan.getComparisonKey());
+        Collection<RecordType> recordTypes = null;
+        for (RecordQueryPlan child : children) {
+            if (!(child instanceof RecordQueryPlanWithIndex)) {
+                return chosenPlan;
+            }
+            final Index index = metaData.getIndex(((RecordQueryPlanWithIndex) child).getIndexName());
+            if (recordTypes == null) {
+                recordTypes = metaData.recordTypesForIndex(index);
+            } else if (!recordTypes.equals(metaData.recordTypesForIndex(index))) {
+                // The partial records need to be of the same type to be merged.
+                return chosenPlan;
+            }
+            childEntryFields.add(getIndexEntryFields(context, index));
+            childRequiredFields.add(new LinkedHashSet<>(comparisonFields));
+        }
+
+        // Take each of the other fields from the first index that has it.
+        for (KeyExpression resultField : getRequiredFields(context)) {
+            if (comparisonFields.contains(resultField)) {
+                continue;
+            }
+            int i = 0;
+            while (i < children.size() && !childEntryFields.get(i).contains(resultField)) {
+                i++;
+            }
+            if (i == children.size()) {
+                return chosenPlan;
+            }
+            childRequiredFields.get(i).add(resultField);
+        }
+
+        final List<RecordQueryCoveringIndexPlan> coveringChildren = new ArrayList<>(children.size());
+        for (int i = 0; i < children.size(); i++) {
+            final RecordQueryCoveringIndexPlan coveringChild = planCoveringIndexScan(context, (RecordQueryPlanWithIndex) children.get(i),
+                    childEntryFields.get(i), childRequiredFields.get(i));
+            if (coveringChild == null) {
+                return chosenPlan;
+            }
+            coveringChildren.add(coveringChild);
+        }
+        return RecordQueryCoveringIntersectionPlan.from(coveringChildren, chosenPlan.getComparisonKey());
+    }
+
+    @Nonnull
+    private RecordQueryPlan tryToConvertToCoveringUnion(@Nonnull PlanContext context, @Nonnull RecordQueryPlanWithChildren chosenPlan) {
+        if (context.query.getRequiredResults() == null) {
+            return chosenPlan;
+        }
+        final Set<KeyExpression> requiredFields = new LinkedHashSet<>(getRequiredFields(context));
+        if (chosenPlan instanceof RecordQueryUnionPlan) {
+            requiredFields.addAll(getComparisonFields(context, ((RecordQueryUnionPlan) chosenPlan).getComparisonKey()));
+        }
+        final List<RecordQueryPlan> coveringChildren = new ArrayList<>(chosenPlan.getChildren().size());
+        for (RecordQueryPlan child : chosenPlan.getChildren()) {
+            if (!(child instanceof RecordQueryPlanWithIndex)) {
+                return chosenPlan;
+            }
+            final RecordQueryPlan coveringChild = planCoveringIndexScan(context, (RecordQueryPlanWithIndex) child, requiredFields);
+            if (coveringChild == null) {
+                return chosenPlan;
+            }
+            coveringChildren.add(coveringChild);
+        }
+        if (chosenPlan instanceof RecordQueryUnionPlan) {
+            final RecordQueryUnionPlan unionPlan = (RecordQueryUnionPlan) chosenPlan;
+            return RecordQueryUnionPlan.from(coveringChildren, unionPlan.getComparisonKey(), unionPlan.isShowComparisonKey());
+        } else {
+            return RecordQueryUnorderedUnionPlan.from(coveringChildren);
+        }
+    }
+
+    @Nonnull
+    private static List<KeyExpression> getRequiredFields(@Nonnull PlanContext context) {
         final List<KeyExpression> resultFields = new ArrayList<>(context.query.getRequiredResults().size());
         for (KeyExpression resultField : context.query.getRequiredResults()) {
             resultFields.addAll(resultField.normalizeKeyForPositions());
         }
-        final KeyExpression rootExpression = index.getRootExpression();
-        final List<KeyExpression> normalizedKeys = rootExpression.normalizeKeyForPositions();
-        final List<KeyExpression> keyFields;
-        final List<KeyExpression> valueFields;
-        if (rootExpression instanceof KeyWithValueExpression) {
-            final KeyWithValueExpression keyWithValue = (KeyWithValueExpression) rootExpression;
-            keyFields = new ArrayList<>(normalizedKeys.subList(0, keyWithValue.getSplitPoint()));
-            valueFields = new ArrayList<>(normalizedKeys.subList(keyWithValue.getSplitPoint(), normalizedKeys.size()));
-        } else {
-            keyFields = new ArrayList<>(normalizedKeys);
-            valueFields = Collections.singletonList(EmptyKeyExpression.EMPTY);
-        }
+        return resultFields;
+    }
 
-        // Like FDBRecordStoreBase.indexEntryKey(), but with key expressions instead of actual values.
+    // The fields of the comparison key of a merge that each branch must fill in so that it can be evaluated on
+    // the partial records. The primary key is already added to every covering plan where possible.
+    @Nonnull
+    private static List<KeyExpression> getComparisonFields(@Nonnull PlanContext context, @Nonnull KeyExpression comparisonKey) {
         final List<KeyExpression> primaryKeys = context.commonPrimaryKey == null
                 ? Collections.emptyList()
                 : context.commonPrimaryKey.normalizeKeyForPositions();
-        index.trimPrimaryKey(primaryKeys);
-        keyFields.addAll(primaryKeys);
+        final List<KeyExpression> comparisonFields = new ArrayList<>();
+        for (KeyExpression comparisonField : comparisonKey.normalizeKeyForPositions()) {
+            if (!primaryKeys.contains(comparisonField)) {
+                comparisonFields.add(comparisonField);
+            }
+        }
+        return comparisonFields;
+    }
+
+    @Nullable
+    private RecordQueryCoveringIndexPlan planCoveringIndexScan(@Nonnull PlanContext context, @Nonnull RecordQueryPlanWithIndex indexPlan,
+                                                               @Nonnull Collection<KeyExpression> resultFields) {
+        final Index index = metaData.getIndex(indexPlan.getIndexName());
+        return planCoveringIndexScan(context, indexPlan, getIndexEntryFields(context, index), resultFields);
+    }
 
+    @Nullable
+    private RecordQueryCoveringIndexPlan planCoveringIndexScan(@Nonnull PlanContext context, @Nonnull RecordQueryPlanWithIndex indexPlan,
+                                                               @Nonnull IndexEntryFields entryFields,
+                                                               @Nonnull Collection<KeyExpression> resultFields) {
+        final Index index = metaData.getIndex(indexPlan.getIndexName());
+        Collection<RecordType> recordTypes = metaData.recordTypesForIndex(index);
+        if (recordTypes.size() != 1) {
+            return null;
+        }
+        final RecordType recordType = recordTypes.iterator().next();
         final IndexKeyValueToPartialRecord.Builder builder = IndexKeyValueToPartialRecord.newBuilder(recordType.getDescriptor());
 
         for (KeyExpression resultField : resultFields) {
-            if (!addCoveringField(resultField, builder, keyFields, valueFields)) {
-                return chosenPlan;
+            if (!addCoveringField(resultField, builder, entryFields.keyFields, entryFields.valueFields)) {
+                return null;
             }
         }
 
@@ -1418,16 +1831,40 @@ public class RecordQueryPlanner implements QueryPlanner {
             for (KeyExpression primaryKeyField : context.commonPrimaryKey.normalizeKeyForPositions()) {
                 // Need the primary key, even if it wasn't one of the explicit result fields.
                 if (!resultFields.contains(primaryKeyField)) {
-                    addCoveringField(primaryKeyField, builder, keyFields, valueFields);
+                    addCoveringField(primaryKeyField, builder, entryFields.keyFields, entryFields.valueFields);
                 }
             }
         }
 
         if (!builder.isValid()) {
-            return chosenPlan;
+            return null;
+        }
+
+        return new RecordQueryCoveringIndexPlan(indexPlan, recordType.getName(), builder.build());
+    }
+
+    @Nonnull
+    private static IndexEntryFields getIndexEntryFields(@Nonnull PlanContext context, @Nonnull Index index) {
+        final KeyExpression rootExpression = index.getRootExpression();
+        final List<KeyExpression> normalizedKeys = rootExpression.normalizeKeyForPositions();
+        final List<KeyExpression> keyFields;
+        final List<KeyExpression> valueFields;
+        if (rootExpression instanceof KeyWithValueExpression) {
+            final KeyWithValueExpression keyWithValue = (KeyWithValueExpression) rootExpression;
+            keyFields = new ArrayList<>(normalizedKeys.subList(0, keyWithValue.getSplitPoint()));
+            valueFields = new ArrayList<>(normalizedKeys.subList(keyWithValue.getSplitPoint(), normalizedKeys.size()));
+        } else {
+            keyFields = new ArrayList<>(normalizedKeys);
+            valueFields = Collections.singletonList(EmptyKeyExpression.EMPTY);
         }
 
-        return new RecordQueryCoveringIndexPlan(chosenPlan, recordType.getName(), builder.build());
+        // Like FDBRecordStoreBase.indexEntryKey(), but with key expressions instead of actual values.
+        final List<KeyExpression> primaryKeys = context.commonPrimaryKey == null
+                ? Collections.emptyList()
+                : context.commonPrimaryKey.normalizeKeyForPositions();
+        index.trimPrimaryKey(primaryKeys);
+        keyFields.addAll(primaryKeys);
+        return new IndexEntryFields(keyFields, valueFields);
     }
 
     @Nullable
@@ -1489,8 +1926,14 @@ public class RecordQueryPlanner implements QueryPlanner {
         final PlanContext planContext = getPlanContext(query);
         planContext.rankComparisons = new RankComparisons(query.getFilter(), planContext.indexes);
         final CandidateScan candidateScan = new CandidateScan(planContext, index, query.isSortReverse());
-        final ScoredPlan scoredPlan = planCandidateScan(candidateScan, indexExpr,
-                BooleanNormalizer.withLimit(complexityThreshold).normalizeIfPossible(query.getFilter()), query.getSort());
+        final QueryComponent filter = BooleanNormalizer.withLimit(complexityThreshold).normalizeIfPossible(query.getFilter());
+        final ScoredPlan scoredPlan;
+        if (filter == null) {
+            // The whole index, provided that it is in the requested order.
+            scoredPlan = query.getSort() == null ? new ScoredPlan(0, planScan(candidateScan)) : planSortOnly(candidateScan, indexExpr, query.getSort());
+        } else {
+            scoredPlan = planCandidateScan(candidateScan, indexExpr, filter, query.getSort());
+        }
         // It would be possible to handle unsatisfiedFilters if they, too, only involved group key (covering) fields.
         if (scoredPlan == null || !scoredPlan.unsatisfiedFilters.isEmpty() || !(scoredPlan.plan instanceof RecordQueryIndexPlan)) {
             return null;
@@ -1531,6 +1974,25 @@ public class RecordQueryPlanner implements QueryPlanner {
         }
     }
 
+    /**
+     * The fields that can be read back from the key and value of an index entry.
+     */
+    private static class IndexEntryFields {
+        @Nonnull
+        final List<KeyExpression> keyFields;
+        @Nonnull
+        final List<KeyExpression> valueFields;
+
+        IndexEntryFields(@Nonnull List<KeyExpression> keyFields, @Nonnull List<KeyExpression> valueFields) {
+            this.keyFields = keyFields;
+            this.valueFields = valueFields;
+        }
+
+        boolean contains(@Nonnull KeyExpression field) {
+            return keyFields.contains(field) || valueFields.contains(field);
+        }
+    }
+
     private static class CandidateScan {
         @Nonnull
         final PlanContext planContext;
@@ -23,20 +23,32 @@ package com.apple.foundationdb.record.query.plan;
 import com.apple.foundationdb.annotation.API;
 
 import javax.annotation.Nonnull;
+import java.util.Objects;
 
 /**
  * A set of configuration options for the {@link RecordQueryPlanner}.
  */
 @API(API.Status.MAINTAINED)
 public class RecordQueryPlannerConfiguration {
+    /**
+     * The default for {@link #getMaxSortRecordsInMemory()}.
+     */
+    public static final int DEFAULT_MAX_SORT_RECORDS_IN_MEMORY = 10_000;
+
     @Nonnull
     private final QueryPlanner.IndexScanPreference indexScanPreference;
     private boolean attemptFailedInJoinAsOr;
+    private final boolean allowNonIndexSort;
+    private final int maxSortRecordsInMemory;
 
     private RecordQueryPlannerConfiguration(@Nonnull QueryPlanner.IndexScanPreference indexScanPreference,
-                                            boolean attemptFailedInJoinAsOr) {
+                                            boolean attemptFailedInJoinAsOr,
+                                            boolean allowNonIndexSort,
+                                            int maxSortRecordsInMemory) {
         this.indexScanPreference = indexScanPreference;
         this.attemptFailedInJoinAsOr = attemptFailedInJoinAsOr;
+        this.allowNonIndexSort = allowNonIndexSort;
+        this.maxSortRecordsInMemory = maxSortRecordsInMemory;
     }
 
     /**
@@ -63,6 +75,46 @@ public class RecordQueryPlannerConfiguration {
         return attemptFailedInJoinAsOr;
     }
 
+    /**
+     * Get whether the query planner should sort records itself, using a
+     * {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan}, when no index can supply the
+     * requested sort and the sort key produces a single value for each record. If not, planning such a query fails.
+     * @return whether the planner will plan sorts that are not satisfied by an index
+     */
+    public boolean shouldAllowNonIndexSort() {
+        return allowNonIndexSort;
+    }
+
+    /**
+     * Get the maximum number of records that a {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan}
+     * will hold in memory at once. Beyond this, sorted runs are spilled to local files.
+     * @return the maximum number of records to sort in memory
+     * @see #shouldAllowNonIndexSort()
+     */
+    public int getMaxSortRecordsInMemory() {
+        return maxSortRecordsInMemory;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQueryPlannerConfiguration that = (RecordQueryPlannerConfiguration) o;
+        return indexScanPreference == that.indexScanPreference &&
+               attemptFailedInJoinAsOr == that.attemptFailedInJoinAsOr &&
+               allowNonIndexSort == that.allowNonIndexSort &&
+               maxSortRecordsInMemory == that.maxSortRecordsInMemory;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(indexScanPreference, attemptFailedInJoinAsOr, allowNonIndexSort, maxSortRecordsInMemory);
+    }
+
     @Nonnull
     public Builder asBuilder() {
         return new Builder(this);
@@ -80,10 +132,14 @@ public class RecordQueryPlannerConfiguration {
         @Nonnull
         private QueryPlanner.IndexScanPreference indexScanPreference = QueryPlanner.IndexScanPreference.PREFER_SCAN;
         private boolean attemptFailedInJoinAsOr = false;
+        private boolean allowNonIndexSort = false;
+        private int maxSortRecordsInMemory = DEFAULT_MAX_SORT_RECORDS_IN_MEMORY;
 
         public Builder(@Nonnull RecordQueryPlannerConfiguration configuration) {
             this.indexScanPreference = configuration.indexScanPreference;
             this.attemptFailedInJoinAsOr = configuration.attemptFailedInJoinAsOr;
+            this.allowNonIndexSort = configuration.allowNonIndexSort;
+            this.maxSortRecordsInMemory = configuration.maxSortRecordsInMemory;
         }
 
         public Builder() {
@@ -99,8 +155,19 @@ public class RecordQueryPlannerConfiguration {
             return this;
         }
 
+        public Builder setAllowNonIndexSort(boolean allowNonIndexSort) {
+            this.allowNonIndexSort = allowNonIndexSort;
+            return this;
+        }
+
+        public Builder setMaxSortRecordsInMemory(int maxSortRecordsInMemory) {
+            this.maxSortRecordsInMemory = maxSortRecordsInMemory;
+            return this;
+        }
+
         public RecordQueryPlannerConfiguration build() {
-            return new RecordQueryPlannerConfiguration(indexScanPreference, attemptFailedInJoinAsOr);
+            return new RecordQueryPlannerConfiguration(indexScanPreference, attemptFailedInJoinAsOr,
+                    allowNonIndexSort, maxSortRecordsInMemory);
         }
     }
 }
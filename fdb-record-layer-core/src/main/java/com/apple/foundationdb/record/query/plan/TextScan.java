@@ -21,15 +21,18 @@
 package com.apple.foundationdb.record.query.plan;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.PipelineOperation;
 import com.apple.foundationdb.record.PlanHashable;
 import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.cursors.LazyCursor;
 import com.apple.foundationdb.record.metadata.Index;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.common.text.TextTokenizer;
@@ -54,10 +57,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -189,6 +194,13 @@ public class TextScan implements PlanHashable {
             // plans throw an error when there are fewer than two children, so this special case
             // is necessary, not just nice to have.
             return scanToken(store, tokenList.get(0), prefix, suffix, index, scanProperties).apply(continuation);
+        } else if (comparisonType.equals(Comparisons.Type.TEXT_CONTAINS_ALL) && suffix == null && TextIndexMaintainer.getIfStoreStatistics(index)) {
+            // Walk the rarest token's postings and seek each candidate in the others. As with the intersection below,
+            // the skip and limit are removed from the scan and applied afterwards.
+            final ScanProperties childScanProperties = scanProperties.with(ExecuteProperties::clearSkipAndLimit);
+            return seekIntersection(store, prefix, index, tokenList, continuation, childScanProperties)
+                    .skip(scanProperties.getExecuteProperties().getSkip())
+                    .limitRowsTo(scanProperties.getExecuteProperties().getReturnedRowLimit());
         } else if (comparisonType.equals(Comparisons.Type.TEXT_CONTAINS_ALL)) {
             // Take the intersection of all children. Note that to handle skip and the returned row limit correctly,
             // the skip and limit are both removed and then applied later.
@@ -419,6 +431,54 @@ public class TextScan implements PlanHashable {
         return Boolean.FALSE;
     }
 
+    // Intersect the postings of several tokens by scanning only those of the token found in the fewest documents.
+    // Each document found is then looked up in the postings of every other token, which reads just the one bunch
+    // that could hold it rather than all of the postings before it. The entries returned are those of the first
+    // token, as with the IntersectionCursor. The continuation is that of the scan of the driving token, which is
+    // the packed grouping key and token followed by the packed document key, so a continuation can be resumed even
+    // if the counts have changed so that a different token drives the scan.
+    @Nonnull
+    @SuppressWarnings("squid:S2095") // the returned cursor is wrapped and returned
+    private <M extends Message> RecordCursor<IndexEntry> seekIntersection(@Nonnull FDBRecordStoreBase<M> store, @Nullable Tuple prefix,
+                                                                          @Nonnull Index index, @Nonnull List<String> tokenList,
+                                                                          @Nullable byte[] continuation, @Nonnull ScanProperties scanProperties) {
+        final TextIndexMaintainer maintainer = (TextIndexMaintainer)store.getUntypedRecordStore().getIndexMaintainer(index);
+        final Tuple groupingKey = prefix == null ? TupleHelpers.EMPTY : prefix;
+        final boolean snapshot = scanProperties.getExecuteProperties().getIsolationLevel().isSnapshot();
+        final List<String> tokens = new ArrayList<>(new LinkedHashSet<>(tokenList));
+        final CompletableFuture<RecordCursor<IndexEntry>> cursorFuture = maintainer.getTokenDocumentCounts(groupingKey, tokens, snapshot).thenApply(counts -> {
+            int driving = 0;
+            for (int i = 1; i < counts.size(); i++) {
+                if (counts.get(i) < counts.get(driving)) {
+                    driving = i;
+                }
+            }
+            if (counts.get(driving) <= 0) {
+                return RecordCursor.empty(store.getExecutor());
+            }
+            final String drivingToken = tokens.get(driving);
+            final Tuple drivingPrefix = groupingKey.add(drivingToken);
+            byte[] drivingContinuation = null;
+            if (continuation != null) {
+                final Tuple lastKey = Tuple.fromBytes(continuation);
+                drivingContinuation = drivingPrefix.addAll(TupleHelpers.subTuple(lastKey, drivingPrefix.size(), lastKey.size())).pack();
+            }
+            return store.scanIndex(index, IndexScanType.BY_TEXT_TOKEN, TupleRange.allOf(drivingPrefix), drivingContinuation, scanProperties)
+                    .mapPipelined(drivingEntry -> {
+                        final Tuple groupedKey = TupleHelpers.subTuple(drivingEntry.getKey(), drivingPrefix.size(), drivingEntry.getKey().size());
+                        final List<CompletableFuture<IndexEntry>> entryFutures = new ArrayList<>(tokens.size());
+                        for (String token : tokens) {
+                            entryFutures.add(token.equals(drivingToken)
+                                             ? CompletableFuture.completedFuture(drivingEntry)
+                                             : maintainer.seekTokenEntry(groupingKey, token, groupedKey, snapshot));
+                        }
+                        return AsyncUtil.getAll(entryFutures).thenApply(entries -> entries.contains(null) ? null : entries.get(0));
+                    }, store.getPipelineSize(PipelineOperation.TEXT_INDEX_SEEK))
+                    .filter(Objects::nonNull);
+        });
+        return new LazyCursor<>(cursorFuture, store.getExecutor());
+    }
+
     @Nonnull
     private <M extends Message> Function<byte[], RecordCursor<IndexEntry>> scanTokenPrefix(@Nonnull FDBRecordStoreBase<M> store, @Nonnull String token, @Nullable Tuple prefix, @Nullable TupleRange suffix,
                                                                                            @Nonnull Index index, @Nonnull ScanProperties scanProperties) {
@@ -0,0 +1,176 @@
+/*
+ * AggregateAccumulator.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.query.plan.aggregate;
+
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
+import com.apple.foundationdb.record.query.RecordQueryAggregate;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The running state of one {@link RecordQueryAggregate} over one group.
+ *
+ * <p>
+ * The state is a single value, so that it can be saved in a continuation as an element of a tuple and restored from
+ * there: the count for {@code COUNT}, the sum so far for {@code SUM}, the least or greatest value so far for
+ * {@code MIN} or {@code MAX}, and a nested tuple of sum and count for {@code AVG}.
+ * </p>
+ */
+class AggregateAccumulator {
+    @Nonnull
+    private final RecordQueryAggregate aggregate;
+    private long count;
+    @Nullable
+    private Object value;
+
+    AggregateAccumulator(@Nonnull RecordQueryAggregate aggregate) {
+        this.aggregate = aggregate;
+    }
+
+    AggregateAccumulator(@Nonnull RecordQueryAggregate aggregate, @Nullable Object state) {
+        this(aggregate);
+        switch (aggregate.getType()) {
+            case COUNT:
+                count = ((Number)state).longValue();
+                break;
+            case AVG:
+                final Tuple avgState = (Tuple)state;
+                value = avgState.get(0);
+                count = avgState.getLong(1);
+                break;
+            default:
+                value = state;
+                break;
+        }
+    }
+
+    /**
+     * Add the given record to the group.
+     * @param record the record to add
+     * @param <M> type used to represent stored records
+     */
+    <M extends Message> void accumulate(@Nonnull FDBRecord<M> record) {
+        final KeyExpression operand = aggregate.getOperand();
+        if (operand == null) {
+            count++;
+            return;
+        }
+        final Object operandValue = normalize(operand.evaluateSingleton(record).getObject(0));
+        if (operandValue == null) {
+            return;
+        }
+        switch (aggregate.getType()) {
+            case COUNT:
+                count++;
+                break;
+            case SUM:
+                value = add(value, operandValue);
+                break;
+            case AVG:
+                value = add(value, operandValue);
+                count++;
+                break;
+            case MIN:
+                if (value == null || compare(operandValue, value) < 0) {
+                    value = operandValue;
+                }
+                break;
+            case MAX:
+                if (value == null || compare(operandValue, value) > 0) {
+                    value = operandValue;
+                }
+                break;
+            default:
+                throw new RecordCoreException("unknown aggregate function")
+                        .addLogInfo("aggregate", aggregate);
+        }
+    }
+
+    /**
+     * Get the state of this accumulator, suitable as an element of a tuple.
+     * @return the current state
+     */
+    @Nullable
+    Object getState() {
+        switch (aggregate.getType()) {
+            case COUNT:
+                return count;
+            case AVG:
+                return Tuple.from(value, count);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Get the value of the aggregate for the records added so far.
+     * @return the aggregate value, or {@code null} if there were no values to aggregate
+     */
+    @Nullable
+    Object getResult() {
+        switch (aggregate.getType()) {
+            case COUNT:
+                return count;
+            case AVG:
+                return count == 0 ? null : ((Number)value).doubleValue() / count;
+            default:
+                return value;
+        }
+    }
+
+    @Nullable
+    private static Object normalize(@Nullable Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number)value).longValue();
+        } else if (value instanceof Float) {
+            return ((Float)value).doubleValue();
+        } else {
+            return value;
+        }
+    }
+
+    @Nonnull
+    private Number add(@Nullable Object sum, @Nonnull Object operandValue) {
+        if (!(operandValue instanceof Number)) {
+            throw new RecordCoreException("aggregate operand is not a number")
+                    .addLogInfo("aggregate", aggregate)
+                    .addLogInfo("value", operandValue);
+        }
+        final Number addend = (Number)operandValue;
+        if (sum == null) {
+            return addend;
+        }
+        if (sum instanceof Long && addend instanceof Long) {
+            return (Long)sum + (Long)addend;
+        }
+        return ((Number)sum).doubleValue() + addend.doubleValue();
+    }
+
+    private static int compare(@Nonnull Object value1, @Nonnull Object value2) {
+        return Tuple.from(value1).compareTo(Tuple.from(value2));
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * AggregateCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.query.plan.aggregate;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.annotation.SpotBugsSuppressWarnings;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorContinuation;
+import com.apple.foundationdb.record.RecordCursorProto;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.cursors.IllegalContinuationAccessChecker;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.RecordQueryAggregate;
+import com.apple.foundationdb.tuple.ByteArrayUtil2;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.foundationdb.tuple.TupleHelpers;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * A cursor that computes aggregates over consecutive runs of records of another cursor that share a group key.
+ *
+ * <p>
+ * The input must be ordered by the group key, so that all the records of a group are adjacent. Only the group
+ * being aggregated is held in memory. A group is returned when the first record of the next group is read or the
+ * input is exhausted.
+ * </p>
+ *
+ * <p>
+ * The continuation of each group returned is the continuation of the input after the last record in that group,
+ * so a cursor resumed from it starts with the next group. If the input stops early for an out-of-band reason, such
+ * as a scan or time limit, the continuation also holds the group key and the partial state of each aggregate for
+ * the group in progress, so that the resumed cursor carries on aggregating that group from where it stopped.
+ * </p>
+ *
+ * @param <M> type used to represent stored records
+ */
+@API(API.Status.EXPERIMENTAL)
+public class AggregateCursor<M extends Message> implements RecordCursor<AggregateResult> {
+    @Nonnull
+    private final RecordCursor<FDBQueriedRecord<M>> inner;
+    @Nullable
+    private final KeyExpression groupBy;
+    @Nonnull
+    private final List<RecordQueryAggregate> aggregates;
+    @Nullable
+    private final FDBStoreTimer timer;
+
+    // the group in progress, if any
+    @Nullable
+    private Tuple group;
+    @Nullable
+    private List<AggregateAccumulator> accumulators;
+    // continuation of the input after the last record added to the group in progress
+    @Nullable
+    private byte[] lastInnerContinuation;
+    @Nullable
+    private RecordCursorResult<AggregateResult> stopResult;
+
+    @Nullable
+    private CompletableFuture<Boolean> nextFuture;
+    @Nullable
+    private RecordCursorResult<AggregateResult> nextResult;
+    // for detecting incorrect cursor usage
+    private boolean mayGetContinuation = false;
+
+    /**
+     * Create a new aggregate cursor.
+     * @param innerFunction a function to open the input given its continuation
+     * @param groupBy the key by which the input is grouped, or {@code null} to aggregate it all as one group
+     * @param aggregates the aggregates to compute for each group
+     * @param continuation a continuation from a previous aggregate cursor or {@code null} to start from the beginning
+     * @param timer the timer in which to record aggregation counts, if any
+     */
+    public AggregateCursor(@Nonnull Function<byte[], RecordCursor<FDBQueriedRecord<M>>> innerFunction,
+                           @Nullable KeyExpression groupBy, @Nonnull List<RecordQueryAggregate> aggregates,
+                           @Nullable byte[] continuation, @Nullable FDBStoreTimer timer) {
+        this.groupBy = groupBy;
+        this.aggregates = aggregates;
+        this.timer = timer;
+        if (continuation != null) {
+            final RecordCursorProto.AggregateContinuation aggregateContinuation;
+            try {
+                aggregateContinuation = RecordCursorProto.AggregateContinuation.parseFrom(continuation);
+            } catch (InvalidProtocolBufferException ex) {
+                throw new RecordCoreException("Error parsing aggregate continuation", ex)
+                        .addLogInfo("raw_bytes", ByteArrayUtil2.loggable(continuation));
+            }
+            if (aggregateContinuation.hasInnerContinuation()) {
+                lastInnerContinuation = aggregateContinuation.getInnerContinuation().toByteArray();
+            }
+            if (aggregateContinuation.hasGroup()) {
+                group = Tuple.fromBytes(aggregateContinuation.getGroup().toByteArray());
+                final Tuple state = Tuple.fromBytes(aggregateContinuation.getPartialState().toByteArray());
+                if (state.size() != aggregates.size()) {
+                    throw new RecordCoreException("aggregate continuation does not match aggregates")
+                            .addLogInfo("raw_bytes", ByteArrayUtil2.loggable(continuation));
+                }
+                accumulators = new ArrayList<>(aggregates.size());
+                for (int i = 0; i < aggregates.size(); i++) {
+                    accumulators.add(new AggregateAccumulator(aggregates.get(i), state.get(i)));
+                }
+            }
+        }
+        this.inner = innerFunction.apply(lastInnerContinuation);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<AggregateResult>> onNext() {
+        if (nextResult != null && !nextResult.hasNext()) {
+            return CompletableFuture.completedFuture(nextResult);
+        }
+        mayGetContinuation = false;
+        if (stopResult != null) {
+            nextResult = stopResult;
+            mayGetContinuation = true;
+            return CompletableFuture.completedFuture(nextResult);
+        }
+        return AsyncUtil.whileTrue(() -> inner.onNext().thenApply(this::addInnerResult), getExecutor())
+                .thenApply(vignore -> {
+                    mayGetContinuation = !nextResult.hasNext();
+                    return nextResult;
+                });
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public CompletableFuture<Boolean> onHasNext() {
+        if (nextFuture == null) {
+            nextFuture = onNext().thenApply(RecordCursorResult::hasNext);
+        }
+        return nextFuture;
+    }
+
+    @Nullable
+    @Override
+    @SpotBugsSuppressWarnings(value = "EI2", justification = "copies are expensive")
+    @Deprecated
+    public AggregateResult next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        nextFuture = null;
+        mayGetContinuation = true;
+        return nextResult.get();
+    }
+
+    @Nullable
+    @Override
+    @SpotBugsSuppressWarnings(value = "EI", justification = "copies are expensive")
+    @Deprecated
+    public byte[] getContinuation() {
+        IllegalContinuationAccessChecker.check(mayGetContinuation);
+        return nextResult.getContinuation().toBytes();
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public NoNextReason getNoNextReason() {
+        return nextResult.getNoNextReason();
+    }
+
+    @Override
+    public void close() {
+        if (nextFuture != null) {
+            nextFuture.cancel(false);
+            nextFuture = null;
+        }
+        inner.close();
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return inner.getExecutor();
+    }
+
+    @Override
+    public boolean accept(@Nonnull RecordCursorVisitor visitor) {
+        if (visitor.visitEnter(this)) {
+            inner.accept(visitor);
+        }
+        return visitor.visitLeave(this);
+    }
+
+    /**
+     * Add the next result of the input.
+     * @param innerResult the next result of the input
+     * @return {@code true} if more input is needed before anything can be returned
+     */
+    private boolean addInnerResult(@Nonnull RecordCursorResult<FDBQueriedRecord<M>> innerResult) {
+        if (innerResult.hasNext()) {
+            final FDBQueriedRecord<M> record = innerResult.get();
+            if (timer != null) {
+                timer.increment(FDBStoreTimer.Counts.QUERY_AGGREGATE_PLAN_GIVEN);
+            }
+            final Tuple recordGroup = groupBy == null ? TupleHelpers.EMPTY : groupBy.evaluateSingleton(record).toTuple();
+            boolean more = true;
+            if (group != null && !group.equals(recordGroup)) {
+                nextResult = finishGroup(new AggregateCursorContinuation(lastInnerContinuation, null, null));
+                more = false;
+            }
+            if (group == null) {
+                startGroup(recordGroup);
+            }
+            for (AggregateAccumulator accumulator : accumulators) {
+                accumulator.accumulate(record);
+            }
+            lastInnerContinuation = innerResult.getContinuation().toBytes();
+            return more;
+        }
+        if (innerResult.getNoNextReason().isSourceExhausted()) {
+            stopResult = RecordCursorResult.exhausted();
+            if (group != null) {
+                nextResult = finishGroup(new AggregateCursorContinuation(lastInnerContinuation, null, null));
+            } else {
+                nextResult = stopResult;
+            }
+        } else {
+            // Save the group in progress, so that the records already added to it are not read again.
+            final Tuple state;
+            if (group != null) {
+                final List<Object> states = new ArrayList<>(accumulators.size());
+                for (AggregateAccumulator accumulator : accumulators) {
+                    states.add(accumulator.getState());
+                }
+                state = Tuple.fromList(states);
+            } else {
+                state = null;
+            }
+            final AggregateCursorContinuation continuation = new AggregateCursorContinuation(
+                    innerResult.getContinuation().toBytes(), group, state);
+            nextResult = RecordCursorResult.withoutNextValue(continuation, innerResult.getNoNextReason());
+        }
+        return false;
+    }
+
+    private void startGroup(@Nonnull Tuple recordGroup) {
+        group = recordGroup;
+        accumulators = new ArrayList<>(aggregates.size());
+        for (RecordQueryAggregate aggregate : aggregates) {
+            accumulators.add(new AggregateAccumulator(aggregate));
+        }
+    }
+
+    @Nonnull
+    private RecordCursorResult<AggregateResult> finishGroup(@Nonnull RecordCursorContinuation continuation) {
+        final List<Object> values = new ArrayList<>(accumulators.size());
+        for (AggregateAccumulator accumulator : accumulators) {
+            values.add(accumulator.getResult());
+        }
+        final AggregateResult result = new AggregateResult(group, values);
+        group = null;
+        accumulators = null;
+        if (timer != null) {
+            timer.increment(FDBStoreTimer.Counts.QUERY_AGGREGATE_PLAN_GROUPS);
+        }
+        return RecordCursorResult.withNextValue(result, continuation);
+    }
+
+    private static class AggregateCursorContinuation implements RecordCursorContinuation {
+        @Nullable
+        private final byte[] innerContinuation;
+        @Nullable
+        private final Tuple group;
+        @Nullable
+        private final Tuple state;
+        @Nullable
+        private byte[] cachedBytes;
+
+        private AggregateCursorContinuation(@Nullable byte[] innerContinuation, @Nullable Tuple group, @Nullable Tuple state) {
+            this.innerContinuation = innerContinuation;
+            this.group = group;
+            this.state = state;
+        }
+
+        @Nullable
+        @Override
+        public byte[] toBytes() {
+            if (cachedBytes == null) {
+                final RecordCursorProto.AggregateContinuation.Builder builder = RecordCursorProto.AggregateContinuation.newBuilder();
+                if (innerContinuation != null) {
+                    builder.setInnerContinuation(ByteString.copyFrom(innerContinuation));
+                }
+                if (group != null && state != null) {
+                    builder.setGroup(ByteString.copyFrom(group.pack()));
+                    builder.setPartialState(ByteString.copyFrom(state.pack()));
+                }
+                cachedBytes = builder.build().toByteArray();
+            }
+            return cachedBytes;
+        }
+
+        @Override
+        public boolean isEnd() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * AggregateResult.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.query.plan.aggregate;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.tuple.Tuple;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The aggregates computed for one group by a {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryAggregatePlan}.
+ *
+ * <p>
+ * The values are in the same order as the {@link com.apple.foundationdb.record.query.RecordQueryAggregate}s of
+ * the query.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class AggregateResult {
+    @Nonnull
+    private final Tuple group;
+    @Nonnull
+    private final List<Object> values;
+
+    public AggregateResult(@Nonnull Tuple group, @Nonnull List<Object> values) {
+        this.group = group;
+        this.values = values;
+    }
+
+    /**
+     * Get the value of the group by key shared by the records in this group.
+     * @return the group key, which is empty if the query does not have a group by
+     */
+    @Nonnull
+    public Tuple getGroup() {
+        return group;
+    }
+
+    @Nonnull
+    public List<Object> getValues() {
+        return values;
+    }
+
+    @Nullable
+    public Object getValue(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * Get the group key followed by the aggregate values as a single tuple.
+     * @return a tuple of the group and its aggregates
+     */
+    @Nonnull
+    public Tuple toTuple() {
+        return group.addAll(values);
+    }
+
+    @Override
+    public String toString() {
+        return group + " -> " + values;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AggregateResult that = (AggregateResult) o;
+        return group.equals(that.group) && values.equals(that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(group, values);
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * package-info.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * Classes for computing aggregates over query results.
+ *
+ * <p>
+ * A {@link com.apple.foundationdb.record.query.plan.plans.RecordQueryAggregatePlan} reads records already ordered by
+ * the group by key, typically from an index scan, so that each group is a run of consecutive records. Only the state
+ * of the current group is kept, so memory use does not depend on the number of records.
+ * </p>
+ */
+package com.apple.foundationdb.record.query.plan.aggregate;
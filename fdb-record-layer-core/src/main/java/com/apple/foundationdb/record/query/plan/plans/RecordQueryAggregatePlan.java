@@ -0,0 +1,231 @@
+/*
+ * RecordQueryAggregatePlan.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.query.plan.plans;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.RecordQueryAggregate;
+import com.apple.foundationdb.record.query.plan.aggregate.AggregateCursor;
+import com.apple.foundationdb.record.query.plan.aggregate.AggregateResult;
+import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.GroupExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.Quantifier;
+import com.apple.foundationdb.record.query.plan.temp.RelationalExpression;
+import com.apple.foundationdb.tuple.TupleHelpers;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A query plan that computes aggregates over groups of the records produced by its child plan.
+ *
+ * <p>
+ * The child plan must return records ordered by the group by key, as an index scan whose key begins with the group
+ * by key does, possibly after some equality-bound fields. Groups are then runs of consecutive records and are
+ * aggregated as they stream by, so memory use is constant. Skip and row limits count groups rather than records.
+ * See {@link AggregateCursor} for how continuations and out-of-band limits are handled.
+ * </p>
+ *
+ * <p>
+ * When the only aggregates are counts of a whole {@link RecordQueryComposedBitmapPlan}, they are computed by counting
+ * the bits set in its bitmaps, without loading any records.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryAggregatePlan implements QueryPlan<AggregateResult> {
+    @Nonnull
+    private final ExpressionRef<RecordQueryPlan> inner;
+    @Nullable
+    private final KeyExpression groupBy;
+    @Nonnull
+    private final List<RecordQueryAggregate> aggregates;
+
+    public RecordQueryAggregatePlan(@Nonnull RecordQueryPlan inner, @Nullable KeyExpression groupBy,
+                                    @Nonnull List<RecordQueryAggregate> aggregates) {
+        this(GroupExpressionRef.of(inner), groupBy, aggregates);
+    }
+
+    public RecordQueryAggregatePlan(@Nonnull ExpressionRef<RecordQueryPlan> inner, @Nullable KeyExpression groupBy,
+                                    @Nonnull List<RecordQueryAggregate> aggregates) {
+        this.inner = inner;
+        this.groupBy = groupBy;
+        this.aggregates = aggregates;
+    }
+
+    @Nonnull
+    @Override
+    public RecordCursor<AggregateResult> execute(@Nonnull FDBRecordStore store, @Nonnull EvaluationContext context,
+                                                 @Nullable byte[] continuation, @Nonnull ExecuteProperties executeProperties) {
+        final ExecuteProperties innerExecuteProperties = executeProperties.clearSkipAndLimit();
+        if (isBitmapCount()) {
+            // The single group is returned all at once, so any continuation is past it.
+            if (continuation != null) {
+                return RecordCursor.empty(store.getExecutor());
+            }
+            final RecordQueryComposedBitmapPlan bitmapPlan = (RecordQueryComposedBitmapPlan)getInner();
+            return RecordCursor.fromFuture(store.getExecutor(), bitmapPlan.countAsync(store, context, innerExecuteProperties))
+                    .filter(count -> count > 0)
+                    .map(count -> new AggregateResult(TupleHelpers.EMPTY, Collections.<Object>nCopies(aggregates.size(), count)))
+                    .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+        }
+        return new AggregateCursor<>(
+                innerContinuation -> getInner().execute(store, context, innerContinuation, innerExecuteProperties),
+                groupBy, aggregates, continuation, store.getTimer())
+                .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+
+    /**
+     * Get whether this plan counts all the records of a composed bitmap plan, which it can do from the bitmaps alone.
+     * @return {@code true} if the aggregates are evaluated by counting bits
+     */
+    public boolean isBitmapCount() {
+        if (groupBy != null || !(getInner() instanceof RecordQueryComposedBitmapPlan)) {
+            return false;
+        }
+        for (RecordQueryAggregate aggregate : aggregates) {
+            if (aggregate.getType() != RecordQueryAggregate.Type.COUNT || aggregate.getOperand() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    public RecordQueryPlan getInner() {
+        return inner.get();
+    }
+
+    @Nullable
+    public KeyExpression getGroupBy() {
+        return groupBy;
+    }
+
+    @Nonnull
+    public List<RecordQueryAggregate> getAggregates() {
+        return aggregates;
+    }
+
+    @Override
+    public boolean isReverse() {
+        return getInner().isReverse();
+    }
+
+    @Override
+    public boolean hasRecordScan() {
+        return getInner().hasRecordScan();
+    }
+
+    @Override
+    public boolean hasFullRecordScan() {
+        return getInner().hasFullRecordScan();
+    }
+
+    @Override
+    public boolean hasIndexScan(@Nonnull String indexName) {
+        return getInner().hasIndexScan(indexName);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getUsedIndexes() {
+        return getInner().getUsedIndexes();
+    }
+
+    @Override
+    public boolean hasLoadBykeys() {
+        return getInner().hasLoadBykeys();
+    }
+
+    @Override
+    public List<? extends QueryPlan<?>> getQueryPlanChildren() {
+        return Collections.singletonList(getInner());
+    }
+
+    @Nonnull
+    @Override
+    @API(API.Status.EXPERIMENTAL)
+    public List<? extends Quantifier> getQuantifiers() {
+        return ImmutableList.of(Quantifier.physical(inner));
+    }
+
+    @Override
+    public String toString() {
+        return getInner() + " | Aggregate(" + (groupBy == null ? "" : groupBy + ": ") + aggregates + ")";
+    }
+
+    @Override
+    @API(API.Status.EXPERIMENTAL)
+    public boolean equalsWithoutChildren(@Nonnull RelationalExpression otherExpression) {
+        if (!(otherExpression instanceof RecordQueryAggregatePlan)) {
+            return false;
+        }
+        final RecordQueryAggregatePlan other = (RecordQueryAggregatePlan) otherExpression;
+        return Objects.equals(groupBy, other.groupBy) && aggregates.equals(other.aggregates);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQueryAggregatePlan that = (RecordQueryAggregatePlan) o;
+        return Objects.equals(getInner(), that.getInner()) &&
+               Objects.equals(groupBy, that.groupBy) &&
+               aggregates.equals(that.aggregates);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getInner(), groupBy, aggregates);
+    }
+
+    @Override
+    public int planHash() {
+        return getInner().planHash() + (groupBy == null ? 0 : groupBy.planHash()) + PlanHashable.planHash(aggregates);
+    }
+
+    @Override
+    public void logPlanStructure(StoreTimer timer) {
+        timer.increment(FDBStoreTimer.Counts.PLAN_AGGREGATE);
+        getInner().logPlanStructure(timer);
+    }
+
+    @Override
+    public int getComplexity() {
+        return 1 + getInner().getComplexity();
+    }
+}
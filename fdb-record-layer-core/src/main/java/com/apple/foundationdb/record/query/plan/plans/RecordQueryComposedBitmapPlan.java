@@ -0,0 +1,409 @@
+/*
+ * RecordQueryComposedBitmapPlan.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.plans;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.PipelineOperation;
+import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.cursors.ComposedBitmapIndexCursor;
+import com.apple.foundationdb.record.provider.foundationdb.indexes.BitmapValueIndexMaintainer;
+import com.apple.foundationdb.record.query.plan.temp.Quantifier;
+import com.apple.foundationdb.record.query.plan.temp.RelationalExpression;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A query plan that evaluates a conjunction or disjunction of equality conditions by combining the bitmaps of
+ * {@link com.apple.foundationdb.record.metadata.IndexTypes#BITMAP_VALUE BITMAP_VALUE} indexes.
+ *
+ * <p>
+ * Each child is a {@link com.apple.foundationdb.record.IndexScanType#BY_BITMAP BY_BITMAP} scan of the bitmaps for one
+ * of the values being compared. The bitmaps are combined, offset by offset, with bitwise operations given by a tree of
+ * {@link ComposerBase} nodes, and the positions of the set bits in the result are the primary keys of the matching
+ * records, which are then loaded. Records are therefore returned in primary key order. The bitmap indexes must all
+ * use the record's single-field integer primary key as their position.
+ * </p>
+ *
+ * <p>
+ * Because the result bitmaps already determine how many records match, {@link #countAsync} counts them without loading
+ * any records or even enumerating primary keys.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryComposedBitmapPlan implements RecordQueryPlanWithChildren {
+    @Nonnull
+    private final List<RecordQueryIndexPlan> indexPlans;
+    @Nonnull
+    private final ComposerBase composer;
+
+    public RecordQueryComposedBitmapPlan(@Nonnull List<RecordQueryIndexPlan> indexPlans, @Nonnull ComposerBase composer) {
+        this.indexPlans = indexPlans;
+        this.composer = composer;
+    }
+
+    @Nonnull
+    @Override
+    public <M extends Message> RecordCursor<FDBQueriedRecord<M>> execute(@Nonnull FDBRecordStoreBase<M> store,
+                                                                         @Nonnull EvaluationContext context,
+                                                                         @Nullable byte[] continuation,
+                                                                         @Nonnull ExecuteProperties executeProperties) {
+        final ExecuteProperties bitmapExecuteProperties = executeProperties.clearSkipAndLimit();
+        final int pipelineSize = store.getPipelineSize(PipelineOperation.KEY_TO_RECORD);
+        return RecordCursor.flatMapPipelined(
+                outerContinuation -> executeBitmaps(store, context, outerContinuation, bitmapExecuteProperties),
+                (entry, innerContinuation) -> RecordCursor.fromList(store.getExecutor(), getPrimaryKeys(entry), innerContinuation),
+                continuation, pipelineSize)
+                .mapBatchPipelined(primaryKeys -> store.loadRecordsInternal(primaryKeys, executeProperties.getState(), false), pipelineSize)
+                .filter(Objects::nonNull)
+                .map(store::queriedRecord)
+                .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+
+    /**
+     * Execute just the bitmap part of this plan, returning the composed bitmap for each offset.
+     * Each entry's key is the offset and its value is a single element tuple of the bitmap.
+     * @param store record store from which to fetch items
+     * @param context evaluation context containing parameter bindings
+     * @param continuation continuation from a previous execution of this same plan
+     * @param executeProperties limits on execution
+     * @param <M> type used to represent stored records
+     * @return a cursor of composed bitmaps
+     */
+    @Nonnull
+    public <M extends Message> RecordCursor<IndexEntry> executeBitmaps(@Nonnull FDBRecordStoreBase<M> store,
+                                                                       @Nonnull EvaluationContext context,
+                                                                       @Nullable byte[] continuation,
+                                                                       @Nonnull ExecuteProperties executeProperties) {
+        final List<Function<byte[], RecordCursor<IndexEntry>>> cursorFunctions = indexPlans.stream()
+                .map(indexPlan -> (Function<byte[], RecordCursor<IndexEntry>>)
+                        childContinuation -> indexPlan.executeEntries(store, context, childContinuation, executeProperties))
+                .collect(Collectors.toList());
+        return ComposedBitmapIndexCursor.create(cursorFunctions, composer, continuation, store.getTimer());
+    }
+
+    /**
+     * Count the records that this plan would return by counting the bits set in the composed bitmaps.
+     * @param store record store from which to fetch items
+     * @param context evaluation context containing parameter bindings
+     * @param executeProperties limits on execution
+     * @param <M> type used to represent stored records
+     * @return a future that completes to the number of matching records
+     */
+    @Nonnull
+    public <M extends Message> CompletableFuture<Long> countAsync(@Nonnull FDBRecordStoreBase<M> store,
+                                                                  @Nonnull EvaluationContext context,
+                                                                  @Nonnull ExecuteProperties executeProperties) {
+        return executeBitmaps(store, context, null, executeProperties.clearSkipAndLimit())
+                .reduce(0L, (count, entry) -> count + BitmapValueIndexMaintainer.countBits(entry.getValue().getBytes(0)));
+    }
+
+    @Nonnull
+    private static List<Tuple> getPrimaryKeys(@Nonnull IndexEntry entry) {
+        final long offset = entry.getKey().getLong(0);
+        final byte[] bitmap = entry.getValue().getBytes(0);
+        final List<Tuple> primaryKeys = new ArrayList<>();
+        for (int i = 0; i < bitmap.length; i++) {
+            final int b = bitmap[i] & 0xFF;
+            if (b != 0) {
+                for (int j = 0; j < 8; j++) {
+                    if ((b & (1 << j)) != 0) {
+                        primaryKeys.add(Tuple.from(offset + i * 8 + j));
+                    }
+                }
+            }
+        }
+        return primaryKeys;
+    }
+
+    @Nonnull
+    public List<RecordQueryIndexPlan> getIndexPlans() {
+        return indexPlans;
+    }
+
+    @Nonnull
+    public ComposerBase getComposer() {
+        return composer;
+    }
+
+    @Override
+    public boolean isReverse() {
+        return false;
+    }
+
+    @Override
+    public boolean hasRecordScan() {
+        return false;
+    }
+
+    @Override
+    public boolean hasFullRecordScan() {
+        return false;
+    }
+
+    @Override
+    public boolean hasLoadBykeys() {
+        return false;
+    }
+
+    @Nonnull
+    @Override
+    public List<RecordQueryPlan> getChildren() {
+        return new ArrayList<>(indexPlans);
+    }
+
+    @Override
+    public int getRelationalChildCount() {
+        return indexPlans.size();
+    }
+
+    @Nonnull
+    @Override
+    @API(API.Status.EXPERIMENTAL)
+    public List<? extends Quantifier> getQuantifiers() {
+        return ImmutableList.of();
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return "ComposedBitmap(" + indexPlans + " " + composer + ")";
+    }
+
+    @Override
+    @API(API.Status.EXPERIMENTAL)
+    public boolean equalsWithoutChildren(@Nonnull RelationalExpression otherExpression) {
+        if (!(otherExpression instanceof RecordQueryComposedBitmapPlan)) {
+            return false;
+        }
+        return composer.equals(((RecordQueryComposedBitmapPlan)otherExpression).composer);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQueryComposedBitmapPlan that = (RecordQueryComposedBitmapPlan) o;
+        return indexPlans.equals(that.indexPlans) && composer.equals(that.composer);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(indexPlans, composer);
+    }
+
+    @Override
+    public int planHash() {
+        return PlanHashable.planHash(indexPlans) + composer.planHash();
+    }
+
+    @Override
+    public void logPlanStructure(StoreTimer timer) {
+        timer.increment(FDBStoreTimer.Counts.PLAN_COMPOSED_BITMAP_INDEX);
+        for (RecordQueryIndexPlan indexPlan : indexPlans) {
+            indexPlan.logPlanStructure(timer);
+        }
+    }
+
+    @Override
+    public int getComplexity() {
+        int complexity = 1;
+        for (RecordQueryIndexPlan indexPlan : indexPlans) {
+            complexity += indexPlan.getComplexity();
+        }
+        return complexity;
+    }
+
+    /**
+     * A node in the tree of bitwise operations applied to the bitmaps of the children of a composed bitmap plan.
+     */
+    public abstract static class ComposerBase implements ComposedBitmapIndexCursor.Composer, PlanHashable {
+    }
+
+    /**
+     * The bitmap of one of the children, by its position in the list of index plans.
+     */
+    public static class IndexComposer extends ComposerBase {
+        private final int position;
+
+        public IndexComposer(int position) {
+            this.position = position;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        @Nullable
+        @Override
+        public byte[] compose(@Nonnull List<byte[]> bitmaps) {
+            return bitmaps.get(position);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + position + "]";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            return position == ((IndexComposer)o).position;
+        }
+
+        @Override
+        public int hashCode() {
+            return position;
+        }
+
+        @Override
+        public int planHash() {
+            return position;
+        }
+    }
+
+    /**
+     * A bitwise operation applied to the bitmaps of several other nodes.
+     */
+    public abstract static class OperatorComposer extends ComposerBase {
+        @Nonnull
+        private final List<ComposerBase> children;
+
+        protected OperatorComposer(@Nonnull List<ComposerBase> children) {
+            this.children = children;
+        }
+
+        @Nonnull
+        public List<ComposerBase> getChildren() {
+            return children;
+        }
+
+        @Nonnull
+        protected abstract String getOperator();
+
+        @Nullable
+        protected abstract byte[] apply(@Nullable byte[] bitmap1, @Nullable byte[] bitmap2);
+
+        @Nullable
+        @Override
+        public byte[] compose(@Nonnull List<byte[]> bitmaps) {
+            byte[] result = children.get(0).compose(bitmaps);
+            for (int i = 1; i < children.size(); i++) {
+                result = apply(result, children.get(i).compose(bitmaps));
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return children.stream().map(Object::toString).collect(Collectors.joining(" " + getOperator() + " ", "(", ")"));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            return children.equals(((OperatorComposer)o).children);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(getOperator(), children);
+        }
+
+        @Override
+        public int planHash() {
+            return getOperator().hashCode() + PlanHashable.planHash(children);
+        }
+    }
+
+    /**
+     * The bitwise and of the bitmaps of several nodes.
+     */
+    public static class AndComposer extends OperatorComposer {
+        public AndComposer(@Nonnull List<ComposerBase> children) {
+            super(children);
+        }
+
+        @Nonnull
+        @Override
+        protected String getOperator() {
+            return "AND";
+        }
+
+        @Nullable
+        @Override
+        protected byte[] apply(@Nullable byte[] bitmap1, @Nullable byte[] bitmap2) {
+            return ComposedBitmapIndexCursor.and(bitmap1, bitmap2);
+        }
+    }
+
+    /**
+     * The bitwise or of the bitmaps of several nodes.
+     */
+    public static class OrComposer extends OperatorComposer {
+        public OrComposer(@Nonnull List<ComposerBase> children) {
+            super(children);
+        }
+
+        @Nonnull
+        @Override
+        protected String getOperator() {
+            return "OR";
+        }
+
+        @Nullable
+        @Override
+        protected byte[] apply(@Nullable byte[] bitmap1, @Nullable byte[] bitmap2) {
+            return ComposedBitmapIndexCursor.or(bitmap1, bitmap2);
+        }
+    }
+}
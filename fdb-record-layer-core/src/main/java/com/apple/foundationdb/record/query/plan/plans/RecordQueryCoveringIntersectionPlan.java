@@ -0,0 +1,222 @@
+/*
+ * RecordQueryCoveringIntersectionPlan.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.plans;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.cursors.IntersectionMultiCursor;
+import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.GroupExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.Quantifier;
+import com.apple.foundationdb.record.query.plan.temp.Quantifiers;
+import com.apple.foundationdb.record.query.plan.temp.RelationalExpression;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A query plan that intersects two or more covering index scans and stitches together the partial records
+ * that each of them reconstructs from its index entries.
+ *
+ * <p>
+ * This lets a query whose required results are spread across several indexes be answered from the index entries
+ * alone, without loading the records. Each child covers some of the required fields, as well as the fields of the
+ * comparison key, and the record returned for each match is the merge of all of their partial records. Because
+ * partial records never include repeated fields, merging them only fills in the fields that each child set.
+ * </p>
+ *
+ * <p>
+ * The continuations of this plan are the same as those of a {@link RecordQueryIntersectionPlan} of the same children.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQueryCoveringIntersectionPlan implements RecordQueryPlanWithChildren {
+    private static final String INTERSECT = "∩"; // U+2229
+
+    @Nonnull
+    private final List<ExpressionRef<RecordQueryPlan>> children;
+    @Nonnull
+    private final KeyExpression comparisonKey;
+    private final boolean reverse;
+
+    private RecordQueryCoveringIntersectionPlan(@Nonnull List<ExpressionRef<RecordQueryPlan>> children,
+                                                @Nonnull KeyExpression comparisonKey, boolean reverse) {
+        this.children = children;
+        this.comparisonKey = comparisonKey;
+        this.reverse = reverse;
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("squid:S2095") // SonarQube doesn't realize that the intersection cursor is wrapped and returned
+    public <M extends Message> RecordCursor<FDBQueriedRecord<M>> execute(@Nonnull FDBRecordStoreBase<M> store,
+                                                                         @Nonnull EvaluationContext context,
+                                                                         @Nullable byte[] continuation,
+                                                                         @Nonnull ExecuteProperties executeProperties) {
+        final ExecuteProperties childExecuteProperties = executeProperties.clearSkipAndLimit();
+        return IntersectionMultiCursor.create(
+                (FDBQueriedRecord<M> record) -> comparisonKey.evaluateSingleton(record).toTupleAppropriateList(),
+                reverse,
+                children.stream()
+                        .map(childPlan -> (Function<byte[], RecordCursor<FDBQueriedRecord<M>>>)
+                                ((byte[] childContinuation) -> childPlan.get().execute(store, context, childContinuation, childExecuteProperties)))
+                        .collect(Collectors.toList()),
+                continuation,
+                store.getTimer())
+                .map(RecordQueryCoveringIntersectionPlan::mergePartialRecords)
+                .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private static <M extends Message> FDBQueriedRecord<M> mergePartialRecords(@Nonnull List<FDBQueriedRecord<M>> records) {
+        final FDBQueriedRecord<M> first = records.get(0);
+        final Message.Builder builder = first.getRecord().toBuilder();
+        for (int i = 1; i < records.size(); i++) {
+            builder.mergeFrom(records.get(i).getRecord());
+        }
+        return FDBQueriedRecord.covered(first.getIndex(), first.getIndexEntry(), first.getPrimaryKey(),
+                first.getRecordType(), (M) builder.build());
+    }
+
+    @Override
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    @Nonnull
+    @Override
+    public List<RecordQueryPlan> getChildren() {
+        return children.stream().map(ExpressionRef::get).collect(Collectors.toList());
+    }
+
+    @Nonnull
+    public KeyExpression getComparisonKey() {
+        return comparisonKey;
+    }
+
+    @Nonnull
+    @Override
+    @API(API.Status.EXPERIMENTAL)
+    public List<? extends Quantifier> getQuantifiers() {
+        return Quantifiers.fromPlans(children);
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return "Covering(" + getChildren().stream().map(RecordQueryPlan::toString).collect(Collectors.joining(" " + INTERSECT + " ")) + ")";
+    }
+
+    @Override
+    @API(API.Status.EXPERIMENTAL)
+    public boolean equalsWithoutChildren(@Nonnull RelationalExpression otherExpression) {
+        if (!(otherExpression instanceof RecordQueryCoveringIntersectionPlan)) {
+            return false;
+        }
+        final RecordQueryCoveringIntersectionPlan other = (RecordQueryCoveringIntersectionPlan) otherExpression;
+        return reverse == other.reverse &&
+               comparisonKey.equals(other.comparisonKey);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQueryCoveringIntersectionPlan that = (RecordQueryCoveringIntersectionPlan) o;
+        return reverse == that.reverse &&
+                Objects.equals(Sets.newHashSet(getQueryPlanChildren()), Sets.newHashSet(that.getQueryPlanChildren())) &&
+                Objects.equals(getComparisonKey(), that.getComparisonKey());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(Sets.newHashSet(getQueryPlanChildren()), getComparisonKey(), reverse);
+    }
+
+    @Override
+    public int planHash() {
+        return PlanHashable.planHash(getQueryPlanChildren()) + getComparisonKey().planHash() + (reverse ? 1 : 0);
+    }
+
+    @Override
+    public void logPlanStructure(StoreTimer timer) {
+        timer.increment(FDBStoreTimer.Counts.PLAN_INTERSECTION);
+        for (ExpressionRef<RecordQueryPlan> childRef : children) {
+            childRef.get().logPlanStructure(timer);
+        }
+    }
+
+    @Override
+    public int getComplexity() {
+        return 1 + children.stream().mapToInt(childRef -> childRef.get().getComplexity()).sum();
+    }
+
+    @Override
+    public int getRelationalChildCount() {
+        return children.size();
+    }
+
+    /**
+     * Construct a new covering intersection of two or more compatibly-ordered covering index scans. Each child must
+     * reconstruct all of the fields of the {@code comparisonKey} in its partial records.
+     *
+     * @param children the list of covering index plans to take the intersection of
+     * @param comparisonKey a key expression by which the results of all plans are ordered
+     * @return a new plan that will return the merged partial records for all results from all child plans
+     */
+    @Nonnull
+    public static RecordQueryCoveringIntersectionPlan from(@Nonnull List<RecordQueryCoveringIndexPlan> children,
+                                                           @Nonnull KeyExpression comparisonKey) {
+        if (children.size() < 2) {
+            throw new RecordCoreArgumentException("fewer than two children given to intersection plan");
+        }
+        boolean firstReverse = children.get(0).isReverse();
+        if (!children.stream().allMatch(child -> child.isReverse() == firstReverse)) {
+            throw new RecordCoreArgumentException("children of intersection plan do all have same value for reverse field");
+        }
+        final ImmutableList.Builder<ExpressionRef<RecordQueryPlan>> childRefsBuilder = ImmutableList.builder();
+        for (RecordQueryPlan child : children) {
+            childRefsBuilder.add(GroupExpressionRef.of(child));
+        }
+        return new RecordQueryCoveringIntersectionPlan(childRefsBuilder.build(), comparisonKey, firstReverse);
+    }
+}
@@ -71,12 +71,12 @@ public class RecordQueryLoadByKeysPlan implements RecordQueryPlanWithNoChildren
         // Cannot pass down limit(s) because we skip keys that don't load.
         RecordScanLimiter recordScanLimiter = executeProperties.getState().getRecordScanLimiter();
         return RecordCursor.fromList(store.getExecutor(), getKeysSource().getPrimaryKeys(context), continuation)
-                .mapPipelined(key -> {
+                .mapBatchPipelined(keys -> {
                     // TODO: Implement continuation handling and record scan limit for RecordQueryLoadByKeysPlan (https://github.com/FoundationDB/fdb-record-layer/issues/6)
                     if (recordScanLimiter != null) {
-                        recordScanLimiter.tryRecordScan();
+                        keys.forEach(key -> recordScanLimiter.tryRecordScan());
                     }
-                    return store.loadRecordAsync(key);
+                    return store.loadRecordsInternal(keys, executeProperties.getState(), false);
                 }, store.getPipelineSize(PipelineOperation.KEY_TO_RECORD))
                 .filter(Objects::nonNull)
                 .map(store::queriedRecord)
@@ -69,7 +69,8 @@ public interface RecordQueryPlanWithIndex extends RecordQueryPlan, PlannerGraphR
                                                                           @Nonnull EvaluationContext context,
                                                                           @Nullable byte[] continuation,
                                                                           @Nonnull ExecuteProperties executeProperties) {
-        final RecordCursor<IndexEntry> entryRecordCursor = executeEntries(store, context, continuation, executeProperties);
+        final RecordCursor<IndexEntry> entryRecordCursor = store.prefetchIndexEntries(
+                executeEntries(store, context, continuation, executeProperties), executeProperties);
         return store.fetchIndexRecords(entryRecordCursor, IndexOrphanBehavior.ERROR, executeProperties.getState())
                 .map(store::queriedRecord);
     }
@@ -0,0 +1,168 @@
+/*
+ * RecordQuerySortPlan.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.plans;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.provider.common.StoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQuerySortKey;
+import com.apple.foundationdb.record.query.plan.sorting.SortCursor;
+import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.GroupExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.Quantifier;
+import com.apple.foundationdb.record.query.plan.temp.RelationalExpression;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A query plan that sorts the records produced by its child plan.
+ *
+ * <p>
+ * This is only used when no index can supply the requested order, since the whole input must be read before the
+ * first record is returned. When the query's skip and row limit are known and together no more than
+ * {@code maxRecordsInMemory}, only that many records are kept. Otherwise, sorted runs of that many records are
+ * spilled to local files and merged. See {@link SortCursor} for how continuations and out-of-band limits are handled.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQuerySortPlan implements RecordQueryPlanWithChild {
+    @Nonnull
+    private final ExpressionRef<RecordQueryPlan> inner;
+    @Nonnull
+    private final RecordQuerySortKey sortKey;
+    private final int maxRecordsInMemory;
+
+    public RecordQuerySortPlan(@Nonnull RecordQueryPlan inner, @Nonnull RecordQuerySortKey sortKey, int maxRecordsInMemory) {
+        this(GroupExpressionRef.of(inner), sortKey, maxRecordsInMemory);
+    }
+
+    public RecordQuerySortPlan(@Nonnull ExpressionRef<RecordQueryPlan> inner, @Nonnull RecordQuerySortKey sortKey, int maxRecordsInMemory) {
+        this.inner = inner;
+        this.sortKey = sortKey;
+        this.maxRecordsInMemory = maxRecordsInMemory;
+    }
+
+    @Nonnull
+    @Override
+    public <M extends Message> RecordCursor<FDBQueriedRecord<M>> execute(@Nonnull FDBRecordStoreBase<M> store,
+                                                                         @Nonnull EvaluationContext context,
+                                                                         @Nullable byte[] continuation,
+                                                                         @Nonnull ExecuteProperties executeProperties) {
+        final int limit;
+        if (executeProperties.getReturnedRowLimitOrMax() == Integer.MAX_VALUE) {
+            limit = Integer.MAX_VALUE;
+        } else {
+            limit = (int)Math.min(Integer.MAX_VALUE, (long)executeProperties.getSkip() + executeProperties.getReturnedRowLimit());
+        }
+        final ExecuteProperties innerExecuteProperties = executeProperties.clearSkipAndLimit();
+        return new SortCursor<>(store, sortKey,
+                innerContinuation -> getInner().execute(store, context, innerContinuation, innerExecuteProperties),
+                continuation, limit, maxRecordsInMemory)
+                .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+
+    @Override
+    public boolean isReverse() {
+        return sortKey.isReverse();
+    }
+
+    @Nonnull
+    private RecordQueryPlan getInner() {
+        return inner.get();
+    }
+
+    @Override
+    @Nonnull
+    public RecordQueryPlan getChild() {
+        return getInner();
+    }
+
+    @Nonnull
+    public RecordQuerySortKey getSortKey() {
+        return sortKey;
+    }
+
+    public int getMaxRecordsInMemory() {
+        return maxRecordsInMemory;
+    }
+
+    @Nonnull
+    @Override
+    @API(API.Status.EXPERIMENTAL)
+    public List<? extends Quantifier> getQuantifiers() {
+        return ImmutableList.of(Quantifier.physical(inner));
+    }
+
+    @Override
+    public String toString() {
+        return getInner() + " | Sort(" + sortKey + ")";
+    }
+
+    @Override
+    @API(API.Status.EXPERIMENTAL)
+    public boolean equalsWithoutChildren(@Nonnull RelationalExpression otherExpression) {
+        return otherExpression instanceof RecordQuerySortPlan &&
+               sortKey.equals(((RecordQuerySortPlan)otherExpression).sortKey);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQuerySortPlan that = (RecordQuerySortPlan) o;
+        return Objects.equals(getInner(), that.getInner()) && sortKey.equals(that.sortKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getInner(), sortKey);
+    }
+
+    @Override
+    public int planHash() {
+        return getInner().planHash() + sortKey.planHash();
+    }
+
+    @Override
+    public void logPlanStructure(StoreTimer timer) {
+        timer.increment(FDBStoreTimer.Counts.PLAN_SORT);
+        getInner().logPlanStructure(timer);
+    }
+
+    @Override
+    public int getComplexity() {
+        return 1 + getInner().getComplexity();
+    }
+}
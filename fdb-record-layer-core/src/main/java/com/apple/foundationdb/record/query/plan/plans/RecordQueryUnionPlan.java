@@ -119,6 +119,10 @@ public class RecordQueryUnionPlan extends RecordQueryUnionPlanBase {
         return comparisonKey;
     }
 
+    public boolean isShowComparisonKey() {
+        return showComparisonKey;
+    }
+
     @Override
     @API(API.Status.EXPERIMENTAL)
     public boolean equalsWithoutChildren(@Nonnull RelationalExpression otherExpression) {
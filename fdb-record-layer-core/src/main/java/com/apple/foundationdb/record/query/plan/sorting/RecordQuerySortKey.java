@@ -0,0 +1,119 @@
+/*
+ * RecordQuerySortKey.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.PlanHashable;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecord;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * The key by which a {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan} orders its records.
+ *
+ * <p>
+ * Each record is given a <i>position</i>, which is a tuple made up of the evaluated sort key followed by the
+ * primary key. Appending the primary key makes positions unique, so that a continuation can name exactly the last
+ * record returned even when several records have the same value for the sort key.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class RecordQuerySortKey implements PlanHashable {
+    @Nonnull
+    private final KeyExpression key;
+    private final boolean reverse;
+
+    public RecordQuerySortKey(@Nonnull KeyExpression key, boolean reverse) {
+        this.key = key;
+        this.reverse = reverse;
+    }
+
+    @Nonnull
+    public KeyExpression getKey() {
+        return key;
+    }
+
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    /**
+     * Get the position of the given record in the sort order.
+     * @param record the record to evaluate
+     * @param <M> type used to represent stored records
+     * @return a tuple of the sort key value and the primary key
+     */
+    @Nonnull
+    public <M extends Message> Tuple getPosition(@Nonnull FDBRecord<M> record) {
+        return Tuple.from(key.evaluateSingleton(record).toTuple(), record.getPrimaryKey());
+    }
+
+    /**
+     * Get the primary key part of a position.
+     * @param position a position returned by {@link #getPosition}
+     * @return the primary key of the record at that position
+     */
+    @Nonnull
+    public static Tuple getPrimaryKey(@Nonnull Tuple position) {
+        return position.getNestedTuple(1);
+    }
+
+    /**
+     * Get a comparator that puts positions in the order in which records are returned.
+     * @return a comparator for positions
+     */
+    @Nonnull
+    public Comparator<Tuple> getComparator() {
+        return reverse ? Comparator.reverseOrder() : Comparator.naturalOrder();
+    }
+
+    @Override
+    public String toString() {
+        return key + (reverse ? " desc" : "");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RecordQuerySortKey that = (RecordQuerySortKey) o;
+        return reverse == that.reverse && key.equals(that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, reverse);
+    }
+
+    @Override
+    public int planHash() {
+        return key.planHash() + (reverse ? 1 : 0);
+    }
+}
@@ -0,0 +1,510 @@
+/*
+ * SortCursor.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.sorting;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.annotation.SpotBugsSuppressWarnings;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorContinuation;
+import com.apple.foundationdb.record.RecordCursorProto;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.RecordCursorVisitor;
+import com.apple.foundationdb.record.cursors.IllegalContinuationAccessChecker;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
+import com.apple.foundationdb.tuple.ByteArrayUtil2;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A cursor that returns the records of another cursor in the order given by a {@link RecordQuerySortKey}.
+ *
+ * <p>
+ * No record can be returned until the whole input has been read, since the last record read might be the first in
+ * sort order. How the input is held meanwhile depends on how many records are needed:
+ * </p>
+ * <ul>
+ * <li>If no more than {@code maxRecordsInMemory} records are needed, only that many are kept, in a bounded heap,
+ * and the rest are discarded as they arrive.</li>
+ * <li>Otherwise, records are buffered in memory up to {@code maxRecordsInMemory}. Each time the buffer is full, it is
+ * sorted and written out to a local file as a sorted run. Once the input is exhausted, the runs are merged.</li>
+ * </ul>
+ *
+ * <p>
+ * The continuation of each record returned is its position in the sort order. A cursor resumed from such a
+ * continuation reads the whole input again and skips records at or before that position. If the input stops early
+ * for an out-of-band reason, such as a scan or time limit, nothing can be returned yet; the continuation then holds
+ * the continuation of the input along with the positions of the best records seen so far, which are loaded again by
+ * primary key when resumed. In the unbounded case, the best {@code maxRecordsInMemory} positions are tracked for this
+ * purpose. Only as many of those positions as fit in {@code maxContinuationBytes} are put in the continuation, best
+ * first. When some are left out, or in the unbounded case, the resumed cursor will return only as many records as
+ * positions were kept and then stop with {@link NoNextReason#RETURN_LIMIT_REACHED} and a continuation that will read
+ * the input again from the start.
+ * </p>
+ *
+ * <p>
+ * Sorted runs are written to files on a separate thread pool so that the blocking file I/O does not hold up the
+ * executor used for the database.
+ * </p>
+ *
+ * <p>
+ * Records are returned as {@link FDBQueriedRecord#stored stored records}, without the index entry, if any, from
+ * which they came.
+ * </p>
+ *
+ * @param <M> type used to represent stored records
+ */
+@API(API.Status.EXPERIMENTAL)
+public class SortCursor<M extends Message> implements RecordCursor<FDBQueriedRecord<M>> {
+    /**
+     * The default for the maximum number of bytes of kept record positions put into a continuation.
+     */
+    public static final int DEFAULT_MAX_CONTINUATION_BYTES = 4096;
+
+    @Nonnull
+    private final FDBRecordStoreBase<M> store;
+    @Nonnull
+    private final RecordQuerySortKey sortKey;
+    @Nonnull
+    private final Function<byte[], RecordCursor<FDBQueriedRecord<M>>> innerFunction;
+    private final int maxRecordsInMemory;
+    private final int maxContinuationBytes;
+    @Nonnull
+    private final Comparator<Tuple> comparator;
+    @Nonnull
+    private final Comparator<SortEntry<M>> entryComparator;
+    @Nullable
+    private final FDBStoreTimer timer;
+
+    @Nullable
+    private Tuple lastPosition;
+    @Nullable
+    private byte[] innerContinuation;
+    @Nonnull
+    private List<Tuple> keptPositions;
+    private final int keepLimit;
+
+    @Nullable
+    private RecordCursor<FDBQueriedRecord<M>> inner;
+    // bounded case: the worst record kept is at the head
+    @Nullable
+    private PriorityQueue<SortEntry<M>> heap;
+    // unbounded case: the current run, plus the positions to keep should the input stop early
+    @Nullable
+    private List<SortEntry<M>> buffer;
+    @Nullable
+    private PriorityQueue<Tuple> fallbackPositions;
+    @Nullable
+    private SortedRunFiles<M> runFiles;
+
+    @Nullable
+    private CompletableFuture<Void> gatherFuture;
+    @Nullable
+    private Iterator<SortEntry<M>> sorted;
+    private boolean full;
+    @Nullable
+    private RecordCursorResult<FDBQueriedRecord<M>> stopResult;
+
+    @Nullable
+    private CompletableFuture<Boolean> nextFuture;
+    @Nullable
+    private RecordCursorResult<FDBQueriedRecord<M>> nextResult;
+    // for detecting incorrect cursor usage
+    private boolean mayGetContinuation = false;
+
+    /**
+     * Create a new sort cursor.
+     * @param store the record store from which the records come
+     * @param sortKey the order in which to return records
+     * @param innerFunction a function to open the input given its continuation
+     * @param continuation a continuation from a previous sort cursor or {@code null} to start from the beginning
+     * @param limit the number of records that will be needed, or {@link Integer#MAX_VALUE} if all will be
+     * @param maxRecordsInMemory the maximum number of records to keep in memory at once
+     */
+    public SortCursor(@Nonnull FDBRecordStoreBase<M> store, @Nonnull RecordQuerySortKey sortKey,
+                      @Nonnull Function<byte[], RecordCursor<FDBQueriedRecord<M>>> innerFunction,
+                      @Nullable byte[] continuation, int limit, int maxRecordsInMemory) {
+        this(store, sortKey, innerFunction, continuation, limit, maxRecordsInMemory, DEFAULT_MAX_CONTINUATION_BYTES);
+    }
+
+    /**
+     * Create a new sort cursor.
+     * @param store the record store from which the records come
+     * @param sortKey the order in which to return records
+     * @param innerFunction a function to open the input given its continuation
+     * @param continuation a continuation from a previous sort cursor or {@code null} to start from the beginning
+     * @param limit the number of records that will be needed, or {@link Integer#MAX_VALUE} if all will be
+     * @param maxRecordsInMemory the maximum number of records to keep in memory at once
+     * @param maxContinuationBytes the maximum number of bytes of kept record positions to put into a continuation
+     * when the input stops early, though the best position is always included
+     */
+    public SortCursor(@Nonnull FDBRecordStoreBase<M> store, @Nonnull RecordQuerySortKey sortKey,
+                      @Nonnull Function<byte[], RecordCursor<FDBQueriedRecord<M>>> innerFunction,
+                      @Nullable byte[] continuation, int limit, int maxRecordsInMemory, int maxContinuationBytes) {
+        this.store = store;
+        this.sortKey = sortKey;
+        this.innerFunction = innerFunction;
+        this.maxRecordsInMemory = maxRecordsInMemory;
+        this.maxContinuationBytes = maxContinuationBytes;
+        this.comparator = sortKey.getComparator();
+        this.entryComparator = Comparator.comparing(SortEntry::getPosition, comparator);
+        this.timer = store.getTimer();
+        this.keptPositions = Collections.emptyList();
+        int keepLimit = limit;
+        if (continuation != null) {
+            final RecordCursorProto.SortContinuation sortContinuation;
+            try {
+                sortContinuation = RecordCursorProto.SortContinuation.parseFrom(continuation);
+            } catch (InvalidProtocolBufferException ex) {
+                throw new RecordCoreException("Error parsing sort continuation", ex)
+                        .addLogInfo("raw_bytes", ByteArrayUtil2.loggable(continuation));
+            }
+            if (sortContinuation.hasLastPosition()) {
+                lastPosition = Tuple.fromBytes(sortContinuation.getLastPosition().toByteArray());
+            }
+            if (sortContinuation.hasInnerContinuation()) {
+                innerContinuation = sortContinuation.getInnerContinuation().toByteArray();
+            }
+            // Kept records are only needed when the input will not be read again from the start.
+            if (innerContinuation != null) {
+                keptPositions = sortContinuation.getKeptPositionList().stream()
+                        .map(bytes -> Tuple.fromBytes(bytes.toByteArray()))
+                        .collect(Collectors.toList());
+            }
+            if (sortContinuation.hasKeptLimit()) {
+                keepLimit = sortContinuation.getKeptLimit();
+            }
+        }
+        this.keepLimit = keepLimit;
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<RecordCursorResult<FDBQueriedRecord<M>>> onNext() {
+        if (nextResult != null && !nextResult.hasNext()) {
+            return CompletableFuture.completedFuture(nextResult);
+        }
+        mayGetContinuation = false;
+        if (gatherFuture == null) {
+            gatherFuture = gather();
+        }
+        return gatherFuture.thenApply(vignore -> {
+            nextResult = computeNext();
+            mayGetContinuation = !nextResult.hasNext();
+            return nextResult;
+        });
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public CompletableFuture<Boolean> onHasNext() {
+        if (nextFuture == null) {
+            nextFuture = onNext().thenApply(RecordCursorResult::hasNext);
+        }
+        return nextFuture;
+    }
+
+    @Nullable
+    @Override
+    @SpotBugsSuppressWarnings(value = "EI2", justification = "copies are expensive")
+    @Deprecated
+    public FDBQueriedRecord<M> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        nextFuture = null;
+        mayGetContinuation = true;
+        return nextResult.get();
+    }
+
+    @Nullable
+    @Override
+    @SpotBugsSuppressWarnings(value = "EI", justification = "copies are expensive")
+    @Deprecated
+    public byte[] getContinuation() {
+        IllegalContinuationAccessChecker.check(mayGetContinuation);
+        return nextResult.getContinuation().toBytes();
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public NoNextReason getNoNextReason() {
+        return nextResult.getNoNextReason();
+    }
+
+    @Override
+    public void close() {
+        if (nextFuture != null) {
+            nextFuture.cancel(false);
+            nextFuture = null;
+        }
+        if (gatherFuture != null) {
+            gatherFuture.cancel(false);
+        }
+        if (inner != null) {
+            inner.close();
+        }
+        release();
+    }
+
+    @Nonnull
+    @Override
+    public Executor getExecutor() {
+        return store.getExecutor();
+    }
+
+    @Override
+    public boolean accept(@Nonnull RecordCursorVisitor visitor) {
+        if (visitor.visitEnter(this) && inner != null) {
+            inner.accept(visitor);
+        }
+        return visitor.visitLeave(this);
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> gather() {
+        if (keepLimit <= maxRecordsInMemory) {
+            heap = new PriorityQueue<>(entryComparator.reversed());
+        } else {
+            buffer = new ArrayList<>();
+            fallbackPositions = new PriorityQueue<>(comparator.reversed());
+            runFiles = new SortedRunFiles<>(store, comparator);
+        }
+        final CompletableFuture<Void> future = loadKeptRecords().thenCompose(vignore -> {
+            inner = innerFunction.apply(innerContinuation);
+            return inner.forEachResultAsync(result -> add(result.get()));
+        }).thenAccept(this::finishGathering);
+        if (timer != null) {
+            return timer.instrument(FDBStoreTimer.Events.QUERY_SORT, future, getExecutor());
+        } else {
+            return future;
+        }
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> loadKeptRecords() {
+        if (keptPositions.isEmpty()) {
+            return AsyncUtil.DONE;
+        }
+        final List<Tuple> primaryKeys = keptPositions.stream()
+                .map(RecordQuerySortKey::getPrimaryKey)
+                .collect(Collectors.toList());
+        keptPositions = Collections.emptyList();
+        return store.loadRecordsAsync(primaryKeys).thenCompose(records -> {
+            CompletableFuture<Void> added = AsyncUtil.DONE;
+            for (FDBStoredRecord<M> record : records) {
+                if (record != null) {
+                    added = added.thenCompose(vignore -> add(FDBQueriedRecord.stored(record)));
+                }
+            }
+            return added;
+        });
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> add(@Nonnull FDBQueriedRecord<M> record) {
+        if (timer != null) {
+            timer.increment(FDBStoreTimer.Counts.QUERY_SORT_PLAN_GIVEN);
+        }
+        final Tuple position = sortKey.getPosition(record);
+        if (lastPosition != null && comparator.compare(position, lastPosition) <= 0) {
+            discarded();
+            return AsyncUtil.DONE;
+        }
+        final SortEntry<M> entry = new SortEntry<>(position, record);
+        if (heap != null) {
+            heap.add(entry);
+            if (heap.size() > keepLimit) {
+                heap.poll();
+                discarded();
+            }
+        } else {
+            buffer.add(entry);
+            fallbackPositions.add(position);
+            if (fallbackPositions.size() > maxRecordsInMemory) {
+                fallbackPositions.poll();
+            }
+            if (buffer.size() >= maxRecordsInMemory) {
+                final List<SortEntry<M>> run = buffer;
+                buffer = new ArrayList<>();
+                run.sort(entryComparator);
+                return runFiles.writeRunAsync(run, getExecutor());
+            }
+        }
+        return AsyncUtil.DONE;
+    }
+
+    private void discarded() {
+        if (timer != null) {
+            timer.increment(FDBStoreTimer.Counts.QUERY_SORT_PLAN_DISCARDED);
+        }
+    }
+
+    private void finishGathering(@Nonnull RecordCursorResult<FDBQueriedRecord<M>> innerResult) {
+        if (innerResult.getNoNextReason().isSourceExhausted()) {
+            if (heap != null) {
+                full = heap.size() >= keepLimit;
+                final List<SortEntry<M>> entries = new ArrayList<>(heap);
+                heap = null;
+                entries.sort(entryComparator);
+                sorted = entries.iterator();
+            } else {
+                buffer.sort(entryComparator);
+                sorted = runFiles.isEmpty() ? buffer.iterator() : runFiles.merge(buffer);
+                buffer = null;
+                fallbackPositions = null;
+            }
+        } else {
+            // An unseen record might still come before any of those seen so far, so nothing can be returned yet.
+            List<Tuple> positions;
+            int limit;
+            if (heap != null) {
+                positions = heap.stream().map(SortEntry::getPosition).collect(Collectors.toList());
+                limit = keepLimit;
+            } else {
+                positions = new ArrayList<>(fallbackPositions);
+                limit = maxRecordsInMemory;
+            }
+            // Keep the continuation small by only keeping the best positions that fit. Since those seen after them are
+            // forgotten, the resumed cursor can then only return as many records as were kept.
+            positions.sort(comparator);
+            int kept = 0;
+            int bytes = 0;
+            while (kept < positions.size()) {
+                bytes += positions.get(kept).getPackedSize();
+                if (kept > 0 && bytes > maxContinuationBytes) {
+                    break;
+                }
+                kept++;
+            }
+            if (kept < positions.size()) {
+                positions = new ArrayList<>(positions.subList(0, kept));
+                limit = kept;
+            }
+            final SortCursorContinuation continuation = new SortCursorContinuation(lastPosition,
+                    innerResult.getContinuation().toBytes(), positions, limit);
+            stopResult = RecordCursorResult.withoutNextValue(continuation, innerResult.getNoNextReason());
+            sorted = Collections.emptyIterator();
+            release();
+        }
+    }
+
+    @Nonnull
+    private RecordCursorResult<FDBQueriedRecord<M>> computeNext() {
+        if (sorted.hasNext()) {
+            final SortEntry<M> entry = sorted.next();
+            lastPosition = entry.getPosition();
+            return RecordCursorResult.withNextValue(entry.getRecord(),
+                    new SortCursorContinuation(lastPosition, null, Collections.emptyList(), 0));
+        }
+        if (stopResult == null) {
+            if (full) {
+                // There may be more records after those that were kept, which will need another pass over the input.
+                stopResult = RecordCursorResult.withoutNextValue(
+                        new SortCursorContinuation(lastPosition, null, Collections.emptyList(), 0),
+                        NoNextReason.RETURN_LIMIT_REACHED);
+            } else {
+                stopResult = RecordCursorResult.exhausted();
+            }
+            release();
+        }
+        return stopResult;
+    }
+
+    private void release() {
+        heap = null;
+        buffer = null;
+        fallbackPositions = null;
+        if (runFiles != null) {
+            runFiles.close();
+            runFiles = null;
+        }
+    }
+
+    private static class SortCursorContinuation implements RecordCursorContinuation {
+        @Nullable
+        private final Tuple lastPosition;
+        @Nullable
+        private final byte[] innerContinuation;
+        @Nonnull
+        private final List<Tuple> keptPositions;
+        private final int keptLimit;
+        @Nullable
+        private byte[] cachedBytes;
+
+        private SortCursorContinuation(@Nullable Tuple lastPosition, @Nullable byte[] innerContinuation,
+                                       @Nonnull List<Tuple> keptPositions, int keptLimit) {
+            this.lastPosition = lastPosition;
+            this.innerContinuation = innerContinuation;
+            this.keptPositions = keptPositions;
+            this.keptLimit = keptLimit;
+        }
+
+        @Nullable
+        @Override
+        public byte[] toBytes() {
+            if (cachedBytes == null) {
+                final RecordCursorProto.SortContinuation.Builder builder = RecordCursorProto.SortContinuation.newBuilder();
+                if (lastPosition != null) {
+                    builder.setLastPosition(ByteString.copyFrom(lastPosition.pack()));
+                }
+                if (innerContinuation != null) {
+                    builder.setInnerContinuation(ByteString.copyFrom(innerContinuation));
+                }
+                if (keptLimit > 0) {
+                    builder.setKeptLimit(keptLimit);
+                }
+                for (Tuple position : keptPositions) {
+                    builder.addKeptPosition(ByteString.copyFrom(position.pack()));
+                }
+                cachedBytes = builder.build().toByteArray();
+            }
+            return cachedBytes;
+        }
+
+        @Override
+        public boolean isEnd() {
+            return false;
+        }
+    }
+}
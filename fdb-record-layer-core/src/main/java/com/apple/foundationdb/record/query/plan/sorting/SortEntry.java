@@ -0,0 +1,53 @@
+/*
+ * SortEntry.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.sorting;
+
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A record being sorted together with its position in the sort order.
+ * @param <M> type used to represent stored records
+ */
+class SortEntry<M extends Message> {
+    @Nonnull
+    private final Tuple position;
+    @Nonnull
+    private final FDBQueriedRecord<M> record;
+
+    SortEntry(@Nonnull Tuple position, @Nonnull FDBQueriedRecord<M> record) {
+        this.position = position;
+        this.record = record;
+    }
+
+    @Nonnull
+    public Tuple getPosition() {
+        return position;
+    }
+
+    @Nonnull
+    public FDBQueriedRecord<M> getRecord() {
+        return record;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * SortedRunFiles.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.sorting;
+
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.metadata.RecordType;
+import com.apple.foundationdb.record.provider.common.RecordSerializer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordVersion;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoredRecord;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sorted runs of records written to local temporary files, which can then be merged back into a single sorted stream.
+ *
+ * <p>
+ * Each entry in a run file holds the record's sort position, the name of its record type, the record serialized
+ * using the store's {@link RecordSerializer}, and the record's version, if it has one.
+ * </p>
+ *
+ * <p>
+ * Runs are written by a thread pool of their own, since file I/O blocks and the executor used for the database
+ * should not be tied up waiting for it.
+ * </p>
+ * @param <M> type used to represent stored records
+ */
+class SortedRunFiles<M extends Message> implements AutoCloseable {
+    private static final ExecutorService WRITE_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("fdb-record-sort-%d").build());
+
+    @Nonnull
+    private final RecordMetaData metaData;
+    @Nonnull
+    private final RecordSerializer<M> serializer;
+    @Nullable
+    private final FDBStoreTimer timer;
+    @Nonnull
+    private final Comparator<Tuple> comparator;
+    @Nonnull
+    private final List<Path> runs = new ArrayList<>();
+    @Nonnull
+    private final List<DataInputStream> readers = new ArrayList<>();
+    private boolean closed;
+
+    SortedRunFiles(@Nonnull FDBRecordStoreBase<M> store, @Nonnull Comparator<Tuple> comparator) {
+        this.metaData = store.getRecordMetaData();
+        this.serializer = store.getSerializer();
+        this.timer = store.getTimer();
+        this.comparator = comparator;
+    }
+
+    public synchronized boolean isEmpty() {
+        return runs.isEmpty();
+    }
+
+    /**
+     * Write a run of entries, which must already be sorted, to a new file.
+     * The file is written by a separate thread pool and the returned future completes on the given executor.
+     * @param sortedEntries the entries to write, which must not be changed until the write is complete
+     * @param executor the executor on which to complete the returned future
+     * @return a future that is complete when the run has been written
+     */
+    @Nonnull
+    public CompletableFuture<Void> writeRunAsync(@Nonnull List<SortEntry<M>> sortedEntries, @Nonnull Executor executor) {
+        return CompletableFuture.runAsync(() -> writeRun(sortedEntries), WRITE_EXECUTOR)
+                .thenApplyAsync(vignore -> null, executor);
+    }
+
+    private void writeRun(@Nonnull List<SortEntry<M>> sortedEntries) {
+        final Path run;
+        try {
+            run = Files.createTempFile("fdb-record-sort", ".run");
+        } catch (IOException ex) {
+            throw new RecordCoreException("error writing sorted run", ex);
+        }
+        boolean written = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                for (SortEntry<M> entry : sortedEntries) {
+                    writeEntry(out, entry);
+                }
+            }
+            written = true;
+        } catch (IOException ex) {
+            throw new RecordCoreException("error writing sorted run", ex);
+        } finally {
+            if (!written) {
+                deleteRun(run);
+            }
+        }
+        synchronized (this) {
+            if (closed) {
+                // The cursor was closed while the run was being written, so no one will read it.
+                deleteRun(run);
+                return;
+            }
+            runs.add(run);
+        }
+        if (timer != null) {
+            timer.increment(FDBStoreTimer.Counts.QUERY_SORT_PLAN_SPILLED_RUNS);
+            timer.increment(FDBStoreTimer.Counts.QUERY_SORT_PLAN_SPILLED_RECORDS, sortedEntries.size());
+        }
+    }
+
+    /**
+     * Merge all the runs written so far with a final run held in memory.
+     * @param lastRun a sorted run that was not written to a file
+     * @return an iterator over the entries of all runs in sort order
+     */
+    @Nonnull
+    public synchronized Iterator<SortEntry<M>> merge(@Nonnull List<SortEntry<M>> lastRun) {
+        final List<Iterator<SortEntry<M>>> iterators = new ArrayList<>(runs.size() + 1);
+        for (Path run : runs) {
+            iterators.add(readRun(run));
+        }
+        iterators.add(lastRun.iterator());
+        return Iterators.mergeSorted(iterators, (e1, e2) -> comparator.compare(e1.getPosition(), e2.getPosition()));
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (DataInputStream in : readers) {
+            try {
+                in.close();
+            } catch (IOException ex) {
+                // Nothing more can be done with it.
+            }
+        }
+        readers.clear();
+        for (Path run : runs) {
+            deleteRun(run);
+        }
+        runs.clear();
+    }
+
+    private static void deleteRun(@Nonnull Path run) {
+        try {
+            Files.deleteIfExists(run);
+        } catch (IOException ex) {
+            run.toFile().deleteOnExit();
+        }
+    }
+
+    private void writeEntry(@Nonnull DataOutputStream out, @Nonnull SortEntry<M> entry) throws IOException {
+        final FDBQueriedRecord<M> record = entry.getRecord();
+        final RecordType recordType = record.getRecordType();
+        writeBytes(out, entry.getPosition().pack());
+        out.writeUTF(recordType.getName());
+        writeBytes(out, serializer.serialize(metaData, recordType, record.getRecord(), timer));
+        out.writeBoolean(record.hasVersion());
+        if (record.hasVersion()) {
+            writeBytes(out, record.getVersion().toBytes());
+        }
+    }
+
+    private static void writeBytes(@Nonnull DataOutputStream out, @Nonnull byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nonnull
+    private Iterator<SortEntry<M>> readRun(@Nonnull Path run) {
+        final DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+        } catch (IOException ex) {
+            throw new RecordCoreException("error reading sorted run", ex);
+        }
+        readers.add(in);
+        return new AbstractIterator<SortEntry<M>>() {
+            @Override
+            protected SortEntry<M> computeNext() {
+                try {
+                    final byte[] positionBytes;
+                    try {
+                        positionBytes = readBytes(in);
+                    } catch (EOFException ex) {
+                        return endOfData();
+                    }
+                    return readEntry(in, Tuple.fromBytes(positionBytes));
+                } catch (IOException ex) {
+                    throw new RecordCoreException("error reading sorted run", ex);
+                }
+            }
+        };
+    }
+
+    @Nonnull
+    private SortEntry<M> readEntry(@Nonnull DataInputStream in, @Nonnull Tuple position) throws IOException {
+        final Tuple primaryKey = RecordQuerySortKey.getPrimaryKey(position);
+        final RecordType recordType = metaData.getRecordType(in.readUTF());
+        final M record = serializer.deserialize(metaData, primaryKey, readBytes(in), timer);
+        final FDBRecordVersion version = in.readBoolean() ? FDBRecordVersion.fromBytes(readBytes(in), false) : null;
+        final FDBStoredRecord<M> storedRecord = FDBStoredRecord.newBuilder(record)
+                .setPrimaryKey(primaryKey)
+                .setRecordType(recordType)
+                .setVersion(version)
+                .build();
+        return new SortEntry<>(position, FDBQueriedRecord.stored(storedRecord));
+    }
+
+    @Nonnull
+    private static byte[] readBytes(@Nonnull DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * package-info.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Classes for sorting query results that are not already in the requested order.
+ *
+ * <p>
+ * A {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan} is only planned when no index can
+ * supply the requested sort. It keeps a bounded heap when a row limit is known and otherwise merges sorted runs,
+ * spilling them to local files once a memory budget is exceeded.
+ * </p>
+ */
+package com.apple.foundationdb.record.query.plan.sorting;
@@ -0,0 +1,188 @@
+/*
+ * IndexStatistics.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.statistics;
+
+import com.apple.foundationdb.Range;
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
+import com.apple.foundationdb.tuple.ByteArrayUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Statistics about the entries of an index, used to estimate how many entries a scan of the index will read.
+ *
+ * <p>
+ * The statistics consist of the number of entries, an estimate of the number of distinct values of each prefix of
+ * the indexed columns, and a uniform sample of the entries. A scan whose comparisons are all against constants is
+ * estimated by counting the sampled entries that fall within its range. Otherwise, or when too few sampled entries
+ * match for that count to be meaningful, equality comparisons are assumed to select an average-sized group of
+ * entries with the same prefix, and any inequality comparison is assumed to select a fixed fraction of those.
+ * </p>
+ *
+ * @see IndexStatisticsSketch
+ */
+@API(API.Status.EXPERIMENTAL)
+public class IndexStatistics {
+    /**
+     * The fraction of entries assumed to be selected by inequality comparisons whose selectivity cannot be
+     * estimated from the sample.
+     */
+    public static final double DEFAULT_INEQUALITY_SELECTIVITY = 1.0 / 3;
+    /**
+     * The number of sampled entries that must fall within a scan's range for the estimate to be taken from the sample.
+     */
+    public static final int MIN_SAMPLE_MATCHES = 4;
+
+    private final long entryCount;
+    @Nonnull
+    private final double[] distinctCounts;
+    @Nonnull
+    private final List<byte[]> sample;
+    // Statistics are part of plan cache keys, so the hash of the sample is only worked out once.
+    private final int hashCode;
+
+    public IndexStatistics(long entryCount, @Nonnull double[] distinctCounts, @Nonnull List<byte[]> sample) {
+        this.entryCount = entryCount;
+        this.distinctCounts = Arrays.copyOf(distinctCounts, distinctCounts.length);
+        this.sample = Collections.unmodifiableList(sample);
+        int sampleHash = 0;
+        for (byte[] key : sample) {
+            sampleHash = 31 * sampleHash + Arrays.hashCode(key);
+        }
+        this.hashCode = Objects.hash(entryCount, Arrays.hashCode(this.distinctCounts), sampleHash);
+    }
+
+    /**
+     * Get the number of entries in the index.
+     * @return the number of entries
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Get the estimated number of distinct values of the given number of leading indexed columns.
+     * @param prefixLength the number of leading columns
+     * @return the estimated number of distinct prefixes
+     */
+    public double getDistinctCount(int prefixLength) {
+        if (prefixLength <= 0 || distinctCounts.length == 0) {
+            return 1.0;
+        }
+        return Math.max(1.0, distinctCounts[Math.min(prefixLength, distinctCounts.length) - 1]);
+    }
+
+    /**
+     * Get the number of sampled index entries.
+     * @return the size of the sample
+     */
+    public int getSampleSize() {
+        return sample.size();
+    }
+
+    /**
+     * Estimate the number of index entries that a scan with the given comparisons will read.
+     * @param comparisons the comparisons of a scan of the index by value
+     * @return the estimated number of entries
+     */
+    public double estimateEntries(@Nonnull ScanComparisons comparisons) {
+        if (entryCount == 0 || comparisons.isEmpty()) {
+            return entryCount;
+        }
+        double estimate = entryCount / getDistinctCount(comparisons.getEqualitySize());
+        if (!comparisons.getInequalityComparisons().isEmpty()) {
+            estimate *= DEFAULT_INEQUALITY_SELECTIVITY;
+        }
+        final Range range = constantRange(comparisons);
+        if (range != null && !sample.isEmpty()) {
+            int matches = 0;
+            for (byte[] key : sample) {
+                if (ByteArrayUtil.compareUnsigned(range.begin, key) <= 0 && ByteArrayUtil.compareUnsigned(key, range.end) < 0) {
+                    matches++;
+                }
+            }
+            if (sample.size() >= entryCount) {
+                // The sample is the whole index.
+                return matches;
+            }
+            final double sampleEstimate = (double)entryCount * Math.max(matches, MIN_SAMPLE_MATCHES) / sample.size();
+            if (matches >= MIN_SAMPLE_MATCHES) {
+                return sampleEstimate;
+            }
+            // Too few matches to go by, but the sample does show that the range is no bigger than this.
+            estimate = Math.min(estimate, sampleEstimate);
+        }
+        return estimate;
+    }
+
+    @Nullable
+    private static Range constantRange(@Nonnull ScanComparisons comparisons) {
+        for (Comparisons.Comparison comparison : comparisons.getEqualityComparisons()) {
+            if (!(comparison instanceof Comparisons.SimpleComparison)) {
+                return null;
+            }
+        }
+        for (Comparisons.Comparison comparison : comparisons.getInequalityComparisons()) {
+            if (!(comparison instanceof Comparisons.SimpleComparison)) {
+                return null;
+            }
+        }
+        return comparisons.toTupleRange().toRange();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        IndexStatistics that = (IndexStatistics) o;
+        if (entryCount != that.entryCount || hashCode != that.hashCode ||
+                !Arrays.equals(distinctCounts, that.distinctCounts) || sample.size() != that.sample.size()) {
+            return false;
+        }
+        for (int i = 0; i < sample.size(); i++) {
+            if (!Arrays.equals(sample.get(i), that.sample.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexStatistics{entries=" + entryCount + ", distinct=" + Arrays.toString(distinctCounts) + ", sampled=" + sample.size() + "}";
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * IndexStatisticsSketch.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.statistics;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.tuple.ByteArrayUtil2;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.foundationdb.tuple.TupleHelpers;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A mergeable summary of the entries of an index, from which {@link IndexStatistics} are computed.
+ *
+ * <p>
+ * The sketch keeps three things:
+ * </p>
+ * <ul>
+ * <li>the number of entries added to it</li>
+ * <li>for each prefix length of the indexed columns, a HyperLogLog sketch of the distinct prefixes</li>
+ * <li>a uniform sample of the entries, consisting of those whose keys have the smallest hashes</li>
+ * </ul>
+ *
+ * <p>
+ * All three can be combined with those of another sketch, so entries can be added in separate transactions, for
+ * example a chunk at a time by an online index build, and the partial sketches merged when statistics are needed.
+ * Removing entries is not supported: the sketch only grows, so statistics need to be collected again once an index
+ * has changed a lot.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class IndexStatisticsSketch {
+    /**
+     * The default number of bits of the hash used to pick a register of the distinct count sketches. The sketch for
+     * each prefix length has {@code 1 << precision} registers and a standard error of about {@code 1.04 / sqrt(1 << precision)}.
+     */
+    public static final int DEFAULT_PRECISION = 10;
+    /**
+     * The default number of index entries to keep in the sample.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 256;
+
+    private static final long FORMAT_VERSION = 1L;
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final int columnSize;
+    private final int precision;
+    private final int sampleSize;
+    private long entryCount;
+    @Nonnull
+    private final byte[][] registers;
+    @Nonnull
+    private final TreeMap<Long, byte[]> sample;
+
+    public IndexStatisticsSketch(int columnSize) {
+        this(columnSize, DEFAULT_PRECISION, DEFAULT_SAMPLE_SIZE);
+    }
+
+    public IndexStatisticsSketch(int columnSize, int precision, int sampleSize) {
+        if (columnSize < 0 || precision < 4 || precision > 16 || sampleSize < 1) {
+            throw new RecordCoreArgumentException("invalid index statistics sketch parameters")
+                    .addLogInfo("columnSize", columnSize)
+                    .addLogInfo("precision", precision)
+                    .addLogInfo("sampleSize", sampleSize);
+        }
+        this.columnSize = columnSize;
+        this.precision = precision;
+        this.sampleSize = sampleSize;
+        this.registers = new byte[columnSize][1 << precision];
+        this.sample = new TreeMap<>();
+    }
+
+    public int getColumnSize() {
+        return columnSize;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Add an index entry to the sketch.
+     * @param indexKey the key of the index entry, that is, the indexed values followed by the rest of the primary key
+     */
+    public void add(@Nonnull Tuple indexKey) {
+        entryCount++;
+        final int prefixes = Math.min(columnSize, indexKey.size());
+        for (int i = 0; i < prefixes; i++) {
+            addHash(registers[i], hash(TupleHelpers.subTuple(indexKey, 0, i + 1).pack()));
+        }
+        final byte[] packed = indexKey.pack();
+        addToSample(hash(packed), packed);
+    }
+
+    /**
+     * Add the entries summarized by another sketch to this one.
+     * @param other a sketch of the same index
+     */
+    public void merge(@Nonnull IndexStatisticsSketch other) {
+        if (other.columnSize != columnSize || other.precision != precision) {
+            throw new RecordCoreArgumentException("index statistics sketches do not match")
+                    .addLogInfo("columnSize", columnSize)
+                    .addLogInfo("otherColumnSize", other.columnSize)
+                    .addLogInfo("precision", precision)
+                    .addLogInfo("otherPrecision", other.precision);
+        }
+        entryCount += other.entryCount;
+        for (int i = 0; i < columnSize; i++) {
+            for (int j = 0; j < registers[i].length; j++) {
+                if (other.registers[i][j] > registers[i][j]) {
+                    registers[i][j] = other.registers[i][j];
+                }
+            }
+        }
+        for (Map.Entry<Long, byte[]> entry : other.sample.entrySet()) {
+            addToSample(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Get the estimated number of distinct prefixes of the given length.
+     * @param prefixLength the number of leading indexed columns
+     * @return the estimated number of distinct values of those columns
+     */
+    public double estimateDistinctCount(int prefixLength) {
+        if (prefixLength <= 0 || entryCount == 0) {
+            return entryCount == 0 ? 0.0 : 1.0;
+        }
+        final byte[] prefixRegisters = registers[Math.min(prefixLength, columnSize) - 1];
+        final int m = prefixRegisters.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte register : prefixRegisters) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        final double alpha = 0.7213 / (1.0 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Small range correction: linear counting is more accurate while many registers are unused.
+            estimate = m * Math.log((double)m / zeros);
+        }
+        // There cannot be more distinct prefixes than entries.
+        return Math.min(estimate, entryCount);
+    }
+
+    /**
+     * Get the statistics summarized by this sketch.
+     * @return the statistics for use by the planner
+     */
+    @Nonnull
+    public IndexStatistics toStatistics() {
+        final double[] distinctCounts = new double[columnSize];
+        for (int i = 0; i < columnSize; i++) {
+            distinctCounts[i] = estimateDistinctCount(i + 1);
+        }
+        return new IndexStatistics(entryCount, distinctCounts, new ArrayList<>(sample.values()));
+    }
+
+    /**
+     * Serialize this sketch.
+     * @return the serialized form of this sketch
+     * @see #fromBytes
+     */
+    @Nonnull
+    public byte[] toBytes() {
+        final List<Object> registerItems = new ArrayList<>(columnSize);
+        registerItems.addAll(Arrays.asList(registers));
+        return Tuple.from(FORMAT_VERSION, precision, sampleSize, entryCount,
+                Tuple.fromList(registerItems), Tuple.fromList(new ArrayList<>(sample.values()))).pack();
+    }
+
+    /**
+     * Deserialize a sketch.
+     * @param bytes the serialized form of a sketch
+     * @return the deserialized sketch
+     * @see #toBytes
+     */
+    @Nonnull
+    public static IndexStatisticsSketch fromBytes(@Nonnull byte[] bytes) {
+        final Tuple tuple = Tuple.fromBytes(bytes);
+        if (tuple.getLong(0) != FORMAT_VERSION) {
+            throw new RecordCoreException("unknown index statistics sketch format")
+                    .addLogInfo("formatVersion", tuple.getLong(0))
+                    .addLogInfo("raw_bytes", ByteArrayUtil2.loggable(bytes));
+        }
+        final Tuple registerItems = tuple.getNestedTuple(4);
+        final IndexStatisticsSketch sketch = new IndexStatisticsSketch(registerItems.size(), (int)tuple.getLong(1), (int)tuple.getLong(2));
+        sketch.entryCount = tuple.getLong(3);
+        for (int i = 0; i < sketch.columnSize; i++) {
+            final byte[] prefixRegisters = registerItems.getBytes(i);
+            System.arraycopy(prefixRegisters, 0, sketch.registers[i], 0, Math.min(prefixRegisters.length, sketch.registers[i].length));
+        }
+        for (Object item : tuple.getNestedTuple(5)) {
+            final byte[] packed = (byte[])item;
+            sketch.addToSample(hash(packed), packed);
+        }
+        return sketch;
+    }
+
+    private static long hash(@Nonnull byte[] bytes) {
+        return HASH_FUNCTION.hashBytes(bytes).asLong();
+    }
+
+    private void addHash(@Nonnull byte[] prefixRegisters, long hash) {
+        final int register = (int)(hash >>> (Long.SIZE - precision));
+        // The rank is the position of the first one bit in the rest of the hash.
+        final byte rank = (byte)Math.min(Long.numberOfLeadingZeros(hash << precision) + 1, Long.SIZE - precision + 1);
+        if (rank > prefixRegisters[register]) {
+            prefixRegisters[register] = rank;
+        }
+    }
+
+    private void addToSample(long hash, @Nonnull byte[] packed) {
+        if (sample.size() < sampleSize || hash < sample.lastKey()) {
+            sample.put(hash, packed);
+            if (sample.size() > sampleSize) {
+                sample.pollLastEntry();
+            }
+        }
+    }
+}
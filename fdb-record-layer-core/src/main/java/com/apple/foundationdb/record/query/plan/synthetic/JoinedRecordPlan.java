@@ -20,6 +20,7 @@
 
 package com.apple.foundationdb.record.query.plan.synthetic;
 
+import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.EvaluationContextBuilder;
 import com.apple.foundationdb.record.ExecuteProperties;
@@ -40,6 +41,7 @@ import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -47,6 +49,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -220,6 +223,73 @@ class JoinedRecordPlan implements SyntheticRecordFromStoredRecordPlan  {
         return joinedContexts.map(this::toSyntheticRecord);
     }
 
+    /**
+     * Execute this plan for each of a batch of records.
+     *
+     * The records of a batch often join to the same records, as when many child records all have the same parent.
+     * Rather than querying again for each of them, the query for each join is executed only once for each distinct set of
+     * values bound for it across the whole batch, and all of the queries for the batch are started without waiting for one another.
+     * The number of records in a batch, and so the number of outstanding queries, is bounded by the caller.
+     * @param store record store against which to execute
+     * @param records the stored records from which to derive synthetic records
+     * @param <M> type of raw record
+     * @return a list with a future for the synthetic records derived from each record, in the same order as {@code records}
+     */
+    @Override
+    @Nonnull
+    public <M extends Message> List<CompletableFuture<List<FDBSyntheticRecord>>> executeBatch(@Nonnull FDBRecordStore store,
+                                                                                              @Nonnull List<FDBStoredRecord<M>> records) {
+        final Map<List<Object>, CompletableFuture<List<FDBStoredRecord<Message>>>> probes = new ConcurrentHashMap<>();
+        final List<CompletableFuture<List<FDBSyntheticRecord>>> results = new ArrayList<>(records.size());
+        for (FDBStoredRecord<M> record : records) {
+            final EvaluationContext context = joinedTypes.get(0).bind(EvaluationContext.EMPTY, record);
+            results.add(joinBatch(0, store, context, probes)
+                    .thenApply(contexts -> contexts.stream().map(this::toSyntheticRecord).collect(Collectors.toList())));
+        }
+        return results;
+    }
+
+    private CompletableFuture<List<EvaluationContext>> joinBatch(int depth, @Nonnull FDBRecordStore store, @Nonnull EvaluationContext context,
+                                                                 @Nonnull Map<List<Object>, CompletableFuture<List<FDBStoredRecord<Message>>>> probes) {
+        final JoinedType joinedType = joinedTypes.get(depth + 1);
+        return probe(depth, store, context, probes).thenCompose(joinedRecords -> {
+            final List<EvaluationContext> joinedContexts = new ArrayList<>(Math.max(joinedRecords.size(), 1));
+            for (FDBStoredRecord<Message> joinedRecord : joinedRecords) {
+                joinedContexts.add(joinedType.bind(context, joinedRecord));
+            }
+            if (joinedContexts.isEmpty() && joinedType.constituent.isOuterJoined()) {
+                joinedContexts.add(joinedType.bind(context, null));
+            }
+            if (depth == queries.size() - 1) {
+                return CompletableFuture.completedFuture(joinedContexts);
+            }
+            final List<CompletableFuture<List<EvaluationContext>>> nested = new ArrayList<>(joinedContexts.size());
+            for (EvaluationContext joinedContext : joinedContexts) {
+                nested.add(joinBatch(depth + 1, store, joinedContext, probes));
+            }
+            return AsyncUtil.getAll(nested).thenApply(lists -> {
+                final List<EvaluationContext> flattened = new ArrayList<>();
+                lists.forEach(flattened::addAll);
+                return flattened;
+            });
+        });
+    }
+
+    // The query at a given depth depends only on the values bound by the constituents before it, so those values identify it.
+    private CompletableFuture<List<FDBStoredRecord<Message>>> probe(int depth, @Nonnull FDBRecordStore store, @Nonnull EvaluationContext context,
+                                                                    @Nonnull Map<List<Object>, CompletableFuture<List<FDBStoredRecord<Message>>>> probes) {
+        final List<Object> key = new ArrayList<>();
+        key.add(depth);
+        for (int i = 0; i <= depth; i++) {
+            for (BindingPlan bindingPlan : joinedTypes.get(i).bindingPlans) {
+                key.add(context.getBinding(bindingPlan.name));
+            }
+        }
+        return probes.computeIfAbsent(key, k -> queries.get(depth).execute(store, context)
+                .map(FDBQueriedRecord::getStoredRecord)
+                .asList());
+    }
+
     private RecordCursor<EvaluationContext> query(int depth, @Nonnull FDBRecordStore store, @Nonnull EvaluationContext context,
                                                   @Nullable byte[] continuation, @Nonnull ExecuteProperties executeProperties) {
         RecordCursor<FDBQueriedRecord<Message>> records = queries.get(depth).execute(store, context, continuation, executeProperties);
@@ -29,10 +29,15 @@ import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Select a synthetic record sub-plan based on the record type of the given record and then execute
@@ -80,6 +85,37 @@ class SyntheticRecordByTypePlan implements SyntheticRecordFromStoredRecordPlan
         }
     }
 
+    @Override
+    @Nonnull
+    public <M extends Message> List<CompletableFuture<List<FDBSyntheticRecord>>> executeBatch(@Nonnull FDBRecordStore store,
+                                                                                              @Nonnull List<FDBStoredRecord<M>> records) {
+        // Records of the same type go to the same sub-plan together, so that they can share its work.
+        final Map<String, List<Integer>> positionsByType = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            positionsByType.computeIfAbsent(records.get(i).getRecordType().getName(), k -> new ArrayList<>()).add(i);
+        }
+        final List<CompletableFuture<List<FDBSyntheticRecord>>> results = new ArrayList<>(Collections.nCopies(records.size(), null));
+        for (Map.Entry<String, List<Integer>> entry : positionsByType.entrySet()) {
+            final SyntheticRecordFromStoredRecordPlan subPlan = subPlans.get(entry.getKey());
+            final List<Integer> positions = entry.getValue();
+            if (subPlan == null) {
+                for (int position : positions) {
+                    results.set(position, CompletableFuture.completedFuture(Collections.emptyList()));
+                }
+            } else {
+                final List<FDBStoredRecord<M>> subRecords = new ArrayList<>(positions.size());
+                for (int position : positions) {
+                    subRecords.add(records.get(position));
+                }
+                final List<CompletableFuture<List<FDBSyntheticRecord>>> subResults = subPlan.executeBatch(store, subRecords);
+                for (int i = 0; i < positions.size(); i++) {
+                    results.set(positions.get(i), subResults.get(i));
+                }
+            }
+        }
+        return results;
+    }
+
     @Override
     public String toString() {
         return subPlans.toString();
@@ -20,6 +20,7 @@
 
 package com.apple.foundationdb.record.query.plan.synthetic;
 
+import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.PipelineOperation;
 import com.apple.foundationdb.record.PlanHashable;
@@ -32,10 +33,12 @@ import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -96,6 +99,37 @@ class SyntheticRecordConcatPlan implements SyntheticRecordFromStoredRecordPlan
         return cursor;
     }
 
+    @Override
+    @Nonnull
+    public <M extends Message> List<CompletableFuture<List<FDBSyntheticRecord>>> executeBatch(@Nonnull FDBRecordStore store,
+                                                                                              @Nonnull List<FDBStoredRecord<M>> records) {
+        final List<List<CompletableFuture<List<FDBSyntheticRecord>>>> subResults = new ArrayList<>(subPlans.size());
+        for (SyntheticRecordFromStoredRecordPlan subPlan : subPlans) {
+            subResults.add(subPlan.executeBatch(store, records));
+        }
+        final List<CompletableFuture<List<FDBSyntheticRecord>>> results = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            final List<CompletableFuture<List<FDBSyntheticRecord>>> recordResults = new ArrayList<>(subPlans.size());
+            for (List<CompletableFuture<List<FDBSyntheticRecord>>> subResult : subResults) {
+                recordResults.add(subResult.get(i));
+            }
+            // As with execute, duplicates are only eliminated among the synthetic records derived from the same record.
+            results.add(AsyncUtil.getAll(recordResults).thenApply(lists -> {
+                final List<FDBSyntheticRecord> combined = new ArrayList<>();
+                final Set<Tuple> seen = new HashSet<>();
+                for (List<FDBSyntheticRecord> list : lists) {
+                    for (FDBSyntheticRecord syntheticRecord : list) {
+                        if (!needDistinct || seen.add(syntheticRecord.getPrimaryKey())) {
+                            combined.add(syntheticRecord);
+                        }
+                    }
+                }
+                return combined;
+            }));
+        }
+        return results;
+    }
+
     public static RecordCursor<FDBSyntheticRecord> addDistinct(RecordCursor<FDBSyntheticRecord> cursor) {
         final Set<Tuple> seen = new HashSet<>();
         return cursor.filter(r -> seen.add(r.getPrimaryKey()));
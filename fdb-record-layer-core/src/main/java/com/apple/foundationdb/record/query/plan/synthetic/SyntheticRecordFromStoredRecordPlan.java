@@ -31,7 +31,10 @@ import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A plan for deriving synthetic records from a given record.
@@ -88,4 +91,26 @@ public interface SyntheticRecordFromStoredRecordPlan extends PlanHashable  {
         return execute(store, record, null, ExecuteProperties.SERIAL_EXECUTE);
     }
 
+    /**
+     * Execute this plan for each of a batch of records.
+     *
+     * The result for each record is the same as that of {@link #execute(FDBRecordStore, FDBStoredRecord)}, but a plan
+     * may share work between the records of the batch, such as by performing a lookup needed by more than one of them
+     * only once.
+     * @param store record store against which to execute
+     * @param records the stored records from which to derive synthetic records
+     * @param <M> type of raw record
+     * @return a list with a future for the synthetic records derived from each record, in the same order as {@code records}
+     */
+    @Nonnull
+    @API(API.Status.EXPERIMENTAL)
+    default <M extends Message> List<CompletableFuture<List<FDBSyntheticRecord>>> executeBatch(@Nonnull FDBRecordStore store,
+                                                                                               @Nonnull List<FDBStoredRecord<M>> records) {
+        final List<CompletableFuture<List<FDBSyntheticRecord>>> results = new ArrayList<>(records.size());
+        for (FDBStoredRecord<M> record : records) {
+            results.add(execute(store, record).asList());
+        }
+        return results;
+    }
+
 }
@@ -22,24 +22,40 @@ package com.apple.foundationdb.record.query.plan.temp;
 
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.statistics.IndexStatistics;
 import com.apple.foundationdb.record.query.plan.temp.properties.ElementPredicateCountProperty;
+import com.apple.foundationdb.record.query.plan.temp.properties.EstimatedIndexEntriesProperty;
 import com.apple.foundationdb.record.query.plan.temp.properties.RelationalExpressionDepthProperty;
 import com.apple.foundationdb.record.query.plan.temp.properties.TypeFilterCountProperty;
 import com.apple.foundationdb.record.query.plan.temp.properties.UnmatchedFieldsProperty;
 
 import javax.annotation.Nonnull;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Map;
 
 /**
  * A comparator implementing the current heuristic cost model for the {@link CascadesPlanner}.
+ *
+ * <p>
+ * When {@link IndexStatistics} are available for the indexes that two plans scan, the plan that is estimated to
+ * read fewer index entries is preferred over one that merely has fewer residual filters.
+ * </p>
  */
 @API(API.Status.EXPERIMENTAL)
 public class CascadesCostModel implements Comparator<RelationalExpression> {
     @Nonnull
     private final PlanContext planContext;
+    @Nonnull
+    private final Map<String, IndexStatistics> indexStatistics;
 
     public CascadesCostModel(@Nonnull PlanContext planContext) {
+        this(planContext, Collections.emptyMap());
+    }
+
+    public CascadesCostModel(@Nonnull PlanContext planContext, @Nonnull Map<String, IndexStatistics> indexStatistics) {
         this.planContext = planContext;
+        this.indexStatistics = indexStatistics;
     }
 
     @Override
@@ -51,6 +67,25 @@ public class CascadesCostModel implements Comparator<RelationalExpression> {
             return 1;
         }
 
+        // prefer any plan that does not have to sort records itself
+        int sortPlanCompare = Boolean.compare(RelationalExpressionDepthProperty.SORT_PLAN_DEPTH.evaluate(a) != Integer.MAX_VALUE,
+                RelationalExpressionDepthProperty.SORT_PLAN_DEPTH.evaluate(b) != Integer.MAX_VALUE);
+        if (sortPlanCompare != 0) {
+            return sortPlanCompare;
+        }
+
+        if (!indexStatistics.isEmpty()) {
+            // prefer the plan that reads fewer index entries, if that is known for both
+            double estimatedA = EstimatedIndexEntriesProperty.evaluate(indexStatistics, a);
+            double estimatedB = EstimatedIndexEntriesProperty.evaluate(indexStatistics, b);
+            if (!Double.isNaN(estimatedA) && !Double.isNaN(estimatedB)) {
+                int estimatedEntriesCompare = Double.compare(estimatedA, estimatedB);
+                if (estimatedEntriesCompare != 0) {
+                    return estimatedEntriesCompare;
+                }
+            }
+        }
+
         int unsatisfiedFilterCompare = Integer.compare(ElementPredicateCountProperty.evaluate(a),
                 ElementPredicateCountProperty.evaluate(b));
         if (unsatisfiedFilterCompare != 0) {
@@ -30,6 +30,7 @@ import com.apple.foundationdb.record.query.RecordQuery;
 import com.apple.foundationdb.record.query.plan.QueryPlanner;
 import com.apple.foundationdb.record.query.plan.plans.QueryPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.statistics.IndexStatistics;
 import com.apple.foundationdb.record.query.plan.temp.explain.PlannerGraphProperty;
 import com.google.common.annotations.VisibleForTesting;
 import org.slf4j.Logger;
@@ -37,7 +38,9 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.Map;
 
 /**
  * A Cascades-style query planner that converts a {@link RecordQuery} to a {@link RecordQueryPlan}, possibly using
@@ -113,6 +116,8 @@ public class CascadesPlanner implements QueryPlanner {
     @Nonnull
     private final PlannerRuleSet ruleSet;
     @Nonnull
+    private Map<String, IndexStatistics> indexStatistics;
+    @Nonnull
     private GroupExpressionRef<RelationalExpression> currentRoot;
     @Nonnull
     private Deque<Task> taskStack; // Use a Dequeue instead of a Stack because we don't need synchronization.
@@ -125,6 +130,7 @@ public class CascadesPlanner implements QueryPlanner {
         this.metaData = metaData;
         this.recordStoreState = recordStoreState;
         this.ruleSet = ruleSet;
+        this.indexStatistics = Collections.emptyMap();
         // Placeholders until we get a query.
         this.currentRoot = GroupExpressionRef.EMPTY;
         this.taskStack = new ArrayDeque<>();
@@ -177,6 +183,11 @@ public class CascadesPlanner implements QueryPlanner {
         // nothing to do here, yet
     }
 
+    @Override
+    public void setIndexStatistics(@Nonnull Map<String, IndexStatistics> indexStatistics) {
+        this.indexStatistics = indexStatistics;
+    }
+
     private interface Task {
         void execute();
     }
@@ -215,7 +226,7 @@ public class CascadesPlanner implements QueryPlanner {
                 // TODO this is very Volcano-style rather than Cascades, because there's no branch-and-bound pruning.
                 RelationalExpression bestMember = null;
                 for (RelationalExpression member : group.getMembers()) {
-                    if (bestMember == null || new CascadesCostModel(context).compare(member, bestMember) < 0) {
+                    if (bestMember == null || new CascadesCostModel(context, indexStatistics).compare(member, bestMember) < 0) {
                         bestMember = member;
                     }
                 }
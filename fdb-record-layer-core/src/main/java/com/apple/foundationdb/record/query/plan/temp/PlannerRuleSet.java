@@ -27,6 +27,7 @@ import com.apple.foundationdb.record.query.plan.temp.rules.FindPossibleIndexForA
 import com.apple.foundationdb.record.query.plan.temp.rules.FlattenNestedAndPredicateRule;
 import com.apple.foundationdb.record.query.plan.temp.rules.ImplementDistinctRule;
 import com.apple.foundationdb.record.query.plan.temp.rules.ImplementFilterRule;
+import com.apple.foundationdb.record.query.plan.temp.rules.ImplementSortRule;
 import com.apple.foundationdb.record.query.plan.temp.rules.ImplementUnorderedUnionRule;
 import com.apple.foundationdb.record.query.plan.temp.rules.OrToUnorderedUnionRule;
 import com.apple.foundationdb.record.query.plan.temp.rules.FullUnorderedExpressionToScanPlanRule;
@@ -93,6 +94,20 @@ public class PlannerRuleSet {
 
     public static final PlannerRuleSet ALL = new PlannerRuleSet(ALL_RULES);
 
+    /**
+     * Get a rule set with all the rules in {@link #ALL} as well as an {@link ImplementSortRule}, so that a sort that
+     * no index can satisfy is planned as a sort of the records instead of failing.
+     * @param maxSortRecordsInMemory the maximum number of records that a sort plan holds in memory at once
+     * @return a rule set that allows sorting without an index
+     */
+    @Nonnull
+    public static PlannerRuleSet withNonIndexSort(int maxSortRecordsInMemory) {
+        return new PlannerRuleSet(ImmutableList.<PlannerRule<? extends RelationalExpression>>builder()
+                .addAll(ALL_RULES)
+                .add(new ImplementSortRule(maxSortRecordsInMemory))
+                .build());
+    }
+
     @Nonnull
     private final Multimap<Class<? extends Bindable>, PlannerRule<? extends RelationalExpression>> ruleIndex =
             MultimapBuilder.hashKeys().arrayListValues().build();
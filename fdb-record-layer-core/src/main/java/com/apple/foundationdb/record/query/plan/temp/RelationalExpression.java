@@ -94,7 +94,7 @@ public interface RelationalExpression extends Bindable {
             List<Element> normalizedSort = query.getSort()
                     .normalizeForPlanner(baseSource, Collections.emptyList())
                     .flattenForPlanner();
-            expression = new LogicalSortExpression(normalizedSort, query.isSortReverse(), expression);
+            expression = new LogicalSortExpression(query.getSort(), normalizedSort, query.isSortReverse(), expression);
         }
 
         if (query.getFilter() != null) {
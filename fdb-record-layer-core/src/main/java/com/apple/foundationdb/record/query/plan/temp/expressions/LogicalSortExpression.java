@@ -21,6 +21,7 @@
 package com.apple.foundationdb.record.query.plan.temp.expressions;
 
 import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
 import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
 import com.apple.foundationdb.record.query.plan.temp.GroupExpressionRef;
 import com.apple.foundationdb.record.query.plan.temp.Quantifier;
@@ -29,6 +30,7 @@ import com.apple.foundationdb.record.query.plan.temp.view.Element;
 import com.google.common.collect.ImmutableList;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -36,6 +38,11 @@ import java.util.Objects;
 /**
  * A relational planner expression that represents an unimplemented sort on the records produced by its inner
  * relational planner expression.
+ *
+ * <p>
+ * When the sort comes directly from a {@link com.apple.foundationdb.record.query.RecordQuery}, the expression also
+ * remembers the query's sort {@link KeyExpression}, so that the sort can be implemented without an index if need be.
+ * </p>
  */
 @API(API.Status.EXPERIMENTAL)
 public class LogicalSortExpression implements RelationalExpressionWithChildren {
@@ -44,9 +51,15 @@ public class LogicalSortExpression implements RelationalExpressionWithChildren {
     @Nonnull
     private final List<Element> sort;
     private final boolean reverse;
+    @Nullable
+    private final KeyExpression sortKey;
     @Nonnull
     private final Quantifier.ForEach inner;
 
+    public LogicalSortExpression(@Nonnull KeyExpression sortKey, @Nonnull List<Element> sort, boolean reverse, @Nonnull RelationalExpression inner) {
+        this(Collections.emptyList(), sort, reverse, sortKey, GroupExpressionRef.of(inner));
+    }
+
     public LogicalSortExpression(@Nonnull List<Element> sort, boolean reverse, @Nonnull RelationalExpression inner) {
         this(sort, reverse, GroupExpressionRef.of(inner));
     }
@@ -62,9 +75,15 @@ public class LogicalSortExpression implements RelationalExpressionWithChildren {
 
     public LogicalSortExpression(@Nonnull List<Element> grouping, @Nonnull List<Element> sort, boolean reverse,
                                  @Nonnull ExpressionRef<RelationalExpression> inner) {
+        this(grouping, sort, reverse, null, inner);
+    }
+
+    private LogicalSortExpression(@Nonnull List<Element> grouping, @Nonnull List<Element> sort, boolean reverse,
+                                  @Nullable KeyExpression sortKey, @Nonnull ExpressionRef<RelationalExpression> inner) {
         this.grouping = grouping;
         this.sort = sort;
         this.reverse = reverse;
+        this.sortKey = sortKey;
         this.inner = Quantifier.forEach(inner);
     }
 
@@ -106,6 +125,15 @@ public class LogicalSortExpression implements RelationalExpressionWithChildren {
         return reverse;
     }
 
+    /**
+     * Get the key expression from which the sort was normalized, if known.
+     * @return the sort key expression or {@code null} if this sort was derived from another one
+     */
+    @Nullable
+    public KeyExpression getSortKey() {
+        return sortKey;
+    }
+
     @Nonnull
     private Quantifier getInner() {
         return inner;
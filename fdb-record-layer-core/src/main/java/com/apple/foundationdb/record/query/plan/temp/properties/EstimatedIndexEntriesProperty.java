@@ -0,0 +1,100 @@
+/*
+ * EstimatedIndexEntriesProperty.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.temp.properties;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryIndexPlan;
+import com.apple.foundationdb.record.query.plan.statistics.IndexStatistics;
+import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
+import com.apple.foundationdb.record.query.plan.temp.PlannerProperty;
+import com.apple.foundationdb.record.query.plan.temp.RelationalExpression;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A property that estimates the total number of index entries read by the index scans in a {@code RelationalExpression}
+ * tree, using the {@link IndexStatistics} of the scanned indexes.
+ *
+ * <p>
+ * The estimate is only known if every leaf of the tree is a scan of an index by value for which statistics are
+ * available. Otherwise, for example when the tree contains a scan of records or of an index without statistics, the
+ * property evaluates to {@link Double#NaN}. For a reference, the smallest known estimate of any member is used.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class EstimatedIndexEntriesProperty implements PlannerProperty<Double> {
+    @Nonnull
+    private final Map<String, IndexStatistics> indexStatistics;
+
+    public EstimatedIndexEntriesProperty(@Nonnull Map<String, IndexStatistics> indexStatistics) {
+        this.indexStatistics = indexStatistics;
+    }
+
+    @Nonnull
+    @Override
+    public Double evaluateAtExpression(@Nonnull RelationalExpression expression, @Nonnull List<Double> childResults) {
+        if (expression instanceof RecordQueryIndexPlan) {
+            final RecordQueryIndexPlan indexPlan = (RecordQueryIndexPlan)expression;
+            final IndexStatistics statistics = indexStatistics.get(indexPlan.getIndexName());
+            if (statistics == null || indexPlan.getScanType() != IndexScanType.BY_VALUE) {
+                return Double.NaN;
+            }
+            return statistics.estimateEntries(indexPlan.getComparisons());
+        }
+        if (childResults.isEmpty()) {
+            return Double.NaN;
+        }
+        double total = 0.0;
+        for (Double childResult : childResults) {
+            if (childResult == null) {
+                return Double.NaN;
+            }
+            total += childResult;
+        }
+        return total;
+    }
+
+    @Nonnull
+    @Override
+    public Double evaluateAtRef(@Nonnull ExpressionRef<? extends RelationalExpression> ref, @Nonnull List<Double> memberResults) {
+        double min = Double.NaN;
+        for (Double memberResult : memberResults) {
+            if (memberResult != null && !memberResult.isNaN() && (Double.isNaN(min) || memberResult < min)) {
+                min = memberResult;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Estimate the number of index entries read by the given expression.
+     * @param indexStatistics statistics for the indexes, by index name
+     * @param expression the expression to evaluate
+     * @return the estimated number of index entries, or {@link Double#NaN} if that cannot be estimated
+     */
+    public static double evaluate(@Nonnull Map<String, IndexStatistics> indexStatistics, @Nonnull RelationalExpression expression) {
+        final Double result = expression.acceptPropertyVisitor(new EstimatedIndexEntriesProperty(indexStatistics));
+        return result == null ? Double.NaN : result;
+    }
+}
@@ -20,6 +20,7 @@
 
 package com.apple.foundationdb.record.query.plan.temp.properties;
 
+import com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryTypeFilterPlan;
 import com.apple.foundationdb.record.query.plan.plans.RecordQueryUnorderedPrimaryKeyDistinctPlan;
 import com.apple.foundationdb.record.query.plan.temp.ExpressionRef;
@@ -44,6 +45,8 @@ public class RelationalExpressionDepthProperty implements PlannerProperty<Intege
             ImmutableSet.of(LogicalTypeFilterExpression.class, RecordQueryTypeFilterPlan.class));
     public static final RelationalExpressionDepthProperty DISTINCT_FILTER_DEPTH = new RelationalExpressionDepthProperty(
             ImmutableSet.of(LogicalDistinctExpression.class, RecordQueryUnorderedPrimaryKeyDistinctPlan.class));
+    public static final RelationalExpressionDepthProperty SORT_PLAN_DEPTH = new RelationalExpressionDepthProperty(
+            ImmutableSet.of(RecordQuerySortPlan.class));
 
     @Nonnull
     private final Set<Class<? extends RelationalExpression>> types;
@@ -0,0 +1,77 @@
+/*
+ * ImplementSortRule.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.temp.rules;
+
+import com.apple.foundationdb.annotation.API;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan;
+import com.apple.foundationdb.record.query.plan.sorting.RecordQuerySortKey;
+import com.apple.foundationdb.record.query.plan.temp.PlannerRule;
+import com.apple.foundationdb.record.query.plan.temp.PlannerRuleCall;
+import com.apple.foundationdb.record.query.plan.temp.expressions.LogicalSortExpression;
+import com.apple.foundationdb.record.query.plan.temp.matchers.AnyChildrenMatcher;
+import com.apple.foundationdb.record.query.plan.temp.matchers.ExpressionMatcher;
+import com.apple.foundationdb.record.query.plan.temp.matchers.QuantifierMatcher;
+import com.apple.foundationdb.record.query.plan.temp.matchers.TypeMatcher;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A rule that implements a sort expression by adding a {@link RecordQuerySortPlan} over an already implemented plan.
+ * This is the fallback for when neither {@link SortToIndexRule} nor {@link PushSortIntoExistingIndexRule} finds an
+ * index that supplies the order; the {@link com.apple.foundationdb.record.query.plan.temp.CascadesCostModel} prefers
+ * any plan without a sort plan to one with it.
+ *
+ * <p>
+ * The rule only applies to a {@link LogicalSortExpression} that remembers the sort key from the query, since
+ * the sort plan evaluates that key expression against each record. That key must produce a single value per
+ * record.
+ * </p>
+ */
+@API(API.Status.EXPERIMENTAL)
+public class ImplementSortRule extends PlannerRule<LogicalSortExpression> {
+    @Nonnull
+    private static final ExpressionMatcher<RecordQueryPlan> innerMatcher = TypeMatcher.of(RecordQueryPlan.class, AnyChildrenMatcher.ANY);
+    @Nonnull
+    private static final ExpressionMatcher<LogicalSortExpression> root =
+            TypeMatcher.of(LogicalSortExpression.class,
+                    QuantifierMatcher.forEach(innerMatcher));
+
+    private final int maxRecordsInMemory;
+
+    public ImplementSortRule(int maxRecordsInMemory) {
+        super(root);
+        this.maxRecordsInMemory = maxRecordsInMemory;
+    }
+
+    @Override
+    public void onMatch(@Nonnull PlannerRuleCall call) {
+        final LogicalSortExpression sortExpression = call.get(root);
+        final KeyExpression sortKey = sortExpression.getSortKey();
+        if (sortKey == null || sortKey.createsDuplicates()) {
+            return;
+        }
+        final RecordQueryPlan inner = call.get(innerMatcher);
+        call.yield(call.ref(new RecordQuerySortPlan(inner, new RecordQuerySortKey(sortKey, sortExpression.isReverse()),
+                maxRecordsInMemory)));
+    }
+}
@@ -26,6 +26,7 @@ import com.apple.foundationdb.record.cursors.FilterCursor;
 import com.apple.foundationdb.record.cursors.FirableCursor;
 import com.apple.foundationdb.record.cursors.LazyCursor;
 import com.apple.foundationdb.record.cursors.MapCursor;
+import com.apple.foundationdb.record.cursors.PrefetchCursor;
 import com.apple.foundationdb.record.cursors.RowLimitedCursor;
 import com.apple.foundationdb.record.cursors.SkipCursor;
 import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
@@ -180,6 +181,84 @@ public class RecordCursorTest {
         assertThat(cursor.onHasNextCalled, Matchers.lessThanOrEqualTo(102));
     }
 
+    @Test
+    public void mapBatchPipelinedTest() throws Exception {
+        List<Integer> batchSizes = new ArrayList<>();
+        RecordCursor<Integer> cursor = RecordCursor.fromList(IntStream.range(0, 100).boxed().collect(Collectors.toList()))
+                .mapBatchPipelined(batch -> {
+                    batchSizes.add(batch.size());
+                    return batch.stream().map(i -> delayedFuture(i * 2, 1)).collect(Collectors.toList());
+                }, 10);
+        assertEquals(IntStream.range(0, 100).mapToObj(i -> i * 2).collect(Collectors.toList()), cursor.asList().get());
+        assertEquals(100, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertThat(batchSizes.stream().mapToInt(Integer::intValue).max().getAsInt(), Matchers.lessThanOrEqualTo(10));
+        assertThat(batchSizes.size(), Matchers.lessThan(100));
+    }
+
+    @Test
+    public void mapBatchPipelinedContinuationTest() throws Exception {
+        List<Integer> ints = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+        RecordCursorIterator<Integer> cursor = RecordCursor.fromList(ints)
+                .mapBatchPipelined(batch -> batch.stream().map(CompletableFuture::completedFuture).collect(Collectors.toList()), 4)
+                .asIterator();
+        for (int i = 0; i < 7; i++) {
+            assertTrue(cursor.hasNext());
+            assertEquals(i, (int)cursor.next());
+        }
+        final byte[] continuation = cursor.getContinuation();
+        RecordCursor<Integer> resumed = RecordCursor.fromList(ints, continuation)
+                .mapBatchPipelined(batch -> batch.stream().map(CompletableFuture::completedFuture).collect(Collectors.toList()), 4);
+        assertEquals(ints.subList(7, 20), resumed.asList().get());
+    }
+
+    @Test
+    public void prefetchTest() throws Exception {
+        AsyncCountdown countdown = new AsyncCountdown(100);
+        FDBStoreTimer timer = new FDBStoreTimer();
+        RecordCursorIterator<Integer> cursor = new PrefetchCursor<>(countdown, 10, Long.MAX_VALUE, null, timer).asIterator();
+        List<Integer> results = new ArrayList<>();
+        while (cursor.hasNext()) {
+            // never reads further ahead than the buffer allows
+            assertThat(countdown.onHasNextCalled, Matchers.lessThanOrEqualTo(results.size() + 12));
+            results.add(cursor.next());
+            MoreAsyncUtil.delayedFuture(1L, TimeUnit.MILLISECONDS).join();
+        }
+        assertEquals(IntStream.range(0, 100).mapToObj(i -> 100 - i).collect(Collectors.toList()), results);
+        assertEquals(100, timer.getCount(FDBStoreTimer.Counts.PREFETCH_ENTRY));
+        assertThat(timer.getCount(FDBStoreTimer.Counts.PREFETCH_QUEUE_DEPTH), greaterThan(0));
+    }
+
+    @Test
+    public void prefetchContinuationTest() throws Exception {
+        List<Integer> ints = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+        RecordCursorIterator<Integer> cursor = new PrefetchCursor<>(RecordCursor.fromList(ints), 5, 12L, i -> 4L, null).asIterator();
+        for (int i = 0; i < 7; i++) {
+            assertTrue(cursor.hasNext());
+            assertEquals(i, (int)cursor.next());
+        }
+        final byte[] continuation = cursor.getContinuation();
+        RecordCursor<Integer> resumed = new PrefetchCursor<>(RecordCursor.fromList(ints, continuation), 5, 12L, i -> 4L, null);
+        assertEquals(ints.subList(7, 20), resumed.asList().get());
+    }
+
+    @Test
+    public void prefetchErrorTest() throws Exception {
+        RecordCursor<Integer> inner = RecordCursor.fromList(Arrays.asList(1, 2, 3, 4)).map(i -> {
+            if (i == 3) {
+                throw new RecordCoreException("bad entry");
+            }
+            return i;
+        });
+        PrefetchCursor<Integer> cursor = new PrefetchCursor<>(inner, 10, Long.MAX_VALUE, null, null);
+        assertEquals(1, (int)cursor.onNext().get().get());
+        assertEquals(2, (int)cursor.onNext().get().get());
+        // The failure is given to every later call, rather than leaving it waiting for an inner cursor that is done.
+        for (int i = 0; i < 3; i++) {
+            ExecutionException err = assertThrows(ExecutionException.class, () -> cursor.onNext().get(1, TimeUnit.SECONDS));
+            assertThat(err.getCause(), instanceOf(RecordCoreException.class));
+        }
+    }
+
     @Test
     public void forEachAsyncTest() {
         RecordCursor<Integer> cursor = RecordCursor.fromList(Arrays.asList(1, 2, 3, 4, 5, 6, 7));
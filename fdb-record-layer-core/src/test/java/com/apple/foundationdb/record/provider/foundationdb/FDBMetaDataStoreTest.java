@@ -142,6 +142,53 @@ public class FDBMetaDataStoreTest extends FDBTestBase {
         }
     }
 
+    @Test
+    public void sharedMetaDataCache() {
+        final SharedMetaDataCache sharedCache = new SharedMetaDataCache(10);
+        try (FDBRecordContext context = fdb.openContext()) {
+            openMetaDataStore(context);
+            metaDataStore.setSharedMetaDataCache(sharedCache);
+            metaDataStore.saveRecordMetaData(RecordMetaData.build(TestRecords1Proto.getDescriptor()));
+            context.commit();
+        }
+
+        final RecordMetaData metaData1;
+        try (FDBRecordContext context = fdb.openContext()) {
+            openMetaDataStore(context);
+            metaDataStore.setSharedMetaDataCache(sharedCache);
+            metaData1 = metaDataStore.getRecordMetaData();
+        }
+        try (FDBRecordContext context = fdb.openContext()) {
+            openMetaDataStore(context);
+            metaDataStore.setSharedMetaDataCache(sharedCache);
+            assertSame(metaData1, metaDataStore.getRecordMetaData());
+        }
+        try (FDBRecordContext context = fdb.openContext()) {
+            openMetaDataStore(context);
+            assertNotSame(metaData1, metaDataStore.getRecordMetaData(), "store without shared cache should build its own meta-data");
+        }
+
+        try (FDBRecordContext context = fdb.openContext()) {
+            openMetaDataStore(context);
+            metaDataStore.setSharedMetaDataCache(sharedCache);
+            metaDataStore.addIndex("MySimpleRecord", "MySimpleRecord$num_value_2", "num_value_2");
+            context.commit();
+        }
+        final RecordMetaData metaData2;
+        try (FDBRecordContext context = fdb.openContext()) {
+            openMetaDataStore(context);
+            metaDataStore.setSharedMetaDataCache(sharedCache);
+            metaData2 = metaDataStore.getRecordMetaData();
+            assertThat(metaData2.getVersion(), greaterThan(metaData1.getVersion()));
+            assertNotNull(metaData2.getIndex("MySimpleRecord$num_value_2"));
+        }
+        try (FDBRecordContext context = fdb.openContext()) {
+            openMetaDataStore(context);
+            metaDataStore.setSharedMetaDataCache(sharedCache);
+            assertSame(metaData2, metaDataStore.getRecordMetaData());
+        }
+    }
+
     @Test
     public void manyTypes() {
         final int ntypes = 500;
@@ -21,10 +21,15 @@
 package com.apple.foundationdb.record.provider.foundationdb;
 
 import com.apple.foundationdb.FDBException;
+import com.apple.foundationdb.async.AsyncUtil;
+import com.apple.foundationdb.record.ByteScanLimiterFactory;
+import com.apple.foundationdb.record.ExecuteState;
 import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordScanLimiterFactory;
 import com.apple.foundationdb.record.TestRecords1Proto;
 import com.apple.foundationdb.record.TestRecordsBytesProto;
 import com.apple.foundationdb.record.TestRecordsWithUnionProto;
+import com.apple.foundationdb.record.metadata.Key;
 import com.apple.foundationdb.record.metadata.MetaDataException;
 import com.apple.foundationdb.tuple.Tuple;
 import com.apple.test.Tags;
@@ -32,7 +37,11 @@ import com.google.protobuf.Message;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -71,6 +80,73 @@ public class FDBRecordStoreCrudTest extends FDBRecordStoreTestBase {
         }
     }
 
+    @Test
+    public void loadRecordsBatched() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (long recNo : new long[] {1L, 2L, 3L, 4L, 10L}) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(recNo)
+                        .setNumValue2((int)recNo * 10)
+                        .build());
+            }
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            timer.reset();
+            List<Tuple> primaryKeys = Arrays.asList(Tuple.from(3L), Tuple.from(1L), Tuple.from(5L), Tuple.from(2L),
+                    Tuple.from(10L), Tuple.from(3L));
+            List<FDBStoredRecord<Message>> records = recordStore.loadRecords(primaryKeys);
+            assertEquals(primaryKeys.size(), records.size());
+            for (int i = 0; i < primaryKeys.size(); i++) {
+                if (primaryKeys.get(i).getLong(0) == 5L) {
+                    assertNull(records.get(i));
+                } else {
+                    FDBStoredRecord<Message> rec = records.get(i);
+                    assertNotNull(rec);
+                    assertEquals(primaryKeys.get(i), rec.getPrimaryKey());
+                    TestRecords1Proto.MySimpleRecord.Builder myrec = TestRecords1Proto.MySimpleRecord.newBuilder();
+                    myrec.mergeFrom(rec.getRecord());
+                    assertEquals(primaryKeys.get(i).getLong(0) * 10, myrec.getNumValue2());
+                }
+            }
+            // 1, 2 and 3 are read together, while 5 and 10 are each read on their own.
+            assertEquals(primaryKeys.size(), timer.getCount(FDBStoreTimer.Counts.LOAD_RECORDS_BATCH_KEY));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORDS_COALESCED_READ));
+            assertEquals(3, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORDS_COALESCED_KEY));
+            commit(context);
+        }
+    }
+
+    @Test
+    public void loadRecordsBatchedCountsSkippedBytes() throws Exception {
+        // (1, 5) sorts between (1) and (2), so a coalesced read of those two also reads it.
+        final RecordMetaDataHook hook = metaData -> metaData.getRecordType("MyOtherRecord")
+                .setPrimaryKey(Key.Expressions.concatenateFields("rec_no", "num_value_2"));
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(1L).build());
+            recordStore.saveRecord(TestRecords1Proto.MyOtherRecord.newBuilder().setRecNo(1L).setNumValue2(5).build());
+            recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(2L).build());
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            final ExecuteState separateState = new ExecuteState(RecordScanLimiterFactory.untracked(), ByteScanLimiterFactory.tracking());
+            for (long recNo : new long[] {1L, 2L}) {
+                AsyncUtil.getAll(recordStore.loadRecordsInternal(Arrays.asList(Tuple.from(recNo)), separateState, false)).get();
+            }
+            timer.reset();
+            final ExecuteState coalescedState = new ExecuteState(RecordScanLimiterFactory.untracked(), ByteScanLimiterFactory.tracking());
+            List<FDBStoredRecord<Message>> records = AsyncUtil.getAll(
+                    recordStore.loadRecordsInternal(Arrays.asList(Tuple.from(1L), Tuple.from(2L)), coalescedState, false)).get();
+            assertEquals(Arrays.asList(Tuple.from(1L), Tuple.from(2L)), Arrays.asList(records.get(0).getPrimaryKey(), records.get(1).getPrimaryKey()));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.LOAD_RECORDS_COALESCED_READ));
+            assertThat(coalescedState.getBytesScanned(), greaterThan(separateState.getBytesScanned()));
+        }
+    }
+
     @Test
     public void writeCheckExists() throws Exception {
         try (FDBRecordContext context = openContext()) {
@@ -125,6 +125,41 @@ public class FDBReverseDirectoryCacheTest extends FDBTestBase {
     }
 
 
+    @Test
+    public void testSharedCacheRemembersMisses() throws Exception {
+        FDBReverseDirectoryCache reverseDirectoryCache = fdb.getReverseDirectoryCache();
+        ScopedValue<Long> missing = createRandomDirectoryScope().wrap(1L);
+        FDBStoreTimer timer = new FDBStoreTimer();
+        for (int i = 0; i < 3; i++) {
+            assertFalse(reverseDirectoryCache.get(timer, missing).join().isPresent());
+        }
+        assertEquals(1L, reverseDirectoryCache.getPersistentCacheMissCount(), "only the first lookup should read the database");
+        assertEquals(2, timer.getCount(FDBStoreTimer.Counts.REVERSE_DIR_SHARED_CACHE_NEGATIVE_HIT_COUNT));
+    }
+
+    @Test
+    public void testPreloadSharedCache() throws Exception {
+        FDBReverseDirectoryCache reverseDirectoryCache = fdb.getReverseDirectoryCache();
+        reverseDirectoryCache.setMaxRowsPerTransaction(3);
+        LocatableResolver scope = createRandomDirectoryScope();
+        final Map<Long, String> reverseMapping = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            final String name = "dir_" + i;
+            reverseMapping.put(scope.resolve(name).join(), name);
+        }
+        fdb.clearReverseDirectoryCache();
+        reverseDirectoryCache = fdb.getReverseDirectoryCache();
+        reverseDirectoryCache.setMaxRowsPerTransaction(3);
+
+        FDBStoreTimer timer = new FDBStoreTimer();
+        reverseDirectoryCache.preloadSharedCache(timer, scope).join();
+        for (Map.Entry<Long, String> entry : reverseMapping.entrySet()) {
+            assertEquals(Optional.of(entry.getValue()), reverseDirectoryCache.get(timer, scope.wrap(entry.getKey())).join());
+        }
+        assertEquals(0L, reverseDirectoryCache.getPersistentCacheHitCount(), "lookups should not read the database");
+        assertEquals(reverseMapping.size(), timer.getCount(FDBStoreTimer.Counts.REVERSE_DIR_SHARED_CACHE_HIT_COUNT));
+    }
+
     @Test
     public void testResolveDoesPut() throws Exception {
         FDBReverseDirectoryCache reverseDirectoryCache = fdb.getReverseDirectoryCache();
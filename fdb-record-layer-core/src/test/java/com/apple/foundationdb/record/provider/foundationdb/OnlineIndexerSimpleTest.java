@@ -364,6 +364,48 @@ public class OnlineIndexerSimpleTest extends OnlineIndexerTest {
         }
     }
 
+    @Test
+    public void buildInParallel() {
+        List<TestRecords1Proto.MySimpleRecord> records = LongStream.range(0, 500).mapToObj(val ->
+                TestRecords1Proto.MySimpleRecord.newBuilder().setRecNo(val).setNumValue2((int)val + 1).build()
+        ).collect(Collectors.toList());
+        Index index = new Index("simple$value_2", field("num_value_2").ungrouped(), IndexTypes.SUM);
+        IndexAggregateFunction aggregateFunction = new IndexAggregateFunction(FunctionNames.SUM, index.getRootExpression(), index.getName());
+        FDBRecordStoreTestBase.RecordMetaDataHook hook = metaDataBuilder -> metaDataBuilder.addIndex("MySimpleRecord", index);
+
+        openSimpleMetaData();
+        try (FDBRecordContext context = openContext()) {
+            records.forEach(recordStore::saveRecord);
+            context.commit();
+        }
+
+        openSimpleMetaData(hook);
+        try (FDBRecordContext context = openContext()) {
+            context.commit();
+        }
+        try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setIndex(index).setSubspace(subspace)
+                .setLimit(20)
+                .setParallelism(4)
+                .setProgressLogIntervalMillis(0)
+                .build()) {
+            indexBuilder.buildIndex();
+            assertEquals(records.size(), indexBuilder.getTotalRecordsScanned());
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            assertTrue(recordStore.isIndexReadable(index));
+            assertEquals(Tuple.from(LongStream.rangeClosed(1, records.size()).sum()),
+                    recordStore.evaluateAggregateFunction(Collections.singletonList("MySimpleRecord"), aggregateFunction,
+                            TupleRange.ALL, IsolationLevel.SERIALIZABLE).join());
+        }
+
+        assertThrows(RecordCoreException.class, () -> OnlineIndexer.newBuilder()
+                .setDatabase(fdb).setMetaData(metaData).setIndex(index).setSubspace(subspace)
+                .setParallelism(0)
+                .build());
+    }
+
     @Test
     public void run() {
         Index index = runAsyncSetup();
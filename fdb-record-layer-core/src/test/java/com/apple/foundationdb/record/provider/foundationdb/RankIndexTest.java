@@ -72,8 +72,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -287,6 +289,85 @@ public class RankIndexTest extends FDBRecordStoreTestBase {
         }
     }
 
+    @Test
+    public void checkStageChangesOption() throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        options.put(IndexOptions.RANK_STAGE_CHANGES, "true");
+        options.put(IndexOptions.RANK_STAGING_COMPACTION_THRESHOLD, "2");
+        final FDBRecordStoreTest.RecordMetaDataHook hook = md -> {
+            md.removeIndex("BasicRankedRecord$score");
+            md.addIndex("BasicRankedRecord", new Index("score_staged", Key.Expressions.field("score").ungrouped(),
+                    IndexTypes.RANK, options));
+        };
+        RecordFunction<Long> rank = Query.rank("score").getFunction();
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            recordStore.rebuildIndex(recordStore.getRecordMetaData().getIndex("score_staged")).join();
+            FDBStoredRecord<Message> rec1 = recordStore.loadRecord(Tuple.from("achilles"));
+            assertEquals((Long)1L, recordStore.evaluateRecordFunction(rank, rec1).get());
+            FDBStoredRecord<Message> rec2 = recordStore.loadRecord(Tuple.from("laodice"));
+            assertEquals((Long)3L, recordStore.evaluateRecordFunction(rank, rec2).get());
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            recordStore.saveRecord(TestRecordsRankProto.BasicRankedRecord.newBuilder()
+                    .setName("paris").setScore(150).setGender("M").build());
+            assertTrue(recordStore.deleteRecord(Tuple.from("hector")));
+            FDBStoredRecord<Message> rec1 = recordStore.loadRecord(Tuple.from("achilles"));
+            assertEquals((Long)0L, recordStore.evaluateRecordFunction(rank, rec1).get());
+            FDBStoredRecord<Message> rec2 = recordStore.loadRecord(Tuple.from("laodice"));
+            assertEquals((Long)3L, recordStore.evaluateRecordFunction(rank, rec2).get());
+            final TupleRange range = new TupleRange(Tuple.from(1L), Tuple.from(2L), EndpointType.RANGE_INCLUSIVE, EndpointType.RANGE_INCLUSIVE);
+            final List<String> names = recordStore.scanIndexRecords("score_staged", IndexScanType.BY_RANK, range, null, ScanProperties.FORWARD_SCAN)
+                    .map(rec -> TestRecordsRankProto.BasicRankedRecord.newBuilder().mergeFrom(rec.getRecord()).getName())
+                    .asList().join();
+            assertEquals(Arrays.asList("paris", "helen", "penelope"), names);
+            commit(context);
+        }
+    }
+
+    @Test
+    public void checkStagedConcurrentUpdates() throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        options.put(IndexOptions.RANK_STAGE_CHANGES, "true");
+        options.put(IndexOptions.RANK_STAGING_COMPACTION_THRESHOLD, "2");
+        final FDBRecordStoreTest.RecordMetaDataHook hook = md -> {
+            md.removeIndex("BasicRankedRecord$score");
+            md.removeIndex("rank_by_gender");
+            md.addIndex("BasicRankedRecord", new Index("score_staged", Key.Expressions.field("score").ungrouped(),
+                    IndexTypes.RANK, options));
+        };
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            recordStore.rebuildIndex(recordStore.getRecordMetaData().getIndex("score_staged")).join();
+            commit(context);
+        }
+        // Both updates are past the compaction threshold, but neither compacts in its own transaction, so they do not conflict.
+        timer.reset();
+        try (FDBRecordContext context1 = openContext(); FDBRecordContext context2 = openContext()) {
+            openRecordStore(context1, hook);
+            final FDBRecordStore recordStore1 = recordStore;
+            openRecordStore(context2, hook);
+            final FDBRecordStore recordStore2 = recordStore;
+            recordStore1.saveRecord(TestRecordsRankProto.BasicRankedRecord.newBuilder()
+                    .setName("paris").setScore(151).setGender("M").build());
+            recordStore2.saveRecord(TestRecordsRankProto.BasicRankedRecord.newBuilder()
+                    .setName("priam").setScore(152).setGender("M").build());
+            assertEquals(0, timer.getCount(FDBStoreTimer.DetailEvents.RANKED_SET_COMPACT));
+            commit(context1);
+            commit(context2);
+        }
+        assertTrue(timer.getCount(FDBStoreTimer.DetailEvents.RANKED_SET_COMPACT) > 0);
+        RecordFunction<Long> rank = Query.rank("score").getFunction();
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            assertEquals((Long)2L, recordStore.evaluateRecordFunction(rank, recordStore.loadRecord(Tuple.from("paris"))).get());
+            assertEquals((Long)3L, recordStore.evaluateRecordFunction(rank, recordStore.loadRecord(Tuple.from("priam"))).get());
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.RANKED_SET_STAGING_LIMIT_EXCEEDED));
+        }
+    }
+
 
     @Test
     public void checkUpdateWithTies() throws Exception {
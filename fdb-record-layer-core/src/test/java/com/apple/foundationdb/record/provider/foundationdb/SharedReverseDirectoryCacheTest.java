@@ -0,0 +1,96 @@
+/*
+ * SharedReverseDirectoryCacheTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link SharedReverseDirectoryCache}.
+ */
+public class SharedReverseDirectoryCacheTest {
+
+    @Test
+    public void putAndGet() {
+        SharedReverseDirectoryCache cache = new SharedReverseDirectoryCache(100);
+        int partition = cache.getPartition("cluster", new byte[] { 1, 2 });
+        int otherPartition = cache.getPartition("cluster", new byte[] { 1, 3 });
+        assertNotEquals(partition, otherPartition);
+        assertEquals(partition, cache.getPartition("cluster", new byte[] { 1, 2 }));
+
+        assertNull(cache.getIfPresent(partition, 10L));
+        cache.put(partition, 10L, "ten");
+        assertEquals(Optional.of("ten"), cache.getIfPresent(partition, 10L));
+        assertNull(cache.getIfPresent(otherPartition, 10L), "partitions should be separate");
+
+        cache.invalidate(partition, 10L);
+        assertNull(cache.getIfPresent(partition, 10L));
+    }
+
+    @Test
+    public void negativeEntriesExpire() throws Exception {
+        SharedReverseDirectoryCache cache = new SharedReverseDirectoryCache(100);
+        int partition = cache.getPartition(null, new byte[] { 1 });
+        cache.put(partition, 5L, null);
+        assertEquals(Optional.empty(), cache.getIfPresent(partition, 5L));
+
+        cache.setNegativeEntryTtlMillis(1L);
+        cache.put(partition, 6L, null);
+        Thread.sleep(10L);
+        assertNull(cache.getIfPresent(partition, 6L), "negative entry should have expired");
+    }
+
+    @Test
+    public void boundedSize() {
+        SharedReverseDirectoryCache cache = new SharedReverseDirectoryCache(64);
+        int partition = cache.getPartition("cluster", new byte[] { 1 });
+        for (long value = 0; value < 1000; value++) {
+            cache.put(partition, value, "v" + value);
+        }
+        int present = 0;
+        for (long value = 0; value < 1000; value++) {
+            Optional<String> found = cache.getIfPresent(partition, value);
+            if (found != null) {
+                assertEquals(Optional.of("v" + value), found);
+                present++;
+            }
+        }
+        assertTrue(present <= 64, "cache should hold at most its maximum size");
+    }
+
+    @Test
+    public void clearCluster() {
+        SharedReverseDirectoryCache cache = new SharedReverseDirectoryCache(100);
+        int partition = cache.getPartition("cluster", new byte[] { 1 });
+        int otherCluster = cache.getPartition("other", new byte[] { 1 });
+        cache.put(partition, 1L, "one");
+        cache.put(otherCluster, 1L, "uno");
+        cache.clear("cluster");
+        assertNull(cache.getIfPresent(cache.getPartition("cluster", new byte[] { 1 }), 1L));
+        assertEquals(Optional.of("uno"), cache.getIfPresent(otherCluster, 1L));
+    }
+}
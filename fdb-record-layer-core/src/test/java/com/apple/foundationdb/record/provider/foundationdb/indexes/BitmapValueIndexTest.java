@@ -0,0 +1,321 @@
+/*
+ * BitmapValueIndexTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.FunctionNames;
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
+import com.apple.foundationdb.record.metadata.IndexOptions;
+import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreTestBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.RecordQueryAggregate;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.aggregate.AggregateResult;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryAggregatePlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryComposedBitmapPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concatenateFields;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Tests for {@code BITMAP_VALUE} type indexes.
+ */
+@Tag(Tags.RequiresFDB)
+public class BitmapValueIndexTest extends FDBRecordStoreTestBase {
+    private static final int RECORD_COUNT = 100;
+    // Small enough that the records span several entries.
+    private static final int ENTRY_SIZE = 16;
+
+    private static final RecordMetaDataHook BITMAP_INDEXES = metaData -> {
+        metaData.addIndex("MySimpleRecord", new Index("str_value_bitmap",
+                field("rec_no").groupBy(field("str_value_indexed")), IndexTypes.BITMAP_VALUE,
+                ImmutableMap.of(IndexOptions.BITMAP_VALUE_ENTRY_SIZE_OPTION, Integer.toString(ENTRY_SIZE))));
+        metaData.addIndex("MySimpleRecord", new Index("num_value_2_bitmap",
+                field("rec_no").groupBy(field("num_value_2")), IndexTypes.BITMAP_VALUE,
+                ImmutableMap.of(IndexOptions.BITMAP_VALUE_ENTRY_SIZE_OPTION, Integer.toString(ENTRY_SIZE))));
+    };
+
+    private void saveRecords() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, BITMAP_INDEXES);
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed((i & 1) == 0 ? "even" : "odd")
+                        .setNumValue2(i % 3)
+                        .build());
+            }
+            commit(context);
+        }
+    }
+
+    private static List<Long> expectedRecNos(IntPredicate predicate) {
+        return IntStream.range(0, RECORD_COUNT).filter(predicate).mapToObj(i -> (long)i).collect(Collectors.toList());
+    }
+
+    private List<Long> executeInPages(RecordQueryPlan plan, int pageSize) throws Exception {
+        final ExecuteProperties executeProperties = ExecuteProperties.newBuilder().setReturnedRowLimit(pageSize).build();
+        List<Long> recNos = new ArrayList<>();
+        byte[] continuation = null;
+        int pages = 0;
+        do {
+            try (RecordCursor<FDBQueriedRecord<Message>> cursor = plan.execute(recordStore, EvaluationContext.EMPTY, continuation, executeProperties)) {
+                for (FDBQueriedRecord<Message> record : cursor.asList().get()) {
+                    recNos.add(TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(record.getRecord()).getRecNo());
+                }
+                continuation = cursor.getNext().getContinuation().toBytes();
+            }
+            if (++pages > RECORD_COUNT) {
+                fail("too many pages");
+            }
+        } while (continuation != null);
+        return recNos;
+    }
+
+    @Test
+    public void andQuery() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, BITMAP_INDEXES);
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.and(
+                            Query.field("str_value_indexed").equalsValue("even"),
+                            Query.field("num_value_2").equalsValue(1)))
+                    .build();
+            RecordQueryPlan plan = planner.plan(query);
+            assertThat(plan, instanceOf(RecordQueryComposedBitmapPlan.class));
+            assertEquals(2, ((RecordQueryComposedBitmapPlan)plan).getIndexPlans().size());
+            assertTrue(plan.hasIndexScan("str_value_bitmap"));
+            assertTrue(plan.hasIndexScan("num_value_2_bitmap"));
+
+            final List<Long> expected = expectedRecNos(i -> (i & 1) == 0 && i % 3 == 1);
+            assertEquals(expected, executeInPages(plan, Integer.MAX_VALUE));
+            assertEquals(expected, executeInPages(plan, 3));
+        }
+    }
+
+    @Test
+    public void orOfAndQuery() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, BITMAP_INDEXES);
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.or(
+                            Query.and(
+                                    Query.field("str_value_indexed").equalsValue("odd"),
+                                    Query.field("num_value_2").equalsValue(0)),
+                            Query.field("num_value_2").equalsValue(2)))
+                    .setSort(field("rec_no"))
+                    .build();
+            RecordQueryPlan plan = planner.plan(query);
+            assertThat(plan, instanceOf(RecordQueryComposedBitmapPlan.class));
+            // The two comparisons of num_value_2 use different values, so they are different scans.
+            assertEquals(3, ((RecordQueryComposedBitmapPlan)plan).getIndexPlans().size());
+
+            final List<Long> expected = expectedRecNos(i -> ((i & 1) == 1 && i % 3 == 0) || i % 3 == 2);
+            assertEquals(expected, executeInPages(plan, Integer.MAX_VALUE));
+            assertEquals(expected, executeInPages(plan, 5));
+        }
+    }
+
+    @Test
+    public void notPlannedForOtherComparisons() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, BITMAP_INDEXES);
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.and(
+                            Query.field("str_value_indexed").equalsValue("even"),
+                            Query.field("num_value_2").greaterThan(1)))
+                    .build();
+            assertFalse(planner.plan(query) instanceof RecordQueryComposedBitmapPlan);
+            query = query.toBuilder()
+                    .setFilter(Query.and(
+                            Query.field("str_value_indexed").equalsValue("even"),
+                            Query.field("num_value_2").equalsValue(1)))
+                    .setSort(field("rec_no"), true)
+                    .build();
+            assertFalse(planner.plan(query) instanceof RecordQueryComposedBitmapPlan);
+        }
+    }
+
+    @Test
+    public void notPlannedOverBetterIndex() throws Exception {
+        final RecordMetaDataHook hook = metaData -> {
+            BITMAP_INDEXES.apply(metaData);
+            metaData.addIndex("MySimpleRecord", new Index("str_value_num_value_2", concatenateFields("str_value_indexed", "num_value_2")));
+        };
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.and(
+                            Query.field("str_value_indexed").equalsValue("even"),
+                            Query.field("num_value_2").equalsValue(1)))
+                    .build();
+            // A single index satisfies both comparisons, so there is no need to combine bitmaps.
+            RecordQueryPlan plan = planner.plan(query);
+            assertFalse(plan instanceof RecordQueryComposedBitmapPlan);
+            assertTrue(plan.hasIndexScan("str_value_num_value_2"));
+        }
+    }
+
+    @Test
+    public void notPlannedForOtherRecordTypes() throws Exception {
+        final RecordMetaDataHook hook = metaData -> {
+            metaData.addIndex("MySimpleRecord", new Index("str_value_bitmap",
+                    field("rec_no").groupBy(field("str_value_indexed")), IndexTypes.BITMAP_VALUE,
+                    ImmutableMap.of(IndexOptions.BITMAP_VALUE_ENTRY_SIZE_OPTION, Integer.toString(ENTRY_SIZE))));
+            metaData.addMultiTypeIndex(Arrays.asList(metaData.getRecordType("MySimpleRecord"), metaData.getRecordType("MyOtherRecord")),
+                    new Index("multi_num_value_2_bitmap",
+                            field("rec_no").groupBy(field("num_value_2")), IndexTypes.BITMAP_VALUE,
+                            ImmutableMap.of(IndexOptions.BITMAP_VALUE_ENTRY_SIZE_OPTION, Integer.toString(ENTRY_SIZE))));
+        };
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.or(
+                            Query.field("str_value_indexed").equalsValue("even"),
+                            Query.field("num_value_2").equalsValue(1)))
+                    .build();
+            // The multi-type bitmap also has bits set for MyOtherRecord, which the query must not return.
+            assertFalse(planner.plan(query) instanceof RecordQueryComposedBitmapPlan);
+        }
+    }
+
+    @Test
+    public void updateAndDelete() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, BITMAP_INDEXES);
+            for (int i = 0; i < RECORD_COUNT; i += 10) {
+                recordStore.deleteRecord(Tuple.from(i));
+            }
+            for (int i = 1; i < RECORD_COUNT; i += 10) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed("even")
+                        .setNumValue2(i % 3)
+                        .build());
+            }
+            commit(context);
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, BITMAP_INDEXES);
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.and(
+                            Query.field("str_value_indexed").equalsValue("even"),
+                            Query.field("num_value_2").equalsValue(1)))
+                    .build();
+            RecordQueryPlan plan = planner.plan(query);
+            assertEquals(expectedRecNos(i -> i % 10 != 0 && ((i & 1) == 0 || i % 10 == 1) && i % 3 == 1),
+                    executeInPages(plan, Integer.MAX_VALUE));
+
+            // Bitmaps of the odd records no longer have the updated ones.
+            final Index index = recordStore.getRecordMetaData().getIndex("str_value_bitmap");
+            final long oddCount = recordStore.scanIndex(index, IndexScanType.BY_BITMAP, TupleRange.allOf(Tuple.from("odd")), null, ScanProperties.FORWARD_SCAN)
+                    .reduce(0L, (count, entry) -> count + BitmapValueIndexMaintainer.countBits(entry.getValue().getBytes(0)))
+                    .get();
+            assertEquals(expectedRecNos(i -> (i & 1) == 1 && i % 10 != 1).size(), oddCount);
+        }
+    }
+
+    @Test
+    public void countAggregates() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, BITMAP_INDEXES);
+            final IndexAggregateFunction count = new IndexAggregateFunction(FunctionNames.COUNT,
+                    field("rec_no").groupBy(field("str_value_indexed")), null);
+            assertEquals(Tuple.from((long)(RECORD_COUNT / 2)),
+                    recordStore.evaluateAggregateFunction(Collections.singletonList("MySimpleRecord"), count,
+                            Key.Evaluated.scalar("odd"), IsolationLevel.SERIALIZABLE).get());
+
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.or(
+                            Query.field("str_value_indexed").equalsValue("even"),
+                            Query.field("num_value_2").equalsValue(1)))
+                    .setAggregates(RecordQueryAggregate.count())
+                    .build();
+            RecordQueryAggregatePlan plan = ((RecordQueryPlanner)planner).planAggregate(query);
+            assertTrue(plan.isBitmapCount());
+
+            timer.reset();
+            final List<AggregateResult> results = plan.execute(recordStore, EvaluationContext.EMPTY, null, ExecuteProperties.SERIAL_EXECUTE).asList().get();
+            assertEquals(Collections.singletonList(new AggregateResult(Tuple.from(),
+                            Collections.singletonList((long)expectedRecNos(i -> (i & 1) == 0 || i % 3 == 1).size()))),
+                    results);
+            assertEquals(0, timer.getCount(FDBStoreTimer.Events.LOAD_RECORD));
+        }
+    }
+
+    @Test
+    public void badEntrySize() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            assertThrows(MetaDataException.class, () -> openSimpleRecordStore(context, metaData ->
+                    metaData.addIndex("MySimpleRecord", new Index("bad_bitmap",
+                            field("rec_no").groupBy(field("num_value_2")), IndexTypes.BITMAP_VALUE,
+                            ImmutableMap.of(IndexOptions.BITMAP_VALUE_ENTRY_SIZE_OPTION, "12")))));
+        }
+    }
+}
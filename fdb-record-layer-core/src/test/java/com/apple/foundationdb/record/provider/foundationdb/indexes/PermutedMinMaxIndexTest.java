@@ -0,0 +1,231 @@
+/*
+ * PermutedMinMaxIndexTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.indexes;
+
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.FunctionNames;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.IndexScanType;
+import com.apple.foundationdb.record.IsolationLevel;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.metadata.IndexAggregateFunction;
+import com.apple.foundationdb.record.metadata.IndexOptions;
+import com.apple.foundationdb.record.metadata.IndexTypes;
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.metadata.MetaDataException;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreTestBase;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.RecordQueryAggregate;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.aggregate.AggregateResult;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryAggregatePlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryCoveringIndexPlan;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@code PERMUTED_MIN} and {@code PERMUTED_MAX} type indexes.
+ */
+@Tag(Tags.RequiresFDB)
+public class PermutedMinMaxIndexTest extends FDBRecordStoreTestBase {
+    private static final int RECORD_COUNT = 20;
+
+    private static final RecordMetaDataHook PERMUTED_INDEXES = metaData -> {
+        metaData.addIndex("MySimpleRecord", new Index("permuted_max",
+                field("num_value_unique").groupBy(field("str_value_indexed"), field("num_value_2")), IndexTypes.PERMUTED_MAX,
+                ImmutableMap.of(IndexOptions.PERMUTED_SIZE_OPTION, "1")));
+        metaData.addIndex("MySimpleRecord", new Index("permuted_min",
+                field("num_value_unique").groupBy(field("num_value_2")), IndexTypes.PERMUTED_MIN));
+    };
+
+    private static final IndexAggregateFunction MAX_BY_BOTH = new IndexAggregateFunction(FunctionNames.MAX,
+            field("num_value_unique").groupBy(field("str_value_indexed"), field("num_value_2")), null);
+    private static final IndexAggregateFunction MAX_BY_STR = new IndexAggregateFunction(FunctionNames.MAX,
+            field("num_value_unique").groupBy(field("str_value_indexed")), null);
+
+    private void saveRecords() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, PERMUTED_INDEXES);
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed((i & 1) == 0 ? "even" : "odd")
+                        .setNumValue2(i % 3)
+                        .setNumValueUnique(i)
+                        .build());
+            }
+            commit(context);
+        }
+    }
+
+    private Tuple evaluateMax(IndexAggregateFunction function, Object... group) throws Exception {
+        return recordStore.evaluateAggregateFunction(Collections.singletonList("MySimpleRecord"), function,
+                Key.Evaluated.concatenate(Arrays.asList(group)), IsolationLevel.SERIALIZABLE).get();
+    }
+
+    @Test
+    public void maintainedOnDelete() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, PERMUTED_INDEXES);
+            assertEquals(Tuple.from(18L), evaluateMax(MAX_BY_BOTH, "even", 0));
+            assertEquals(Tuple.from(18L), evaluateMax(MAX_BY_STR, "even"));
+            assertEquals(Tuple.from(19L), evaluateMax(MAX_BY_STR, "odd"));
+
+            recordStore.deleteRecord(Tuple.from(18L));
+            assertEquals(Tuple.from(12L), evaluateMax(MAX_BY_BOTH, "even", 0));
+            assertEquals(Tuple.from(16L), evaluateMax(MAX_BY_STR, "even"));
+
+            // Moving a record out of its group updates both groups.
+            recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                    .setRecNo(19)
+                    .setStrValueIndexed("even")
+                    .setNumValue2(0)
+                    .setNumValueUnique(19)
+                    .build());
+            assertEquals(Tuple.from(19L), evaluateMax(MAX_BY_BOTH, "even", 0));
+            assertEquals(Tuple.from(17L), evaluateMax(MAX_BY_STR, "odd"));
+
+            for (int i = 0; i < RECORD_COUNT; i += 2) {
+                recordStore.deleteRecord(Tuple.from((long)i));
+            }
+            recordStore.deleteRecord(Tuple.from(19L));
+            assertNull(evaluateMax(MAX_BY_BOTH, "even", 0));
+            assertNull(evaluateMax(MAX_BY_STR, "even"));
+            commit(context);
+        }
+    }
+
+    @Test
+    public void groupsOrderedByValue() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, PERMUTED_INDEXES);
+            final Index index = recordStore.getRecordMetaData().getIndex("permuted_max");
+            final List<Tuple> keys = recordStore.scanIndex(index, IndexScanType.BY_GROUP, TupleRange.allOf(Tuple.from("even")), null, ScanProperties.REVERSE_SCAN)
+                    .map(IndexEntry::getKey)
+                    .asList()
+                    .get();
+            assertEquals(Arrays.asList(Tuple.from("even", 18L, 0L), Tuple.from("even", 16L, 1L), Tuple.from("even", 14L, 2L)),
+                    keys);
+
+            recordStore.deleteRecord(Tuple.from(16L));
+            final List<Long> groups = recordStore.scanIndex(index, IndexScanType.BY_GROUP, TupleRange.allOf(Tuple.from("even")), null, ScanProperties.REVERSE_SCAN)
+                    .map(entry -> entry.getKey().getLong(2))
+                    .asList()
+                    .get();
+            assertEquals(Arrays.asList(0L, 2L, 1L), groups);
+        }
+    }
+
+    @Test
+    public void planAggregate() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, PERMUTED_INDEXES);
+            recordStore.deleteRecord(Tuple.from(0L));
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setGroupBy(field("num_value_2"))
+                    .setAggregates(RecordQueryAggregate.min(field("num_value_unique")))
+                    .build();
+            RecordQueryAggregatePlan plan = ((RecordQueryPlanner)planner).planAggregate(query);
+            assertThat(plan.getInner(), instanceOf(RecordQueryCoveringIndexPlan.class));
+            assertEquals(Collections.singleton("permuted_min"), plan.getUsedIndexes());
+
+            timer.reset();
+            final List<AggregateResult> results = plan.execute(recordStore, EvaluationContext.EMPTY, null, ExecuteProperties.SERIAL_EXECUTE).asList().get();
+            assertEquals(Arrays.asList(
+                    new AggregateResult(Tuple.from(0L), Collections.singletonList(3L)),
+                    new AggregateResult(Tuple.from(1L), Collections.singletonList(1L)),
+                    new AggregateResult(Tuple.from(2L), Collections.singletonList(2L))),
+                    results);
+            assertEquals(0, timer.getCount(FDBStoreTimer.Events.LOAD_RECORD));
+
+            // Without a group by, the minimum of the groups' minimums.
+            query = query.toBuilder().setGroupBy(null).build();
+            plan = ((RecordQueryPlanner)planner).planAggregate(query);
+            assertThat(plan.getInner(), instanceOf(RecordQueryCoveringIndexPlan.class));
+            assertEquals(Collections.singletonList(new AggregateResult(Tuple.from(), Collections.singletonList(1L))),
+                    plan.execute(recordStore, EvaluationContext.EMPTY, null, ExecuteProperties.SERIAL_EXECUTE).asList().get());
+        }
+    }
+
+    @Test
+    public void prefixIntoPermutedGrouping() throws Exception {
+        final RecordMetaDataHook hook = metaData -> metaData.addIndex("MySimpleRecord", new Index("permuted_max_3",
+                field("num_value_unique").groupBy(field("str_value_indexed"), field("num_value_2"), field("num_value_3_indexed")),
+                IndexTypes.PERMUTED_MAX, ImmutableMap.of(IndexOptions.PERMUTED_SIZE_OPTION, "2")));
+        final IndexAggregateFunction maxByStrAndNum2 = new IndexAggregateFunction(FunctionNames.MAX,
+                field("num_value_unique").groupBy(field("str_value_indexed"), field("num_value_2")), null);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context, hook);
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed((i & 1) == 0 ? "even" : "odd")
+                        .setNumValue2(i % 3)
+                        .setNumValue3Indexed(i % 4)
+                        .setNumValueUnique(i)
+                        .build());
+            }
+            // The second grouping column is permuted after the value, so it cannot be part of the scanned prefix.
+            assertEquals(Tuple.from(18L), evaluateMax(maxByStrAndNum2, "even", 0));
+            assertEquals(Tuple.from(16L), evaluateMax(maxByStrAndNum2, "even", 1));
+            assertEquals(Tuple.from(17L), evaluateMax(maxByStrAndNum2, "odd", 2));
+            assertNull(evaluateMax(maxByStrAndNum2, "odd", 3));
+
+            recordStore.deleteRecord(Tuple.from(17L));
+            assertEquals(Tuple.from(11L), evaluateMax(maxByStrAndNum2, "odd", 2));
+            commit(context);
+        }
+    }
+
+    @Test
+    public void badPermutedSize() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            assertThrows(MetaDataException.class, () -> openSimpleRecordStore(context, metaData ->
+                    metaData.addIndex("MySimpleRecord", new Index("bad_permuted",
+                            field("num_value_unique").groupBy(field("num_value_2")), IndexTypes.PERMUTED_MIN,
+                            ImmutableMap.of(IndexOptions.PERMUTED_SIZE_OPTION, "2")))));
+        }
+    }
+}
@@ -37,6 +37,7 @@ import com.apple.foundationdb.record.RecordCursorIterator;
 import com.apple.foundationdb.record.RecordCursorResult;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.RecordMetaDataBuilder;
+import com.apple.foundationdb.record.ScanLimitReachedException;
 import com.apple.foundationdb.record.ScanProperties;
 import com.apple.foundationdb.record.TestRecordsTextProto;
 import com.apple.foundationdb.record.TestRecordsTextProto.ComplexDocument;
@@ -200,6 +201,10 @@ public class TextIndexTest extends FDBRecordStoreTestBase {
             ImmutableMap.of(IndexOptions.TEXT_TOKENIZER_NAME_OPTION, AllSuffixesTextTokenizer.NAME));
     private static final Index SIMPLE_TEXT_NO_POSITIONS = new Index("Simple$text_no_positions", field("text"), IndexTypes.TEXT,
             ImmutableMap.of(IndexOptions.TEXT_OMIT_POSITIONS_OPTION, "true"));
+    private static final Index SIMPLE_TEXT_BUFFERED = new Index("Simple$text_buffered", field("text"), IndexTypes.TEXT,
+            ImmutableMap.of(IndexOptions.TEXT_BUFFER_WRITES_OPTION, "true"));
+    private static final Index SIMPLE_TEXT_STATISTICS = new Index("Simple$text_statistics", field("text"), IndexTypes.TEXT,
+            ImmutableMap.of(IndexOptions.TEXT_STORE_STATISTICS_OPTION, "true"));
     private static final Index COMBINED_TEXT_BY_GROUP = new Index("Combined$text_by_group", field("text").groupBy(field("group")), IndexTypes.TEXT);
     private static final Index COMPLEX_MULTI_TAG_INDEX = new Index("Complex$multi_tag", field("text").groupBy(field("tag", FanType.FanOut)), IndexTypes.TEXT);
     private static final Index COMPLEX_THEN_TAG_INDEX = new Index("Complex$text_tag", concat(field("text"), field("tag", FanType.FanOut)), IndexTypes.TEXT);
@@ -701,6 +706,209 @@ public class TextIndexTest extends FDBRecordStoreTestBase {
         }
     }
 
+    @Test
+    public void saveSimpleDocumentsWithBufferedWrites() throws Exception {
+        final Random r = new Random(0x5ca1ab1e);
+        final List<SimpleDocument> records = getRandomRecords(r, 50);
+        final RecordMetaDataHook hook = metaDataBuilder -> {
+            metaDataBuilder.removeIndex(SIMPLE_DEFAULT_NAME);
+            metaDataBuilder.addIndex(SIMPLE_DOC, SIMPLE_TEXT_BUFFERED);
+        };
+
+        // Save without buffering to get the expected entries
+        final List<Map.Entry<Tuple, List<Integer>>> expectedEntries;
+        final int unbufferedSaveKeyCount;
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context);
+            records.forEach(recordStore::saveRecord);
+            unbufferedSaveKeyCount = getSaveIndexKeyCount(recordStore);
+            expectedEntries = toMapEntries(scanIndex(recordStore, recordStore.getRecordMetaData().getIndex(SIMPLE_DEFAULT_NAME), TupleRange.ALL), null);
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            recordStore.deleteAllRecords();
+            resetTimer(recordStore);
+            records.forEach(recordStore::saveRecord);
+            assertThat(getCount(recordStore, FDBStoreTimer.Counts.TEXT_INDEX_BUFFERED_UPDATE), greaterThan(0));
+            assertEquals(0, getSaveIndexKeyCount(recordStore));
+
+            // Scanning within the transaction applies the buffered updates first.
+            assertEquals(expectedEntries, toMapEntries(scanIndex(recordStore, SIMPLE_TEXT_BUFFERED, TupleRange.ALL), null));
+            assertThat(getSaveIndexKeyCount(recordStore), lessThan(unbufferedSaveKeyCount));
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            assertEquals(expectedEntries, toMapEntries(scanIndex(recordStore, SIMPLE_TEXT_BUFFERED, TupleRange.ALL), null));
+
+            // Deletes are buffered and applied at commit time.
+            for (int i = 0; i < records.size(); i += 2) {
+                recordStore.deleteRecord(Tuple.from(records.get(i).getDocId()));
+            }
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            final Set<Long> remaining = new HashSet<>();
+            for (int i = 1; i < records.size(); i += 2) {
+                remaining.add(records.get(i).getDocId());
+            }
+            final List<Map.Entry<Tuple, List<Integer>>> remainingEntries = expectedEntries.stream()
+                    .filter(entry -> remaining.contains(entry.getKey().getLong(1)))
+                    .collect(Collectors.toList());
+            assertEquals(remainingEntries, toMapEntries(scanIndex(recordStore, SIMPLE_TEXT_BUFFERED, TupleRange.ALL), null));
+            commit(context);
+        }
+    }
+
+    @Nonnull
+    private static Pair<List<Long>, RecordCursorResult<IndexEntry>> scanByScore(@Nonnull FDBRecordStore store, @Nonnull Index index,
+                                                                               @Nonnull String text, int topK, @Nullable byte[] continuation) {
+        final TextIndexMaintainer maintainer = (TextIndexMaintainer)store.getIndexMaintainer(index);
+        final List<Long> docIds = new ArrayList<>();
+        try (RecordCursor<IndexEntry> cursor = maintainer.scanByScore(TupleHelpers.EMPTY, text, topK, continuation, ScanProperties.FORWARD_SCAN)) {
+            double lastScore = Double.MAX_VALUE;
+            RecordCursorResult<IndexEntry> result;
+            while ((result = cursor.getNext()).hasNext()) {
+                final double score = result.get().getValue().getDouble(0);
+                assertThat(score, lessThanOrEqualTo(lastScore));
+                lastScore = score;
+                docIds.add(result.get().getPrimaryKey().getLong(0));
+            }
+            return Pair.of(docIds, result);
+        }
+    }
+
+    @Test
+    public void scanSimpleDocumentsByScore() throws Exception {
+        final List<SimpleDocument> documents = Arrays.asList(
+                SimpleDocument.newBuilder().setDocId(1L).setText("the quick brown fox").build(),
+                SimpleDocument.newBuilder().setDocId(2L).setText("fox fox fox jumps").build(),
+                SimpleDocument.newBuilder().setDocId(3L).setText("a lazy dog sleeps").build(),
+                SimpleDocument.newBuilder().setDocId(4L).setText("brown dog and brown fox in the brown house").build()
+        );
+        final RecordMetaDataHook hook = metaDataBuilder -> metaDataBuilder.addIndex(SIMPLE_DOC, SIMPLE_TEXT_STATISTICS);
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            documents.forEach(recordStore::saveRecord);
+            commit(context);
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            // The repeated "brown" outweighs the longer length of document 4, and the rarer "brown" outweighs the repeated "fox" of document 2.
+            Pair<List<Long>, RecordCursorResult<IndexEntry>> ranked = scanByScore(recordStore, SIMPLE_TEXT_STATISTICS, "brown fox", 10, null);
+            assertEquals(Arrays.asList(4L, 1L, 2L), ranked.getLeft());
+            assertEquals(SOURCE_EXHAUSTED, ranked.getRight().getNoNextReason());
+
+            // Page through the same ranking.
+            ranked = scanByScore(recordStore, SIMPLE_TEXT_STATISTICS, "brown fox", 2, null);
+            assertEquals(Arrays.asList(4L, 1L), ranked.getLeft());
+            assertEquals(RETURN_LIMIT_REACHED, ranked.getRight().getNoNextReason());
+            ranked = scanByScore(recordStore, SIMPLE_TEXT_STATISTICS, "brown fox", 2, ranked.getRight().getContinuation().toBytes());
+            assertEquals(Collections.singletonList(2L), ranked.getLeft());
+            assertEquals(SOURCE_EXHAUSTED, ranked.getRight().getNoNextReason());
+
+            assertEquals(Collections.emptyList(), scanByScore(recordStore, SIMPLE_TEXT_STATISTICS, "cat", 10, null).getLeft());
+
+            final Index indexWithoutStatistics = recordStore.getRecordMetaData().getIndex(SIMPLE_DEFAULT_NAME);
+            assertThrows(RecordCoreException.class, () -> scanByScore(recordStore, indexWithoutStatistics, "brown fox", 10, null));
+
+            // Reading more postings than the scan allows stops scoring with a continuation that carries on from there,
+            // unless the scan is to fail instead.
+            final TextIndexMaintainer maintainer = (TextIndexMaintainer)recordStore.getIndexMaintainer(SIMPLE_TEXT_STATISTICS);
+            final List<Long> limitedDocIds = new ArrayList<>();
+            int limitedScans = 0;
+            byte[] continuation = null;
+            RecordCursorResult<IndexEntry> limitedResult;
+            do {
+                final ScanProperties limited = new ScanProperties(ExecuteProperties.newBuilder().setScannedRecordsLimit(2).build());
+                try (RecordCursor<IndexEntry> cursor = maintainer.scanByScore(TupleHelpers.EMPTY, "brown fox", 10, continuation, limited)) {
+                    while ((limitedResult = cursor.getNext()).hasNext()) {
+                        limitedDocIds.add(limitedResult.get().getPrimaryKey().getLong(0));
+                    }
+                }
+                if (limitedResult.getNoNextReason() == SCAN_LIMIT_REACHED) {
+                    assertEquals(Collections.emptyList(), limitedDocIds);
+                    limitedScans++;
+                }
+                continuation = limitedResult.getContinuation().toBytes();
+            } while (limitedResult.getNoNextReason() == SCAN_LIMIT_REACHED);
+            assertThat(limitedScans, greaterThan(0));
+            assertEquals(Arrays.asList(4L, 1L, 2L), limitedDocIds);
+            assertEquals(SOURCE_EXHAUSTED, limitedResult.getNoNextReason());
+            final ScanProperties failing = new ScanProperties(ExecuteProperties.newBuilder().setScannedRecordsLimit(2).setFailOnScanLimitReached(true).build());
+            assertThrows(ScanLimitReachedException.class, () -> maintainer.scanByScore(TupleHelpers.EMPTY, "brown fox", 10, null, failing).getNext());
+
+            // Deleting a document removes it from the statistics as well as the postings.
+            recordStore.deleteRecord(Tuple.from(4L));
+            assertEquals(Arrays.asList(1L, 2L), scanByScore(recordStore, SIMPLE_TEXT_STATISTICS, "brown fox", 10, null).getLeft());
+            commit(context);
+        }
+    }
+
+    @Test
+    public void querySimpleDocumentsBySeekingRarestToken() throws Exception {
+        final List<SimpleDocument> documents = new ArrayList<>();
+        for (long docId = 0; docId < 100; docId++) {
+            documents.add(SimpleDocument.newBuilder()
+                    .setDocId(docId)
+                    .setText(docId % 25 == 0 ? "common words and a rare one" : "common words only")
+                    .build());
+        }
+        final RecordMetaDataHook hook = metaDataBuilder -> {
+            metaDataBuilder.removeIndex(SIMPLE_DEFAULT_NAME);
+            metaDataBuilder.addIndex(SIMPLE_DOC, SIMPLE_TEXT_STATISTICS);
+        };
+
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            documents.forEach(recordStore::saveRecord);
+            commit(context);
+        }
+
+        final RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType(SIMPLE_DOC)
+                .setFilter(Query.field("text").text().containsAll("common rare"))
+                .build();
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            final RecordQueryPlan plan = planner.plan(query);
+            assertThat(plan, descendant(textIndexScan(indexName(SIMPLE_TEXT_STATISTICS.getName()))));
+
+            // Only the postings of "rare" are scanned, and each is looked up in those of "common".
+            resetTimer(recordStore);
+            assertEquals(Arrays.asList(0L, 25L, 50L, 75L), recordStore.executeQuery(plan)
+                    .map(record -> record.getPrimaryKey().getLong(0)).asList().get());
+            assertEquals(4, getLoadTextEntryCount(recordStore));
+            assertEquals(4, getCount(recordStore, FDBStoreTimer.Counts.TEXT_INDEX_SEEK));
+
+            // Continuations resume after the last document returned.
+            final ExecuteProperties executeProperties = ExecuteProperties.newBuilder().setReturnedRowLimit(3).build();
+            final byte[] continuation;
+            try (RecordCursor<Long> cursor = recordStore.executeQuery(plan, null, executeProperties).map(record -> record.getPrimaryKey().getLong(0))) {
+                assertEquals(Arrays.asList(0L, 25L, 50L), cursor.asList().get());
+                continuation = cursor.getNext().getContinuation().toBytes();
+            }
+            assertEquals(Collections.singletonList(75L), recordStore.executeQuery(plan, continuation, executeProperties)
+                    .map(record -> record.getPrimaryKey().getLong(0)).asList().get());
+
+            // A token in no documents means there is nothing to scan at all.
+            resetTimer(recordStore);
+            assertEquals(Collections.emptyList(), recordStore.executeQuery(planner.plan(RecordQuery.newBuilder()
+                    .setRecordType(SIMPLE_DOC)
+                    .setFilter(Query.field("text").text().containsAll("common absent"))
+                    .build())).asList().get());
+            assertEquals(0, getLoadTextEntryCount(recordStore));
+            commit(context);
+        }
+    }
+
     @Test
     public void saveSimpleDocumentsWithPositionsOptionChange() throws Exception {
         final SimpleDocument shakespeareDocument = SimpleDocument.newBuilder()
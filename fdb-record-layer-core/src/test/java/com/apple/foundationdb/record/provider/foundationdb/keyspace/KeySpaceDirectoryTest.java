@@ -440,6 +440,42 @@ public class KeySpaceDirectoryTest extends FDBTestBase {
         }
     }
 
+    @Test
+    public void testPreloadDirectoryCache() throws Exception {
+        KeySpace root = new KeySpace(
+                new DirectoryLayerDirectory("arcade", "arcade")
+                        .addSubdirectory(new DirectoryLayerDirectory("game")
+                                .addSubdirectory(new DirectoryLayerDirectory("level"))));
+        final FDBDatabase database = FDBDatabaseFactory.instance().getDatabase();
+        final List<KeySpacePath> paths = Arrays.asList(
+                root.path("arcade").add("game", "pong").add("level", "one"),
+                root.path("arcade").add("game", "asteroids").add("level", "one"));
+        final List<Tuple> tuples = new ArrayList<>();
+        try (FDBRecordContext context = database.openContext()) {
+            for (KeySpacePath path : paths) {
+                tuples.add(path.toTuple(context));
+            }
+            context.commit();
+        }
+        database.clearCaches();
+
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        try (FDBRecordContext context = database.openContext()) {
+            context.setTimer(timer);
+            KeySpace.preloadDirectoryCache(context, paths);
+        }
+        assertEquals(1, timer.getCount(FDBStoreTimer.Events.DIRECTORY_READ), "all levels should be read together");
+
+        timer.reset();
+        try (FDBRecordContext context = database.openContext()) {
+            context.setTimer(timer);
+            for (int i = 0; i < paths.size(); i++) {
+                assertEquals(tuples.get(i), paths.get(i).toTuple(context));
+            }
+        }
+        assertEquals(0, timer.getCount(FDBStoreTimer.Events.DIRECTORY_READ), "paths should resolve from the cache");
+    }
+
     @Test
     public void testDirectoryLayerDirectoryValidation() throws Exception {
         KeySpace root = new KeySpace(
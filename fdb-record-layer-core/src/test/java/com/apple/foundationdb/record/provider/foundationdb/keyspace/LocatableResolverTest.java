@@ -232,6 +232,47 @@ public abstract class LocatableResolverTest extends FDBTestBase {
         assertEquals(timer.getCount(FDBStoreTimer.Events.DIRECTORY_READ), initialReads);
     }
 
+    @Test
+    public void testResolveAll() {
+        KeySpace keySpace = new KeySpace(new KeySpaceDirectory("path", KeyType.STRING, "path"));
+        final LocatableResolver scoped;
+        try (FDBRecordContext context = database.openContext()) {
+            scoped = scopedDirectoryGenerator.apply(database, keySpace.resolveFromKey(context, Tuple.from("path")));
+        }
+        Long existing = globalScope.resolve("existing").join();
+        database.clearCaches();
+
+        final Map<ScopedValue<String>, ResolverCreateHooks> toResolve = new HashMap<>();
+        toResolve.put(globalScope.wrap("existing"), ResolverCreateHooks.getDefault());
+        toResolve.put(globalScope.wrap("new"), ResolverCreateHooks.getDefault());
+        toResolve.put(scoped.wrap("existing"), ResolverCreateHooks.getDefault());
+        toResolve.put(scoped.wrap("other"), ResolverCreateHooks.getDefault());
+
+        FDBStoreTimer timer = new FDBStoreTimer();
+        Map<ScopedValue<String>, ResolverResult> resolved;
+        try (FDBRecordContext context = database.openContext()) {
+            context.setTimer(timer);
+            resolved = context.asyncToSync(FDBStoreTimer.Waits.WAIT_DIRECTORY_RESOLVE,
+                    LocatableResolver.resolveAllWithMetadata(context, toResolve));
+        }
+        assertEquals(toResolve.keySet(), resolved.keySet());
+        assertThat("existing values are read rather than created", resolved.get(globalScope.wrap("existing")).getValue(), is(existing));
+        assertEquals(1, timer.getCount(FDBStoreTimer.Events.DIRECTORY_READ), "all names should be resolved together");
+        for (Map.Entry<ScopedValue<String>, ResolverResult> entry : resolved.entrySet()) {
+            final ScopedValue<String> scopedName = entry.getKey();
+            assertThat("bulk resolution agrees with resolving one at a time",
+                    scopedName.getScope().resolve(scopedName.getData()).join(), is(entry.getValue().getValue()));
+        }
+
+        timer.reset();
+        try (FDBRecordContext context = database.openContext()) {
+            context.setTimer(timer);
+            assertEquals(resolved, context.asyncToSync(FDBStoreTimer.Waits.WAIT_DIRECTORY_RESOLVE,
+                    LocatableResolver.resolveAllWithMetadata(context, toResolve)));
+        }
+        assertEquals(0, timer.getCount(FDBStoreTimer.Events.DIRECTORY_READ), "resolved values should be cached");
+    }
+
     @Test
     public void testDirectoryCacheWithUncommittedContext() {
         FDBDatabase fdb = FDBDatabaseFactory.instance().getDatabase();
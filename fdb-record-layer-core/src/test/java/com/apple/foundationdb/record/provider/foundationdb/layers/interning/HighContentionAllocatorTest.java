@@ -27,6 +27,7 @@ import com.apple.foundationdb.async.AsyncUtil;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabase;
 import com.apple.foundationdb.record.provider.foundationdb.FDBDatabaseFactory;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBTestBase;
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpace;
 import com.apple.foundationdb.record.provider.foundationdb.keyspace.KeySpaceDirectory;
@@ -45,6 +46,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -60,6 +62,7 @@ import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
 
 @Tag(Tags.RequiresFDB)
@@ -148,6 +151,105 @@ class HighContentionAllocatorTest extends FDBTestBase {
         }
     }
 
+    @Test
+    void testShardedAllocationsUnique() {
+        final int shardCount = 4;
+        final Map<Long, String> allocated = new HashMap<>();
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        for (int shard = 0; shard < shardCount; shard++) {
+            try (FDBRecordContext context = database.openContext()) {
+                context.setTimer(timer);
+                Subspace subspace = keySpace.path("test-path").toSubspace(context);
+                HighContentionAllocator hca = HighContentionAllocator.sharded(context, subspace.get(0), subspace.get(1), shardCount, shard);
+                for (int i = 0; i < 20; i++) {
+                    String storedValue = "allocate-" + shard + "-" + i;
+                    Long thisAllocation = hca.allocate(storedValue).join();
+                    assertThat("allocations are unique across shards", allocated, not(hasKey(thisAllocation)));
+                    assertEquals(shard, thisAllocation % shardCount, "allocation comes from its own shard");
+                    allocated.put(thisAllocation, storedValue);
+                }
+                context.commit();
+            }
+        }
+        assertEquals(shardCount * 20, timer.getCount(FDBStoreTimer.Counts.HCA_ALLOCATION));
+        for (int shard = 0; shard < shardCount; shard++) {
+            assertEquals(20, timer.getCount(new HighContentionAllocator.ShardCount(HighContentionAllocator.ShardCount.Kind.ALLOCATION, shard)));
+        }
+
+        // an unsharded allocator does not see the shard counters but still avoids their values
+        try (FDBRecordContext context = database.openContext()) {
+            HighContentionAllocator hca = new HighContentionAllocator(context, keySpace.path("test-path"));
+            for (int i = 0; i < 20; i++) {
+                String storedValue = "unsharded-" + i;
+                Long thisAllocation = hca.allocate(storedValue).join();
+                assertThat("unsharded allocations do not reuse sharded values", allocated, not(hasKey(thisAllocation)));
+                allocated.put(thisAllocation, storedValue);
+            }
+            validateAllocation(context, hca, allocated);
+            context.commit();
+        }
+    }
+
+    @Test
+    void testShardedAfterUnsharded() throws Exception {
+        final int shardCount = 4;
+        final Map<Long, String> allocated = new HashMap<>();
+        try (FDBRecordContext context = database.openContext()) {
+            HighContentionAllocator hca = new HighContentionAllocator(context, keySpace.path("test-path"));
+            for (int i = 0; i < 300; i++) {
+                String storedValue = "unsharded-" + i;
+                allocated.put(hca.allocate(storedValue).join(), storedValue);
+            }
+            context.commit();
+        }
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            try (FDBRecordContext context = database.openContext()) {
+                Subspace subspace = keySpace.path("test-path").toSubspace(context);
+                HighContentionAllocator hca = HighContentionAllocator.sharded(context, subspace.get(0), subspace.get(1), shardCount, shard);
+                for (int i = 0; i < 20; i++) {
+                    String storedValue = "allocate-" + shard + "-" + i;
+                    Long thisAllocation = hca.allocate(storedValue).get(30, TimeUnit.SECONDS);
+                    assertThat("sharded allocations do not reuse unsharded values", allocated, not(hasKey(thisAllocation)));
+                    assertEquals(shard, thisAllocation % shardCount, "allocation comes from its own shard");
+                    allocated.put(thisAllocation, storedValue);
+                }
+                validateAllocation(context, hca, allocated);
+                context.commit();
+            }
+        }
+    }
+
+    @Test
+    void testShardedAdvancesPastFilledWindow() throws Exception {
+        final int shardCount = 4;
+        final Map<Long, String> allocated = new HashMap<>();
+        try (FDBRecordContext context = database.openContext()) {
+            // values written by some other means, of which no counter knows
+            HighContentionAllocator hca = new HighContentionAllocator(context, keySpace.path("test-path"));
+            for (long value = 0; value < 2000; value++) {
+                String storedValue = "forced-" + value;
+                hca.forceAllocate(storedValue, value);
+                allocated.put(value, storedValue);
+            }
+            context.commit();
+        }
+        final FDBStoreTimer timer = new FDBStoreTimer();
+        try (FDBRecordContext context = database.openContext()) {
+            context.setTimer(timer);
+            Subspace subspace = keySpace.path("test-path").toSubspace(context);
+            HighContentionAllocator hca = HighContentionAllocator.sharded(context, subspace.get(0), subspace.get(1), shardCount, 1);
+            for (int i = 0; i < 10; i++) {
+                String storedValue = "allocate-" + i;
+                Long thisAllocation = hca.allocate(storedValue).get(30, TimeUnit.SECONDS);
+                assertThat("sharded allocations do not reuse forced values", allocated, not(hasKey(thisAllocation)));
+                allocated.put(thisAllocation, storedValue);
+            }
+            validateAllocation(context, hca, allocated);
+        }
+        assertThat(timer.getCount(FDBStoreTimer.Counts.HCA_WINDOW_ADVANCE), greaterThanOrEqualTo(1));
+    }
+
     @Test
     @Tag(Tags.WipesFDB)
     void testCheckForRootConflicts() {
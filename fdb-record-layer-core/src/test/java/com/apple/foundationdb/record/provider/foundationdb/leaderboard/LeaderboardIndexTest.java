@@ -369,6 +369,16 @@ public class LeaderboardIndexTest extends FDBTestBase {
         }
     }
 
+    class BufferedGroupedNestedLeaderboards extends GroupedNestedLeaderboards {
+        @Override
+        public void addIndex(RecordMetaDataBuilder metaDataBuilder) {
+            final Map<String, String> options = new HashMap<>();
+            options.put(IndexOptions.RANK_HASH_FUNCTION, RankedSetHashFunctions.MURMUR3);
+            options.put(IndexOptions.TIME_WINDOW_LEADERBOARD_BUFFER_WRITES_OPTION, "true");
+            metaDataBuilder.addIndex("NestedLeaderboardRecord", new Index("LeaderboardIndex", keyExpression, IndexTypes.TIME_WINDOW_LEADERBOARD, options));
+        }
+    }
+
     class FlatLeaderboards extends Leaderboards {
         protected final GroupingKeyExpression keyExpression = Key.Expressions.field("scores", KeyExpression.FanType.FanOut)
                 .split(3)
@@ -536,6 +546,49 @@ public class LeaderboardIndexTest extends FDBTestBase {
         basicGrouped(new GroupedNestedLeaderboards());
     }
 
+    @Test
+    public void basicGroupedNestedBuffered() {
+        basicGrouped(new BufferedGroupedNestedLeaderboards());
+    }
+
+    @Test
+    public void bufferedUpdatesVisibleInTransaction() {
+        Leaderboards leaderboards = new BufferedGroupedNestedLeaderboards();
+        leaderboards.buildMetaData();
+        try (FDBRecordContext context = openContext()) {
+            leaderboards.openRecordStore(context, true);
+            leaderboards.updateWindows(true, 10100);
+            addInitialScores(leaderboards);
+            assertThat(metrics.getCount(FDBStoreTimer.Counts.TIME_WINDOW_LEADERBOARD_BUFFERED_UPDATE), Matchers.greaterThan(0));
+            assertEquals(0, metrics.getCount(FDBStoreTimer.Counts.TIME_WINDOW_LEADERBOARD_BUFFER_FLUSHED_RANKED_SET));
+
+            // Reading a ranked set applies whatever has been buffered for it.
+            final IndexAggregateFunction count1 = leaderboards.timeWindowCount(TimeWindowLeaderboard.ALL_TIME_LEADERBOARD_TYPE, -1);
+            assertEquals((Long)4L, leaderboards.evaluateAggregateFunction(count1, Tuple.from("game-1")).get(0));
+            assertEquals(1, metrics.getCount(FDBStoreTimer.Counts.TIME_WINDOW_LEADERBOARD_BUFFER_FLUSHED_RANKED_SET));
+
+            // Replacing a score that was added in this same transaction.
+            leaderboards.addScores("achilles", "game-1", 2000, 10301, 669);
+            TupleRange game_1 = TupleRange.allOf(Tuple.from("game-1"));
+            assertEquals(Arrays.asList("achilles", "patroclus", "hecuba", "hector"),
+                    leaderboards.scanIndex(IndexScanType.BY_RANK, game_1)
+                            .map(leaderboards::getName).asList().join());
+
+            leaderboards.recordStore.deleteRecord(Tuple.from("hector"));
+            assertEquals((Long)3L, leaderboards.evaluateAggregateFunction(count1, Tuple.from("game-1")).get(0));
+            context.commit();
+        }
+        try (FDBRecordContext context = openContext()) {
+            leaderboards.openRecordStore(context, false);
+            TupleRange game_1 = TupleRange.allOf(Tuple.from("game-1"));
+            assertEquals(Arrays.asList("achilles", "patroclus", "hecuba"),
+                    leaderboards.scanIndex(IndexScanType.BY_RANK, game_1)
+                            .map(leaderboards::getName).asList().join());
+            final IndexAggregateFunction count2 = leaderboards.timeWindowCount(TEN_UNITS, 10100);
+            assertEquals((Long)1L, leaderboards.evaluateAggregateFunction(count2, Tuple.from("game-1")).get(0));
+        }
+    }
+
     @Test
     public void flat() {
         basicGrouped(new FlatLeaderboards());
@@ -0,0 +1,210 @@
+/*
+ * FDBAggregateQueryTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.provider.foundationdb.query;
+
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.RecordQueryAggregate;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.aggregate.AggregateResult;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryAggregatePlan;
+import com.apple.foundationdb.tuple.Tuple;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.coveringIndexScan;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexName;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexScan;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Tests for queries with aggregates, which are implemented by a {@link RecordQueryAggregatePlan}.
+ */
+@Tag(Tags.RequiresFDB)
+public class FDBAggregateQueryTest extends FDBRecordStoreQueryTestBase {
+    private static final int RECORD_COUNT = 100;
+    private static final int GROUP_COUNT = 5;
+
+    private void saveRecords() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setNumValue2(i % 7)
+                        .setNumValue3Indexed(i % GROUP_COUNT)
+                        .build());
+            }
+            commit(context);
+        }
+    }
+
+    private static RecordQuery.Builder groupedQuery() {
+        return RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setGroupBy(field("num_value_3_indexed"))
+                .setAggregates(RecordQueryAggregate.count(),
+                        RecordQueryAggregate.sum(field("rec_no")),
+                        RecordQueryAggregate.min(field("rec_no")),
+                        RecordQueryAggregate.max(field("rec_no")),
+                        RecordQueryAggregate.avg(field("rec_no")));
+    }
+
+    private static List<AggregateResult> expectedGroups(boolean reverse) {
+        List<AggregateResult> expected = IntStream.range(0, GROUP_COUNT).mapToObj(group -> {
+            List<Long> recNos = IntStream.range(0, RECORD_COUNT).filter(i -> i % GROUP_COUNT == group)
+                    .mapToObj(i -> (long)i).collect(Collectors.toList());
+            long sum = recNos.stream().mapToLong(Long::longValue).sum();
+            return new AggregateResult(Tuple.from(group), Arrays.asList((long)recNos.size(), sum,
+                    recNos.get(0), recNos.get(recNos.size() - 1), (double)sum / recNos.size()));
+        }).collect(Collectors.toList());
+        if (reverse) {
+            Collections.reverse(expected);
+        }
+        return expected;
+    }
+
+    private List<AggregateResult> executeInPages(RecordQueryAggregatePlan plan, ExecuteProperties executeProperties) throws Exception {
+        List<AggregateResult> retrieved = new ArrayList<>();
+        byte[] continuation = null;
+        int pages = 0;
+        do {
+            RecordCursor<AggregateResult> cursor = plan.execute(recordStore, EvaluationContext.EMPTY, continuation, executeProperties);
+            retrieved.addAll(cursor.asList().get());
+            if (retrieved.size() > RECORD_COUNT) {
+                fail("returned more groups than there were records");
+            }
+            continuation = cursor.getNext().getContinuation().toBytes();
+            if (++pages > 1000) {
+                fail("too many pages");
+            }
+        } while (continuation != null);
+        return retrieved;
+    }
+
+    /**
+     * Verify that grouping by an indexed field scans that index in order without loading records.
+     */
+    @Test
+    public void aggregateGroupedByIndex() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            RecordQueryAggregatePlan plan = ((RecordQueryPlanner)planner).planAggregate(groupedQuery().build());
+            assertThat(plan.getInner(), coveringIndexScan(indexScan(indexName("MySimpleRecord$num_value_3_indexed"))));
+
+            timer.reset();
+            assertEquals(expectedGroups(false), executeInPages(plan, ExecuteProperties.SERIAL_EXECUTE));
+            assertEquals(RECORD_COUNT, timer.getCount(FDBStoreTimer.Counts.QUERY_AGGREGATE_PLAN_GIVEN));
+            assertEquals(GROUP_COUNT, timer.getCount(FDBStoreTimer.Counts.QUERY_AGGREGATE_PLAN_GROUPS));
+        }
+    }
+
+    /**
+     * Verify that groups partly aggregated when a scan limit is reached are resumed from the continuation.
+     */
+    @Test
+    public void aggregateWithScanLimit() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            RecordQueryAggregatePlan plan = ((RecordQueryPlanner)planner).planAggregate(groupedQuery().build());
+
+            timer.reset();
+            assertEquals(expectedGroups(false), executeInPages(plan, ExecuteProperties.newBuilder().setScannedRecordsLimit(7).build()));
+            assertEquals(RECORD_COUNT, timer.getCount(FDBStoreTimer.Counts.QUERY_AGGREGATE_PLAN_GIVEN));
+            assertEquals(expectedGroups(false), executeInPages(plan, ExecuteProperties.newBuilder()
+                    .setScannedRecordsLimit(30)
+                    .setReturnedRowLimit(1)
+                    .build()));
+        }
+    }
+
+    /**
+     * Verify that a row limit counts groups and that groups are returned in reverse when the sort is reversed.
+     */
+    @Test
+    public void aggregateReverseWithLimit() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            RecordQueryAggregatePlan plan = ((RecordQueryPlanner)planner).planAggregate(groupedQuery()
+                    .setSort(field("num_value_3_indexed"), true)
+                    .build());
+            assertEquals(expectedGroups(true), executeInPages(plan, ExecuteProperties.newBuilder().setReturnedRowLimit(2).build()));
+        }
+    }
+
+    /**
+     * Verify that aggregates without a group by are computed over all matching records.
+     */
+    @Test
+    public void aggregateWithoutGroupBy() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.field("num_value_3_indexed").equalsValue(2))
+                    .setAggregates(RecordQueryAggregate.count(), RecordQueryAggregate.max(field("num_value_2")))
+                    .build();
+            RecordQueryAggregatePlan plan = ((RecordQueryPlanner)planner).planAggregate(query);
+            assertThat(plan.getInner(), indexScan(indexName("MySimpleRecord$num_value_3_indexed")));
+            assertEquals(Collections.singletonList(new AggregateResult(Tuple.from(), Arrays.asList(20L, 6L))),
+                    executeInPages(plan, ExecuteProperties.newBuilder().setScannedRecordsLimit(3).build()));
+        }
+    }
+
+    /**
+     * Verify that aggregate queries are planned only by {@link RecordQueryPlanner#planAggregate} and need an
+     * index for their groups.
+     */
+    @Test
+    public void aggregateNeedsIndexForGroups() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            RecordQuery query = groupedQuery().build();
+            assertThrows(RecordCoreException.class, () -> planner.plan(query));
+            RecordQuery unindexed = groupedQuery().setGroupBy(field("num_value_2")).build();
+            assertThrows(RecordCoreException.class, () -> ((RecordQueryPlanner)planner).planAggregate(unindexed));
+        }
+    }
+}
@@ -46,18 +46,22 @@ import java.util.List;
 
 import static com.apple.foundationdb.record.TestHelpers.RealAnythingMatcher.anything;
 import static com.apple.foundationdb.record.TestHelpers.assertDiscardedNone;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concat;
 import static com.apple.foundationdb.record.metadata.Key.Expressions.concatenateFields;
 import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.bounds;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.coveringIndexScan;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.coveringIntersection;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.filter;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.hasNoDescendant;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.hasTupleString;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexName;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexScan;
 import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.unbounded;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.union;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
@@ -432,6 +436,83 @@ public class FDBCoveringIndexQueryTest extends FDBRecordStoreQueryTestBase {
         }
     }
 
+    /**
+     * Verify that an intersection of index scans can be covering when each index has some of the required fields,
+     * and that the returned records combine the fields from all of them.
+     */
+    @Test
+    public void coveringIntersection() throws Exception {
+        complexQuerySetup(null);
+
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.and(
+                        Query.field("str_value_indexed").equalsValue("even"),
+                        Query.field("num_value_3_indexed").equalsValue(3)))
+                .setRequiredResults(Arrays.asList(field("str_value_indexed"), field("num_value_3_indexed")))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, coveringIntersection(
+                coveringIndexScan(indexScan(allOf(indexName("MySimpleRecord$str_value_indexed"), bounds(hasTupleString("[[even],[even]]"))))),
+                coveringIndexScan(indexScan(allOf(indexName("MySimpleRecord$num_value_3_indexed"), bounds(hasTupleString("[[3],[3]]")))))));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            int i = 0;
+            try (RecordCursorIterator<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan).asIterator()) {
+                while (cursor.hasNext()) {
+                    FDBQueriedRecord<Message> rec = cursor.next();
+                    TestRecords1Proto.MySimpleRecord.Builder myrec = TestRecords1Proto.MySimpleRecord.newBuilder();
+                    myrec.mergeFrom(rec.getRecord());
+                    assertEquals("even", myrec.getStrValueIndexed());
+                    assertEquals(3, myrec.getNumValue3Indexed());
+                    assertEquals(myrec.getRecNo(), rec.getPrimaryKey().getLong(0));
+                    assertFalse(myrec.hasNumValue2());
+                    i++;
+                }
+            }
+            assertEquals(10, i);
+        }
+    }
+
+    /**
+     * Verify that a union can be covering when each of its branches is, including the fields of the comparison key.
+     */
+    @Test
+    public void coveringUnion() throws Exception {
+        complexQuerySetup(null);
+
+        RecordQuery query = RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.or(
+                        Query.field("num_value_3_indexed").lessThan(2),
+                        Query.field("num_value_3_indexed").greaterThan(3)))
+                .setRequiredResults(Collections.singletonList(field("rec_no")))
+                .build();
+        RecordQueryPlan plan = planner.plan(query);
+        assertThat(plan, union(
+                coveringIndexScan(indexScan(allOf(indexName("MySimpleRecord$num_value_3_indexed"), bounds(hasTupleString("([null],[2])"))))),
+                coveringIndexScan(indexScan(allOf(indexName("MySimpleRecord$num_value_3_indexed"), bounds(hasTupleString("([3],>"))))),
+                equalTo(concat(field("num_value_3_indexed"), primaryKey("MySimpleRecord")))));
+
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            int i = 0;
+            try (RecordCursorIterator<FDBQueriedRecord<Message>> cursor = recordStore.executeQuery(plan).asIterator()) {
+                while (cursor.hasNext()) {
+                    FDBQueriedRecord<Message> rec = cursor.next();
+                    TestRecords1Proto.MySimpleRecord.Builder myrec = TestRecords1Proto.MySimpleRecord.newBuilder();
+                    myrec.mergeFrom(rec.getRecord());
+                    assertTrue(myrec.getNumValue3Indexed() < 2 || myrec.getNumValue3Indexed() > 3);
+                    assertFalse(myrec.hasNumValue2());
+                    i++;
+                }
+            }
+            assertEquals(60, i);
+            assertDiscardedNone(context);
+        }
+    }
+
     /**
      * Verify that covering indexes are not used when the an outer "header" field is missing from the primary key,
      * even though the index has all of the fields that the query actually asks for.
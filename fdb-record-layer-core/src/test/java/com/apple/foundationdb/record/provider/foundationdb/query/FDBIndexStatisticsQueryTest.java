@@ -0,0 +1,230 @@
+/*
+ * FDBIndexStatisticsQueryTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.query;
+
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.metadata.Index;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintenanceFilter;
+import com.apple.foundationdb.record.provider.foundationdb.OnlineIndexer;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanCache;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.statistics.IndexStatistics;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.descendant;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexName;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexScan;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests for planning queries with {@link IndexStatistics}.
+ */
+@Tag(Tags.RequiresFDB)
+public class FDBIndexStatisticsQueryTest extends FDBRecordStoreQueryTestBase {
+    private static final String STR_INDEX = "MySimpleRecord$str_value_indexed";
+    private static final String NUM_3_INDEX = "MySimpleRecord$num_value_3_indexed";
+
+    private void saveRecords(IntFunction<String> strValue, IntFunction<Integer> numValue3) throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < 100; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setStrValueIndexed(strValue.apply(i))
+                        .setNumValue3Indexed(numValue3.apply(i))
+                        .build());
+            }
+            commit(context);
+        }
+    }
+
+    private void collectStatistics(String indexName) throws Exception {
+        byte[] continuation = null;
+        do {
+            try (FDBRecordContext context = openContext()) {
+                openSimpleRecordStore(context);
+                final Index index = recordStore.getRecordMetaData().getIndex(indexName);
+                continuation = recordStore.collectIndexStatisticsAsync(index, continuation,
+                        new ScanProperties(ExecuteProperties.newBuilder().setReturnedRowLimit(30).build())).get();
+                commit(context);
+            }
+        } while (continuation != null);
+    }
+
+    private RecordQueryPlan planWithStatistics(RecordQuery query) throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            planner.setIndexStatistics(recordStore.loadIndexStatisticsAsync().get());
+            return planner.plan(query);
+        }
+    }
+
+    private static RecordQuery query(String strValue, int numValue3) {
+        return RecordQuery.newBuilder()
+                .setRecordType("MySimpleRecord")
+                .setFilter(Query.and(
+                        Query.field("str_value_indexed").equalsValue(strValue),
+                        Query.field("num_value_3_indexed").equalsValue(numValue3)))
+                .build();
+    }
+
+    @Test
+    public void collectStatistics() throws Exception {
+        saveRecords(i -> (i % 2 == 0) ? "even" : "odd", i -> i % 50);
+        collectStatistics(NUM_3_INDEX);
+        // Collecting again from the start replaces rather than adds to what was collected before.
+        collectStatistics(NUM_3_INDEX);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final Map<String, IndexStatistics> statistics = recordStore.loadIndexStatisticsAsync().get();
+            assertNull(statistics.get(STR_INDEX));
+            final IndexStatistics numValue3Statistics = statistics.get(NUM_3_INDEX);
+            assertNotNull(numValue3Statistics);
+            assertEquals(100, numValue3Statistics.getEntryCount());
+            assertEquals(50.0, numValue3Statistics.getDistinctCount(1), 5.0);
+        }
+    }
+
+    @DualPlannerTest
+    public void preferMoreSelectiveIndex() throws Exception {
+        saveRecords(i -> (i % 2 == 0) ? "even" : "odd", i -> i % 50);
+        collectStatistics(STR_INDEX);
+        collectStatistics(NUM_3_INDEX);
+        assertThat(planWithStatistics(query("even", 4)), descendant(indexScan(indexName(NUM_3_INDEX))));
+    }
+
+    @DualPlannerTest
+    public void preferMoreSelectiveIndexReversed() throws Exception {
+        saveRecords(i -> "s" + i, i -> i % 2);
+        collectStatistics(STR_INDEX);
+        collectStatistics(NUM_3_INDEX);
+        assertThat(planWithStatistics(query("s4", 0)), descendant(indexScan(indexName(STR_INDEX))));
+    }
+
+    @Test
+    public void statisticsInPlanCacheKey() throws Exception {
+        saveRecords(i -> "s" + i, i -> i % 2);
+        collectStatistics(STR_INDEX);
+        collectStatistics(NUM_3_INDEX);
+        final RecordQueryPlanCache planCache = new RecordQueryPlanCache();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final RecordQueryPlanner cachingPlanner = new RecordQueryPlanner(recordStore.getRecordMetaData(), recordStore.getRecordStoreState(), timer);
+            cachingPlanner.setPlanCache(planCache);
+            cachingPlanner.plan(query("s4", 0));
+            cachingPlanner.setIndexStatistics(recordStore.loadIndexStatisticsAsync().get());
+            timer.reset();
+            // The plan made without statistics is not returned for a planner that has them.
+            assertThat(cachingPlanner.plan(query("s4", 0)), descendant(indexScan(indexName(STR_INDEX))));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_HIT));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            // Statistics loaded again are equal to those that the plan was made with.
+            final RecordQueryPlanner cachingPlanner = new RecordQueryPlanner(recordStore.getRecordMetaData(), recordStore.getRecordStoreState(), timer);
+            cachingPlanner.setPlanCache(planCache);
+            cachingPlanner.setIndexStatistics(recordStore.loadIndexStatisticsAsync().get());
+            timer.reset();
+            assertThat(cachingPlanner.plan(query("s4", 0)), descendant(indexScan(indexName(STR_INDEX))));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_HIT));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+        }
+        saveRecords(i -> (i % 2 == 0) ? "even" : "odd", i -> i % 50);
+        collectStatistics(STR_INDEX);
+        collectStatistics(NUM_3_INDEX);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            // But once they have changed, the query is planned again.
+            final RecordQueryPlanner cachingPlanner = new RecordQueryPlanner(recordStore.getRecordMetaData(), recordStore.getRecordStoreState(), timer);
+            cachingPlanner.setPlanCache(planCache);
+            cachingPlanner.setIndexStatistics(recordStore.loadIndexStatisticsAsync().get());
+            timer.reset();
+            cachingPlanner.plan(query("s4", 0));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_HIT));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+        }
+    }
+
+    @Test
+    public void collectWhileBuilding() throws Exception {
+        saveRecords(i -> (i % 2 == 0) ? "even" : "odd", i -> i % 50);
+        final Index index;
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            index = recordStore.getRecordMetaData().getIndex(NUM_3_INDEX);
+            recordStore.markIndexDisabled(index).get();
+            commit(context);
+        }
+        try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder().setDatabase(fdb).setMetaData(recordStore.getRecordMetaData())
+                .setIndex(index).setSubspace(recordStore.getSubspace()).setLimit(30).build()) {
+            indexBuilder.buildIndex();
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final IndexStatistics statistics = recordStore.loadIndexStatisticsAsync(index).get();
+            assertNotNull(statistics);
+            assertEquals(100, statistics.getEntryCount());
+            assertEquals(50.0, statistics.getDistinctCount(1), 5.0);
+        }
+    }
+
+    @Test
+    public void collectWhileBuildingWithFilter() throws Exception {
+        saveRecords(i -> (i % 2 == 0) ? "even" : "odd", i -> i % 50);
+        final Index index;
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            index = recordStore.getRecordMetaData().getIndex(NUM_3_INDEX);
+            recordStore.markIndexDisabled(index).get();
+            commit(context);
+        }
+        // Only the records with even numbers are indexed, and so only they are counted.
+        final IndexMaintenanceFilter evenOnly = (i, r) -> ((Number)r.getField(r.getDescriptorForType().findFieldByName("rec_no"))).longValue() % 2 == 0 ?
+                                                          IndexMaintenanceFilter.IndexValues.ALL : IndexMaintenanceFilter.IndexValues.NONE;
+        try (OnlineIndexer indexBuilder = OnlineIndexer.newBuilder().setDatabase(fdb).setMetaData(recordStore.getRecordMetaData())
+                .setIndex(index).setSubspace(recordStore.getSubspace()).setIndexMaintenanceFilter(evenOnly).setLimit(30).build()) {
+            indexBuilder.buildIndex();
+        }
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            final IndexStatistics statistics = recordStore.loadIndexStatisticsAsync(index).get();
+            assertNotNull(statistics);
+            assertEquals(50, statistics.getEntryCount());
+            assertEquals(25.0, statistics.getDistinctCount(1), 3.0);
+        }
+    }
+}
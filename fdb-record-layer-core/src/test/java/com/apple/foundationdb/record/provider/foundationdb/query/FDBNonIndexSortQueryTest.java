@@ -0,0 +1,268 @@
+/*
+ * FDBNonIndexSortQueryTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.query;
+
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.RecordCursorProto;
+import com.apple.foundationdb.record.RecordCursorResult;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.provider.foundationdb.FDBQueriedRecord;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan;
+import com.apple.foundationdb.record.query.plan.sorting.SortCursor;
+import com.apple.foundationdb.record.query.plan.temp.CascadesPlanner;
+import com.apple.foundationdb.record.query.plan.temp.PlannerRuleSet;
+import com.apple.test.Tags;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.descendant;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexName;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexScan;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.scan;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.sort;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.unbounded;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Tests for queries whose sort is not satisfied by any index and so is implemented by a
+ * {@link com.apple.foundationdb.record.query.plan.plans.RecordQuerySortPlan}.
+ */
+@Tag(Tags.RequiresFDB)
+public class FDBNonIndexSortQueryTest extends FDBRecordStoreQueryTestBase {
+    private static final int RECORD_COUNT = 100;
+    private static final int MAX_RECORDS_IN_MEMORY = 10;
+
+    private void saveRecords() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setNumValue2(i % 7)
+                        .setNumValue3Indexed(i % 5)
+                        .build());
+            }
+            commit(context);
+        }
+    }
+
+    private void allowNonIndexSort() {
+        RecordQueryPlanner recordQueryPlanner = (RecordQueryPlanner)planner;
+        recordQueryPlanner.setConfiguration(recordQueryPlanner.getConfiguration().asBuilder()
+                .setAllowNonIndexSort(true)
+                .setMaxSortRecordsInMemory(MAX_RECORDS_IN_MEMORY)
+                .build());
+    }
+
+    private static List<Long> expectedOrder(boolean reverse) {
+        Comparator<Long> comparator = Comparator.<Long>comparingLong(recNo -> recNo % 7).thenComparingLong(recNo -> recNo);
+        return IntStream.range(0, RECORD_COUNT).mapToObj(i -> (long)i)
+                .sorted(reverse ? comparator.reversed() : comparator)
+                .collect(Collectors.toList());
+    }
+
+    private List<Long> executeInPages(RecordQueryPlan plan, ExecuteProperties executeProperties) throws Exception {
+        List<Long> retrieved = new ArrayList<>(RECORD_COUNT);
+        byte[] continuation = null;
+        int pages = 0;
+        do {
+            RecordCursor<Long> cursor = recordStore.executeQuery(plan, continuation, executeProperties)
+                    .map(rec -> TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(rec.getRecord()).build().getRecNo());
+            retrieved.addAll(cursor.asList().get());
+            if (retrieved.size() > RECORD_COUNT) {
+                fail("added more records than were present");
+            }
+            continuation = cursor.getNext().getContinuation().toBytes();
+            if (++pages > 1000) {
+                fail("too many pages");
+            }
+        } while (continuation != null);
+        return retrieved;
+    }
+
+    /**
+     * Verify that the planner still rejects a sort without an index by default.
+     */
+    @Test
+    public void sortWithoutIndexNotAllowed() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setSort(field("num_value_2"))
+                    .build();
+            assertThrows(RecordCoreException.class, () -> planner.plan(query));
+        }
+    }
+
+    /**
+     * Verify that a sort without an index merges runs spilled to files when there is no row limit.
+     */
+    @Test
+    public void sortWithoutIndexSpills() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            allowNonIndexSort();
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setSort(field("num_value_2"))
+                    .build();
+            RecordQueryPlan plan = planner.plan(query);
+            assertThat(plan, sort(equalTo(field("num_value_2")), descendant(scan(unbounded()))));
+
+            timer.reset();
+            assertEquals(expectedOrder(false), executeInPages(plan, ExecuteProperties.SERIAL_EXECUTE));
+            assertEquals(RECORD_COUNT / MAX_RECORDS_IN_MEMORY, timer.getCount(FDBStoreTimer.Counts.QUERY_SORT_PLAN_SPILLED_RUNS));
+        }
+    }
+
+    /**
+     * Verify that a sort without an index with a row limit keeps only that many records and continues correctly.
+     */
+    @Test
+    public void sortWithoutIndexWithLimit() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            allowNonIndexSort();
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setFilter(Query.field("num_value_3_indexed").lessThan(4))
+                    .setSort(field("num_value_2"), true)
+                    .build();
+            RecordQueryPlan plan = planner.plan(query);
+            assertThat(plan, sort(equalTo(field("num_value_2")), indexScan(indexName("MySimpleRecord$num_value_3_indexed"))));
+
+            timer.reset();
+            List<Long> expected = expectedOrder(true).stream().filter(recNo -> recNo % 5 < 4).collect(Collectors.toList());
+            assertEquals(expected, executeInPages(plan, ExecuteProperties.newBuilder().setReturnedRowLimit(7).build()));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.QUERY_SORT_PLAN_SPILLED_RUNS));
+        }
+    }
+
+    /**
+     * Verify that a sort without an index resumes correctly when its input is stopped by an out-of-band limit.
+     */
+    @Test
+    public void sortWithoutIndexWithScanLimit() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            allowNonIndexSort();
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setSort(field("num_value_2"))
+                    .build();
+            RecordQueryPlan plan = planner.plan(query);
+
+            assertEquals(expectedOrder(false), executeInPages(plan, ExecuteProperties.newBuilder().setScannedRecordsLimit(30).build()));
+            assertEquals(expectedOrder(false), executeInPages(plan, ExecuteProperties.newBuilder()
+                    .setScannedRecordsLimit(30)
+                    .setReturnedRowLimit(4)
+                    .build()));
+        }
+    }
+
+    /**
+     * Verify that a sort cursor only puts as many of the positions it has kept into a continuation as fit in its budget
+     * and still returns every record when resumed.
+     */
+    @Test
+    public void sortWithoutIndexBoundedContinuation() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            allowNonIndexSort();
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setSort(field("num_value_2"))
+                    .build();
+            RecordQuerySortPlan plan = (RecordQuerySortPlan)planner.plan(query);
+
+            List<Long> retrieved = new ArrayList<>(RECORD_COUNT);
+            byte[] continuation = null;
+            int pages = 0;
+            do {
+                // Each page gets its own scan limit.
+                ExecuteProperties innerProperties = ExecuteProperties.newBuilder().setScannedRecordsLimit(30).build();
+                RecordCursor<FDBQueriedRecord<Message>> cursor = new SortCursor<>(recordStore, plan.getSortKey(),
+                        innerContinuation -> plan.getChild().execute(recordStore, EvaluationContext.EMPTY, innerContinuation, innerProperties),
+                        continuation, Integer.MAX_VALUE, MAX_RECORDS_IN_MEMORY, 16);
+                RecordCursorResult<FDBQueriedRecord<Message>> result;
+                while ((result = cursor.getNext()).hasNext()) {
+                    retrieved.add(TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(result.get().getRecord()).build().getRecNo());
+                }
+                continuation = result.getContinuation().toBytes();
+                if (continuation != null) {
+                    RecordCursorProto.SortContinuation sortContinuation = RecordCursorProto.SortContinuation.parseFrom(continuation);
+                    assertThat(sortContinuation.getKeptPositionCount(), lessThanOrEqualTo(4));
+                }
+                if (++pages > 1000) {
+                    fail("too many pages");
+                }
+            } while (continuation != null);
+            assertEquals(expectedOrder(false), retrieved);
+        }
+    }
+
+    /**
+     * Verify that the Cascades planner falls back to a sort plan when given the rule for it.
+     */
+    @Test
+    public void sortWithoutIndexCascades() throws Exception {
+        saveRecords();
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            planner = new CascadesPlanner(recordStore.getRecordMetaData(), recordStore.getRecordStoreState(),
+                    PlannerRuleSet.withNonIndexSort(MAX_RECORDS_IN_MEMORY));
+            RecordQuery query = RecordQuery.newBuilder()
+                    .setRecordType("MySimpleRecord")
+                    .setSort(field("num_value_2"))
+                    .build();
+            RecordQueryPlan plan = planner.plan(query);
+            assertThat(plan, descendant(sort(equalTo(field("num_value_2")), descendant(scan(unbounded())))));
+            assertEquals(expectedOrder(false), executeInPages(plan, ExecuteProperties.newBuilder().setReturnedRowLimit(15).build()));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * FDBPlanCacheTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.provider.foundationdb.query;
+
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IndexState;
+import com.apple.foundationdb.record.MutableRecordStoreState;
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.RecordStoreState;
+import com.apple.foundationdb.record.TestRecords1Proto;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordContext;
+import com.apple.foundationdb.record.provider.foundationdb.FDBStoreTimer;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanCache;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import com.apple.test.Tags;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexName;
+import static com.apple.foundationdb.record.query.plan.match.PlanMatchers.indexScan;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for {@link RecordQueryPlanCache}.
+ */
+@Tag(Tags.RequiresFDB)
+public class FDBPlanCacheTest extends FDBRecordStoreQueryTestBase {
+    private static final RecordQuery PARAMETER_QUERY = RecordQuery.newBuilder()
+            .setRecordType("MySimpleRecord")
+            .setFilter(Query.field("num_value_3_indexed").equalsParameter("p"))
+            .build();
+
+    @AfterEach
+    public void removePlanCache() {
+        fdb.setPlanCache(null);
+    }
+
+    private void saveRecords() throws Exception {
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            for (int i = 0; i < 20; i++) {
+                recordStore.saveRecord(TestRecords1Proto.MySimpleRecord.newBuilder()
+                        .setRecNo(i)
+                        .setNumValue3Indexed(i % 5)
+                        .build());
+            }
+            commit(context);
+        }
+    }
+
+    private List<Long> execute(RecordQueryPlan plan, int parameter) throws Exception {
+        return recordStore.executeQuery(plan, null, EvaluationContext.forBinding("p", parameter), ExecuteProperties.SERIAL_EXECUTE)
+                .map(rec -> TestRecords1Proto.MySimpleRecord.newBuilder().mergeFrom(rec.getRecord()).getRecNo())
+                .asList()
+                .get();
+    }
+
+    @Test
+    public void reuseForParameterValues() throws Exception {
+        saveRecords();
+        fdb.setPlanCache(new RecordQueryPlanCache());
+        final RecordMetaData metaData = simpleMetaData(NO_HOOK);
+        try (FDBRecordContext context = openContext()) {
+            createOrOpenRecordStore(context, metaData);
+            timer.reset();
+            final RecordQueryPlan plan1 = recordStore.planQuery(PARAMETER_QUERY);
+            assertThat(plan1, indexScan(indexName("MySimpleRecord$num_value_3_indexed")));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_HIT));
+
+            // An equal query, built separately, finds the same plan.
+            final RecordQueryPlan plan2 = recordStore.planQuery(PARAMETER_QUERY.toBuilder().build());
+            assertSame(plan1, plan2);
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_HIT));
+
+            assertEquals(Arrays.asList(1L, 6L, 11L, 16L), execute(plan1, 1));
+            assertEquals(Arrays.asList(3L, 8L, 13L, 18L), execute(plan2, 3));
+        }
+        // A new store with the same meta-data and index states also finds it.
+        try (FDBRecordContext context = openContext()) {
+            createOrOpenRecordStore(context, metaData);
+            timer.reset();
+            recordStore.planQuery(PARAMETER_QUERY);
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_HIT));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+        }
+    }
+
+    @Test
+    public void differentMetaDataWithSameVersion() throws Exception {
+        saveRecords();
+        final RecordQueryPlanCache planCache = new RecordQueryPlanCache();
+        fdb.setPlanCache(planCache);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            assertThat(recordStore.planQuery(PARAMETER_QUERY), indexScan(indexName("MySimpleRecord$num_value_3_indexed")));
+
+            // Meta-data without the index, but claiming the same version, must not be given the plan that uses it.
+            final RecordMetaData withoutIndex = simpleMetaData(metaDataBuilder -> {
+                final int version = metaDataBuilder.getVersion();
+                metaDataBuilder.removeIndex("MySimpleRecord$num_value_3_indexed");
+                metaDataBuilder.setVersion(version);
+            });
+            assertEquals(recordStore.getRecordMetaData().getVersion(), withoutIndex.getVersion());
+            final RecordQueryPlanner planner = new RecordQueryPlanner(withoutIndex, recordStore.getRecordStoreState(), timer);
+            planner.setPlanCache(planCache);
+            timer.reset();
+            assertThat(planner.plan(PARAMETER_QUERY), not(indexScan(indexName("MySimpleRecord$num_value_3_indexed"))));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+            assertEquals(0, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_HIT));
+        }
+    }
+
+    @Test
+    public void indexStateChange() throws Exception {
+        saveRecords();
+        fdb.setPlanCache(new RecordQueryPlanCache());
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            assertThat(recordStore.planQuery(PARAMETER_QUERY), indexScan(indexName("MySimpleRecord$num_value_3_indexed")));
+            recordStore.markIndexDisabled("MySimpleRecord$num_value_3_indexed").get();
+            timer.reset();
+            final RecordQueryPlan plan = recordStore.planQuery(PARAMETER_QUERY);
+            assertThat(plan, not(indexScan(indexName("MySimpleRecord$num_value_3_indexed"))));
+            assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+            assertEquals(Arrays.asList(2L, 7L, 12L, 17L), execute(plan, 2));
+        }
+    }
+
+    @Test
+    public void indexStateChangeAfterCaching() throws Exception {
+        final RecordQueryPlanCache planCache = new RecordQueryPlanCache();
+        final RecordMetaData metaData = simpleMetaData(NO_HOOK);
+        final MutableRecordStoreState state = new MutableRecordStoreState(null);
+        // After its first change, a mutable store state keeps its index states in a map that it changes in place.
+        setIndexState(state, "MySimpleRecord$str_value_indexed", IndexState.DISABLED);
+        final RecordQueryPlanner planner = new RecordQueryPlanner(metaData, state, timer);
+        planner.setPlanCache(planCache);
+        timer.reset();
+        assertThat(planner.plan(PARAMETER_QUERY), indexScan(indexName("MySimpleRecord$num_value_3_indexed")));
+
+        setIndexState(state, "MySimpleRecord$num_value_3_indexed", IndexState.DISABLED);
+        assertThat(planner.plan(PARAMETER_QUERY), not(indexScan(indexName("MySimpleRecord$num_value_3_indexed"))));
+        assertEquals(2, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+        assertEquals(2, planCache.size());
+
+        // The plan cached for the first state is still found for that state.
+        final RecordQueryPlanner otherPlanner = new RecordQueryPlanner(metaData,
+                new RecordStoreState(Collections.singletonMap("MySimpleRecord$str_value_indexed", IndexState.DISABLED)), timer);
+        otherPlanner.setPlanCache(planCache);
+        assertThat(otherPlanner.plan(PARAMETER_QUERY), indexScan(indexName("MySimpleRecord$num_value_3_indexed")));
+        assertEquals(1, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_HIT));
+        assertEquals(2, planCache.size());
+    }
+
+    private static void setIndexState(MutableRecordStoreState state, String indexName, IndexState indexState) {
+        state.beginWrite();
+        try {
+            state.setState(indexName, indexState);
+        } finally {
+            state.endWrite();
+        }
+    }
+
+    @Test
+    public void evictions() throws Exception {
+        final RecordQueryPlanCache planCache = new RecordQueryPlanCache(2);
+        fdb.setPlanCache(planCache);
+        try (FDBRecordContext context = openContext()) {
+            openSimpleRecordStore(context);
+            timer.reset();
+            for (String field : Arrays.asList("num_value_3_indexed", "num_value_unique", "str_value_indexed", "num_value_2")) {
+                recordStore.planQuery(RecordQuery.newBuilder()
+                        .setRecordType("MySimpleRecord")
+                        .setFilter(Query.field(field).equalsParameter("p"))
+                        .build());
+            }
+            assertEquals(4, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_MISS));
+            assertEquals(2, timer.getCount(FDBStoreTimer.Counts.PLAN_CACHE_EVICTION));
+            assertEquals(2, planCache.size());
+        }
+    }
+}
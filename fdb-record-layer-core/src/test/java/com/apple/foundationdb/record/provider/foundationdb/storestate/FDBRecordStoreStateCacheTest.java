@@ -23,6 +23,7 @@ package com.apple.foundationdb.record.provider.foundationdb.storestate;
 import com.apple.foundationdb.record.IsolationLevel;
 import com.apple.foundationdb.record.RecordCoreArgumentException;
 import com.apple.foundationdb.record.RecordCoreException;
+import com.apple.foundationdb.record.RecordCoreRetriableTransactionException;
 import com.apple.foundationdb.record.RecordMetaData;
 import com.apple.foundationdb.record.RecordMetaDataBuilder;
 import com.apple.foundationdb.record.RecordMetaDataProto;
@@ -84,16 +85,18 @@ public class FDBRecordStoreStateCacheTest extends FDBRecordStoreTestBase {
     @Nonnull
     private static final MetaDataVersionStampStoreStateCacheFactory metaDataVersionStampCacheFactory = MetaDataVersionStampStoreStateCacheFactory.newInstance();
     @Nonnull
+    private static final StoreVersionStampStoreStateCacheFactory storeVersionStampCacheFactory = StoreVersionStampStoreStateCacheFactory.newInstance();
+    @Nonnull
     private KeySpacePath multiStorePath = TestKeySpace.getKeyspacePath(new Object[]{"record-test", "unit", "multiRecordStore"});
 
     @Nonnull
     public static Stream<FDBRecordStoreStateCacheFactory> factorySource() {
-        return Stream.of(readVersionCacheFactory, metaDataVersionStampCacheFactory);
+        return Stream.of(readVersionCacheFactory, metaDataVersionStampCacheFactory, storeVersionStampCacheFactory);
     }
 
     @Nonnull
     public static Stream<StateCacheTestContext> testContextSource() {
-        return Stream.of(new ReadVersionStateCacheTestContext(), new MetaDataVersionStampStateCacheTestContext());
+        return Stream.of(new ReadVersionStateCacheTestContext(), new MetaDataVersionStampStateCacheTestContext(), new StoreVersionStampStateCacheTestContext());
     }
 
     /**
@@ -205,6 +208,51 @@ public class FDBRecordStoreStateCacheTest extends FDBRecordStoreTestBase {
         }
     }
 
+    /**
+     * An implementation of the {@link StateCacheTestContext} that handles caching by each store's own version-stamp.
+     */
+    public static class StoreVersionStampStateCacheTestContext implements StateCacheTestContext {
+
+        @Nonnull
+        @Override
+        public FDBRecordStoreStateCache getCache(@Nonnull FDBDatabase database) {
+            return storeVersionStampCacheFactory.getCache(database);
+        }
+
+        @Nonnull
+        @Override
+        public FDBRecordContext getCachedContext(@Nonnull FDBDatabase fdb, @Nonnull FDBRecordStore.Builder storeBuilder,
+                                                 @Nonnull FDBRecordStoreBase.StoreExistenceCheck existenceCheck) {
+            boolean cacheable = true;
+            try (FDBRecordContext context = fdb.openContext()) {
+                FDBRecordStore store = storeBuilder.copyBuilder().setContext(context).createOrOpen(existenceCheck);
+                if (!store.getRecordStoreState().getStoreHeader().getCacheable()) {
+                    cacheable = false;
+                    assertTrue(store.setStateCacheability(true));
+                    context.commit();
+                }
+            }
+            if (!cacheable) {
+                try (FDBRecordContext context = fdb.openContext()) {
+                    storeBuilder.copyBuilder().setContext(context).createOrOpen(existenceCheck);
+                    context.commit();
+                }
+            }
+            return fdb.openContext(null, new FDBStoreTimer());
+        }
+
+        @Override
+        public void invalidateCache(@Nonnull FDBDatabase fdb) {
+            // Changes made without going through the record store do not update the store's own version-stamp.
+            fdb.getStoreStateCache().clear();
+        }
+
+        @Override
+        public String toString() {
+            return "StoreVersionStampStateCacheTestContext";
+        }
+    }
+
     /**
      * Validate that caching by read version works.
      */
@@ -468,6 +516,128 @@ public class FDBRecordStoreStateCacheTest extends FDBRecordStoreTestBase {
         }
     }
 
+    /**
+     * Validate that caching by each store's own version-stamp is not affected by changes to other stores.
+     */
+    @Test
+    public void cacheByStoreVersionStamp() throws Exception {
+        FDBRecordStoreStateCache origStoreStateCache = fdb.getStoreStateCache();
+        try {
+            fdb.setStoreStateCache(storeVersionStampCacheFactory.getCache(fdb));
+            final KeySpacePath path1 = multiStorePath.add("storePath", "path1");
+            final KeySpacePath path2 = multiStorePath.add("storePath", "path2");
+            final String indexName = "MySimpleRecord$str_value_indexed";
+
+            final FDBRecordStore.Builder storeBuilder1;
+            final FDBRecordStore.Builder storeBuilder2;
+            try (FDBRecordContext context = openContext()) {
+                path1.deleteAllData(context);
+                path2.deleteAllData(context);
+                openSimpleRecordStore(context);
+                FDBRecordStore store1 = recordStore.asBuilder().setKeySpacePath(path1).create();
+                assertTrue(store1.setStateCacheability(true));
+                storeBuilder1 = store1.asBuilder();
+                FDBRecordStore store2 = recordStore.asBuilder().setKeySpacePath(path2).create();
+                assertTrue(store2.setStateCacheability(true));
+                storeBuilder2 = store2.asBuilder();
+                commit(context);
+            }
+
+            // Load both into the cache.
+            try (FDBRecordContext context = openContext()) {
+                context.getTimer().reset();
+                storeBuilder1.copyBuilder().setContext(context).open();
+                storeBuilder2.copyBuilder().setContext(context).open();
+                assertEquals(2, context.getTimer().getCount(FDBStoreTimer.Counts.STORE_STATE_CACHE_MISS));
+            }
+
+            // Change the state of the second store and update the database's meta-data version-stamp.
+            try (FDBRecordContext context = openContext()) {
+                context.getTimer().reset();
+                FDBRecordStore store2 = storeBuilder2.copyBuilder().setContext(context).open();
+                assertEquals(1, context.getTimer().getCount(FDBStoreTimer.Counts.STORE_STATE_CACHE_HIT));
+                store2.markIndexWriteOnly(indexName).get();
+                context.setMetaDataVersionStamp();
+                commit(context);
+            }
+
+            // The first store is still cached, but the second must be reloaded.
+            try (FDBRecordContext context = openContext()) {
+                context.getTimer().reset();
+                FDBRecordStore store1 = storeBuilder1.copyBuilder().setContext(context).open();
+                assertEquals(1, context.getTimer().getCount(FDBStoreTimer.Counts.STORE_STATE_CACHE_HIT));
+                assertTrue(store1.isIndexReadable(indexName));
+                FDBRecordStore store2 = storeBuilder2.copyBuilder().setContext(context).open();
+                assertEquals(1, context.getTimer().getCount(FDBStoreTimer.Counts.STORE_STATE_CACHE_MISS));
+                assertTrue(store2.isIndexWriteOnly(indexName));
+            }
+
+            // Deleting all records keeps the version-stamp key, so the store remains cached.
+            try (FDBRecordContext context = openContext()) {
+                FDBRecordStore store1 = storeBuilder1.copyBuilder().setContext(context).open();
+                store1.deleteAllRecords();
+                commit(context);
+            }
+            try (FDBRecordContext context = openContext()) {
+                context.getTimer().reset();
+                storeBuilder1.copyBuilder().setContext(context).open();
+                assertEquals(1, context.getTimer().getCount(FDBStoreTimer.Counts.STORE_STATE_CACHE_HIT));
+            }
+        } finally {
+            fdb.setStoreStateCache(origStoreStateCache);
+        }
+    }
+
+    /**
+     * Validate that with deferred validation a stale cached state is used, but the transaction then fails to commit.
+     */
+    @Test
+    public void cacheByStoreVersionStampDeferred() throws Exception {
+        FDBRecordStoreStateCache origStoreStateCache = fdb.getStoreStateCache();
+        try {
+            fdb.setStoreStateCache(StoreVersionStampStoreStateCacheFactory.newInstance().setDeferValidation(true).getCache(fdb));
+            final String indexName = "MySimpleRecord$str_value_indexed";
+
+            try (FDBRecordContext context = openContext()) {
+                openSimpleRecordStore(context);
+                assertTrue(recordStore.setStateCacheability(true));
+                commit(context);
+            }
+            try (FDBRecordContext context = openContext()) {
+                context.getTimer().reset();
+                openSimpleRecordStore(context);
+                assertEquals(1, context.getTimer().getCount(FDBStoreTimer.Counts.STORE_STATE_CACHE_MISS));
+            }
+
+            // Change the state without updating the cache.
+            try (FDBRecordContext context = openContext()) {
+                openSimpleRecordStore(context);
+                recordStore.markIndexWriteOnly(indexName).get();
+                commit(context);
+            }
+
+            // The cached state is stale, which is only noticed at commit.
+            try (FDBRecordContext context = openContext()) {
+                context.getTimer().reset();
+                openSimpleRecordStore(context);
+                assertEquals(1, context.getTimer().getCount(FDBStoreTimer.Counts.STORE_STATE_CACHE_HIT));
+                assertTrue(recordStore.isIndexReadable(indexName));
+                assertThrows(RecordCoreRetriableTransactionException.class, context::commit);
+            }
+
+            // Which removes it from the cache.
+            try (FDBRecordContext context = openContext()) {
+                context.getTimer().reset();
+                openSimpleRecordStore(context);
+                assertEquals(1, context.getTimer().getCount(FDBStoreTimer.Counts.STORE_STATE_CACHE_MISS));
+                assertTrue(recordStore.isIndexWriteOnly(indexName));
+                commit(context);
+            }
+        } finally {
+            fdb.setStoreStateCache(origStoreStateCache);
+        }
+    }
+
     @Test
     public void cacheByMetaDataVersionFirstTimeEver() throws Exception {
         FDBRecordStoreStateCache origStoreStateCache = fdb.getStoreStateCache();
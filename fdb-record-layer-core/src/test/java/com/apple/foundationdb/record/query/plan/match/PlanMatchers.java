@@ -179,6 +179,11 @@ public class PlanMatchers {
         return new IntersectionMatcher(childMatchers, comparisonKeyMatcher); // order of arguments does not matter
     }
 
+    public static Matcher<RecordQueryPlan> coveringIntersection(@Nonnull Matcher<RecordQueryPlan> oneMatcher,
+                                                                @Nonnull Matcher<RecordQueryPlan> otherMatcher) {
+        return new CoveringIntersectionMatcher(Arrays.asList(oneMatcher, otherMatcher)); // order of arguments does not matter
+    }
+
     public static Matcher<RecordQueryPlan> inValues(@Nonnull Matcher<Iterable<?>> listMatcher,
                                               @Nonnull Matcher<RecordQueryPlan> childMatcher) {
         return new InValueJoinMatcher(listMatcher, childMatcher);
@@ -198,6 +203,11 @@ public class PlanMatchers {
         return new UnorderedPrimaryKeyDistinctMatcher(childMatcher);
     }
 
+    public static Matcher<RecordQueryPlan> sort(@Nonnull Matcher<KeyExpression> sortKeyMatcher,
+                                                @Nonnull Matcher<RecordQueryPlan> childMatcher) {
+        return new SortMatcher(sortKeyMatcher, childMatcher);
+    }
+
     public static Matcher<RecordQueryPlan> anyParent(@Nonnull Matcher<RecordQueryPlan> childMatcher) {
         return new AnyParentMatcher(childMatcher);
     }
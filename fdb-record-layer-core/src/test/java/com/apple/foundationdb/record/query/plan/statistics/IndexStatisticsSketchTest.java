@@ -0,0 +1,122 @@
+/*
+ * IndexStatisticsSketchTest.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.query.plan.statistics;
+
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
+import com.apple.foundationdb.tuple.Tuple;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Tests for {@link IndexStatisticsSketch} and {@link IndexStatistics}.
+ */
+public class IndexStatisticsSketchTest {
+    private static final int ENTRIES = 10000;
+
+    private static Tuple entry(int i) {
+        // Indexed columns with 100 and 1000 distinct values, followed by the primary key.
+        return Tuple.from(i % 100, i % 1000, i);
+    }
+
+    private static IndexStatisticsSketch sketch(int begin, int end) {
+        final IndexStatisticsSketch sketch = new IndexStatisticsSketch(2);
+        for (int i = begin; i < end; i++) {
+            sketch.add(entry(i));
+        }
+        return sketch;
+    }
+
+    @Test
+    public void distinctCounts() {
+        final IndexStatisticsSketch sketch = sketch(0, ENTRIES);
+        assertEquals(ENTRIES, sketch.getEntryCount());
+        assertEquals(100.0, sketch.estimateDistinctCount(1), 10.0);
+        assertEquals(1000.0, sketch.estimateDistinctCount(2), 100.0);
+        // Only the indexed columns are tracked.
+        assertEquals(sketch.estimateDistinctCount(2), sketch.estimateDistinctCount(3));
+    }
+
+    @Test
+    public void mergeAndSerialize() {
+        final IndexStatisticsSketch whole = sketch(0, ENTRIES);
+        final IndexStatisticsSketch merged = sketch(0, ENTRIES / 3);
+        merged.merge(IndexStatisticsSketch.fromBytes(sketch(ENTRIES / 3, ENTRIES).toBytes()));
+        final IndexStatisticsSketch deserialized = IndexStatisticsSketch.fromBytes(merged.toBytes());
+        assertEquals(whole.getEntryCount(), deserialized.getEntryCount());
+        for (int prefixLength = 1; prefixLength <= 2; prefixLength++) {
+            assertEquals(whole.estimateDistinctCount(prefixLength), deserialized.estimateDistinctCount(prefixLength));
+        }
+        assertEquals(whole.toStatistics().toString(), deserialized.toStatistics().toString());
+        assertEquals(IndexStatisticsSketch.DEFAULT_SAMPLE_SIZE, deserialized.toStatistics().getSampleSize());
+    }
+
+    @Test
+    public void estimateEntries() {
+        final IndexStatistics statistics = sketch(0, ENTRIES).toStatistics();
+        assertEquals(ENTRIES, statistics.estimateEntries(ScanComparisons.EMPTY));
+
+        // Equality on a parameter: the average number of entries with the same value.
+        final ScanComparisons parameterEquals = new ScanComparisons.Builder()
+                .addEqualityComparison(new Comparisons.ParameterComparison(Comparisons.Type.EQUALS, "p"))
+                .build();
+        assertEquals(100.0, statistics.estimateEntries(parameterEquals), 10.0);
+
+        // Equality on two columns.
+        final ScanComparisons parameterEqualsBoth = new ScanComparisons.Builder()
+                .addEqualityComparison(new Comparisons.ParameterComparison(Comparisons.Type.EQUALS, "p1"))
+                .addEqualityComparison(new Comparisons.ParameterComparison(Comparisons.Type.EQUALS, "p2"))
+                .build();
+        assertEquals(10.0, statistics.estimateEntries(parameterEqualsBoth), 1.0);
+
+        // A range on a parameter: a fixed fraction.
+        final ScanComparisons parameterRange = new ScanComparisons.Builder()
+                .addInequalityComparison(new Comparisons.ParameterComparison(Comparisons.Type.LESS_THAN, "p"))
+                .build();
+        assertEquals(ENTRIES * IndexStatistics.DEFAULT_INEQUALITY_SELECTIVITY, statistics.estimateEntries(parameterRange), 1.0);
+
+        // A range on a constant: from the sample.
+        final ScanComparisons constantRange = new ScanComparisons.Builder()
+                .addInequalityComparison(new Comparisons.SimpleComparison(Comparisons.Type.LESS_THAN, 10))
+                .build();
+        final double constantRangeEstimate = statistics.estimateEntries(constantRange);
+        assertNotEquals(ENTRIES * IndexStatistics.DEFAULT_INEQUALITY_SELECTIVITY, constantRangeEstimate);
+        assertEquals(ENTRIES / 10.0, constantRangeEstimate, ENTRIES / 20.0);
+
+        // A constant outside the range of the sample.
+        final ScanComparisons missing = new ScanComparisons.Builder()
+                .addEqualityComparison(new Comparisons.SimpleComparison(Comparisons.Type.EQUALS, 1000))
+                .build();
+        assertEquals(100.0, statistics.estimateEntries(missing), 10.0);
+    }
+
+    @Test
+    public void smallIndexIsFullySampled() {
+        final IndexStatistics statistics = sketch(0, 200).toStatistics();
+        assertEquals(200, statistics.getSampleSize());
+        final ScanComparisons constantEquals = new ScanComparisons.Builder()
+                .addEqualityComparison(new Comparisons.SimpleComparison(Comparisons.Type.EQUALS, 5))
+                .build();
+        assertEquals(2.0, statistics.estimateEntries(constantEquals));
+    }
+}
@@ -71,6 +71,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static com.apple.foundationdb.record.metadata.Key.Expressions.concat;
@@ -204,6 +205,62 @@ public class SyntheticRecordPlannerTest {
         }
     }
 
+    @Test
+    public void batchManyToOne() throws Exception {
+        metaDataBuilder.addIndex("MySimpleRecord", "other_rec_no");
+        final JoinedRecordTypeBuilder joined = metaDataBuilder.addJoinedRecordType("ManyToOne");
+        joined.addConstituent("simple", "MySimpleRecord");
+        joined.addConstituent("other", "MyOtherRecord");
+        joined.addJoin("simple", "other_rec_no", "other", "rec_no");
+        final JoinedRecordTypeBuilder leftJoined = metaDataBuilder.addJoinedRecordType("LeftJoined");
+        leftJoined.addConstituent("simple", "MySimpleRecord");
+        leftJoined.addConstituent("other", metaDataBuilder.getRecordType("MyOtherRecord"), true);
+        leftJoined.addJoin("simple", "other_rec_no", "other", "rec_no");
+
+        try (FDBRecordContext context = openContext()) {
+            final FDBRecordStore recordStore = recordStoreBuilder.setContext(context).create();
+
+            for (int i = 0; i < 4; i++) {
+                for (int j = 0; j < 3; j++) {
+                    TestRecordsJoinIndexProto.MySimpleRecord.Builder simple = TestRecordsJoinIndexProto.MySimpleRecord.newBuilder();
+                    simple.setRecNo(100 * i + j).setOtherRecNo(1000 + i);
+                    recordStore.saveRecord(simple.build());
+                }
+                if (i % 2 == 0) {
+                    TestRecordsJoinIndexProto.MyOtherRecord.Builder other = TestRecordsJoinIndexProto.MyOtherRecord.newBuilder();
+                    other.setRecNo(1000 + i);
+                    recordStore.saveRecord(other.build());
+                }
+            }
+
+            context.commit();
+        }
+
+        try (FDBRecordContext context = openContext()) {
+            final FDBRecordStore recordStore = recordStoreBuilder.setContext(context).open();
+            final SyntheticRecordPlanner planner = new SyntheticRecordPlanner(recordStore);
+
+            final List<FDBStoredRecord<Message>> records = recordStore.scanRecords(null, ScanProperties.FORWARD_SCAN).asList().join();
+            final SyntheticRecordFromStoredRecordPlan plan = planner.fromStoredType(records.get(0).getRecordType(), false);
+            final List<FDBStoredRecord<Message>> simpleRecords = records.stream()
+                    .filter(record -> plan.getStoredRecordTypes().contains(record.getRecordType().getName()))
+                    .collect(Collectors.toList());
+            assertEquals(12, simpleRecords.size());
+
+            final List<List<FDBSyntheticRecord>> batchResults = plan.executeBatch(recordStore, simpleRecords).stream()
+                    .map(CompletableFuture::join)
+                    .collect(Collectors.toList());
+            assertEquals(simpleRecords.size(), batchResults.size());
+            for (int i = 0; i < simpleRecords.size(); i++) {
+                Multiset<Tuple> expected = HashMultiset.create(plan.execute(recordStore, simpleRecords.get(i)).map(FDBSyntheticRecord::getPrimaryKey).asList().join());
+                Multiset<Tuple> results = HashMultiset.create(batchResults.get(i).stream().map(FDBSyntheticRecord::getPrimaryKey).collect(Collectors.toList()));
+                assertEquals(expected, results);
+                // Inner join matches only when the other record exists, left join always.
+                assertEquals((simpleRecords.get(i).getPrimaryKey().getLong(0) / 100) % 2 == 0 ? 2 : 1, results.size());
+            }
+        }
+    }
+
     @Test
     public void manyToMany() throws Exception {
         final JoinedRecordTypeBuilder joined = metaDataBuilder.addJoinedRecordType("ManyToMany");
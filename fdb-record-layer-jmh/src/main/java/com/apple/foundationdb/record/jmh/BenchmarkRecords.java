@@ -0,0 +1,96 @@
+/*
+ * BenchmarkRecords.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.RecordMetaDataBuilder;
+import com.apple.foundationdb.record.metadata.Index;
+import com.google.protobuf.Descriptors;
+
+import javax.annotation.Nonnull;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concatenateFields;
+
+/**
+ * Meta-data and records shared by the benchmarks.
+ */
+public class BenchmarkRecords {
+    /** The number of {@code num_} fields, and of {@code str_} fields, in a {@code WideRecord}. */
+    public static final int WIDE_FIELD_COUNT = 16;
+
+    private BenchmarkRecords() {
+    }
+
+    /**
+     * Get meta-data in which every field of {@code WideRecord} is indexed, along with each pair of like-numbered
+     * fields, so that the planner has many candidate indexes to consider.
+     * @return meta-data with many indexes
+     */
+    @Nonnull
+    public static RecordMetaData wideMetaData() {
+        final RecordMetaDataBuilder builder = RecordMetaData.newBuilder().setRecords(BenchmarkRecordsProto.getDescriptor());
+        for (int i = 1; i <= WIDE_FIELD_COUNT; i++) {
+            builder.addIndex("WideRecord", "num_" + i);
+            builder.addIndex("WideRecord", "str_" + i);
+            builder.addIndex("WideRecord", new Index("WideRecord$num_" + i + "-str_" + i, concatenateFields("num_" + i, "str_" + i)));
+        }
+        return builder.getRecordMetaData();
+    }
+
+    /**
+     * Get a record with every field set.
+     * @param recNo the primary key of the record
+     * @return a new record
+     */
+    @Nonnull
+    public static BenchmarkRecordsProto.WideRecord wideRecord(long recNo) {
+        final Descriptors.Descriptor descriptor = BenchmarkRecordsProto.WideRecord.getDescriptor();
+        final BenchmarkRecordsProto.WideRecord.Builder builder = BenchmarkRecordsProto.WideRecord.newBuilder().setRecNo(recNo);
+        for (int i = 1; i <= WIDE_FIELD_COUNT; i++) {
+            builder.setField(descriptor.findFieldByName("num_" + i), recNo * i);
+            builder.setField(descriptor.findFieldByName("str_" + i), "value_" + (recNo % (i + 1)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get a record with a nested header and the given number of repeated entries and tags.
+     * @param recNo the primary key of the record
+     * @param entryCount the number of entries and of tags
+     * @return a new record
+     */
+    @Nonnull
+    public static BenchmarkRecordsProto.NestedRecord nestedRecord(long recNo, int entryCount) {
+        final BenchmarkRecordsProto.NestedRecord.Builder builder = BenchmarkRecordsProto.NestedRecord.newBuilder()
+                .setRecNo(recNo)
+                .setHeader(BenchmarkRecordsProto.NestedRecord.Header.newBuilder()
+                        .setGroup("group_" + (recNo % 10))
+                        .setId(recNo));
+        for (int i = 0; i < entryCount; i++) {
+            builder.addEntries(BenchmarkRecordsProto.NestedRecord.Entry.newBuilder()
+                    .setKey("key_" + i)
+                    .setValue(recNo + i));
+            builder.addTags("tag_" + (i % 7));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * ComparisonBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.query.expressions.Comparisons;
+import com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link Comparisons#evalComparison}, which is called for every value tested by a filter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ComparisonBenchmark {
+    @Param({"EQUALS", "LESS_THAN", "STARTS_WITH"})
+    public Comparisons.Type comparisonType;
+
+    @Param({"long", "string", "bytes"})
+    public String valueType;
+
+    private Object value;
+    private Object comparand;
+
+    @Setup
+    public void setup() {
+        switch (valueType) {
+            case "long":
+                value = 1066L;
+                comparand = 1492L;
+                break;
+            case "string":
+                value = "the quick brown fox";
+                comparand = "the quick";
+                break;
+            case "bytes":
+                // Bytes fields are read from records as byte strings.
+                value = ByteString.copyFrom(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+                comparand = ByteString.copyFrom(new byte[] {1, 2, 3, 4});
+                break;
+            default:
+                throw new IllegalArgumentException("unknown value type " + valueType);
+        }
+        if (comparisonType == Comparisons.Type.STARTS_WITH && "long".equals(valueType)) {
+            // Prefix comparisons apply only to strings and byte arrays, so use a string for the long case.
+            value = "1066";
+            comparand = "10";
+        }
+    }
+
+    @Benchmark
+    public Boolean evalComparison() {
+        return Comparisons.evalComparison(comparisonType, value, comparand);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * KeyExpressionBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.metadata.Key;
+import com.apple.foundationdb.record.metadata.expressions.KeyExpression;
+import com.google.protobuf.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concat;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.concatenateFields;
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+
+/**
+ * Benchmarks for evaluating {@link KeyExpression}s over nested and repeated fields.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyExpressionBenchmark {
+    @Param({"nested", "repeated", "repeated_nested", "concatenated"})
+    public String expressionType;
+
+    @Param({"1", "20"})
+    public int entryCount;
+
+    private KeyExpression expression;
+    private Message record;
+
+    @Setup
+    public void setup() {
+        switch (expressionType) {
+            case "nested":
+                expression = field("header").nest("group");
+                break;
+            case "repeated":
+                expression = field("tags", KeyExpression.FanType.FanOut);
+                break;
+            case "repeated_nested":
+                expression = field("entries", KeyExpression.FanType.FanOut).nest(concatenateFields("key", "value"));
+                break;
+            case "concatenated":
+                expression = concat(field("header").nest(concatenateFields("group", "id")),
+                        field("entries", KeyExpression.FanType.FanOut).nest("value"),
+                        field("rec_no"));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown expression type " + expressionType);
+        }
+        record = BenchmarkRecords.nestedRecord(1066L, entryCount);
+    }
+
+    @Benchmark
+    public List<Key.Evaluated> evaluate() {
+        return expression.evaluateMessage(null, record);
+    }
+}
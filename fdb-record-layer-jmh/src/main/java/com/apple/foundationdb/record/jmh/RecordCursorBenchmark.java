@@ -0,0 +1,111 @@
+/*
+ * RecordCursorBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.provider.foundationdb.cursors.IntersectionCursor;
+import com.apple.foundationdb.record.provider.foundationdb.cursors.UnionCursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmarks for compositions of {@link RecordCursor}s over in-memory lists.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordCursorBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"1", "10"})
+    public int pipelineSize;
+
+    private List<Integer> values;
+    private List<Integer> multiplesOf2;
+    private List<Integer> multiplesOf3;
+
+    @Setup
+    public void setup() {
+        values = IntStream.range(0, size).boxed().collect(Collectors.toList());
+        multiplesOf2 = IntStream.range(0, size).map(i -> i * 2).boxed().collect(Collectors.toList());
+        multiplesOf3 = IntStream.range(0, size).map(i -> i * 3).boxed().collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Integer> mapPipelined() {
+        return RecordCursor.fromList(values)
+                .mapPipelined(i -> CompletableFuture.completedFuture(i + 1), pipelineSize)
+                .asList().join();
+    }
+
+    @Benchmark
+    public List<Integer> flatMapPipelined() {
+        final List<Integer> inner = values.subList(0, Math.min(10, size));
+        return RecordCursor.flatMapPipelined(
+                outerContinuation -> RecordCursor.fromList(values.subList(0, size / 10), outerContinuation),
+                (outer, innerContinuation) -> RecordCursor.fromList(inner, innerContinuation).map(i -> outer + i),
+                null, pipelineSize)
+                .asList().join();
+    }
+
+    @Benchmark
+    public List<Integer> union() {
+        return UnionCursor.create(RecordCursorBenchmark::comparisonKey, false,
+                continuation -> RecordCursor.fromList(multiplesOf2, continuation),
+                continuation -> RecordCursor.fromList(multiplesOf3, continuation),
+                null, null)
+                .asList().join();
+    }
+
+    @Benchmark
+    public List<Integer> intersection() {
+        return IntersectionCursor.create(RecordCursorBenchmark::comparisonKey, false,
+                continuation -> RecordCursor.fromList(multiplesOf2, continuation),
+                continuation -> RecordCursor.fromList(multiplesOf3, continuation),
+                null, null)
+                .asList().join();
+    }
+
+    private static List<Object> comparisonKey(Integer value) {
+        return Collections.singletonList(value);
+    }
+}
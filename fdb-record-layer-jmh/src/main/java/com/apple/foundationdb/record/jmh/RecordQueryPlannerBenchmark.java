@@ -0,0 +1,97 @@
+/*
+ * RecordQueryPlannerBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.RecordStoreState;
+import com.apple.foundationdb.record.query.RecordQuery;
+import com.apple.foundationdb.record.query.expressions.Query;
+import com.apple.foundationdb.record.query.plan.RecordQueryPlanner;
+import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.apple.foundationdb.record.metadata.Key.Expressions.field;
+
+/**
+ * Benchmarks for {@link RecordQueryPlanner#plan} against meta-data with many indexes on one record type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordQueryPlannerBenchmark {
+    @Param({"equality", "equality_range_sort", "or", "unindexed_filter"})
+    public String queryType;
+
+    private RecordQueryPlanner planner;
+    private RecordQuery query;
+
+    @Setup
+    public void setup() {
+        final RecordMetaData metaData = BenchmarkRecords.wideMetaData();
+        planner = new RecordQueryPlanner(metaData, new RecordStoreState());
+        final RecordQuery.Builder builder = RecordQuery.newBuilder().setRecordType("WideRecord");
+        switch (queryType) {
+            case "equality":
+                builder.setFilter(Query.field("num_3").equalsValue(5L));
+                break;
+            case "equality_range_sort":
+                builder.setFilter(Query.and(
+                        Query.field("num_5").equalsValue(3L),
+                        Query.field("str_5").greaterThan("value_1"),
+                        Query.field("num_9").lessThan(100L)))
+                        .setSort(field("str_5"));
+                break;
+            case "or":
+                builder.setFilter(Query.or(
+                        Query.field("num_1").equalsValue(1L),
+                        Query.field("num_2").equalsValue(2L),
+                        Query.field("str_3").equalsValue("value_3")));
+                break;
+            case "unindexed_filter":
+                builder.setFilter(Query.field("rec_no").greaterThan(10L));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown query type " + queryType);
+        }
+        query = builder.build();
+    }
+
+    @Benchmark
+    public RecordQueryPlan plan() {
+        return planner.plan(query);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * RecordSerializerBenchmark.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.apple.foundationdb.record.jmh;
+
+import com.apple.foundationdb.record.RecordMetaData;
+import com.apple.foundationdb.record.metadata.RecordType;
+import com.apple.foundationdb.record.provider.common.DynamicMessageRecordSerializer;
+import com.apple.foundationdb.record.provider.common.RecordSerializer;
+import com.apple.foundationdb.record.provider.common.TransformedRecordSerializerJCE;
+import com.apple.foundationdb.tuple.Tuple;
+import com.google.protobuf.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.KeyGenerator;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for serializing and deserializing records with {@link DynamicMessageRecordSerializer} and with
+ * {@link TransformedRecordSerializerJCE} compressing and encrypting them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordSerializerBenchmark {
+    private static final long REC_NO = 1066L;
+
+    @Param({"dynamic", "compressed", "encrypted", "compressed_encrypted"})
+    public String serializerType;
+
+    @Param({"wide", "nested"})
+    public String recordType;
+
+    private RecordMetaData metaData;
+    private RecordSerializer<Message> serializer;
+    private Message record;
+    private RecordType type;
+    private Tuple primaryKey;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        metaData = BenchmarkRecords.wideMetaData();
+        switch (serializerType) {
+            case "dynamic":
+                serializer = DynamicMessageRecordSerializer.instance();
+                break;
+            case "compressed":
+                serializer = TransformedRecordSerializerJCE.newDefaultBuilder()
+                        .setCompressWhenSerializing(true)
+                        .build();
+                break;
+            case "encrypted":
+            case "compressed_encrypted":
+                final KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+                keyGenerator.init(128);
+                serializer = TransformedRecordSerializerJCE.newDefaultBuilder()
+                        .setCompressWhenSerializing(serializerType.startsWith("compressed"))
+                        .setEncryptWhenSerializing(true)
+                        .setEncryptionKey(keyGenerator.generateKey())
+                        .build();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown serializer type " + serializerType);
+        }
+        if ("wide".equals(recordType)) {
+            record = BenchmarkRecords.wideRecord(REC_NO);
+        } else {
+            record = BenchmarkRecords.nestedRecord(REC_NO, 20);
+        }
+        type = metaData.getRecordTypeForDescriptor(record.getDescriptorForType());
+        primaryKey = Tuple.from(REC_NO);
+        serialized = serializer.serialize(metaData, type, record, null);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(metaData, type, record, null);
+    }
+
+    @Benchmark
+    public Message deserialize() {
+        return serializer.deserialize(metaData, primaryKey, serialized, null);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * package-info.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+ * JMH benchmarks for CPU-bound parts of the Record Layer.
+ *
+ * <p>
+ * None of these benchmarks opens a database, so they can be run without a FoundationDB cluster to catch
+ * regressions in cursor composition, serialization, key expression evaluation, comparisons and planning.
+ * </p>
+ */
+package com.apple.foundationdb.record.jmh;
@@ -39,6 +39,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Objects;
 import java.util.function.BiFunction;
+import java.util.function.Predicate;
 
 /**
  * Query spatial index for points (latitude, longitude) within a given distance (inclusive) of a given center.
@@ -80,6 +81,16 @@ public class GeophilePointWithinDistanceQueryPlan extends GeophileSpatialObjectQ
     @Nullable
     @Override
     protected SpatialJoin.Filter<RecordWithSpatialObject, GeophileRecordImpl> getFilter(@Nonnull EvaluationContext context) {
+        final Predicate<GeophileRecordImpl> recordFilter = getRecordFilter(context);
+        if (recordFilter == null) {
+            return null;
+        }
+        return (spatialObject, record) -> recordFilter.test(record);
+    }
+
+    @Nullable
+    @Override
+    protected Predicate<GeophileRecordImpl> getRecordFilter(@Nonnull EvaluationContext context) {
         if (covering) {
             Double distanceValue = distance.getValue(context);
             Double centerLatitudeValue = centerLatitude.getValue(context);
@@ -89,7 +100,7 @@ public class GeophilePointWithinDistanceQueryPlan extends GeophileSpatialObjectQ
             }
             final GeometryFactory geometryFactory = new GeometryFactory();
             final Geometry center = geometryFactory.createPoint(new Coordinate(centerLatitudeValue, centerLongitudeValue));
-            return (spatialObject, record) -> {
+            return record -> {
                 Point point = (Point)record.spatialObject();
                 Geometry geometry = geometryFactory.createPoint(new Coordinate(point.x(), point.y()));
                 return geometry.isWithinDistance(center, distanceValue);
@@ -22,6 +22,7 @@ package com.apple.foundationdb.record.spatial.geophile;
 
 import com.apple.foundationdb.annotation.API;
 import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.PipelineOperation;
 import com.apple.foundationdb.record.RecordCursor;
@@ -29,12 +30,11 @@ import com.apple.foundationdb.record.provider.foundationdb.FDBIndexedRecord;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
 import com.apple.foundationdb.record.provider.foundationdb.IndexOrphanBehavior;
 import com.apple.foundationdb.record.query.plan.ScanComparisons;
-import com.geophile.z.SpatialIndex;
-import com.geophile.z.SpatialJoin;
 import com.google.protobuf.Message;
 import org.apache.commons.lang3.tuple.Pair;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Something like a query plan for joining spatial indexes.
@@ -63,11 +63,29 @@ public class GeophileSpatialIndexJoinPlan {
 
     @Nonnull
     public <M extends Message> RecordCursor<Pair<FDBIndexedRecord<M>, FDBIndexedRecord<M>>> execute(@Nonnull FDBRecordStoreBase<M> store, @Nonnull EvaluationContext context) {
-        final SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE);
-        final GeophileSpatialJoin geophileSpatialJoin = new GeophileSpatialJoin(spatialJoin, store.getUntypedRecordStore(), context);
-        final SpatialIndex<GeophileRecordImpl> leftSpatialIndex = geophileSpatialJoin.getSpatialIndex(leftIndexName, leftPrefixComparisons);
-        final SpatialIndex<GeophileRecordImpl> rightSpatialIndex = geophileSpatialJoin.getSpatialIndex(rightIndexName, rightPrefixComparisons);
-        return fetchIndexRecords(store, geophileSpatialJoin.recordCursor(leftSpatialIndex, rightSpatialIndex));
+        return execute(store, context, null, ExecuteProperties.SERIAL_EXECUTE);
+    }
+
+    /**
+     * Execute the join, returning each pair of records whose index entries overlap.
+     *
+     * Each entry of the left index is matched against the right index by concurrent scans of the ranges that can
+     * overlap it, so the join does not block and can be resumed from a continuation.
+     * @param store record store to join in
+     * @param context query context containing parameter bindings
+     * @param continuation continuation from a previous execution or {@code null} to start from the beginning
+     * @param executeProperties limits on execution
+     * @param <M> type used to represent stored records
+     * @return a cursor over pairs of overlapping records
+     */
+    @Nonnull
+    public <M extends Message> RecordCursor<Pair<FDBIndexedRecord<M>, FDBIndexedRecord<M>>> execute(@Nonnull FDBRecordStoreBase<M> store, @Nonnull EvaluationContext context,
+                                                                                                    @Nullable byte[] continuation, @Nonnull ExecuteProperties executeProperties) {
+        final GeophileSpatialScan leftScan = new GeophileSpatialScan(store.getUntypedRecordStore(), context,
+                leftIndexName, leftPrefixComparisons, GeophileRecordImpl::new);
+        final GeophileSpatialScan rightScan = new GeophileSpatialScan(store.getUntypedRecordStore(), context,
+                rightIndexName, rightPrefixComparisons, GeophileRecordImpl::new);
+        return fetchIndexRecords(store, GeophileSpatialScan.join(leftScan, rightScan, continuation, executeProperties));
     }
 
     // TODO: Probably once there is a real join cursor signature, something like this is a method on the store and loadIndexEntryRecord doesn't need to be public.
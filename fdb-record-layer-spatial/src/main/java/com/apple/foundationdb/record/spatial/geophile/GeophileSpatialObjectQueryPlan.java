@@ -25,7 +25,6 @@ import com.apple.foundationdb.record.EvaluationContext;
 import com.apple.foundationdb.record.ExecuteProperties;
 import com.apple.foundationdb.record.IndexEntry;
 import com.apple.foundationdb.record.IndexScanType;
-import com.apple.foundationdb.record.RecordCoreException;
 import com.apple.foundationdb.record.RecordCursor;
 import com.apple.foundationdb.record.provider.common.StoreTimer;
 import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStoreBase;
@@ -36,7 +35,6 @@ import com.apple.foundationdb.record.query.plan.plans.RecordQueryPlanWithNoChild
 import com.apple.foundationdb.record.query.plan.temp.Quantifier;
 import com.apple.foundationdb.record.query.plan.temp.RelationalExpression;
 import com.apple.foundationdb.tuple.Tuple;
-import com.geophile.z.SpatialIndex;
 import com.geophile.z.SpatialJoin;
 import com.geophile.z.SpatialObject;
 import com.geophile.z.index.RecordWithSpatialObject;
@@ -49,6 +47,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.BiFunction;
+import java.util.function.Predicate;
 
 /**
  * Base class for query plans that execute a spatial join between a single spatial object and a spatial index.
@@ -90,6 +89,20 @@ public abstract class GeophileSpatialObjectQueryPlan implements RecordQueryPlanW
         return null;
     }
 
+    /**
+     * Get an optional filter to eliminate false positives from the spatial scan.
+     *
+     * This is the same test as {@link #getFilter}, applied to each {@link GeophileRecordImpl} as it is returned by
+     * the asynchronous scan of the index.
+     * @param context query context containing parameter bindings
+     * @return an index entry filter or {@code null} if none is possible
+     */
+    @Nullable
+    @SuppressWarnings("PMD.EmptyMethodInAbstractClassShouldBeAbstract") // null is a reasonable default
+    protected Predicate<GeophileRecordImpl> getRecordFilter(@Nonnull EvaluationContext context) {
+        return null;
+    }
+
     /**
      * Get the function to use for mapping {@link IndexEntry} to {@link GeophileRecordImpl}.
      *
@@ -123,17 +136,13 @@ public abstract class GeophileSpatialObjectQueryPlan implements RecordQueryPlanW
                                                                        @Nonnull EvaluationContext context,
                                                                        @Nullable byte[] continuation,
                                                                        @Nonnull ExecuteProperties executeProperties) {
-        if (continuation != null) {
-            throw new RecordCoreException("continuations are not yet supported");
-        }
         final SpatialObject spatialObject = getSpatialObject(context);
         if (spatialObject == null) {
             return RecordCursor.empty();
         }
-        final SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE, getFilter(context));
-        final GeophileSpatialJoin geophileSpatialJoin = new GeophileSpatialJoin(spatialJoin, store.getUntypedRecordStore(), context);
-        final SpatialIndex<GeophileRecordImpl> spatialIndex = geophileSpatialJoin.getSpatialIndex(indexName, prefixComparisons, getRecordFunction());
-        return geophileSpatialJoin.recordCursor(spatialObject, spatialIndex);
+        final GeophileSpatialScan spatialScan = new GeophileSpatialScan(store.getUntypedRecordStore(), context,
+                indexName, prefixComparisons, getRecordFunction());
+        return spatialScan.overlapping(spatialObject, getRecordFilter(context), continuation, executeProperties);
     }
 
     @Override
@@ -0,0 +1,209 @@
+/*
+ * GeophileSpatialScan.java
+ *
+ * This source file is part of the FoundationDB open source project
+ *
+ * Copyright 2015-2020 Apple Inc. and the FoundationDB project authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.apple.foundationdb.record.spatial.geophile;
+
+import com.apple.foundationdb.record.EndpointType;
+import com.apple.foundationdb.record.EvaluationContext;
+import com.apple.foundationdb.record.ExecuteProperties;
+import com.apple.foundationdb.record.IndexEntry;
+import com.apple.foundationdb.record.PipelineOperation;
+import com.apple.foundationdb.record.RecordCoreArgumentException;
+import com.apple.foundationdb.record.RecordCursor;
+import com.apple.foundationdb.record.ScanProperties;
+import com.apple.foundationdb.record.TupleRange;
+import com.apple.foundationdb.record.provider.foundationdb.FDBRecordStore;
+import com.apple.foundationdb.record.provider.foundationdb.IndexMaintainer;
+import com.apple.foundationdb.record.provider.foundationdb.cursors.UnorderedUnionCursor;
+import com.apple.foundationdb.record.query.plan.ScanComparisons;
+import com.apple.foundationdb.tuple.Tuple;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Asynchronous scans of a spatial index for the entries whose z-values overlap given z-values.
+ *
+ * <p>
+ * An index entry overlaps a z-value if either contains the other. The entries contained in a z-value are a
+ * contiguous range of the index, from its lowest to its highest descendant, while those containing it have one of
+ * its ancestors as their z-value. Rather than moving a synchronous Geophile {@link com.geophile.z.Cursor} through
+ * these in turn, blocking on each read, all of the ranges are scanned at once by an {@link UnorderedUnionCursor},
+ * which returns entries as they arrive and keeps a continuation for each range.
+ * </p>
+ *
+ * <p>
+ * Like a Geophile spatial join with {@link com.geophile.z.SpatialJoin.Duplicates#INCLUDE}, an indexed object that
+ * overlaps more than one of the z-values can be returned more than once.
+ * </p>
+ */
+class GeophileSpatialScan {
+    @Nonnull
+    static final PipelineOperation SPATIAL_JOIN = new PipelineOperation("SPATIAL_JOIN");
+
+    @Nonnull
+    private final FDBRecordStore store;
+    @Nonnull
+    private final IndexMaintainer indexMaintainer;
+    @Nullable
+    private final Tuple prefix;
+    @Nonnull
+    private final BiFunction<IndexEntry, Tuple, GeophileRecordImpl> recordFunction;
+
+    GeophileSpatialScan(@Nonnull FDBRecordStore store, @Nonnull EvaluationContext context,
+                        @Nonnull String indexName, @Nonnull ScanComparisons prefixComparisons,
+                        @Nonnull BiFunction<IndexEntry, Tuple, GeophileRecordImpl> recordFunction) {
+        if (!prefixComparisons.isEquality()) {
+            throw new RecordCoreArgumentException("prefix comparisons must only have equality");
+        }
+        this.store = store;
+        this.indexMaintainer = store.getIndexMaintainer(store.getRecordMetaData().getIndex(indexName));
+        this.prefix = prefixComparisons.toTupleRange(store, context).getLow();  // Since this is an equality, will match getHigh(), too.
+        this.recordFunction = recordFunction;
+    }
+
+    @Nonnull
+    public Space getSpace() {
+        return ((GeophileIndexMaintainer)indexMaintainer).getSpace();
+    }
+
+    /**
+     * Get the index ranges containing the entries that overlap any of the given z-values.
+     * @param zs z-values, as from decomposing a spatial object, ending early with {@link Space#Z_NULL} if there are fewer
+     * @return a list of ranges, one for the descendants of each z-value and one for each distinct ancestor
+     */
+    @Nonnull
+    List<TupleRange> overlappingRanges(@Nonnull long[] zs) {
+        final List<TupleRange> ranges = new ArrayList<>();
+        final Set<Long> ancestors = new TreeSet<>();
+        for (long z : zs) {
+            if (z == Space.Z_NULL) {
+                continue;
+            }
+            ranges.add(withPrefix(new TupleRange(Tuple.from(SpaceImpl.zLo(z)), Tuple.from(SpaceImpl.zHi(z)),
+                    EndpointType.RANGE_INCLUSIVE, EndpointType.RANGE_INCLUSIVE)));
+            long ancestor = z;
+            while (SpaceImpl.length(ancestor) > 0) {
+                ancestor = SpaceImpl.parent(ancestor);
+                ancestors.add(ancestor);
+            }
+        }
+        for (long ancestor : ancestors) {
+            ranges.add(withPrefix(TupleRange.allOf(Tuple.from(ancestor))));
+        }
+        return ranges;
+    }
+
+    @Nonnull
+    private TupleRange withPrefix(@Nonnull TupleRange range) {
+        return prefix == null ? range : range.prepend(prefix);
+    }
+
+    /**
+     * Scan for the index entries that overlap any of the given z-values.
+     * @param zs z-values to overlap
+     * @param continuation continuation from a previous scan of the same z-values or {@code null} to start from the beginning
+     * @param scanProperties properties for the scan of each range
+     * @return a cursor over the overlapping entries in no particular order
+     */
+    @Nonnull
+    RecordCursor<GeophileRecordImpl> scan(@Nonnull long[] zs, @Nullable byte[] continuation, @Nonnull ScanProperties scanProperties) {
+        final List<Function<byte[], RecordCursor<GeophileRecordImpl>>> cursorFunctions = new ArrayList<>();
+        for (TupleRange range : overlappingRanges(zs)) {
+            cursorFunctions.add(rangeContinuation -> indexMaintainer.scan(GeophileScanTypes.GO_TO_Z, range, rangeContinuation, scanProperties)
+                    .map(entry -> recordFunction.apply(entry, prefix)));
+        }
+        if (cursorFunctions.isEmpty()) {
+            return RecordCursor.empty();
+        }
+        return UnorderedUnionCursor.create(cursorFunctions, continuation, store.getTimer());
+    }
+
+    /**
+     * Scan all of the index entries with the prefix.
+     * @param continuation continuation from a previous scan or {@code null} to start from the beginning
+     * @param scanProperties properties for the scan
+     * @return a cursor over the entries in z-value order
+     */
+    @Nonnull
+    RecordCursor<GeophileRecordImpl> scanAll(@Nullable byte[] continuation, @Nonnull ScanProperties scanProperties) {
+        final TupleRange range = prefix == null ? TupleRange.ALL : TupleRange.allOf(prefix);
+        return indexMaintainer.scan(GeophileScanTypes.GO_TO_Z, range, continuation, scanProperties)
+                .map(entry -> recordFunction.apply(entry, prefix));
+    }
+
+    /**
+     * Get the index entries that overlap a spatial object.
+     * @param spatialObject the spatial object to overlap
+     * @param filter an optional filter to eliminate false positives
+     * @param continuation continuation from a previous execution or {@code null} to start from the beginning
+     * @param executeProperties limits on execution
+     * @return a cursor over the overlapping entries in no particular order
+     */
+    @Nonnull
+    RecordCursor<IndexEntry> overlapping(@Nonnull SpatialObject spatialObject, @Nullable Predicate<GeophileRecordImpl> filter,
+                                         @Nullable byte[] continuation, @Nonnull ExecuteProperties executeProperties) {
+        final long[] zs = new long[spatialObject.maxZ()];
+        GeophileSpatial.shuffle(getSpace(), spatialObject, zs);
+        // The skip and returned row limit apply to the union, so remove the skip from each range and adjust its limit.
+        final ScanProperties rangeScanProperties = executeProperties.clearSkipAndAdjustLimit().asScanProperties(false);
+        RecordCursor<GeophileRecordImpl> cursor = scan(zs, continuation, rangeScanProperties);
+        if (filter != null) {
+            cursor = cursor.filter(filter::test);
+        }
+        return cursor.map(GeophileRecordImpl::getIndexEntry)
+                .skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+
+    /**
+     * Get the pairs of index entries, one from each index, that overlap.
+     * Each entry of the left index is joined with the right one by scanning the latter for the entries overlapping the
+     * former's z-value, pipelining these scans for successive left entries.
+     * @param left a scan of the left index
+     * @param right a scan of the right index
+     * @param continuation continuation from a previous execution or {@code null} to start from the beginning
+     * @param executeProperties limits on execution
+     * @return a cursor over the overlapping pairs
+     */
+    @Nonnull
+    static RecordCursor<Pair<IndexEntry, IndexEntry>> join(@Nonnull GeophileSpatialScan left, @Nonnull GeophileSpatialScan right,
+                                                           @Nullable byte[] continuation, @Nonnull ExecuteProperties executeProperties) {
+        // The returned row limit counts pairs, which neither scan can see, so only the scanned record and time limits apply to them.
+        final ScanProperties scanProperties = executeProperties.clearSkipAndLimit().asScanProperties(false);
+        final RecordCursor<Pair<IndexEntry, IndexEntry>> cursor = RecordCursor.flatMapPipelined(
+                outerContinuation -> left.scanAll(outerContinuation, scanProperties),
+                (leftRecord, innerContinuation) -> right.scan(new long[] {leftRecord.z()}, innerContinuation, scanProperties)
+                        .map(rightRecord -> Pair.of(leftRecord.getIndexEntry(), rightRecord.getIndexEntry())),
+                continuation,
+                left.store.getPipelineSize(SPATIAL_JOIN));
+        return cursor.skipThenLimit(executeProperties.getSkip(), executeProperties.getReturnedRowLimit());
+    }
+}
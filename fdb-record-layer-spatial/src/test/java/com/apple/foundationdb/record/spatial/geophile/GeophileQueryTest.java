@@ -324,6 +324,54 @@ public class GeophileQueryTest extends FDBRecordStoreQueryTestBase {
         assertEquals(scanResults, coveringResults);
     }
 
+    @Test
+    @Tag(Tags.Slow)
+    public void testDistanceContinuations() throws Exception {
+        final RecordMetaDataHook hook = md -> {
+            md.addIndex("City", CITY_LOCATION_COVERING_INDEX);
+        };
+
+        loadCities(hook, 0);
+
+        final int centerId = 5391959;
+        final double distance = 1;
+        final int scanLimit = 100;
+
+        final RecordQueryPlan coveringPlan = distanceSpatialQuery(distance, true);
+        final Set<Integer> allResults = new HashSet<>();
+        try (FDBRecordContext context = openContext()) {
+            openRecordStore(context, hook);
+            coveringPlan.execute(recordStore, bindCenter(centerId)).forEach(city -> {
+                TestRecordsGeoProto.City.Builder cityBuilder = TestRecordsGeoProto.City.newBuilder()
+                        .mergeFrom(city.getRecord());
+                allResults.add(cityBuilder.getGeoNameId());
+            }).join();
+            commit(context);
+        }
+
+        final Set<Integer> continuedResults = new HashSet<>();
+        int executions = 0;
+        byte [] continuation = null;
+        do {
+            try (FDBRecordContext context = openContext()) {
+                openRecordStore(context, hook);
+                ExecuteProperties executeProperties = ExecuteProperties.newBuilder().setScannedRecordsLimit(scanLimit).build();
+                RecordCursor<FDBQueriedRecord<Message>> recordCursor = coveringPlan.execute(recordStore, bindCenter(centerId), continuation, executeProperties);
+                recordCursor.forEach(city -> {
+                    TestRecordsGeoProto.City.Builder cityBuilder = TestRecordsGeoProto.City.newBuilder()
+                            .mergeFrom(city.getRecord());
+                    continuedResults.add(cityBuilder.getGeoNameId());
+                }).join();
+                continuation = recordCursor.getNext().getContinuation().toBytes();
+                executions++;
+                commit(context);
+            }
+        } while (continuation != null);
+
+        assertThat("Should have needed more than one execution", executions, greaterThan(1));
+        assertEquals(allResults, continuedResults);
+    }
+
     @Test
     @Tag(Tags.Slow)
     // The shape data is really still too detailed for this join to execute in a reasonable amount of time and without